@@ -40,6 +40,12 @@ document.addEventListener("DOMContentLoaded", () => {
                     // Повторяем запрос с новым токеном
                     options.headers.Authorization = `Bearer ${newTokens.accessToken}`;
                     response = await fetch(url, options);
+                } else if (responseData.code === "TOKEN_REVOKED") {
+                    // Сессия завершена (выход или смена пароля) - нужен повторный вход
+                    localStorage.removeItem("accessToken");
+                    localStorage.removeItem("refreshToken");
+                    window.location.href = "/auth";
+                    return { message: responseData.message };
                 }
             }
 
@@ -113,12 +119,16 @@ document.addEventListener("DOMContentLoaded", () => {
             return;
         }
 
+        // Один ключ на заявку: повтор запроса не создаст вторую
+        const idempotencyKey = crypto.randomUUID();
+
         try {
             const response = await fetch(`${apiBaseUrl}/deposits/create`, {
                 method: "POST",
                 headers: {
                     "Content-Type": "application/json",
-                    Authorization: `Bearer ${localStorage.getItem("accessToken")}`
+                    Authorization: `Bearer ${localStorage.getItem("accessToken")}`,
+                    "Idempotency-Key": idempotencyKey
                 },
                 body: JSON.stringify({ amount })
             });
@@ -0,0 +1,289 @@
+package com.melnikov.TicketBookingService.booking;
+
+import com.melnikov.TicketBookingService.dao.BookingDao;
+import com.melnikov.TicketBookingService.entity.Booking;
+import com.melnikov.TicketBookingService.entity.BookingAttempt;
+import com.melnikov.TicketBookingService.exception.BookingQueueBusyException;
+import com.melnikov.TicketBookingService.holds.SeatHoldScheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Групповая фиксация броней (bookings.group-commit.enabled=true).
+ * <p>
+ * Заявки на один рейс встают в его очередь и применяются пачками до bookings.group-commit.max-batch
+ * в одной транзакции ({@link BookingDao#bookBatch}): строка tickets блокируется и обновляется раз
+ * на пачку, а не на каждую заявку. Пачка уходит, когда набралась целиком или прошло
+ * bookings.group-commit.linger-ms с первой заявки; пока она фиксируется, копится следующая.
+ * Каждый вызывающий получает свой результат; ошибка БД отклоняет всю пачку.
+ * Заявка ждет не дольше bookings.group-commit.timeout-ms: если ее пачка еще не началась,
+ * заявка снимается из очереди и вызывающий получает 503.
+ * Рейс обслуживает один поток за раз, потоков bookings.group-commit.threads — столько же
+ * соединений из пула они могут занять.
+ */
+@Slf4j
+@Component
+public class BookingGroupCommitQueue {
+    private final BookingDao bookingDao;
+    private final SeatHoldScheduler seatHoldScheduler;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final long timeoutNanos;
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final ConcurrentHashMap<Integer, TicketQueue> queues = new ConcurrentHashMap<>();
+
+    private final DistributionSummary batchFill;
+    private final Timer queueWait;
+    private final Timer batchCommit;
+    private final Counter failedBatches;
+    private final Counter timedOut;
+
+    public BookingGroupCommitQueue(BookingDao bookingDao,
+                                   SeatHoldScheduler seatHoldScheduler,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${bookings.group-commit.enabled:false}") boolean enabled,
+                                   @Value("${bookings.group-commit.max-batch:100}") int maxBatch,
+                                   @Value("${bookings.group-commit.linger-ms:2}") long lingerMillis,
+                                   @Value("${bookings.group-commit.timeout-ms:5000}") long timeoutMillis,
+                                   @Value("${bookings.group-commit.threads:4}") int threads) {
+        if (maxBatch < 1 || lingerMillis < 0 || timeoutMillis < 1 || threads < 1) {
+            throw new IllegalArgumentException("Invalid group commit settings: max-batch " + maxBatch
+                    + ", linger-ms " + lingerMillis + ", timeout-ms " + timeoutMillis + ", threads " + threads);
+        }
+        this.bookingDao = bookingDao;
+        this.seatHoldScheduler = seatHoldScheduler;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, task -> {
+            Thread thread = new Thread(task, "booking-group-commit-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+
+        this.batchFill = DistributionSummary.builder("bookings.group-commit.batch.size")
+                .description("Booking requests applied per transaction")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("bookings.group-commit.queue.wait")
+                .description("Time a booking request waited in its ticket queue before its batch started")
+                .register(meterRegistry);
+        this.batchCommit = Timer.builder("bookings.group-commit.batch.commit")
+                .description("Duration of one batch transaction")
+                .register(meterRegistry);
+        this.failedBatches = Counter.builder("bookings.group-commit.batch.failed")
+                .description("Batches rolled back because of a database error")
+                .register(meterRegistry);
+        this.timedOut = Counter.builder("bookings.group-commit.timeouts")
+                .description("Booking requests rejected after waiting longer than timeout-ms")
+                .register(meterRegistry);
+        Gauge.builder("bookings.group-commit.queue.depth", queues,
+                        q -> q.values().stream().mapToInt(queue -> queue.size.get()).sum())
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ставит заявку в очередь рейса и ждет результата пачки. Вызывать вне транзакции:
+     * пачка фиксируется в своей, а соединение вызывающего простаивало бы все ожидание.
+     */
+    public BookingAttempt book(Long userId, Integer ticketId, int ticketQuantity,
+                               ZonedDateTime bookingTime, ZonedDateTime holdExpiresAt) {
+        Pending pending = new Pending(Booking.builder()
+                .userId(userId)
+                .ticketId(ticketId)
+                .ticketQuantity(ticketQuantity)
+                .bookingTime(bookingTime)
+                .holdExpiresAt(holdExpiresAt)
+                .build());
+
+        TicketQueue queue = queues.computeIfAbsent(ticketId, TicketQueue::new);
+        // Счетчик раньше вставки: разбирающий поток не увидит заявку, не учтенную в size
+        int size = queue.size.incrementAndGet();
+        queue.pending.add(pending);
+        if (size % maxBatch == 0) {
+            // набралась полная пачка: не ждем linger
+            executor.execute(() -> drain(queue));
+        } else if (queue.lingering.compareAndSet(false, true)) {
+            schedule(queue);
+        }
+        return await(queue, pending);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        // Заявки, до которых пачки уже не дойдут, не должны ждать до таймаута
+        for (TicketQueue queue : queues.values()) {
+            Pending pending;
+            while ((pending = queue.pending.poll()) != null) {
+                queue.size.decrementAndGet();
+                pending.result.completeExceptionally(new BookingQueueBusyException("Booking service is shutting down"));
+            }
+        }
+    }
+
+    private void schedule(TicketQueue queue) {
+        executor.schedule(() -> {
+            queue.lingering.set(false);
+            drain(queue);
+        }, lingerNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Забирает пачки, пока очередь не опустеет: заявки, пришедшие во время фиксации, уходят следующей пачкой.
+     */
+    private void drain(TicketQueue queue) {
+        if (!queue.lock.tryLock()) {
+            return; // рейс уже обслуживается, текущий поток заберет и эти заявки
+        }
+        try {
+            List<Pending> batch;
+            while (!(batch = take(queue)).isEmpty()) {
+                commit(queue.ticketId, batch);
+            }
+        } finally {
+            queue.lock.unlock();
+        }
+        // Заявка могла встать в очередь после последней проверки, но до снятия блокировки
+        if (queue.size.get() > 0) {
+            if (queue.lingering.compareAndSet(false, true)) {
+                schedule(queue);
+            }
+        } else {
+            queues.remove(queue.ticketId, queue);
+        }
+    }
+
+    private List<Pending> take(TicketQueue queue) {
+        List<Pending> batch = new ArrayList<>(Math.min(maxBatch, Math.max(queue.size.get(), 1)));
+        Pending pending;
+        while (batch.size() < maxBatch && (pending = queue.pending.poll()) != null) {
+            queue.size.decrementAndGet();
+            batch.add(pending);
+        }
+        return batch;
+    }
+
+    private void commit(Integer ticketId, List<Pending> batch) {
+        long started = System.nanoTime();
+        batch.forEach(pending -> queueWait.record(started - pending.enqueuedAt, TimeUnit.NANOSECONDS));
+        batchFill.record(batch.size());
+
+        List<BookingAttempt> attempts;
+        try {
+            attempts = transactionTemplate.execute(status -> {
+                List<BookingAttempt> result = bookingDao.bookBatch(ticketId,
+                        batch.stream().map(pending -> pending.request).toList());
+                result.stream()
+                        .filter(BookingAttempt::isCreated)
+                        .forEach(attempt -> seatHoldScheduler.schedule(attempt.getBooking()));
+                return result;
+            });
+        } catch (RuntimeException e) {
+            failedBatches.increment();
+            log.error("Booking batch of {} requests for ticket {} failed", batch.size(), ticketId, e);
+            batch.forEach(pending -> pending.result.completeExceptionally(e));
+            return;
+        } finally {
+            batchCommit.record(Duration.ofNanos(System.nanoTime() - started));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(attempts.get(i));
+        }
+    }
+
+    /**
+     * Ждет результата не дольше timeout-ms. Заявка, которую пачка еще не забрала, снимается из очереди —
+     * брони точно не будет. Уже забранная фиксируется прямо сейчас: ее результат ждем еще один таймаут,
+     * чтобы не ответить ошибкой на созданную бронь.
+     */
+    private BookingAttempt await(TicketQueue queue, Pending pending) {
+        try {
+            try {
+                return pending.result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | InterruptedException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                if (queue.pending.remove(pending)) {
+                    queue.size.decrementAndGet();
+                    timedOut.increment();
+                    throw new BookingQueueBusyException("Too many bookings for this ticket, try again");
+                }
+            }
+            try {
+                return pending.result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | InterruptedException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                timedOut.increment();
+                log.warn("Booking batch for ticket {} is still committing after {} ms", queue.ticketId,
+                        TimeUnit.NANOSECONDS.toMillis(2 * timeoutNanos));
+                throw new BookingQueueBusyException("Booking is still being processed, check your bookings before retrying");
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static final class TicketQueue {
+        final Integer ticketId;
+        final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicBoolean lingering = new AtomicBoolean();
+        final ReentrantLock lock = new ReentrantLock();
+
+        TicketQueue(Integer ticketId) {
+            this.ticketId = ticketId;
+        }
+    }
+
+    private static final class Pending {
+        final Booking request;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<BookingAttempt> result = new CompletableFuture<>();
+
+        Pending(Booking request) {
+            this.request = request;
+        }
+    }
+}
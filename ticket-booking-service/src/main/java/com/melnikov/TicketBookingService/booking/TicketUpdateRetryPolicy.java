@@ -0,0 +1,129 @@
+package com.melnikov.TicketBookingService.booking;
+
+import com.melnikov.TicketBookingService.exception.TicketUpdateConflictException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Повторы оптимистичных обновлений остатка (bookings.concurrency=optimistic).
+ * <p>
+ * Попытка читает строку рейса с версией и пишет compare-and-set; проигравшая гонку попытка
+ * повторяется после паузы со случайной задержкой (full jitter: от 0 до base * 2^n, не больше max-backoff),
+ * чтобы конкуренты не сталкивались снова в тот же момент. Попыток не больше max-attempts.
+ * <p>
+ * Бюджет повторов общий на сервис: каждый вызов пополняет его на retry-budget-ratio,
+ * каждый повтор тратит единицу, запас не больше retry-budget-cap. Когда рейс "горит" и почти
+ * все попытки проигрывают, бюджет кончается и запросы сразу получают 409, а не умножают нагрузку на БД.
+ */
+@Log4j2
+@Component
+public class TicketUpdateRetryPolicy {
+    // Бюджет хранится в тысячных долях повтора, чтобы пополнять его дробной ratio атомарно
+    private static final long SCALE = 1000;
+
+    private final boolean optimistic;
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long budgetDeposit;
+    private final long budgetCap;
+    private final AtomicLong budget;
+    private final MeterRegistry meterRegistry;
+
+    public TicketUpdateRetryPolicy(MeterRegistry meterRegistry,
+                                   @Value("${bookings.concurrency:pessimistic}") String concurrency,
+                                   @Value("${bookings.optimistic.max-attempts:5}") int maxAttempts,
+                                   @Value("${bookings.optimistic.base-backoff:1ms}") Duration baseBackoff,
+                                   @Value("${bookings.optimistic.max-backoff:50ms}") Duration maxBackoff,
+                                   @Value("${bookings.optimistic.retry-budget-ratio:0.2}") double budgetRatio,
+                                   @Value("${bookings.optimistic.retry-budget-cap:100}") int budgetCap) {
+        if (!"optimistic".equals(concurrency) && !"pessimistic".equals(concurrency)) {
+            throw new IllegalArgumentException("Unknown bookings.concurrency: " + concurrency
+                    + " (expected pessimistic or optimistic)");
+        }
+        if (maxAttempts < 1 || baseBackoff.isNegative() || maxBackoff.compareTo(baseBackoff) < 0
+                || budgetRatio < 0 || budgetCap < 0) {
+            throw new IllegalArgumentException("Invalid optimistic retry settings: max-attempts " + maxAttempts
+                    + ", base-backoff " + baseBackoff + ", max-backoff " + maxBackoff
+                    + ", retry-budget-ratio " + budgetRatio + ", retry-budget-cap " + budgetCap);
+        }
+        this.meterRegistry = meterRegistry;
+        this.optimistic = "optimistic".equals(concurrency);
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.budgetDeposit = Math.round(budgetRatio * SCALE);
+        this.budgetCap = budgetCap * SCALE;
+        this.budget = new AtomicLong(this.budgetCap);
+    }
+
+    public boolean isOptimistic() {
+        return optimistic;
+    }
+
+    /**
+     * Выполняет попытку, пока она не вернет результат. Пустой Optional — конфликт версий:
+     * попытка ничего не изменила и ее можно повторить с перечитыванием строки.
+     *
+     * @throws TicketUpdateConflictException попытки или бюджет повторов исчерпаны
+     */
+    public <T> T execute(Integer ticketId, Supplier<Optional<T>> attempt) {
+        deposit();
+        for (int n = 1; ; n++) {
+            Optional<T> result = attempt.get();
+            if (result.isPresent()) {
+                return result.get();
+            }
+            counter("tickets.optimistic.conflicts", ticketId).increment();
+            if (n >= maxAttempts || !withdraw()) {
+                counter("tickets.optimistic.exhausted", ticketId).increment();
+                log.warn("Optimistic update of ticket {} gave up after {} attempts", ticketId, n);
+                throw new TicketUpdateConflictException("Ticket " + ticketId + " is being updated concurrently, try again");
+            }
+            counter("tickets.optimistic.retries", ticketId).increment();
+            backoff(n);
+        }
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt - 1, 20));
+        if (ceiling > 0) {
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new TicketUpdateConflictException("Interrupted while waiting to retry ticket update");
+        }
+    }
+
+    private void deposit() {
+        budget.accumulateAndGet(budgetDeposit, (current, deposit) -> Math.min(budgetCap, current + deposit));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    // Счетчики с тегом рейса появляются только для рейсов, на которых были конфликты
+    private Counter counter(String name, Integer ticketId) {
+        return Counter.builder(name)
+                .tag("ticket", String.valueOf(ticketId))
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,160 @@
+package com.melnikov.TicketBookingService.cache;
+
+import com.melnikov.TicketBookingService.dao.RouteDao;
+import com.melnikov.TicketBookingService.dao.RouteDaoImpl;
+import com.melnikov.TicketBookingService.entity.Route;
+import com.melnikov.TicketBookingService.events.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Справочник маршрутов в памяти поверх {@link RouteDaoImpl}.
+ * <p>
+ * Маршруты загружаются при старте в неизменяемые карты, поэтому поиск
+ * (departure_city, arrival_city) -> id и id -> Route — это чтение из хеш-таблицы.
+ * Маршрут, созданный через {@link #createRoute}, виден сразу; промахи кешируются
+ * на routes.cache.negative-ttl, после чего маршрут, созданный на другом узле, подхватывается из БД.
+ * Промахов помнится не больше routes.cache.negative-max-size, истекшие вычищаются по расписанию.
+ */
+@Slf4j
+@Primary
+@Component
+public class RouteDictionary implements RouteDao {
+    private final RouteDaoImpl routeDao;
+    private final long negativeTtlNanos;
+    private final int negativeMaxSize;
+
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), Map.of());
+    private final ConcurrentHashMap<RouteKey, Long> misses = new ConcurrentHashMap<>();
+
+    public RouteDictionary(RouteDaoImpl routeDao,
+                           @Value("${routes.cache.negative-ttl:30s}") Duration negativeTtl,
+                           @Value("${routes.cache.negative-max-size:10000}") int negativeMaxSize) {
+        this.routeDao = routeDao;
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.negativeMaxSize = negativeMaxSize;
+    }
+
+    @PostConstruct
+    public void load() {
+        Map<RouteKey, Route> byCities = new HashMap<>();
+        Map<Integer, Route> byId = new HashMap<>();
+        for (Route route : routeDao.findAll()) {
+            byCities.put(new RouteKey(route.getDepartureCity(), route.getArrivalCity()), route);
+            byId.put(route.getId(), route);
+        }
+        snapshot = new Snapshot(Map.copyOf(byCities), Map.copyOf(byId));
+        misses.clear();
+        log.info("Route dictionary loaded: {} routes", byId.size());
+    }
+
+    @Override
+    public Optional<Integer> findIdByCities(String departureCity, String arrivalCity) {
+        RouteKey key = new RouteKey(departureCity, arrivalCity);
+        Route route = snapshot.byCities().get(key);
+        if (route != null) {
+            return Optional.of(route.getId());
+        }
+
+        Long expiresAt = misses.get(key);
+        if (expiresAt != null) {
+            if (System.nanoTime() - expiresAt < 0) {
+                return Optional.empty();
+            }
+            misses.remove(key, expiresAt);
+        }
+
+        Optional<Integer> id = routeDao.findIdByCities(departureCity, arrivalCity);
+        if (id.isPresent()) {
+            register(new Route(id.get(), departureCity, arrivalCity));
+        } else if (misses.size() < negativeMaxSize) {
+            // при переполнении промах просто не запоминается: следующий запрос снова сходит в БД
+            misses.put(key, System.nanoTime() + negativeTtlNanos);
+        }
+        return id;
+    }
+
+    @Scheduled(fixedDelayString = "${routes.cache.negative-sweep-ms:30000}")
+    public void evictExpiredMisses() {
+        long now = System.nanoTime();
+        misses.values().removeIf(expiresAt -> now - expiresAt >= 0);
+    }
+
+    @Override
+    public boolean existsByCities(String departureCity, String arrivalCity) {
+        return findIdByCities(departureCity, arrivalCity).isPresent();
+    }
+
+    @Override
+    public Integer createRoute(String departureCity, String arrivalCity) {
+        Integer id = routeDao.createRoute(departureCity, arrivalCity);
+        Route route = new Route(id, departureCity, arrivalCity);
+        register(route);
+        // маршрут виден внутри транзакции сразу, но при откате его нужно забыть
+        TransactionCallbacks.afterCompletion(committed -> {
+            if (!committed) {
+                unregister(route);
+            }
+        });
+        return id;
+    }
+
+    @Override
+    public Optional<Route> findById(Integer id) {
+        Route route = snapshot.byId().get(id);
+        if (route != null) {
+            return Optional.of(route);
+        }
+        Optional<Route> loaded = routeDao.findById(id);
+        loaded.ifPresent(this::register);
+        return loaded;
+    }
+
+    @Override
+    public List<Route> findAll() {
+        return List.copyOf(snapshot.byId().values());
+    }
+
+    /**
+     * Новые маршруты редки, поэтому карты пересобираются целиком (copy-on-write),
+     * а чтение остается без блокировок.
+     */
+    private synchronized void register(Route route) {
+        RouteKey key = new RouteKey(route.getDepartureCity(), route.getArrivalCity());
+        misses.remove(key);
+        Snapshot current = snapshot;
+        if (current.byId().containsKey(route.getId())) {
+            return;
+        }
+        Map<RouteKey, Route> byCities = new HashMap<>(current.byCities());
+        Map<Integer, Route> byId = new HashMap<>(current.byId());
+        byCities.put(key, route);
+        byId.put(route.getId(), route);
+        snapshot = new Snapshot(Map.copyOf(byCities), Map.copyOf(byId));
+    }
+
+    private synchronized void unregister(Route route) {
+        Map<RouteKey, Route> byCities = new HashMap<>(snapshot.byCities());
+        Map<Integer, Route> byId = new HashMap<>(snapshot.byId());
+        byCities.remove(new RouteKey(route.getDepartureCity(), route.getArrivalCity()));
+        byId.remove(route.getId());
+        snapshot = new Snapshot(Map.copyOf(byCities), Map.copyOf(byId));
+    }
+
+    private record RouteKey(String departureCity, String arrivalCity) {
+    }
+
+    private record Snapshot(Map<RouteKey, Route> byCities, Map<Integer, Route> byId) {
+    }
+}
@@ -0,0 +1,167 @@
+package com.melnikov.TicketBookingService.cache;
+
+import com.melnikov.TicketBookingService.dto.TicketSearchRequestDto;
+import com.melnikov.TicketBookingService.dto.TicketSearchResponseDto;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.events.TicketChangeListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кеш результатов /tickets/search (tickets.search.cache.enabled).
+ * <p>
+ * Каждая запись помнит версию маршрута, с которой была посчитана. Любое изменение
+ * билетов маршрута (создание, бронь, отмена) увеличивает версию, и старые записи
+ * перестают совпадать — после брони устаревший остаток не отдается.
+ * Размер ограничен tickets.search.cache.max-size: LRU по сегментам, чтобы не держать один общий lock.
+ */
+@Component
+public class TicketSearchCache implements TicketChangeListener {
+    private static final int SEGMENTS = 16;
+
+    private final boolean enabled;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final ConcurrentHashMap<Integer, AtomicLong> routeVersions = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public TicketSearchCache(MeterRegistry meterRegistry,
+                             @Value("${tickets.search.cache.enabled:false}") boolean enabled,
+                             @Value("${tickets.search.cache.max-size:10000}") int maxSize) {
+        this.enabled = enabled;
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+
+        this.hits = Counter.builder("tickets.search.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("tickets.search.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("tickets.search.cache.evictions").register(meterRegistry);
+        Gauge.builder("tickets.search.cache.size", this, TicketSearchCache::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ключ строится из исходных полей запроса: незаданные границы и курсор остаются null,
+     * иначе подставленные "сейчас ± 10 лет" делали бы каждый запрос уникальным.
+     */
+    public SearchKey key(Integer routeId, Integer transportTypeId, TicketSearchRequestDto request) {
+        return new SearchKey(routeId, transportTypeId,
+                toInstant(request.getStartTime()),
+                toInstant(request.getEndTime()),
+                toInstant(request.getLastDepartureTime()),
+                request.getLastId() != null ? request.getLastId() : 0,
+                request.getPageSize());
+    }
+
+    /**
+     * Текущая версия маршрута. Читать до запроса к БД и передавать в {@link #put}.
+     */
+    public long version(Integer routeId) {
+        AtomicLong version = routeVersions.get(routeId);
+        return version == null ? 0 : version.get();
+    }
+
+    public Optional<TicketSearchResponseDto> get(SearchKey key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Entry entry = segment(key).get(key);
+        if (entry != null && entry.version() == version(key.routeId())) {
+            hits.increment();
+            return Optional.of(entry.response());
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public void put(SearchKey key, long version, TicketSearchResponseDto response) {
+        if (enabled && version == version(key.routeId())) {
+            segment(key).put(key, new Entry(version, response));
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void onTicketSaved(Ticket ticket) {
+        bump(ticket.getRouteId());
+    }
+
+    @Override
+    public void onAvailabilityChanged(Integer ticketId, Integer routeId, int delta) {
+        bump(routeId);
+    }
+
+    private void bump(Integer routeId) {
+        if (enabled && routeId != null) {
+            routeVersions.computeIfAbsent(routeId, id -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private Segment segment(SearchKey key) {
+        return segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    private static Instant toInstant(ZonedDateTime time) {
+        return time == null ? null : time.toInstant();
+    }
+
+    public record SearchKey(Integer routeId, Integer transportTypeId, Instant startTime, Instant endTime,
+                            Instant lastDepartureTime, int lastId, int pageSize) {
+    }
+
+    private record Entry(long version, TicketSearchResponseDto response) {
+    }
+
+    private final class Segment {
+        private final LinkedHashMap<SearchKey, Entry> entries;
+
+        Segment(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SearchKey, Entry> eldest) {
+                    if (size() > maxSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized Entry get(SearchKey key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(SearchKey key, Entry entry) {
+            entries.put(key, entry);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.melnikov.TicketBookingService.cache;
+
+import com.melnikov.TicketBookingService.dao.TransportTypeDao;
+import com.melnikov.TicketBookingService.entity.TransportType;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Справочник transport_types, загружаемый при старте. Заменяет захардкоженные switch bus/avia/train.
+ */
+@Slf4j
+@Component
+public class TransportTypeDictionary {
+    private final TransportTypeDao transportTypeDao;
+
+    private volatile Map<String, Integer> idsByName = Map.of();
+    private volatile Map<Integer, String> namesById = Map.of();
+
+    public TransportTypeDictionary(TransportTypeDao transportTypeDao) {
+        this.transportTypeDao = transportTypeDao;
+    }
+
+    @PostConstruct
+    public void load() {
+        Map<String, Integer> ids = new HashMap<>();
+        Map<Integer, String> names = new HashMap<>();
+        for (TransportType type : transportTypeDao.findAll()) {
+            ids.put(type.getName(), type.getId());
+            names.put(type.getId(), type.getName());
+        }
+        idsByName = Map.copyOf(ids);
+        namesById = Map.copyOf(names);
+        log.info("Transport type dictionary loaded: {}", idsByName);
+    }
+
+    public Optional<Integer> findIdByName(String name) {
+        return Optional.ofNullable(idsByName.get(name));
+    }
+
+    public Optional<String> findNameById(Integer id) {
+        return Optional.ofNullable(namesById.get(id));
+    }
+}
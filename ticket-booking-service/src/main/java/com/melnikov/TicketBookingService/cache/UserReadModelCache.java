@@ -0,0 +1,181 @@
+package com.melnikov.TicketBookingService.cache;
+
+import com.melnikov.TicketBookingService.events.TransactionCallbacks;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Кеш личного кабинета (users.cache.*): /users/info, /bookings/list, /deposits/last на пользователя.
+ * <p>
+ * Записи живут не дольше users.cache.ttl, размер ограничен users.cache.max-size (LRU по сегментам).
+ * DAO сбрасывают только записи затронутого пользователя: сразу и еще раз после фиксации транзакции.
+ * Загрузка, начатая до сброса, в кеш не попадает — ее версия пользователя уже устарела.
+ * Закешированные значения общие для всех запросов, изменять их нельзя.
+ */
+@Component
+public class UserReadModelCache {
+    private static final int SEGMENTS = 16;
+    private static final int VERSION_STRIPES = 256;
+
+    public enum View {
+        INFO, BOOKINGS, DEPOSITS
+    }
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    // версия на полосу пользователей: сброс одного изредка отменяет загрузку соседа по полосе, но не чужие записи
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    private final Map<View, Counter> hits = new EnumMap<>(View.class);
+    private final Map<View, Counter> misses = new EnumMap<>(View.class);
+    private final Counter evictions;
+
+    @Autowired
+    public UserReadModelCache(MeterRegistry meterRegistry,
+                              @Value("${users.cache.enabled:false}") boolean enabled,
+                              @Value("${users.cache.ttl:60s}") Duration ttl,
+                              @Value("${users.cache.max-size:10000}") int maxSize) {
+        this(meterRegistry, enabled, ttl, maxSize, System::nanoTime);
+    }
+
+    public UserReadModelCache(MeterRegistry meterRegistry, boolean enabled, Duration ttl, int maxSize,
+                              LongSupplier clock) {
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+
+        for (View view : View.values()) {
+            String tag = view.name().toLowerCase();
+            hits.put(view, Counter.builder("users.cache.requests").tag("view", tag).tag("result", "hit")
+                    .register(meterRegistry));
+            misses.put(view, Counter.builder("users.cache.requests").tag("view", tag).tag("result", "miss")
+                    .register(meterRegistry));
+        }
+        this.evictions = Counter.builder("users.cache.evictions").register(meterRegistry);
+        Gauge.builder("users.cache.size", this, UserReadModelCache::size).register(meterRegistry);
+    }
+
+    /**
+     * Значение из кеша или из loader. Исключение loader пробрасывается и ничего не кеширует.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Long userId, View view, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Key key = new Key(userId, view);
+        Segment segment = segment(key);
+        long now = clock.getAsLong();
+        Entry entry = segment.get(key);
+        if (entry != null && entry.expiresAt - now > 0) {
+            hits.get(view).increment();
+            return (T) entry.value;
+        }
+        misses.get(view).increment();
+
+        long version = versions.get(stripe(userId));
+        T value = loader.get();
+        if (value != null) {
+            segment.putIfVersion(key, new Entry(value, now + ttlNanos), version);
+        }
+        return value;
+    }
+
+    /**
+     * Сбросить представления пользователя. Вызывается из DAO рядом с изменением.
+     */
+    public void invalidate(Long userId, View... views) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        // сразу — чтобы не закешировать загрузку, идущую параллельно транзакции,
+        // после фиксации — чтобы убрать прочитанное до нее
+        evict(userId, views);
+        TransactionCallbacks.afterCommit(() -> evict(userId, views));
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private void evict(Long userId, View[] views) {
+        versions.incrementAndGet(stripe(userId));
+        for (View view : views) {
+            Key key = new Key(userId, view);
+            segment(key).remove(key);
+        }
+    }
+
+    private Segment segment(Key key) {
+        return segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    private static int stripe(Long userId) {
+        long id = userId;
+        return (int) (id ^ (id >>> 32)) & (VERSION_STRIPES - 1);
+    }
+
+    private record Key(Long userId, View view) {
+    }
+
+    private record Entry(Object value, long expiresAt) {
+    }
+
+    private final class Segment {
+        private final LinkedHashMap<Key, Entry> entries;
+
+        Segment(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    if (size() > maxSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized Entry get(Key key) {
+            return entries.get(key);
+        }
+
+        // проверка версии под тем же lock, что и удаление в evict: сброс не проскочит между ними
+        synchronized void putIfVersion(Key key, Entry entry, long version) {
+            if (versions.get(stripe(key.userId())) == version) {
+                entries.put(key, entry);
+            }
+        }
+
+        synchronized void remove(Key key) {
+            entries.remove(key);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
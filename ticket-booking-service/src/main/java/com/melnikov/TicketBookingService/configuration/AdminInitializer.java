@@ -2,9 +2,9 @@ package com.melnikov.TicketBookingService.configuration;
 
 import com.melnikov.TicketBookingService.dao.UserDaoImpl;
 import com.melnikov.TicketBookingService.entity.User;
+import com.melnikov.TicketBookingService.security.PasswordHasher;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -14,7 +14,7 @@ import java.time.LocalDate;
 @RequiredArgsConstructor
 public class AdminInitializer {
     private final UserDaoImpl userDao;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
 
     @PostConstruct
     @Transactional
@@ -23,7 +23,7 @@ public class AdminInitializer {
         if (userDao.findByEmail(adminEmail).isEmpty()) {
             User admin = User.builder()
                     .email(adminEmail)
-                    .passwordHash(passwordEncoder.encode("admin1234!")) // Хешируем пароль
+                    .passwordHash(passwordHasher.hash("admin1234!")) // Хешируем пароль
                     .firstname("Admin")
                     .lastname("Admin")
                     .birthDate(LocalDate.ofYearDay(2004, 1)) // Укажите возраст
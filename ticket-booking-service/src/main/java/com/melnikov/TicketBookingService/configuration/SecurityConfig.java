@@ -10,8 +10,6 @@ import org.springframework.security.config.annotation.authentication.configurati
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
@@ -53,9 +51,18 @@ public class SecurityConfig {
                         ).permitAll()
                         // Для /tickets: только POST запрос на /tickets/create доступен только с ролью ADMIN
                         .requestMatchers(HttpMethod.POST, "/tickets/create").hasRole("ADMIN")
+                        // Шардирование остатка горячего рейса - тоже только ADMIN
+                        .requestMatchers(HttpMethod.POST, "/tickets/shard").hasRole("ADMIN")
                         // Остальные эндпоинты /tickets/** (например, поиск) – оставляем открытыми или можно требовать аутентификации,
                         // если это необходимо. Здесь оставляем открытыми:
                         .requestMatchers("/tickets/**").permitAll()
+                        // Подсказки городов для формы поиска
+                        .requestMatchers(HttpMethod.GET, "/routes/suggest").permitAll()
+                        // Открытые ключи для проверки JWT на других узлах
+                        .requestMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
+                        // Метрики и состояние сервиса
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         // Запретить все прочие запросы
                         .anyRequest().denyAll()
                 )
@@ -92,11 +99,6 @@ public class SecurityConfig {
     public AuthenticationManager authenticationManager(AuthenticationConfiguration authenticationConfiguration) throws Exception {
         return authenticationConfiguration.getAuthenticationManager();
     }
-
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(); // Хеширование паролей
-    }
 }
 
 
@@ -2,7 +2,7 @@ package com.melnikov.TicketBookingService.controllers;
 
 import com.melnikov.TicketBookingService.dto.*;
 import com.melnikov.TicketBookingService.services.AuthService;
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
+import com.melnikov.TicketBookingService.ratelimit.RateLimited;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -37,7 +37,7 @@ public class AuthController {
             }
     )
     @PostMapping("/register")
-    @RateLimiter(name = "defaultLimiter")
+    @RateLimited("auth")
     public AuthResponseDto register(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Данные для регистрации",
@@ -59,7 +59,7 @@ public class AuthController {
             }
     )
     @PostMapping("/login")
-    @RateLimiter(name = "defaultLimiter")
+    @RateLimited("auth")
     public AuthResponseDto login(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Данные для входа",
@@ -81,7 +81,7 @@ public class AuthController {
             }
     )
     @PostMapping("/refresh")
-    @RateLimiter(name = "defaultLimiter")
+    @RateLimited("refresh")
     public ResponseEntity<RefreshTokenResponseDto> refresh(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Refresh-токен для обновления JWT",
@@ -1,69 +1,94 @@
 package com.melnikov.TicketBookingService.controllers;
 
 import com.melnikov.TicketBookingService.dto.BookingCancelRequestDto;
+import com.melnikov.TicketBookingService.dto.BookingConfirmRequestDto;
 import com.melnikov.TicketBookingService.dto.BookingCreateRequestDto;
+import com.melnikov.TicketBookingService.dto.BookingListRequestDto;
+import com.melnikov.TicketBookingService.dto.BookingPageResponseDto;
 import com.melnikov.TicketBookingService.dto.BookingResponseDto;
-import com.melnikov.TicketBookingService.entity.Booking;
+import com.melnikov.TicketBookingService.dto.CartBookingRequestDto;
+import com.melnikov.TicketBookingService.idempotency.IdempotencyStore;
+import com.melnikov.TicketBookingService.security.JwtPrincipal;
 import com.melnikov.TicketBookingService.services.BookingService;
-import com.melnikov.TicketBookingService.services.JwtService;
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
-import io.jsonwebtoken.Claims;
+import com.melnikov.TicketBookingService.ratelimit.RateLimited;
 import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/bookings")
 public class BookingController {
 
     private final BookingService bookingService;
-    private final JwtService jwtService;
+    private final IdempotencyStore idempotencyStore;
 
-    public BookingController(BookingService bookingService, JwtService jwtService) {
+    public BookingController(BookingService bookingService, IdempotencyStore idempotencyStore) {
         this.bookingService = bookingService;
-        this.jwtService = jwtService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     /**
-     * Создание брони
+     * Создание брони. Повтор с тем же Idempotency-Key возвращает первый ответ, не бронируя снова
      */
     @PostMapping("/create")
-    @RateLimiter(name = "defaultLimiter")
-    public BookingResponseDto createBooking(
-            @RequestHeader("Authorization") String authHeader,
+    @RateLimited("booking")
+    public ResponseEntity<?> createBooking(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
             @Valid @RequestBody BookingCreateRequestDto request) {
 
-        Long userId = extractUserIdFromToken(authHeader);
-        return bookingService.createBooking(userId, request);
+        return idempotencyStore.execute(principal.userId(), "bookings.create", idempotencyKey, request,
+                () -> ResponseEntity.ok(bookingService.createBooking(principal.userId(), request)));
     }
 
     /**
-     * Получение всех броней пользователя
+     * Бронирование нескольких билетов (туда-обратно, с пересадками) одной транзакцией
+     */
+    @PostMapping("/cart")
+    @RateLimited("booking")
+    public ResponseEntity<?> createCart(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody CartBookingRequestDto request) {
+
+        return idempotencyStore.execute(principal.userId(), "bookings.cart", idempotencyKey, request,
+                () -> ResponseEntity.ok(bookingService.createCart(principal.userId(), request)));
+    }
+
+    /**
+     * История броней пользователя постранично, от новых к старым
      */
     @GetMapping("/list")
-    @RateLimiter(name = "defaultLimiter")
-    public List<Booking> getUserBookings(@RequestHeader("Authorization") String authHeader) {
-        Long userId = extractUserIdFromToken(authHeader);
-        return bookingService.getUserBookings(userId);
+    @RateLimited("booking")
+    public BookingPageResponseDto getUserBookings(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @Valid BookingListRequestDto request) {
+
+        return bookingService.getUserBookings(principal.userId(), request);
+    }
+
+    /**
+     * Подтверждение брони до истечения удержания мест
+     */
+    @PostMapping("/confirm")
+    @RateLimited("booking")
+    public BookingResponseDto confirmBooking(
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @Valid @RequestBody BookingConfirmRequestDto request) {
+
+        return bookingService.confirmBooking(principal.userId(), request.getBookingId());
     }
 
     /**
      * Отмена брони
      */
     @PostMapping("/cancel")
-    @RateLimiter(name = "defaultLimiter")
+    @RateLimited("booking")
     public void cancelBooking(
-            @RequestHeader("Authorization") String authHeader,
+            @AuthenticationPrincipal JwtPrincipal principal,
             @Valid @RequestBody BookingCancelRequestDto request) {
 
-        Long userId = extractUserIdFromToken(authHeader);
-        bookingService.cancelBooking(userId, request.getBookingId());
-    }
-
-    private Long extractUserIdFromToken(String authHeader) {
-        String token = authHeader.substring(7);
-        Claims claims = jwtService.extractClaims(token);
-        return claims.get("id", Long.class);
+        bookingService.cancelBooking(principal.userId(), request.getBookingId());
     }
 }
@@ -5,41 +5,41 @@ package com.melnikov.TicketBookingService.controllers;
 import com.melnikov.TicketBookingService.dto.DepositConfirmDto;
 import com.melnikov.TicketBookingService.dto.DepositRequestDto;
 import com.melnikov.TicketBookingService.entity.Deposit;
+import com.melnikov.TicketBookingService.idempotency.IdempotencyStore;
+import com.melnikov.TicketBookingService.security.JwtPrincipal;
 import com.melnikov.TicketBookingService.services.DepositService;
-import com.melnikov.TicketBookingService.services.JwtService;
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
-import io.jsonwebtoken.Claims;
+import com.melnikov.TicketBookingService.ratelimit.RateLimited;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
 @RequestMapping("/deposits")
 public class DepositController {
     private final DepositService depositService;
-    private final JwtService jwtService;
+    private final IdempotencyStore idempotencyStore;
 
-    public DepositController(DepositService depositService, JwtService jwtService) {
+    public DepositController(DepositService depositService, IdempotencyStore idempotencyStore) {
         this.depositService = depositService;
-        this.jwtService = jwtService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @PostMapping("/create")
-    @RateLimiter(name = "defaultLimiter")
+    @RateLimited("booking")
     public ResponseEntity<?> createDeposit(
-            @RequestHeader("Authorization") String authHeader,
+            @AuthenticationPrincipal JwtPrincipal principal,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
             @RequestBody @Valid DepositRequestDto depositRequestDto) {
 
-        String token = authHeader.substring(7);
-        Claims claims = jwtService.extractClaims(token);
-        Long userId = claims.get("id", Long.class);
-
-        depositService.createDeposit(userId, depositRequestDto.getAmount());
-        return ResponseEntity.ok("Deposit created successfully.");
+        return idempotencyStore.execute(principal.userId(), "deposits.create", idempotencyKey, depositRequestDto, () -> {
+            depositService.createDeposit(principal.userId(), depositRequestDto.getAmount());
+            return ResponseEntity.ok("Deposit created successfully.");
+        });
     }
 
     @PostMapping("/confirm")
-    @RateLimiter(name = "defaultLimiter")
+    @RateLimited("booking")
     public ResponseEntity<?> confirmDeposit(@RequestBody @Valid DepositConfirmDto request) {
         depositService.confirmDeposit(request.getDepositId(), request.getStatus());
         return ResponseEntity.ok("Deposit " + request.getStatus() + " successfully.");
@@ -47,13 +47,9 @@ public class DepositController {
 
 
     @GetMapping("/last")
-    @RateLimiter(name = "defaultLimiter")
-    public ResponseEntity<?> getLastDeposits(@RequestHeader("Authorization") String authHeader) {
-        String token = authHeader.substring(7);
-        Claims claims = jwtService.extractClaims(token);
-        Long userId = claims.get("id", Long.class);
-
-        return ResponseEntity.ok(depositService.getLastDeposits(userId));
+    @RateLimited("booking")
+    public ResponseEntity<?> getLastDeposits(@AuthenticationPrincipal JwtPrincipal principal) {
+        return ResponseEntity.ok(depositService.getLastDeposits(principal.userId()));
     }
 
 }
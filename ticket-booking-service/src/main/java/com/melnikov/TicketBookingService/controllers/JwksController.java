@@ -0,0 +1,49 @@
+package com.melnikov.TicketBookingService.controllers;
+
+import com.melnikov.TicketBookingService.dto.JwkDto;
+import com.melnikov.TicketBookingService.dto.JwksResponseDto;
+import com.melnikov.TicketBookingService.security.JwtKeyRing;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.math.BigInteger;
+import java.security.interfaces.ECPublicKey;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+public class JwksController {
+    private final JwtKeyRing keyRing;
+
+    public JwksController(JwtKeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<JwksResponseDto> getJwks() {
+        List<JwkDto> keys = keyRing.publicKeys().entrySet().stream()
+                .map(entry -> toJwk(entry.getKey(), entry.getValue()))
+                .toList();
+        // короче jwt.keys.activation-delay, чтобы внешние проверяющие успевали увидеть новый ключ
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS).cachePublic())
+                .body(new JwksResponseDto(keys));
+    }
+
+    private static JwkDto toJwk(String kid, ECPublicKey key) {
+        return new JwkDto("EC", "P-256", kid, "sig", "ES256",
+                coordinate(key.getW().getAffineX()), coordinate(key.getW().getAffineY()));
+    }
+
+    // координата P-256 — ровно 32 байта big-endian, BigInteger дает лишний знаковый байт или меньше байт
+    private static String coordinate(BigInteger value) {
+        byte[] raw = value.toByteArray();
+        byte[] fixed = new byte[32];
+        int length = Math.min(raw.length, 32);
+        System.arraycopy(raw, raw.length - length, fixed, 32 - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+}
@@ -0,0 +1,32 @@
+package com.melnikov.TicketBookingService.controllers;
+
+import com.melnikov.TicketBookingService.dto.CitySuggestionDto;
+import com.melnikov.TicketBookingService.search.CitySuggestIndex;
+import com.melnikov.TicketBookingService.ratelimit.RateLimited;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/routes")
+public class RoutesController {
+    private static final int MAX_LIMIT = 20;
+
+    private final CitySuggestIndex citySuggestIndex;
+
+    public RoutesController(CitySuggestIndex citySuggestIndex) {
+        this.citySuggestIndex = citySuggestIndex;
+    }
+
+    @GetMapping("/suggest")
+    @RateLimited("search")
+    public List<CitySuggestionDto> suggestCities(@RequestParam String prefix,
+                                                 @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        return citySuggestIndex.suggest(prefix, limit).stream()
+                .map(suggestion -> new CitySuggestionDto(suggestion.city(), suggestion.tickets()))
+                .toList();
+    }
+}
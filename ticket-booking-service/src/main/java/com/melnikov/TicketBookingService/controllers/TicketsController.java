@@ -2,8 +2,11 @@ package com.melnikov.TicketBookingService.controllers;
 
 import com.melnikov.TicketBookingService.dto.*;
 import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.search.TicketSearchCoalescer;
+import com.melnikov.TicketBookingService.services.FareCalendarService;
+import com.melnikov.TicketBookingService.services.ItineraryService;
 import com.melnikov.TicketBookingService.services.TicketService;
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
+import com.melnikov.TicketBookingService.ratelimit.RateLimited;
 import jakarta.validation.Valid;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.http.HttpStatus;
@@ -18,13 +21,20 @@ import java.util.List;
 @RequestMapping("/tickets")
 public class TicketsController {
     private final TicketService ticketService;
+    private final TicketSearchCoalescer ticketSearchCoalescer;
+    private final ItineraryService itineraryService;
+    private final FareCalendarService fareCalendarService;
 
-    public TicketsController(TicketService ticketService) {
+    public TicketsController(TicketService ticketService, TicketSearchCoalescer ticketSearchCoalescer,
+                             ItineraryService itineraryService, FareCalendarService fareCalendarService) {
         this.ticketService = ticketService;
+        this.ticketSearchCoalescer = ticketSearchCoalescer;
+        this.itineraryService = itineraryService;
+        this.fareCalendarService = fareCalendarService;
     }
 
     @PostMapping("/create")
-    @RateLimiter(name = "defaultLimiter")
+    @RateLimited("default")
     public ResponseEntity<?> createTicket(@Valid @RequestBody TicketCreateRequestDto request) {
         log.info("Server time: {}", ZonedDateTime.now());
         log.info("Received departureTime: {}", request.getDepartureTime());
@@ -33,11 +43,28 @@ public class TicketsController {
         return ResponseEntity.status(HttpStatus.CREATED).body(createdTicket);
     }
 
+    @PostMapping("/shard")
+    public Ticket shardTicket(@Valid @RequestBody TicketShardRequestDto request) {
+        return ticketService.shardTicket(request);
+    }
+
     @PostMapping("/search")
-    @RateLimiter(name = "defaultLimiter")
+    @RateLimited("search")
     public TicketSearchResponseDto searchTickets(@Valid @RequestBody TicketSearchRequestDto request) {
 
-        return ticketService.searchTickets(request);
+        return ticketSearchCoalescer.search(request);
+    }
+
+    @PostMapping("/itineraries")
+    @RateLimited("search")
+    public ItinerarySearchResponseDto searchItineraries(@Valid @RequestBody ItinerarySearchRequestDto request) {
+        return itineraryService.searchItineraries(request);
+    }
+
+    @PostMapping("/calendar")
+    @RateLimited("search")
+    public FareCalendarResponseDto getFareCalendar(@Valid @RequestBody FareCalendarRequestDto request) {
+        return fareCalendarService.getCalendar(request);
     }
 
 
@@ -3,12 +3,12 @@ package com.melnikov.TicketBookingService.controllers;
 
 import com.melnikov.TicketBookingService.dto.NewPasswordRequestDto;
 import com.melnikov.TicketBookingService.entity.User;
-import com.melnikov.TicketBookingService.services.JwtService;
+import com.melnikov.TicketBookingService.security.JwtPrincipal;
 import com.melnikov.TicketBookingService.services.UserService;
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
-import io.jsonwebtoken.Claims;
+import com.melnikov.TicketBookingService.ratelimit.RateLimited;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -16,38 +16,34 @@ import org.springframework.web.bind.annotation.*;
 
 public class UsersController {
     private final UserService userService;
-    private final JwtService jwtService;
 
-    public UsersController(UserService userService, JwtService jwtService) {
+    public UsersController(UserService userService) {
         this.userService = userService;
-        this.jwtService = jwtService;
     }
 
     @PutMapping("/change-password")
-    @RateLimiter(name = "defaultLimiter")
+    @RateLimited("default")
     public ResponseEntity<?> changePassword(
-            @RequestHeader("Authorization") String authHeader,
+            @AuthenticationPrincipal JwtPrincipal principal,
             @RequestBody @Valid NewPasswordRequestDto newPasswordRequestDto) {
 
-        String token = authHeader.substring(7); // Убираем "Bearer "
-        Claims claims = jwtService.extractClaims(token);
+        return userService.changePassword(principal.userId(), newPasswordRequestDto);
 
-        return userService.changePassword(claims.get("id", Long.class), newPasswordRequestDto);
+    }
 
+    @PostMapping("/logout")
+    @RateLimited("default")
+    public ResponseEntity<?> logout(@AuthenticationPrincipal JwtPrincipal principal) {
+        userService.logout(principal.userId());
+        return ResponseEntity.noContent().build();
     }
 
     @GetMapping("/info")
 
     public ResponseEntity<User> getCurrentUserInfo(
-            @RequestHeader("Authorization") String authHeader) {
-
-        String token = authHeader.substring(7);
-        Claims claims = jwtService.extractClaims(token);
-
-        User user = userService.getUserInfo(claims.get("id", Long.class));
-        user.setPasswordHash("");
+            @AuthenticationPrincipal JwtPrincipal principal) {
 
-        return ResponseEntity.ok(user);
+        return ResponseEntity.ok(userService.getUserInfo(principal.userId()));
     }
 
 
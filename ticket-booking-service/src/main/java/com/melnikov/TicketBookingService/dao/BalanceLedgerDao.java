@@ -0,0 +1,9 @@
+package com.melnikov.TicketBookingService.dao;
+
+public interface BalanceLedgerDao {
+    boolean append(Long userId, String entryKey, String kind, int amount);
+    boolean reverse(String entryKey, String reversalKey, String kind);
+    void lockBalance(Long userId);
+    int getBalance(Long userId);
+    int compact(int batchSize);
+}
@@ -0,0 +1,128 @@
+package com.melnikov.TicketBookingService.dao;
+
+import com.melnikov.TicketBookingService.cache.UserReadModelCache;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static com.melnikov.TicketBookingService.cache.UserReadModelCache.View.INFO;
+
+/**
+ * Движения баланса пишутся вставками в balance_ledger, строка users на них не блокируется.
+ * Зачисления проходят без блокировок вообще; списания одного пользователя упорядочиваются
+ * advisory-lock на время транзакции (см. {@link #lockBalance}), чужие списания и зачисления его не ждут.
+ */
+@Repository
+public class BalanceLedgerDaoImpl implements BalanceLedgerDao {
+    // Первая половина ключа pg_advisory_xact_lock(int, int): пространство блокировок баланса
+    private static final int BALANCE_LOCK_CLASS = 0x42414C31;
+
+    // Баланс пользователя u: снимок + несвернутый хвост журнала (idx_balance_ledger_tail)
+    public static final String BALANCE_EXPRESSION = """
+            u.balance + COALESCE((SELECT SUM(l.amount) FROM balance_ledger l
+                                  WHERE l.user_id = u.id AND NOT l.compacted), 0)""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserReadModelCache userReadModelCache;
+
+    public BalanceLedgerDaoImpl(JdbcTemplate jdbcTemplate, UserReadModelCache userReadModelCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userReadModelCache = userReadModelCache;
+    }
+
+    /**
+     * @return false, если запись с таким ключом уже есть — движение проведено раньше
+     */
+    @Override
+    public boolean append(Long userId, String entryKey, String kind, int amount) {
+        String sql = """
+            INSERT INTO balance_ledger (user_id, entry_key, kind, amount)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (entry_key) DO NOTHING
+        """;
+        boolean appended = jdbcTemplate.update(sql, userId, entryKey, kind, amount) > 0;
+        if (appended) {
+            userReadModelCache.invalidate(userId, INFO);
+        }
+        return appended;
+    }
+
+    /**
+     * Сторно: запись reversalKey с обратной суммой записи entryKey.
+     *
+     * @return false, если исходной записи нет или сторно уже проведено
+     */
+    @Override
+    public boolean reverse(String entryKey, String reversalKey, String kind) {
+        String sql = """
+            INSERT INTO balance_ledger (user_id, entry_key, kind, amount)
+            SELECT user_id, ?, ?, -amount
+            FROM balance_ledger
+            WHERE entry_key = ?
+            ON CONFLICT (entry_key) DO NOTHING
+            RETURNING user_id
+        """;
+        List<Long> users = jdbcTemplate.queryForList(sql, Long.class, reversalKey, kind, entryKey);
+        users.forEach(userId -> userReadModelCache.invalidate(userId, INFO));
+        return !users.isEmpty();
+    }
+
+    /**
+     * Блокировка списаний пользователя до конца транзакции. Проверку остатка и вставку списания
+     * выполнять следующим statement: его снимок уже видит все списания, зафиксированные до блокировки.
+     */
+    @Override
+    public void lockBalance(Long userId) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Balance lock requires an active transaction");
+        }
+        long id = userId;
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, ?)", rs -> {
+        }, BALANCE_LOCK_CLASS, (int) (id ^ (id >>> 32)));
+    }
+
+    @Override
+    public int getBalance(Long userId) {
+        String sql = "SELECT " + BALANCE_EXPRESSION + " FROM users u WHERE u.id = ?";
+        return jdbcTemplate.queryForObject(sql, Integer.class, userId);
+    }
+
+    /**
+     * Переносит до batchSize записей в снимки users.balance одним statement:
+     * читатель видит либо запись в хвосте, либо ее сумму в снимке. Незафиксированные записи
+     * свертке не видны и остаются в хвосте до следующего прохода.
+     *
+     * @return сколько записей свернуто
+     */
+    @Override
+    public int compact(int batchSize) {
+        String sql = """
+            WITH folded AS (
+                UPDATE balance_ledger
+                SET compacted = TRUE
+                WHERE id IN (
+                    SELECT id FROM balance_ledger
+                    WHERE NOT compacted
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                )
+                RETURNING user_id, amount
+            ),
+            totals AS (
+                SELECT user_id, SUM(amount) AS amount, COUNT(*) AS entries
+                FROM folded
+                GROUP BY user_id
+            ),
+            snapshots AS (
+                UPDATE users u
+                SET balance = u.balance + t.amount
+                FROM totals t
+                WHERE u.id = t.user_id
+            )
+            SELECT COALESCE(SUM(entries), 0) FROM totals
+        """;
+        return jdbcTemplate.queryForObject(sql, Integer.class, batchSize);
+    }
+}
@@ -1,13 +1,30 @@
 package com.melnikov.TicketBookingService.dao;
 
 import com.melnikov.TicketBookingService.entity.Booking;
+import com.melnikov.TicketBookingService.entity.BookingAttempt;
+import com.melnikov.TicketBookingService.entity.BookingDetails;
+import com.melnikov.TicketBookingService.entity.CartBookingAttempt;
 
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
 
 public interface BookingDao {
     Booking save(Booking booking);
+    BookingAttempt book(Long userId, Integer ticketId, int ticketQuantity, ZonedDateTime bookingTime, ZonedDateTime holdExpiresAt);
+    BookingAttempt bookReserved(Long userId, Integer ticketId, int ticketQuantity, ZonedDateTime bookingTime, ZonedDateTime holdExpiresAt);
+    List<BookingAttempt> bookBatch(Integer ticketId, List<Booking> requests);
+    CartBookingAttempt bookCart(Long userId, SortedMap<Integer, Integer> items, Set<Integer> reservedTicketIds,
+                                ZonedDateTime bookingTime, ZonedDateTime holdExpiresAt);
     List<Booking> findAllByUserId(Long userId);
+    List<BookingDetails> findPageByUserId(Long userId, String status, ZonedDateTime lastBookingTime, int lastId, int pageSize);
     Optional<Booking> findById(Integer bookingId);
-    void updateStatus(Integer bookingId, String status);
+    boolean updateStatus(Integer bookingId, String status);
+    boolean confirmHold(Integer bookingId, Long userId, ZonedDateTime now);
+    Map<Integer, ZonedDateTime> findOutstandingHolds();
+    List<Booking> releaseExpiredHolds(Collection<Integer> bookingIds, ZonedDateTime now);
 }
@@ -1,23 +1,97 @@
 package com.melnikov.TicketBookingService.dao;
 
+import com.melnikov.TicketBookingService.cache.UserReadModelCache;
 import com.melnikov.TicketBookingService.entity.Booking;
+import com.melnikov.TicketBookingService.entity.BookingAttempt;
+import com.melnikov.TicketBookingService.entity.BookingDetails;
+import com.melnikov.TicketBookingService.entity.CartBookingAttempt;
+import com.melnikov.TicketBookingService.events.TicketChangePublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
+import java.sql.PreparedStatement;
 import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+
+import static com.melnikov.TicketBookingService.cache.UserReadModelCache.View.BOOKINGS;
+import static com.melnikov.TicketBookingService.cache.UserReadModelCache.View.INFO;
 
 @Repository
 public class BookingDaoImpl implements BookingDao{
 
     private final JdbcTemplate jdbcTemplate;
+    private final TicketChangePublisher changePublisher;
+    private final UserReadModelCache userReadModelCache;
+    private final BalanceLedgerDao balanceLedgerDao;
+    private final TicketDao ticketDao;
 
-    public BookingDaoImpl(JdbcTemplate jdbcTemplate) {
+    public BookingDaoImpl(JdbcTemplate jdbcTemplate, TicketChangePublisher changePublisher,
+                          UserReadModelCache userReadModelCache, BalanceLedgerDao balanceLedgerDao,
+                          TicketDao ticketDao) {
         this.jdbcTemplate = jdbcTemplate;
+        this.changePublisher = changePublisher;
+        this.userReadModelCache = userReadModelCache;
+        this.balanceLedgerDao = balanceLedgerDao;
+        this.ticketDao = ticketDao;
     }
 
+    // Курсор (booking_time, id) < (?, ?) и ORDER BY ... DESC — обратный проход по idx_bookings_user_time
+    // или idx_bookings_user_active, страница join-ится с рейсом одним запросом (см. schema.sql)
+    public static final String FIND_PAGE_SQL = """
+            SELECT b.id,
+                   b.ticket_id,
+                   b.booking_time,
+                   b.status,
+                   b.ticket_quantity,
+                   b.hold_expires_at,
+                   tt.name AS transport_type,
+                   r.departure_city,
+                   r.arrival_city,
+                   t.departure_time,
+                   t.arrival_time
+            FROM bookings b
+            JOIN tickets t ON t.id = b.ticket_id
+            JOIN routes r ON r.id = t.route_id
+            JOIN transport_types tt ON tt.id = t.transport_type_id
+            WHERE b.user_id = ?
+              %s
+              AND (b.booking_time, b.id) < (?, ?) -- Уникальный курсор
+            ORDER BY b.booking_time DESC, b.id DESC
+            LIMIT ?
+            """;
+
+    // Фильтр подставляется литералом, а не параметром: иначе общий план не сопоставится
+    // с условием частичного индекса idx_bookings_user_active
+    private static final Map<String, String> STATUS_FILTERS = Map.of(
+            "active", "AND b.status IN ('pending', 'confirmed')",
+            "pending", "AND b.status = 'pending'",
+            "confirmed", "AND b.status = 'confirmed'",
+            "canceled", "AND b.status = 'canceled'");
+
+    private final RowMapper<BookingDetails> bookingDetailsRowMapper = (rs, rowNum) -> BookingDetails.builder()
+            .id(rs.getInt("id"))
+            .ticketId(rs.getInt("ticket_id"))
+            .bookingTime(rs.getTimestamp("booking_time").toInstant().atZone(java.time.ZoneId.systemDefault()))
+            .status(rs.getString("status"))
+            .ticketQuantity(rs.getInt("ticket_quantity"))
+            .holdExpiresAt(toZoned(rs.getTimestamp("hold_expires_at")))
+            .transportType(rs.getString("transport_type"))
+            .departureCity(rs.getString("departure_city"))
+            .arrivalCity(rs.getString("arrival_city"))
+            .departureTime(rs.getTimestamp("departure_time").toInstant().atZone(java.time.ZoneId.systemDefault()))
+            .arrivalTime(rs.getTimestamp("arrival_time").toInstant().atZone(java.time.ZoneId.systemDefault()))
+            .build();
+
     private final RowMapper<Booking> bookingRowMapper = (rs, rowNum) -> Booking.builder()
             .id(rs.getInt("id"))
             .userId(rs.getLong("user_id"))
@@ -25,6 +99,7 @@ public class BookingDaoImpl implements BookingDao{
             .bookingTime(rs.getTimestamp("booking_time").toInstant().atZone(java.time.ZoneId.systemDefault()))
             .status(rs.getString("status"))
             .ticketQuantity(rs.getInt("ticket_quantity"))
+            .holdExpiresAt(toZoned(rs.getTimestamp("hold_expires_at")))
             .build();
 
     public Booking save(Booking booking) {
@@ -42,9 +117,460 @@ public class BookingDaoImpl implements BookingDao{
                 booking.getTicketQuantity());
 
         booking.setId(id);
+        userReadModelCache.invalidate(booking.getUserId(), BOOKINGS);
         return booking;
     }
 
+    /**
+     * Бронирование одним запросом: условное списание мест, проверка остатка, вставка брони
+     * и списания в журнал баланса выполняются в одном statement. Если места списались, а баланс нет,
+     * вызывающий код обязан откатить транзакцию (BookingService делает это исключением).
+     * Нужна активная транзакция: остаток проверяется под блокировкой списаний пользователя.
+     * holdExpiresAt — срок удержания мест до подтверждения, null — бронь без срока.
+     * <p>
+     * Остаток шардированного рейса хранится в шардах: строка tickets такого рейса не меняется,
+     * места списываются из шарда, а бронь вставляется как по зарезервированным местам.
+     */
+    @Override
+    public BookingAttempt book(Long userId, Integer ticketId, int ticketQuantity, ZonedDateTime bookingTime,
+                               ZonedDateTime holdExpiresAt) {
+        String seats = """
+            seats AS (
+                UPDATE tickets
+                SET available_tickets = available_tickets - ?, version = version + 1
+                WHERE id = ? AND NOT sharded AND available_tickets >= ?
+                RETURNING id
+            )""";
+        BookingAttempt attempt = runBooking(seats, new Object[]{ticketQuantity, ticketId, ticketQuantity},
+                userId, ticketId, ticketQuantity, bookingTime, holdExpiresAt);
+        // Признак читается отдельным statement: рейс мог быть разделен, пока ждали блокировку строки
+        if (attempt.getStatus() == BookingAttempt.Status.NOT_ENOUGH_TICKETS && ticketDao.isSharded(ticketId)) {
+            return ticketDao.takeFromShards(ticketId, ticketQuantity)
+                    ? bookReserved(userId, ticketId, ticketQuantity, bookingTime, holdExpiresAt)
+                    : attempt;
+        }
+        if (attempt.isCreated()) {
+            changePublisher.availabilityChanged(ticketId, attempt.getRouteId(), -ticketQuantity);
+            // бронь и списание баланса
+            userReadModelCache.invalidate(userId, BOOKINGS, INFO);
+        }
+        return attempt;
+    }
+
+    /**
+     * То же, что {@link #book}, но места уже зарезервированы вне БД (SeatInventory),
+     * поэтому строка tickets не блокируется и не изменяется.
+     */
+    @Override
+    public BookingAttempt bookReserved(Long userId, Integer ticketId, int ticketQuantity, ZonedDateTime bookingTime,
+                                       ZonedDateTime holdExpiresAt) {
+        String seats = """
+            seats AS (
+                SELECT id FROM ticket
+            )""";
+        BookingAttempt attempt = runBooking(seats, new Object[0], userId, ticketId, ticketQuantity, bookingTime,
+                holdExpiresAt);
+        if (attempt.isCreated()) {
+            userReadModelCache.invalidate(userId, BOOKINGS, INFO);
+        }
+        return attempt;
+    }
+
+    /**
+     * Пачка броней одного рейса в текущей транзакции: строка tickets блокируется один раз,
+     * брони и списания вставляются одним statement, остаток уменьшается одним UPDATE.
+     * Заявки проверяются по порядку, как если бы шли по одной: каждая видит места и баланс,
+     * оставшиеся после предыдущих. Блокировки балансов берутся по возрастанию id пользователя —
+     * так же, как их ждут одиночные брони, поэтому взаимоблокировок нет.
+     * У шардированного рейса каждая принятая по балансу заявка списывает места из шардов.
+     *
+     * @param requests userId, ticketQuantity, bookingTime и holdExpiresAt каждой заявки
+     * @return результат для каждой заявки в том же порядке
+     */
+    @Override
+    public List<BookingAttempt> bookBatch(Integer ticketId, List<Booking> requests) {
+        requests.stream().map(Booking::getUserId).distinct().sorted().forEach(balanceLedgerDao::lockBalance);
+
+        TicketRow ticket = readTickets(new Integer[]{ticketId}, true).get(ticketId);
+        if (ticket == null) {
+            return requests.stream()
+                    .map(request -> BookingAttempt.builder().status(BookingAttempt.Status.TICKET_NOT_FOUND).build())
+                    .toList();
+        }
+        int routeId = ticket.routeId();
+        int price = ticket.price();
+        int available = ticket.available();
+        boolean sharded = ticket.sharded();
+
+        Long[] userIds = requests.stream().map(Booking::getUserId).distinct().toArray(Long[]::new);
+        Map<Long, Integer> balances = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT u.id, " + BalanceLedgerDaoImpl.BALANCE_EXPRESSION + " AS balance FROM users u WHERE u.id = ANY (?::bigint[])");
+            ps.setArray(1, con.createArrayOf("bigint", userIds));
+            return ps;
+        }, rs -> {
+            balances.put(rs.getLong("id"), rs.getInt("balance"));
+        });
+
+        List<BookingAttempt> attempts = new ArrayList<>(requests.size());
+        List<Booking> accepted = new ArrayList<>();
+        List<Integer> costs = new ArrayList<>();
+        for (Booking request : requests) {
+            int cost = price * request.getTicketQuantity();
+            Integer balance = balances.get(request.getUserId());
+            BookingAttempt.Status status;
+            if (!sharded && request.getTicketQuantity() > available) {
+                status = BookingAttempt.Status.NOT_ENOUGH_TICKETS;
+            } else if (balance == null) {
+                status = BookingAttempt.Status.USER_NOT_FOUND;
+            } else if (balance < cost) {
+                status = BookingAttempt.Status.INSUFFICIENT_BALANCE;
+            } else if (sharded && !ticketDao.takeFromShards(ticketId, request.getTicketQuantity())) {
+                status = BookingAttempt.Status.NOT_ENOUGH_TICKETS;
+            } else {
+                status = BookingAttempt.Status.CREATED;
+                available -= request.getTicketQuantity();
+                balances.put(request.getUserId(), balance - cost);
+                accepted.add(request);
+                costs.add(cost);
+            }
+            attempts.add(BookingAttempt.builder().status(status).routeId(routeId).build());
+        }
+        if (accepted.isEmpty()) {
+            return attempts;
+        }
+
+        List<Integer> ids = insertBatch(ticketId, accepted, costs);
+        int seats = 0;
+        int next = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            if (!attempts.get(i).isCreated()) {
+                continue;
+            }
+            Booking request = requests.get(i);
+            attempts.get(i).setBooking(Booking.builder()
+                    .id(ids.get(next++))
+                    .userId(request.getUserId())
+                    .ticketId(ticketId)
+                    .bookingTime(request.getBookingTime())
+                    .status("pending")
+                    .ticketQuantity(request.getTicketQuantity())
+                    .holdExpiresAt(request.getHoldExpiresAt())
+                    .build());
+            seats += request.getTicketQuantity();
+            userReadModelCache.invalidate(request.getUserId(), BOOKINGS, INFO);
+        }
+        if (!sharded) {
+            changePublisher.availabilityChanged(ticketId, routeId, -seats);
+        }
+        return attempts;
+    }
+
+    /**
+     * id берутся из последовательности заранее, чтобы сопоставить их заявкам без опоры
+     * на порядок строк в RETURNING.
+     */
+    private List<Integer> insertBatch(Integer ticketId, List<Booking> accepted, List<Integer> costs) {
+        String sql = """
+            WITH requested AS (
+                SELECT CAST(nextval(pg_get_serial_sequence('bookings', 'id')) AS INT) AS id, r.*
+                FROM unnest(?::bigint[], ?::int[], ?::timestamptz[], ?::timestamptz[], ?::int[])
+                     WITH ORDINALITY AS r(user_id, ticket_quantity, booking_time, hold_expires_at, total_cost, ord)
+            ),
+            booking AS (
+                INSERT INTO bookings (id, user_id, ticket_id, booking_time, status, ticket_quantity, hold_expires_at)
+                OVERRIDING SYSTEM VALUE
+                SELECT id, user_id, ?, booking_time, 'pending', ticket_quantity, hold_expires_at
+                FROM requested
+            ),
+            charge AS (
+                INSERT INTO balance_ledger (user_id, entry_key, kind, amount)
+                SELECT user_id, 'booking:' || id, 'booking', -total_cost
+                FROM requested
+            ),
+            seats AS (
+                UPDATE tickets
+                SET available_tickets = available_tickets - (SELECT SUM(ticket_quantity) FROM requested),
+                    version = version + 1
+                WHERE id = ? AND NOT sharded
+            )
+            SELECT id FROM requested ORDER BY ord;
+        """;
+
+        Long[] userIds = accepted.stream().map(Booking::getUserId).toArray(Long[]::new);
+        Integer[] quantities = accepted.stream().map(Booking::getTicketQuantity).toArray(Integer[]::new);
+        Timestamp[] bookingTimes = accepted.stream().map(b -> toTimestamp(b.getBookingTime())).toArray(Timestamp[]::new);
+        Timestamp[] holds = accepted.stream().map(b -> toTimestamp(b.getHoldExpiresAt())).toArray(Timestamp[]::new);
+        Integer[] totalCosts = costs.toArray(new Integer[0]);
+
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("bigint", userIds));
+            ps.setArray(2, con.createArrayOf("integer", quantities));
+            ps.setArray(3, con.createArrayOf("timestamptz", bookingTimes));
+            ps.setArray(4, con.createArrayOf("timestamptz", holds));
+            ps.setArray(5, con.createArrayOf("integer", totalCosts));
+            ps.setInt(6, ticketId);
+            ps.setInt(7, ticketId);
+            return ps;
+        }, (rs, rowNum) -> rs.getInt("id"));
+    }
+
+    /**
+     * Корзина в текущей транзакции: брони по нескольким рейсам создаются вместе или не создаются.
+     * Строки tickets блокируются одним SELECT ... ORDER BY id FOR UPDATE — всегда по возрастанию id,
+     * поэтому пересекающиеся корзины ждут друг друга, но не взаимоблокируются. Баланс проверяется
+     * один раз на сумму корзины под блокировкой списаний пользователя; списание пишется по брони,
+     * чтобы отмена одной брони возвращала ее стоимость.
+     * <p>
+     * Места шардированных рейсов списываются из шардов после проверки баланса; при отказе на одном
+     * из них вызывающий код обязан откатить транзакцию, как и при отказе по балансу в {@link #book}.
+     *
+     * @param items             ticketId -> количество мест
+     * @param reservedTicketIds рейсы, места которых уже зарезервированы в SeatInventory: их строки
+     *                          не блокируются и не изменяются
+     */
+    @Override
+    public CartBookingAttempt bookCart(Long userId, SortedMap<Integer, Integer> items, Set<Integer> reservedTicketIds,
+                                       ZonedDateTime bookingTime, ZonedDateTime holdExpiresAt) {
+        balanceLedgerDao.lockBalance(userId);
+
+        Integer[] lockedIds = items.keySet().stream().filter(id -> !reservedTicketIds.contains(id)).toArray(Integer[]::new);
+        Integer[] reservedIds = items.keySet().stream().filter(reservedTicketIds::contains).toArray(Integer[]::new);
+        Map<Integer, TicketRow> tickets = new HashMap<>();
+        tickets.putAll(readTickets(lockedIds, true));
+        tickets.putAll(readTickets(reservedIds, false));
+
+        int totalCost = 0;
+        for (Map.Entry<Integer, Integer> item : items.entrySet()) {
+            TicketRow ticket = tickets.get(item.getKey());
+            if (ticket == null) {
+                return rejectCart(BookingAttempt.Status.TICKET_NOT_FOUND, item.getKey());
+            }
+            if (!reservedTicketIds.contains(item.getKey()) && !ticket.sharded() && ticket.available() < item.getValue()) {
+                return rejectCart(BookingAttempt.Status.NOT_ENOUGH_TICKETS, item.getKey());
+            }
+            totalCost += ticket.price() * item.getValue();
+        }
+
+        List<Integer> balance = jdbcTemplate.queryForList(
+                "SELECT " + BalanceLedgerDaoImpl.BALANCE_EXPRESSION + " FROM users u WHERE u.id = ?", Integer.class, userId);
+        if (balance.isEmpty()) {
+            return rejectCart(BookingAttempt.Status.USER_NOT_FOUND, null);
+        }
+        if (balance.get(0) < totalCost) {
+            return rejectCart(BookingAttempt.Status.INSUFFICIENT_BALANCE, null);
+        }
+        // Шарды блокируются после строк рейсов, по возрастанию id
+        List<Integer> directIds = new ArrayList<>();
+        for (Integer ticketId : lockedIds) {
+            if (!tickets.get(ticketId).sharded()) {
+                directIds.add(ticketId);
+            } else if (!ticketDao.takeFromShards(ticketId, items.get(ticketId))) {
+                return rejectCart(BookingAttempt.Status.NOT_ENOUGH_TICKETS, ticketId);
+            }
+        }
+
+        String sql = """
+            WITH items AS (
+                SELECT CAST(nextval(pg_get_serial_sequence('bookings', 'id')) AS INT) AS id, c.*
+                FROM unnest(?::int[], ?::int[], ?::int[], ?::boolean[])
+                     WITH ORDINALITY AS c(ticket_id, quantity, total_cost, reserved, ord)
+            ),
+            seats AS (
+                UPDATE tickets t
+                SET available_tickets = t.available_tickets - i.quantity, version = t.version + 1
+                FROM items i
+                WHERE t.id = i.ticket_id AND NOT i.reserved AND t.available_tickets >= i.quantity
+                RETURNING t.id
+            ),
+            booking AS (
+                INSERT INTO bookings (id, user_id, ticket_id, booking_time, status, ticket_quantity, hold_expires_at)
+                OVERRIDING SYSTEM VALUE
+                SELECT id, ?, ticket_id, ?, 'pending', quantity, CAST(? AS TIMESTAMPTZ)
+                FROM items
+            ),
+            charge AS (
+                INSERT INTO balance_ledger (user_id, entry_key, kind, amount)
+                SELECT ?, 'booking:' || id, 'booking', -total_cost
+                FROM items
+            )
+            SELECT i.id, i.ticket_id, (SELECT COUNT(*) FROM seats) AS seats_updated
+            FROM items i
+            ORDER BY i.ord;
+        """;
+
+        Integer[] ticketIds = items.keySet().toArray(new Integer[0]);
+        Integer[] quantities = items.values().toArray(new Integer[0]);
+        Integer[] costs = new Integer[ticketIds.length];
+        Boolean[] reserved = new Boolean[ticketIds.length];
+        for (int i = 0; i < ticketIds.length; i++) {
+            costs[i] = tickets.get(ticketIds[i]).price() * quantities[i];
+            reserved[i] = reservedTicketIds.contains(ticketIds[i]) || tickets.get(ticketIds[i]).sharded();
+        }
+
+        List<Booking> bookings = new ArrayList<>();
+        int[] seatsUpdated = new int[1];
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("integer", ticketIds));
+            ps.setArray(2, con.createArrayOf("integer", quantities));
+            ps.setArray(3, con.createArrayOf("integer", costs));
+            ps.setArray(4, con.createArrayOf("boolean", reserved));
+            ps.setLong(5, userId);
+            ps.setTimestamp(6, Timestamp.from(bookingTime.toInstant()));
+            ps.setTimestamp(7, toTimestamp(holdExpiresAt));
+            ps.setLong(8, userId);
+            return ps;
+        }, rs -> {
+            seatsUpdated[0] = rs.getInt("seats_updated");
+            int ticketId = rs.getInt("ticket_id");
+            bookings.add(Booking.builder()
+                    .id(rs.getInt("id"))
+                    .userId(userId)
+                    .ticketId(ticketId)
+                    .bookingTime(bookingTime)
+                    .status("pending")
+                    .ticketQuantity(items.get(ticketId))
+                    .holdExpiresAt(holdExpiresAt)
+                    .build());
+        });
+        // Строки заблокированы и проверены выше, условие в UPDATE — только страховка
+        if (seatsUpdated[0] != directIds.size()) {
+            throw new IllegalStateException("Cart seats changed under lock: expected " + directIds.size()
+                    + " tickets, updated " + seatsUpdated[0]);
+        }
+
+        for (Integer ticketId : directIds) {
+            changePublisher.availabilityChanged(ticketId, tickets.get(ticketId).routeId(), -items.get(ticketId));
+        }
+        userReadModelCache.invalidate(userId, BOOKINGS, INFO);
+        return CartBookingAttempt.builder()
+                .status(BookingAttempt.Status.CREATED)
+                .bookings(bookings)
+                .totalCost(totalCost)
+                .build();
+    }
+
+    /**
+     * route_id, цена, остаток и признак шардирования рейсов; с lock — строки блокируются
+     * по возрастанию id. FOR NO KEY UPDATE не мешает вставке броней (проверка внешнего ключа
+     * берет FOR KEY SHARE): брони шардированного рейса держат шард и не ждут строку рейса.
+     */
+    private Map<Integer, TicketRow> readTickets(Integer[] ticketIds, boolean lock) {
+        Map<Integer, TicketRow> tickets = new HashMap<>();
+        if (ticketIds.length == 0) {
+            return tickets;
+        }
+        String sql = """
+            SELECT id, route_id, CAST(price AS INT) AS price, available_tickets, sharded
+            FROM tickets
+            WHERE id = ANY (?::int[])
+            ORDER BY id
+        """ + (lock ? "FOR NO KEY UPDATE" : "");
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("integer", ticketIds));
+            return ps;
+        }, rs -> {
+            tickets.put(rs.getInt("id"),
+                    new TicketRow(rs.getInt("route_id"), rs.getInt("price"), rs.getInt("available_tickets"),
+                            rs.getBoolean("sharded")));
+        });
+        return tickets;
+    }
+
+    private record TicketRow(int routeId, int price, int available, boolean sharded) {
+    }
+
+    private static CartBookingAttempt rejectCart(BookingAttempt.Status status, Integer ticketId) {
+        return CartBookingAttempt.builder().status(status).ticketId(ticketId).build();
+    }
+
+    private BookingAttempt runBooking(String seatsCte, Object[] seatsArgs, Long userId, Integer ticketId,
+                                      int ticketQuantity, ZonedDateTime bookingTime, ZonedDateTime holdExpiresAt) {
+        String sql = """
+            WITH ticket AS (
+                SELECT id, route_id, CAST(price AS INT) * ? AS total_cost
+                FROM tickets
+                WHERE id = ?
+            ),
+            %s,
+            payer AS (
+                SELECT u.id
+                FROM users u
+                WHERE u.id = ?
+                  AND EXISTS (SELECT 1 FROM seats)
+                  AND %s >= (SELECT total_cost FROM ticket)
+            ),
+            booking AS (
+                INSERT INTO bookings (user_id, ticket_id, booking_time, status, ticket_quantity, hold_expires_at)
+                SELECT payer.id, seats.id, ?, 'pending', ?, CAST(? AS TIMESTAMPTZ)
+                FROM seats, payer
+                RETURNING id, user_id
+            ),
+            charge AS (
+                INSERT INTO balance_ledger (user_id, entry_key, kind, amount)
+                SELECT booking.user_id, 'booking:' || booking.id, 'booking', -(SELECT total_cost FROM ticket)
+                FROM booking
+            )
+            SELECT EXISTS (SELECT 1 FROM ticket) AS ticket_found,
+                   EXISTS (SELECT 1 FROM seats) AS seats_reserved,
+                   EXISTS (SELECT 1 FROM users WHERE id = ?) AS user_found,
+                   EXISTS (SELECT 1 FROM payer) AS balance_debited,
+                   (SELECT route_id FROM ticket) AS route_id,
+                   (SELECT id FROM booking) AS booking_id;
+        """.formatted(seatsCte, BalanceLedgerDaoImpl.BALANCE_EXPRESSION);
+
+        // Отдельным statement до проверки: иначе снимок запроса не увидит списание,
+        // зафиксированное параллельной бронью этого пользователя, пока мы ждали блокировку
+        balanceLedgerDao.lockBalance(userId);
+
+        List<Object> args = new ArrayList<>();
+        args.add(ticketQuantity);
+        args.add(ticketId);
+        args.addAll(Arrays.asList(seatsArgs));
+        args.add(userId);
+        args.add(Timestamp.from(bookingTime.toInstant()));
+        args.add(ticketQuantity);
+        args.add(toTimestamp(holdExpiresAt));
+        args.add(userId);
+
+        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+            BookingAttempt.Status status;
+            if (!rs.getBoolean("ticket_found")) {
+                status = BookingAttempt.Status.TICKET_NOT_FOUND;
+            } else if (!rs.getBoolean("seats_reserved")) {
+                status = BookingAttempt.Status.NOT_ENOUGH_TICKETS;
+            } else if (!rs.getBoolean("user_found")) {
+                status = BookingAttempt.Status.USER_NOT_FOUND;
+            } else if (!rs.getBoolean("balance_debited")) {
+                status = BookingAttempt.Status.INSUFFICIENT_BALANCE;
+            } else {
+                status = BookingAttempt.Status.CREATED;
+            }
+
+            Booking booking = null;
+            if (status == BookingAttempt.Status.CREATED) {
+                booking = Booking.builder()
+                        .id(rs.getInt("booking_id"))
+                        .userId(userId)
+                        .ticketId(ticketId)
+                        .bookingTime(bookingTime)
+                        .status("pending")
+                        .ticketQuantity(ticketQuantity)
+                        .holdExpiresAt(holdExpiresAt)
+                        .build();
+            }
+            return BookingAttempt.builder()
+                    .status(status)
+                    .booking(booking)
+                    .routeId(rs.getInt("route_id"))
+                    .build();
+        }, args.toArray());
+    }
+
     public List<Booking> findAllByUserId(Long userId) {
         String sql = """
             SELECT * FROM bookings
@@ -54,6 +580,24 @@ public class BookingDaoImpl implements BookingDao{
         return jdbcTemplate.query(sql, bookingRowMapper, userId);
     }
 
+    @Override
+    public List<BookingDetails> findPageByUserId(Long userId, String status, ZonedDateTime lastBookingTime,
+                                                 int lastId, int pageSize) {
+        String statusFilter = "";
+        if (status != null) {
+            statusFilter = STATUS_FILTERS.get(status);
+            if (statusFilter == null) {
+                throw new IllegalArgumentException("Invalid booking status: " + status);
+            }
+        }
+        return jdbcTemplate.query(FIND_PAGE_SQL.formatted(statusFilter), bookingDetailsRowMapper,
+                userId,
+                Timestamp.from(lastBookingTime.toInstant()), // Курсор по времени
+                lastId, // Курсор по ID
+                pageSize
+        );
+    }
+
     public Optional<Booking> findById(Integer bookingId) {
         String sql = """
             SELECT * FROM bookings
@@ -62,12 +606,143 @@ public class BookingDaoImpl implements BookingDao{
         return jdbcTemplate.query(sql, bookingRowMapper, bookingId).stream().findFirst();
     }
 
-    public void updateStatus(Integer bookingId, String status) {
+    /**
+     * Меняет статус, если он другой; любая смена статуса снимает удержание.
+     * Строка блокируется, поэтому из двух одновременных отмен (или отмены и истечения удержания)
+     * изменение получит только одна.
+     */
+    public boolean updateStatus(Integer bookingId, String status) {
         String sql = """
             UPDATE bookings
-            SET status = ?
-            WHERE id = ?;
+            SET status = ?, hold_expires_at = NULL
+            WHERE id = ? AND status <> ?
+            RETURNING user_id;
+        """;
+        List<Long> updated = jdbcTemplate.queryForList(sql, Long.class, status, bookingId, status);
+        updated.forEach(userId -> userReadModelCache.invalidate(userId, BOOKINGS));
+        return !updated.isEmpty();
+    }
+
+    /**
+     * Подтверждает бронь владельца, пока удержание не истекло.
+     */
+    @Override
+    public boolean confirmHold(Integer bookingId, Long userId, ZonedDateTime now) {
+        String sql = """
+            UPDATE bookings
+            SET status = 'confirmed', hold_expires_at = NULL
+            WHERE id = ? AND user_id = ? AND status = 'pending'
+              AND (hold_expires_at IS NULL OR hold_expires_at > ?);
+        """;
+        boolean confirmed = jdbcTemplate.update(sql, bookingId, userId, Timestamp.from(now.toInstant())) > 0;
+        if (confirmed) {
+            userReadModelCache.invalidate(userId, BOOKINGS);
+        }
+        return confirmed;
+    }
+
+    /**
+     * Неподтвержденные брони со сроком удержания — для восстановления планировщика после рестарта.
+     */
+    @Override
+    public Map<Integer, ZonedDateTime> findOutstandingHolds() {
+        String sql = """
+            SELECT id, hold_expires_at
+            FROM bookings
+            WHERE status = 'pending' AND hold_expires_at IS NOT NULL
+        """;
+
+        Map<Integer, ZonedDateTime> holds = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            holds.put(rs.getInt("id"), toZoned(rs.getTimestamp("hold_expires_at")));
+        });
+        return holds;
+    }
+
+    /**
+     * Снимает истекшие удержания пачкой одним statement: брони отменяются, места возвращаются
+     * в tickets (у шардированного рейса — в шард) суммой по рейсу, списания сторнируются в журнал
+     * баланса. Брони, которые уже подтверждены, отменены или срок которых еще не вышел, не затрагиваются.
+     * Строки рейсов блокируются подзапросом по возрастанию id, как в корзине и
+     * {@link TicketDao#applyAvailabilityDeltas}: порядок UPDATE ... FROM выбирает планировщик,
+     * и пачка, пересекающаяся с корзиной, могла бы с ней взаимоблокироваться.
+     *
+     * @return отмененные брони
+     */
+    @Override
+    public List<Booking> releaseExpiredHolds(Collection<Integer> bookingIds, ZonedDateTime now) {
+        if (bookingIds.isEmpty()) {
+            return List.of();
+        }
+        String sql = """
+            WITH expired AS (
+                UPDATE bookings
+                SET status = 'canceled', hold_expires_at = NULL
+                WHERE id = ANY (?::int[]) AND status = 'pending' AND hold_expires_at <= ?
+                RETURNING id, user_id, ticket_id, booking_time, status, ticket_quantity, hold_expires_at
+            ),
+            returned AS (
+                SELECT ticket_id, SUM(ticket_quantity) AS quantity FROM expired GROUP BY ticket_id
+            ),
+            locked AS (
+                SELECT t.id, r.quantity
+                FROM tickets t
+                JOIN returned r ON r.ticket_id = t.id
+                WHERE NOT t.sharded
+                ORDER BY t.id
+                FOR NO KEY UPDATE OF t
+            ),
+            seats AS (
+                UPDATE tickets t
+                SET available_tickets = t.available_tickets + l.quantity, version = t.version + 1
+                FROM locked l
+                WHERE t.id = l.id
+            ),
+            -- у шардированного рейса места возвращаются в первый шард, агрегат догонит их при переносе сумм
+            shard_seats AS (
+                UPDATE ticket_seat_shards s
+                SET available = s.available + r.quantity
+                FROM returned r
+                WHERE s.ticket_id = r.ticket_id
+                  AND s.shard = (SELECT MIN(shard) FROM ticket_seat_shards WHERE ticket_id = r.ticket_id)
+            ),
+            refund AS (
+                INSERT INTO balance_ledger (user_id, entry_key, kind, amount)
+                SELECT l.user_id, 'refund:' || e.id, 'refund', -l.amount
+                FROM expired e
+                JOIN balance_ledger l ON l.entry_key = 'booking:' || e.id
+                ON CONFLICT (entry_key) DO NOTHING
+            )
+            SELECT e.*, t.route_id, t.sharded
+            FROM expired e
+            JOIN tickets t ON t.id = e.ticket_id;
         """;
-        jdbcTemplate.update(sql, status, bookingId);
+
+        Integer[] ids = bookingIds.toArray(new Integer[0]);
+        List<Booking> released = new ArrayList<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("integer", ids));
+            ps.setTimestamp(2, Timestamp.from(now.toInstant()));
+            return ps;
+        }, rs -> {
+            Booking booking = bookingRowMapper.mapRow(rs, 0);
+            released.add(booking);
+            // возврат в шард опубликует перенос сумм в агрегат
+            if (!rs.getBoolean("sharded")) {
+                changePublisher.availabilityChanged(booking.getTicketId(), rs.getInt("route_id"), booking.getTicketQuantity());
+            }
+            // отмена и возврат денег
+            userReadModelCache.invalidate(booking.getUserId(), BOOKINGS, INFO);
+        });
+        return released;
+    }
+
+    private static Timestamp toTimestamp(ZonedDateTime time) {
+        return time == null ? null : Timestamp.from(time.toInstant());
+    }
+
+    private static ZonedDateTime toZoned(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant().atZone(java.time.ZoneId.systemDefault());
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.melnikov.TicketBookingService.dao;
 
 
 
+import com.melnikov.TicketBookingService.cache.UserReadModelCache;
 import com.melnikov.TicketBookingService.entity.Deposit;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -13,12 +14,16 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
+import static com.melnikov.TicketBookingService.cache.UserReadModelCache.View.DEPOSITS;
+
 @Repository
 public class DepositDaoImpl implements DepositDao{
     private final JdbcTemplate jdbcTemplate;
+    private final UserReadModelCache userReadModelCache;
 
-    public DepositDaoImpl(JdbcTemplate jdbcTemplate) {
+    public DepositDaoImpl(JdbcTemplate jdbcTemplate, UserReadModelCache userReadModelCache) {
         this.jdbcTemplate = jdbcTemplate;
+        this.userReadModelCache = userReadModelCache;
     }
 
     // Маппер для преобразования ResultSet в объект Deposit
@@ -61,12 +66,14 @@ public class DepositDaoImpl implements DepositDao{
                 deposit.getCreatedAt()
         );
         deposit.setId(id);
+        userReadModelCache.invalidate(deposit.getUserId(), DEPOSITS);
         return deposit;
     }
 
-    // Обновить статус депозита
+    // Обновить статус депозита; RETURNING - чтобы сбросить кеш только владельца
     public void updateStatus(Long id, String status) {
-        String sql = "UPDATE deposits SET status = ? WHERE id = ?";
-        jdbcTemplate.update(sql, status, id);
+        String sql = "UPDATE deposits SET status = ? WHERE id = ? RETURNING user_id";
+        jdbcTemplate.queryForList(sql, Long.class, status, id)
+                .forEach(userId -> userReadModelCache.invalidate(userId, DEPOSITS));
     }
 }
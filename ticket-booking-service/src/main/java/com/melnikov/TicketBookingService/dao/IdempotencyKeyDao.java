@@ -0,0 +1,13 @@
+package com.melnikov.TicketBookingService.dao;
+
+import com.melnikov.TicketBookingService.entity.IdempotencyRecord;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface IdempotencyKeyDao {
+    boolean claim(IdempotencyRecord record);
+    void complete(IdempotencyRecord record);
+    Optional<IdempotencyRecord> find(Long userId, String idempotencyKey);
+    int deleteExpired(Instant now);
+}
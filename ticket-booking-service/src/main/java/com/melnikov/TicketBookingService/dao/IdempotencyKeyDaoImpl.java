@@ -0,0 +1,84 @@
+package com.melnikov.TicketBookingService.dao;
+
+import com.melnikov.TicketBookingService.entity.IdempotencyRecord;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public class IdempotencyKeyDaoImpl implements IdempotencyKeyDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdempotencyKeyDaoImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    private final RowMapper<IdempotencyRecord> recordRowMapper = (rs, rowNum) -> IdempotencyRecord.builder()
+            .userId(rs.getLong("user_id"))
+            .idempotencyKey(rs.getString("idempotency_key"))
+            .scope(rs.getString("scope"))
+            .requestHash(rs.getBytes("request_hash"))
+            .statusCode((Integer) rs.getObject("status_code"))
+            .contentType(rs.getString("content_type"))
+            .responseBody(rs.getString("response_body"))
+            .expiresAt(rs.getTimestamp("expires_at").toInstant())
+            .build();
+
+    /**
+     * Занять ключ. Если его держит незафиксированная транзакция, вставка ждет ее исхода.
+     * Просроченная, но еще не удаленная запись занимается заново.
+     *
+     * @return false, если ключ уже выполнен — ответ читать через {@link #find}
+     */
+    @Override
+    public boolean claim(IdempotencyRecord record) {
+        String sql = """
+            INSERT INTO idempotency_keys (user_id, idempotency_key, scope, request_hash, expires_at)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (user_id, idempotency_key) DO UPDATE
+            SET scope = EXCLUDED.scope,
+                request_hash = EXCLUDED.request_hash,
+                status_code = NULL,
+                content_type = NULL,
+                response_body = NULL,
+                expires_at = EXCLUDED.expires_at
+            WHERE idempotency_keys.expires_at <= now()
+        """;
+        return jdbcTemplate.update(sql,
+                record.getUserId(),
+                record.getIdempotencyKey(),
+                record.getScope(),
+                record.getRequestHash(),
+                Timestamp.from(record.getExpiresAt())) > 0;
+    }
+
+    @Override
+    public void complete(IdempotencyRecord record) {
+        String sql = """
+            UPDATE idempotency_keys
+            SET status_code = ?, content_type = ?, response_body = ?
+            WHERE user_id = ? AND idempotency_key = ?
+        """;
+        jdbcTemplate.update(sql,
+                record.getStatusCode(),
+                record.getContentType(),
+                record.getResponseBody(),
+                record.getUserId(),
+                record.getIdempotencyKey());
+    }
+
+    @Override
+    public Optional<IdempotencyRecord> find(Long userId, String idempotencyKey) {
+        String sql = "SELECT * FROM idempotency_keys WHERE user_id = ? AND idempotency_key = ?";
+        return jdbcTemplate.query(sql, recordRowMapper, userId, idempotencyKey).stream().findFirst();
+    }
+
+    @Override
+    public int deleteExpired(Instant now) {
+        return jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at <= ?", Timestamp.from(now));
+    }
+}
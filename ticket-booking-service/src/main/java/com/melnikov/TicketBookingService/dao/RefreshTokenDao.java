@@ -1,12 +1,16 @@
 package com.melnikov.TicketBookingService.dao;
 
+import com.melnikov.TicketBookingService.entity.RefreshSession;
 import com.melnikov.TicketBookingService.entity.RefreshToken;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 public interface RefreshTokenDao {
     void save(RefreshToken refreshToken);
-    Optional<RefreshToken> findByToken(String token);
-    void deleteByToken(String token);
+    Optional<RefreshToken> findByToken(byte[] tokenHash);
+    Optional<RefreshSession> findSessionByToken(byte[] tokenHash);
+    void deleteByToken(byte[] tokenHash);
     void deleteByUserId(Long userId);
+    int deleteExpired(LocalDateTime now);
 }
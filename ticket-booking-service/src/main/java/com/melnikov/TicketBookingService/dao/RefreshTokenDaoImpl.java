@@ -1,16 +1,14 @@
 package com.melnikov.TicketBookingService.dao;
 
+import com.melnikov.TicketBookingService.entity.RefreshSession;
 import com.melnikov.TicketBookingService.entity.RefreshToken;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
-import java.sql.PreparedStatement;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Slf4j
@@ -18,46 +16,61 @@ import java.util.Optional;
 public class RefreshTokenDaoImpl implements RefreshTokenDao{
     private final JdbcTemplate jdbcTemplate;
 
+    private static final RowMapper<RefreshToken> TOKEN_MAPPER = (rs, rowNum) -> RefreshToken.builder()
+            .id(rs.getLong("id"))
+            .userId(rs.getLong("user_id"))
+            .tokenHash(rs.getBytes("token_hash"))
+            .expiryDate(rs.getTimestamp("expiry_date").toLocalDateTime())
+            .build();
+
+    private static final RowMapper<RefreshSession> SESSION_MAPPER = (rs, rowNum) -> RefreshSession.builder()
+            .userId(rs.getLong("user_id"))
+            .email(rs.getString("email"))
+            .roleId(rs.getInt("role_id"))
+            .expiryDate(rs.getTimestamp("expiry_date").toLocalDateTime())
+            .sessionGeneration(rs.getLong("session_generation"))
+            .build();
+
     public RefreshTokenDaoImpl(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
     public void save(RefreshToken refreshToken) {
-        String sql = "INSERT INTO refresh_tokens (user_id, token, expiry_date) VALUES (?, ?, ?)";
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-
-        jdbcTemplate.update(connection -> {
-            PreparedStatement ps = connection.prepareStatement(sql, new String[]{"id"});
-            ps.setLong(1, refreshToken.getUserId());
-            ps.setString(2, refreshToken.getToken());
-            ps.setTimestamp(3, Timestamp.valueOf(refreshToken.getExpiryDate()));
-            return ps;
-        }, keyHolder);
+        String sql = "INSERT INTO refresh_tokens (user_id, token_hash, expiry_date) VALUES (?, ?, ?)";
+        jdbcTemplate.update(sql,
+                refreshToken.getUserId(),
+                refreshToken.getTokenHash(),
+                Timestamp.valueOf(refreshToken.getExpiryDate()));
+    }
 
+    public Optional<RefreshToken> findByToken(byte[] tokenHash) {
+        String sql = "SELECT id, user_id, token_hash, expiry_date FROM refresh_tokens WHERE token_hash = ?";
+        return jdbcTemplate.query(sql, TOKEN_MAPPER, (Object) tokenHash).stream().findFirst();
     }
 
-    public Optional<RefreshToken> findByToken(String token) {
-        String sql = "SELECT * FROM refresh_tokens WHERE token = ?";
-        try {
-
-            RefreshToken refreshToken = jdbcTemplate.queryForObject(
-                    sql,
-                    new BeanPropertyRowMapper<>(RefreshToken.class),
-                    token
-            );
-            return Optional.of(refreshToken);
-        } catch (EmptyResultDataAccessException e) {
-            return Optional.empty();
-        }
+    // Все, что нужно для нового access-токена, одним запросом
+    public Optional<RefreshSession> findSessionByToken(byte[] tokenHash) {
+        String sql = """
+                SELECT rt.user_id, rt.expiry_date, u.email, u.role_id, u.session_generation
+                FROM refresh_tokens rt
+                JOIN users u ON u.id = rt.user_id
+                WHERE rt.token_hash = ?
+                """;
+        return jdbcTemplate.query(sql, SESSION_MAPPER, (Object) tokenHash).stream().findFirst();
     }
 
-    public void deleteByToken(String token) {
-        String sql = "DELETE FROM refresh_tokens WHERE token = ?";
-        jdbcTemplate.update(sql, token);
+    public void deleteByToken(byte[] tokenHash) {
+        String sql = "DELETE FROM refresh_tokens WHERE token_hash = ?";
+        jdbcTemplate.update(sql, (Object) tokenHash);
     }
 
     public void deleteByUserId(Long userId) {
         String sql = "DELETE FROM refresh_tokens WHERE user_id = ?";
         jdbcTemplate.update(sql, userId);
     }
-}
\ No newline at end of file
+
+    public int deleteExpired(LocalDateTime now) {
+        String sql = "DELETE FROM refresh_tokens WHERE expiry_date < ?";
+        return jdbcTemplate.update(sql, Timestamp.valueOf(now));
+    }
+}
@@ -0,0 +1,21 @@
+package com.melnikov.TicketBookingService.dao;
+
+import com.melnikov.TicketBookingService.entity.SessionRevocation;
+
+import java.time.Instant;
+import java.util.Map;
+
+public interface RevokedTokenDao {
+    /**
+     * Отзывает access-токены пользователя из поколений раньше minGeneration и refresh-токены
+     * раньше minRefreshGeneration. Более ранний отзыв не перекрывает поздний.
+     */
+    void revokeBefore(Long userId, long minGeneration, long minRefreshGeneration, Instant expiresAt);
+
+    /**
+     * userId -> отзыв для записей, еще не истекших к now.
+     */
+    Map<Long, SessionRevocation> findActive(Instant now);
+
+    int deleteExpired(Instant now);
+}
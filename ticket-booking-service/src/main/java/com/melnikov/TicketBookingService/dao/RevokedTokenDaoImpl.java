@@ -0,0 +1,47 @@
+package com.melnikov.TicketBookingService.dao;
+
+import com.melnikov.TicketBookingService.entity.SessionRevocation;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+public class RevokedTokenDaoImpl implements RevokedTokenDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    public RevokedTokenDaoImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void revokeBefore(Long userId, long minGeneration, long minRefreshGeneration, Instant expiresAt) {
+        String sql = """
+                INSERT INTO revoked_tokens (user_id, min_generation, min_refresh_generation, expires_at) VALUES (?, ?, ?, ?)
+                ON CONFLICT (user_id) DO UPDATE
+                SET min_generation = GREATEST(revoked_tokens.min_generation, EXCLUDED.min_generation),
+                    min_refresh_generation = GREATEST(revoked_tokens.min_refresh_generation, EXCLUDED.min_refresh_generation),
+                    expires_at = GREATEST(revoked_tokens.expires_at, EXCLUDED.expires_at)
+                """;
+        jdbcTemplate.update(sql, userId, minGeneration, minRefreshGeneration, Timestamp.from(expiresAt));
+    }
+
+    @Override
+    public Map<Long, SessionRevocation> findActive(Instant now) {
+        String sql = "SELECT user_id, min_generation, min_refresh_generation FROM revoked_tokens WHERE expires_at > ?";
+        Map<Long, SessionRevocation> result = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            result.put(rs.getLong("user_id"), new SessionRevocation(
+                    rs.getLong("min_generation"), rs.getLong("min_refresh_generation")));
+        }, Timestamp.from(now));
+        return result;
+    }
+
+    @Override
+    public int deleteExpired(Instant now) {
+        return jdbcTemplate.update("DELETE FROM revoked_tokens WHERE expires_at <= ?", Timestamp.from(now));
+    }
+}
@@ -2,6 +2,7 @@ package com.melnikov.TicketBookingService.dao;
 
 import com.melnikov.TicketBookingService.entity.Route;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface RouteDao {
@@ -9,4 +10,5 @@ public interface RouteDao {
     boolean existsByCities(String departureCity, String arrivalCity);
     Integer createRoute(String departureCity, String arrivalCity);
     Optional<Route> findById(Integer id);
+    List<Route> findAll();
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.melnikov.TicketBookingService.dao;
 
 import com.melnikov.TicketBookingService.entity.Route;
+import com.melnikov.TicketBookingService.events.TicketChangePublisher;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -9,11 +10,13 @@ import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
 import java.sql.PreparedStatement;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public class RouteDaoImpl implements RouteDao {
     private final JdbcTemplate jdbcTemplate;
+    private final TicketChangePublisher changePublisher;
 
     private final RowMapper<Route> routeRowMapper = (rs, rowNum) ->
             Route.builder()
@@ -22,9 +25,9 @@ public class RouteDaoImpl implements RouteDao {
                     .arrivalCity(rs.getString("arrival_city"))
                     .build();
 
-    public RouteDaoImpl(JdbcTemplate jdbcTemplate) {
+    public RouteDaoImpl(JdbcTemplate jdbcTemplate, TicketChangePublisher changePublisher) {
         this.jdbcTemplate = jdbcTemplate;
-
+        this.changePublisher = changePublisher;
     }
 
     @Override
@@ -65,8 +68,14 @@ public class RouteDaoImpl implements RouteDao {
             return ps;
         }, keyHolder);
 
-        keyHolder.getKey();
-        return keyHolder.getKey().intValue();
+        // ON CONFLICT DO NOTHING не возвращает строку, если маршрут уже создан параллельно
+        if (keyHolder.getKey() == null) {
+            return findIdByCities(departureCity, arrivalCity)
+                    .orElseThrow(() -> new IllegalStateException("Route creation failed"));
+        }
+        Integer id = keyHolder.getKey().intValue();
+        changePublisher.routeCreated(new Route(id, departureCity, arrivalCity));
+        return id;
     }
 
     @Override
@@ -80,4 +89,10 @@ public class RouteDaoImpl implements RouteDao {
             return Optional.empty();
         }
     }
+
+    @Override
+    public List<Route> findAll() {
+        String sql = "SELECT * FROM routes";
+        return jdbcTemplate.query(sql, routeRowMapper);
+    }
 }
\ No newline at end of file
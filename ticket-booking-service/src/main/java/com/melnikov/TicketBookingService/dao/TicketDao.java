@@ -3,7 +3,9 @@ package com.melnikov.TicketBookingService.dao;
 import com.melnikov.TicketBookingService.entity.Ticket;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface TicketDao {
@@ -12,6 +14,21 @@ public interface TicketDao {
     List<Ticket> findTickets(Integer transportTypeId, Integer routeId, ZonedDateTime startTime, ZonedDateTime endTime, ZonedDateTime lastDepartureTime, int lastId, int pageSize);
     List<Ticket> findTicketsWithoutTransportType(Integer routeId, ZonedDateTime startTime, ZonedDateTime endTime, ZonedDateTime lastDepartureTime, int lastId, int pageSize);
 
+    Optional<Ticket> findAvailability(Integer ticketId);
     void updateAvailableTickets(Integer ticketId, int newAvailableTickets);
+    boolean compareAndSetAvailableTickets(Ticket current, int newAvailableTickets);
+    boolean increaseAvailableTickets(Integer ticketId, int quantity);
+    void applyAvailabilityDeltas(Map<Integer, Integer> deltas);
+    boolean splitAvailability(Integer ticketId, int shards);
+    boolean isSharded(Integer ticketId);
+    int countSharded();
+    boolean takeFromShards(Integer ticketId, int quantity);
+    boolean returnToShard(Integer ticketId, int quantity);
+    int refreshShardedAvailability();
+    Map<Integer, Integer> findAvailabilityDepartingAfter(ZonedDateTime time);
+    List<Integer> findDepartedAmong(Collection<Integer> ticketIds, ZonedDateTime time);
+    List<Ticket> findAll();
+    List<Ticket> findDepartingFrom(ZonedDateTime time);
+    Map<Integer, Integer> countByRoute();
 
 }
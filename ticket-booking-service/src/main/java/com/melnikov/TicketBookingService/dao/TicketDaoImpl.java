@@ -1,6 +1,7 @@
 package com.melnikov.TicketBookingService.dao;
 
 import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.events.TicketChangePublisher;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -12,7 +13,10 @@ import org.springframework.stereotype.Repository;
 import java.sql.PreparedStatement;
 import java.sql.Timestamp;
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -20,11 +24,51 @@ import java.util.Optional;
 @Repository
 public class TicketDaoImpl implements TicketDao {
     private final JdbcTemplate jdbcTemplate;
+    private final TicketChangePublisher changePublisher;
 
-    public TicketDaoImpl(JdbcTemplate jdbcTemplate) {
+    public TicketDaoImpl(JdbcTemplate jdbcTemplate, TicketChangePublisher changePublisher) {
         this.jdbcTemplate = jdbcTemplate;
+        this.changePublisher = changePublisher;
     }
 
+    // Курсор сравнивается как row value: (departure_time, id) > (?, ?) — один диапазон по индексу,
+    // а выбираемые колонки лежат в INCLUDE, поэтому страница читается index-only scan (см. schema.sql)
+    public static final String FIND_TICKETS_SQL = """
+            SELECT t.id,
+                   t.transport_type_id,
+                   t.route_id,
+                   t.departure_time,
+                   t.arrival_time,
+                   t.price,
+                   t.available_tickets
+            FROM tickets t
+            WHERE t.transport_type_id = ?
+              AND t.available_tickets > 0
+              AND t.route_id = ?
+              AND t.departure_time >= ?
+              AND t.departure_time <= ?
+              AND (t.departure_time, t.id) > (?, ?) -- Уникальный курсор
+            ORDER BY t.departure_time, t.id
+            LIMIT ?
+            """;
+
+    public static final String FIND_TICKETS_WITHOUT_TRANSPORT_TYPE_SQL = """
+            SELECT t.id,
+                   t.transport_type_id,
+                   t.route_id,
+                   t.departure_time,
+                   t.arrival_time,
+                   t.price,
+                   t.available_tickets
+            FROM tickets t
+            WHERE t.route_id = ?
+              AND t.departure_time >= ?
+              AND t.departure_time <= ?
+              AND (t.departure_time, t.id) > (?, ?) -- Уникальный курсор
+            ORDER BY t.departure_time, t.id
+            LIMIT ?
+            """;
+
     private final RowMapper<Ticket> ticketRowMapper = (rs, rowNum) -> {
         Ticket ticket = new Ticket();
         ticket.setId(rs.getInt("id"));
@@ -67,12 +111,19 @@ public class TicketDaoImpl implements TicketDao {
         }, keyHolder);
 
         ticket.setId(Objects.requireNonNull(keyHolder.getKey()).intValue());
+        changePublisher.ticketSaved(ticket);
         return ticket;
     }
 
     public Optional<Ticket> findByIdWithDetails(Integer id) {
         String sql = """
-            SELECT t.*, tt.name as transport_type, 
+            SELECT t.id, t.transport_type_id, t.route_id, t.departure_time, t.arrival_time, t.price,
+                   -- у шардированного рейса точный остаток - сумма шардов, в tickets - агрегат с отставанием
+                   CASE WHEN t.sharded
+                        THEN (SELECT SUM(s.available) FROM ticket_seat_shards s WHERE s.ticket_id = t.id)
+                        ELSE t.available_tickets
+                   END AS available_tickets,
+                   tt.name as transport_type,
                    r.departure_city, r.arrival_city
             FROM tickets t
             JOIN transport_types tt ON t.transport_type_id = tt.id
@@ -94,21 +145,337 @@ public class TicketDaoImpl implements TicketDao {
         }
     }
 
+    /**
+     * Остаток рейса с версией строки для оптимистичного обновления, без блокировки.
+     * У шардированного рейса остаток — сумма шардов.
+     */
+    @Override
+    public Optional<Ticket> findAvailability(Integer ticketId) {
+        String sql = """
+        SELECT t.id, t.route_id, t.version, t.sharded,
+               CASE WHEN t.sharded
+                    THEN (SELECT SUM(s.available) FROM ticket_seat_shards s WHERE s.ticket_id = t.id)
+                    ELSE t.available_tickets
+               END AS available_tickets
+        FROM tickets t
+        WHERE t.id = ?
+    """;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> Ticket.builder()
+                .id(rs.getInt("id"))
+                .routeId(rs.getInt("route_id"))
+                .availableTickets(rs.getInt("available_tickets"))
+                .version(rs.getLong("version"))
+                .sharded(rs.getBoolean("sharded"))
+                .build(), ticketId).stream().findFirst();
+    }
+
     @Override
     public void updateAvailableTickets(Integer ticketId, int newAvailableTickets) {
         String sql = """
         UPDATE tickets
-        SET available_tickets = ?
+        SET available_tickets = ?, version = version + 1
         WHERE id = ?;
     """;
 
         jdbcTemplate.update(sql, newAvailableTickets, ticketId);
     }
 
+    /**
+     * Compare-and-set по версии: остаток записывается, только если строку никто не менял
+     * с чтения current. Любое изменение остатка увеличивает version, поэтому совпавшая
+     * версия гарантирует, что в БД все еще current.getAvailableTickets().
+     *
+     * <p>
+     * У шардированного рейса разница применяется к шардам: версия строки tickets меняется
+     * только от обновления агрегата, поэтому "устаревшим" здесь считается остаток, которого
+     * уже не хватает на списание.
+     *
+     * @return false — версия устарела, нужно перечитать и повторить
+     */
     @Override
-    public List<Ticket> findTickets(Integer transportTypeId, Integer routeId, ZonedDateTime startTime, ZonedDateTime endTime, ZonedDateTime lastDepartureTime, int lastId, int pageSize) {
+    public boolean compareAndSetAvailableTickets(Ticket current, int newAvailableTickets) {
+        if (current.isSharded()) {
+            int delta = newAvailableTickets - current.getAvailableTickets();
+            return delta < 0
+                    ? takeFromShards(current.getId(), -delta)
+                    : returnToShard(current.getId(), delta);
+        }
+        // Агрегат шардированного рейса напрямую не пишется, даже если версия совпала
+        String sql = """
+        UPDATE tickets
+        SET available_tickets = ?, version = version + 1
+        WHERE id = ? AND version = ? AND NOT sharded
+    """;
+
+        if (jdbcTemplate.update(sql, newAvailableTickets, current.getId(), current.getVersion()) == 0) {
+            return false;
+        }
+        changePublisher.availabilityChanged(current.getId(), current.getRouteId(),
+                newAvailableTickets - current.getAvailableTickets());
+        return true;
+    }
+
+    /**
+     * Возвращает места рейсу; шардированному — в шард.
+     *
+     * @return false — рейс не найден
+     */
+    @Override
+    public boolean increaseAvailableTickets(Integer ticketId, int quantity) {
+        String sql = """
+        UPDATE tickets
+        SET available_tickets = available_tickets + ?, version = version + 1
+        WHERE id = ? AND NOT sharded
+        RETURNING route_id;
+    """;
+
+        List<Integer> routeIds = jdbcTemplate.queryForList(sql, Integer.class, quantity, ticketId);
+        if (routeIds.isEmpty()) {
+            return returnToShard(ticketId, quantity);
+        }
+        routeIds.forEach(routeId -> changePublisher.availabilityChanged(ticketId, routeId, quantity));
+        return true;
+    }
+
+    /**
+     * Применяет накопленные изменения остатков одним запросом.
+     * UPDATE идет по подзапросу, который блокирует строки в порядке возрастания id: порядок
+     * соединения с unnest выбирает планировщик, и без этого параллельные batch могли бы
+     * взаимоблокироваться. Шардированные рейсы пропускаются: их агрегат пишет только
+     * {@link #refreshShardedAvailability}, и SeatInventory их не отслеживает.
+     */
+    @Override
+    public void applyAvailabilityDeltas(Map<Integer, Integer> deltas) {
+        String sql = """
+        WITH locked AS (
+            SELECT t.id, d.delta
+            FROM tickets t
+            JOIN unnest(?::int[], ?::int[]) AS d(id, delta) ON d.id = t.id
+            WHERE NOT t.sharded
+            ORDER BY t.id
+            FOR UPDATE OF t
+        )
+        UPDATE tickets t
+        SET available_tickets = t.available_tickets + l.delta, version = t.version + 1
+        FROM locked l
+        WHERE t.id = l.id
+        RETURNING t.id, t.route_id, l.delta;
+    """;
+
+        Integer[] ids = deltas.keySet().toArray(new Integer[0]);
+        Integer[] values = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = deltas.get(ids[i]);
+        }
+        if (ids.length == 0) {
+            return;
+        }
+
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("integer", ids));
+            ps.setArray(2, con.createArrayOf("integer", values));
+            return ps;
+        }, rs -> {
+            changePublisher.availabilityChanged(rs.getInt("id"), rs.getInt("route_id"), rs.getInt("delta"));
+        });
+    }
+
+    /**
+     * Делит остаток рейса на shards строк ticket_seat_shards поровну. Повторный вызов
+     * перераспределяет текущую сумму шардов. Нужна активная транзакция: строка рейса
+     * и старые шарды блокируются до ее конца.
+     * <p>
+     * Флаг sharded на строке рейса переключает все изменения остатка на шарды. Строка блокируется
+     * FOR NO KEY UPDATE: так деление ждет прямые списания из tickets, но не вставку броней,
+     * которые держат шард и проверяют внешний ключ на рейс.
+     *
+     * @return false — рейс не найден
+     */
+    @Override
+    public boolean splitAvailability(Integer ticketId, int shards) {
+        List<Integer> available = jdbcTemplate.queryForList(
+                "SELECT available_tickets FROM tickets WHERE id = ? FOR NO KEY UPDATE", Integer.class, ticketId);
+        if (available.isEmpty()) {
+            return false;
+        }
+        List<Integer> oldShards = jdbcTemplate.queryForList(
+                "DELETE FROM ticket_seat_shards WHERE ticket_id = ? RETURNING available", Integer.class, ticketId);
+        int total = oldShards.isEmpty()
+                ? available.get(0)
+                : oldShards.stream().mapToInt(Integer::intValue).sum();
+
+        String sql = """
+        INSERT INTO ticket_seat_shards (ticket_id, shard, available)
+        SELECT ?, s, ? / ? + CASE WHEN s < ? % ? THEN 1 ELSE 0 END
+        FROM generate_series(0, ? - 1) AS s
+    """;
+        jdbcTemplate.update(sql, ticketId, total, shards, total, shards, shards);
+        // Агрегат в tickets совпадает с суммой на момент деления; при повторном делении он мог отставать
+        Integer routeId = jdbcTemplate.queryForObject(
+                "UPDATE tickets SET available_tickets = ?, sharded = true, version = version + 1 WHERE id = ? RETURNING route_id",
+                Integer.class, total, ticketId);
+        changePublisher.availabilityChanged(ticketId, routeId, total - available.get(0));
+        return true;
+    }
+
+    @Override
+    public boolean isSharded(Integer ticketId) {
+        return jdbcTemplate.queryForList("SELECT sharded FROM tickets WHERE id = ?", Boolean.class, ticketId)
+                .stream().findFirst().orElse(false);
+    }
+
+    @Override
+    public int countSharded() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tickets WHERE sharded", Integer.class);
+    }
+
+    /**
+     * Списывает места шардированного рейса. Сначала — один случайный шард, где хватает мест,
+     * пропуская занятые другими транзакциями (SKIP LOCKED): параллельные брони расходятся
+     * по разным строкам. Если такого нет (все заняты или места разбросаны
+     * по шардам), блокируются все шарды рейса по порядку и места берутся из нескольких.
+     * Агрегат в tickets не меняется, поэтому и изменение не публикуется — это сделает
+     * {@link #refreshShardedAvailability}.
+     *
+     * @return false — мест меньше, чем quantity
+     */
+    @Override
+    public boolean takeFromShards(Integer ticketId, int quantity) {
+        String singleShardSql = """
+        WITH pick AS (
+            SELECT shard
+            FROM ticket_seat_shards
+            WHERE ticket_id = ? AND available >= ?
+            ORDER BY random()
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+        )
+        UPDATE ticket_seat_shards s
+        SET available = s.available - ?
+        FROM pick
+        WHERE s.ticket_id = ? AND s.shard = pick.shard
+    """;
+        if (jdbcTemplate.update(singleShardSql, ticketId, quantity, quantity, ticketId) > 0) {
+            return true;
+        }
+
+        String allShardsSql = """
+        WITH locked AS (
+            SELECT shard, available
+            FROM ticket_seat_shards
+            WHERE ticket_id = ?
+            ORDER BY shard
+            FOR UPDATE
+        ),
+        taken AS (
+            SELECT shard,
+                   LEAST(available, GREATEST(0, ? - (SUM(available) OVER (ORDER BY shard) - available))) AS quantity,
+                   SUM(available) OVER () AS total
+            FROM locked
+        )
+        UPDATE ticket_seat_shards s
+        SET available = s.available - t.quantity
+        FROM taken t
+        WHERE s.ticket_id = ? AND s.shard = t.shard AND t.total >= ? AND t.quantity > 0
+    """;
+        return jdbcTemplate.update(allShardsSql, ticketId, quantity, ticketId, quantity) > 0;
+    }
+
+    /**
+     * Возвращает места в случайный шард рейса; как и при списании, изменение опубликует
+     * перенос сумм в агрегат.
+     *
+     * @return false — у рейса нет шардов
+     */
+    @Override
+    public boolean returnToShard(Integer ticketId, int quantity) {
         String sql = """
-            SELECT t.id, 
+        UPDATE ticket_seat_shards s
+        SET available = s.available + ?
+        WHERE s.ticket_id = ?
+          AND s.shard = (SELECT shard FROM ticket_seat_shards
+                         WHERE ticket_id = ? ORDER BY random() LIMIT 1)
+    """;
+
+        return jdbcTemplate.update(sql, quantity, ticketId, ticketId) > 0;
+    }
+
+    /**
+     * Переносит суммы шардов в tickets.available_tickets, по которому ищут рейсы, и рассылает
+     * разницу слушателям: списания и возвраты в шардах агрегат не меняют и не публикуются.
+     * Строки блокируются по возрастанию id, как в {@link #applyAvailabilityDeltas}; после ожидания
+     * блокировки условие проверяется по новой версии строки, поэтому перенос, уже сделанный
+     * другим узлом, второй раз не публикуется.
+     *
+     * @return число обновленных рейсов
+     */
+    @Override
+    public int refreshShardedAvailability() {
+        String sql = """
+        WITH totals AS (
+            SELECT ticket_id, SUM(available) AS total FROM ticket_seat_shards GROUP BY ticket_id
+        ),
+        changed AS (
+            SELECT t.id, s.total, s.total - t.available_tickets AS delta
+            FROM tickets t
+            JOIN totals s ON s.ticket_id = t.id
+            WHERE t.sharded AND t.available_tickets <> s.total
+            ORDER BY t.id
+            FOR NO KEY UPDATE OF t
+        )
+        UPDATE tickets t
+        SET available_tickets = c.total, version = t.version + 1
+        FROM changed c
+        WHERE t.id = c.id
+        RETURNING t.id, t.route_id, c.delta;
+    """;
+
+        int[] updated = new int[1];
+        jdbcTemplate.query(sql, rs -> {
+            updated[0]++;
+            changePublisher.availabilityChanged(rs.getInt("id"), rs.getInt("route_id"), rs.getInt("delta"));
+        });
+        return updated[0];
+    }
+
+    @Override
+    public Map<Integer, Integer> findAvailabilityDepartingAfter(ZonedDateTime time) {
+        String sql = """
+            SELECT id, available_tickets
+            FROM tickets t
+            WHERE departure_time > ?
+              -- места шардированных рейсов считаются в ticket_seat_shards, не в памяти
+              AND NOT t.sharded
+        """;
+
+        Map<Integer, Integer> availability = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            availability.put(rs.getInt("id"), rs.getInt("available_tickets"));
+        }, Timestamp.from(time.toInstant()));
+        return availability;
+    }
+
+    @Override
+    public List<Integer> findDepartedAmong(Collection<Integer> ticketIds, ZonedDateTime time) {
+        Integer[] ids = ticketIds.toArray(new Integer[0]);
+        if (ids.length == 0) {
+            return List.of();
+        }
+        String sql = "SELECT id FROM tickets WHERE id = ANY (?::int[]) AND departure_time <= ?";
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("integer", ids));
+            ps.setTimestamp(2, Timestamp.from(time.toInstant()));
+            return ps;
+        }, (rs, rowNum) -> rs.getInt("id"));
+    }
+
+    @Override
+    public List<Ticket> findAll() {
+        String sql = """
+            SELECT t.id,
                    t.transport_type_id,
                    t.route_id,
                    t.departure_time,
@@ -116,33 +483,15 @@ public class TicketDaoImpl implements TicketDao {
                    t.price,
                    t.available_tickets
             FROM tickets t
-            JOIN transport_types tt ON t.transport_type_id = tt.id
-            WHERE t.transport_type_id = ?
-              AND t.available_tickets > 0
-              AND t.route_id = ?
-              AND t.departure_time >= ?
-              AND t.departure_time <= ?
-              AND (t.departure_time > ? OR (t.departure_time = ? AND t.id > ?)) -- Уникальный курсор
-            ORDER BY t.departure_time, t.id
-            LIMIT ?;
         """;
 
-        return jdbcTemplate.query(sql, ticketRowMapper,
-                transportTypeId,
-                routeId,
-                Timestamp.from(startTime.toInstant()),
-                Timestamp.from(endTime.toInstant()),
-                Timestamp.from(lastDepartureTime.toInstant()), // Курсор по времени
-                Timestamp.from(lastDepartureTime.toInstant()), // Повторное сравнение по времени
-                lastId, // Курсор по ID
-                pageSize // Размер страницы
-        );
+        return jdbcTemplate.query(sql, ticketRowMapper);
     }
 
     @Override
-    public List<Ticket> findTicketsWithoutTransportType(Integer routeId, ZonedDateTime startTime, ZonedDateTime endTime, ZonedDateTime lastDepartureTime, int lastId, int pageSize) {
+    public List<Ticket> findDepartingFrom(ZonedDateTime time) {
         String sql = """
-            SELECT t.id, 
+            SELECT t.id,
                    t.transport_type_id,
                    t.route_id,
                    t.departure_time,
@@ -150,22 +499,45 @@ public class TicketDaoImpl implements TicketDao {
                    t.price,
                    t.available_tickets
             FROM tickets t
-            WHERE t.route_id = ?
-              AND t.departure_time >= ?
-              AND t.departure_time <= ?
-              AND (t.departure_time > ? OR (t.departure_time = ? AND t.id > ?)) -- Уникальный курсор
-            ORDER BY t.departure_time, t.id
-            LIMIT ?;
+            WHERE t.departure_time >= ?
         """;
 
-        return jdbcTemplate.query(sql, ticketRowMapper,
+        return jdbcTemplate.query(sql, ticketRowMapper, Timestamp.from(time.toInstant()));
+    }
+
+    @Override
+    public List<Ticket> findTickets(Integer transportTypeId, Integer routeId, ZonedDateTime startTime, ZonedDateTime endTime, ZonedDateTime lastDepartureTime, int lastId, int pageSize) {
+        return jdbcTemplate.query(FIND_TICKETS_SQL, ticketRowMapper,
+                transportTypeId,
+                routeId,
+                Timestamp.from(startTime.toInstant()),
+                Timestamp.from(endTime.toInstant()),
+                Timestamp.from(lastDepartureTime.toInstant()), // Курсор по времени
+                lastId, // Курсор по ID
+                pageSize // Размер страницы
+        );
+    }
+
+    @Override
+    public List<Ticket> findTicketsWithoutTransportType(Integer routeId, ZonedDateTime startTime, ZonedDateTime endTime, ZonedDateTime lastDepartureTime, int lastId, int pageSize) {
+        return jdbcTemplate.query(FIND_TICKETS_WITHOUT_TRANSPORT_TYPE_SQL, ticketRowMapper,
                 routeId,
                 Timestamp.from(startTime.toInstant()),
                 Timestamp.from(endTime.toInstant()),
                 Timestamp.from(lastDepartureTime.toInstant()), // Курсор по времени
-                Timestamp.from(lastDepartureTime.toInstant()), // Повторное сравнение по времени
                 lastId, // Курсор по ID
                 pageSize // Размер страницы
         );
     }
-}
\ No newline at end of file
+
+    @Override
+    public Map<Integer, Integer> countByRoute() {
+        String sql = "SELECT route_id, COUNT(*) AS tickets FROM tickets GROUP BY route_id";
+
+        Map<Integer, Integer> counts = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            counts.put(rs.getInt("route_id"), rs.getInt("tickets"));
+        });
+        return counts;
+    }
+}
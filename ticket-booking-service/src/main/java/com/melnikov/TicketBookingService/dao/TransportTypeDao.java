@@ -0,0 +1,9 @@
+package com.melnikov.TicketBookingService.dao;
+
+import com.melnikov.TicketBookingService.entity.TransportType;
+
+import java.util.List;
+
+public interface TransportTypeDao {
+    List<TransportType> findAll();
+}
@@ -0,0 +1,29 @@
+package com.melnikov.TicketBookingService.dao;
+
+import com.melnikov.TicketBookingService.entity.TransportType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public class TransportTypeDaoImpl implements TransportTypeDao {
+    private final JdbcTemplate jdbcTemplate;
+
+    private final RowMapper<TransportType> transportTypeRowMapper = (rs, rowNum) ->
+            TransportType.builder()
+                    .id(rs.getInt("id"))
+                    .name(rs.getString("name"))
+                    .build();
+
+    public TransportTypeDaoImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<TransportType> findAll() {
+        String sql = "SELECT id, name FROM transport_types";
+        return jdbcTemplate.query(sql, transportTypeRowMapper);
+    }
+}
@@ -9,6 +9,10 @@ public interface UserDao {
     Optional<User> findById(Long id);
     User save(User user);
     boolean updatePasswordById(Long id, String newPasswordHash);
+    boolean replacePasswordHash(Long id, String expectedPasswordHash, String newPasswordHash);
     Optional<User> getUserInfoById(Long id);
-    public boolean updateBalanceById(Long id, double newBalance);
+    /**
+     * Начинает новое поколение сессий пользователя и возвращает его номер.
+     */
+    long nextSessionGeneration(Long id);
 }
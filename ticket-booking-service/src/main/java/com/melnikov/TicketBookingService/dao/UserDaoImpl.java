@@ -1,27 +1,53 @@
 package com.melnikov.TicketBookingService.dao;
 
+import com.melnikov.TicketBookingService.cache.UserReadModelCache;
 import com.melnikov.TicketBookingService.entity.User;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.Optional;
 
+import static com.melnikov.TicketBookingService.cache.UserReadModelCache.View.INFO;
+
 @Repository
 public class UserDaoImpl implements UserDao {
     private final JdbcTemplate jdbcTemplate;
+    private final UserReadModelCache userReadModelCache;
 
-    public UserDaoImpl(JdbcTemplate jdbcTemplate) {
+    public UserDaoImpl(JdbcTemplate jdbcTemplate, UserReadModelCache userReadModelCache) {
         this.jdbcTemplate = jdbcTemplate;
+        this.userReadModelCache = userReadModelCache;
     }
 
+    // balance - с учетом несвернутых записей журнала
+    private static final String SELECT_USER = """
+            SELECT u.id, u.email, u.password_hash, u.firstname, u.lastname, u.birth_date, u.role_id, u.session_generation,
+                   %s AS balance
+            FROM users u
+            """.formatted(BalanceLedgerDaoImpl.BALANCE_EXPRESSION);
+
+    // Явный маппер вместо BeanPropertyRowMapper: без рефлексии на каждую строку
+    private final RowMapper<User> userRowMapper = (rs, rowNum) -> User.builder()
+            .id(rs.getLong("id"))
+            .email(rs.getString("email"))
+            .passwordHash(rs.getString("password_hash"))
+            .firstname(rs.getString("firstname"))
+            .lastname(rs.getString("lastname"))
+            .birthDate(rs.getObject("birth_date", LocalDate.class))
+            .balance(rs.getInt("balance"))
+            .roleId(rs.getInt("role_id"))
+            .sessionGeneration(rs.getLong("session_generation"))
+            .build();
+
 
     public Optional<User> findByEmail(String email) {
         try {
             return Optional.of(jdbcTemplate.queryForObject(
-                    "SELECT * FROM users WHERE email = ?",
-                    new BeanPropertyRowMapper<>(User.class),
+                    SELECT_USER + "WHERE u.email = ?",
+                    userRowMapper,
                     email));
         } catch (EmptyResultDataAccessException e) {
             return Optional.empty();
@@ -31,8 +57,8 @@ public class UserDaoImpl implements UserDao {
     public Optional<User> findById(Long id) {
         try {
             return Optional.of(jdbcTemplate.queryForObject(
-                    "SELECT * FROM users WHERE id = ?",
-                    new BeanPropertyRowMapper<>(User.class),
+                    SELECT_USER + "WHERE u.id = ?",
+                    userRowMapper,
                     id));
         } catch (EmptyResultDataAccessException e) {
             return Optional.empty();
@@ -62,21 +88,37 @@ public class UserDaoImpl implements UserDao {
                 newPasswordHash,
                 id
         );
+        userReadModelCache.invalidate(id, INFO);
         return updatedRows > 0;
     }
 
-
+    // Пересчет хеша не должен затереть пароль, смененный за это время
     @Override
-    public Optional<User> getUserInfoById(Long id) {
-        return findById(id);
+    public boolean replacePasswordHash(Long id, String expectedPasswordHash, String newPasswordHash) {
+        int updatedRows = jdbcTemplate.update(
+                "UPDATE users SET password_hash = ? WHERE id = ? AND password_hash = ?",
+                newPasswordHash,
+                id,
+                expectedPasswordHash
+        );
+        if (updatedRows > 0) {
+            userReadModelCache.invalidate(id, INFO);
+        }
+        return updatedRows > 0;
     }
 
-    public boolean updateBalanceById(Long id, double newBalance) {
-        int updatedRows = jdbcTemplate.update(
-                "UPDATE users SET balance = ? WHERE id = ?",
-                newBalance,
+
+    @Override
+    public long nextSessionGeneration(Long id) {
+        return jdbcTemplate.queryForObject(
+                "UPDATE users SET session_generation = session_generation + 1 WHERE id = ? RETURNING session_generation",
+                Long.class,
                 id
         );
-        return updatedRows > 0;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Optional<User> getUserInfoById(Long id) {
+        return findById(id);
+    }
+}
@@ -0,0 +1,10 @@
+package com.melnikov.TicketBookingService.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class BookingConfirmRequestDto {
+    @NotNull(message = "Booking ID is required")
+    private Integer bookingId;
+}
\ No newline at end of file
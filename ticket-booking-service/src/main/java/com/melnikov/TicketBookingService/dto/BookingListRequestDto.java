@@ -1,10 +1,29 @@
 package com.melnikov.TicketBookingService.dto;
 
-import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.ZonedDateTime;
 
 @Data
 public class BookingListRequestDto {
-    @NotNull(message = "User ID is required")
-    private Long userId;
-}
\ No newline at end of file
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    // active - pending и confirmed вместе
+    @Pattern(regexp = "^(active|pending|confirmed|canceled)?$", message = "Invalid booking status")
+    private String status;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private ZonedDateTime lastBookingTime; // Курсор по времени брони (nextCursor предыдущей страницы)
+
+    @PositiveOrZero(message = "Cursor ID must be zero or positive")
+    private Integer lastId; // Курсор по ID (nextId предыдущей страницы)
+
+    @Max(value = 50, message = "Page size must not exceed 50")
+    @Min(value = 5, message = "Page size must be at least 5")
+    private int pageSize = DEFAULT_PAGE_SIZE;
+}
@@ -0,0 +1,14 @@
+package com.melnikov.TicketBookingService.dto;
+
+import com.melnikov.TicketBookingService.entity.BookingDetails;
+import lombok.Data;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+@Data
+public class BookingPageResponseDto {
+    private List<BookingDetails> bookings; // Брони текущей страницы, от новых к старым
+    private ZonedDateTime nextCursor; // Время последней брони страницы; null - страниц больше нет
+    private Integer nextId; // ID последней брони страницы
+}
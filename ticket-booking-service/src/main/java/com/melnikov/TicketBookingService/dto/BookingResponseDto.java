@@ -15,4 +15,5 @@ public class BookingResponseDto {
     private String status;
 
     private Integer ticketQuantity;
+    private ZonedDateTime holdExpiresAt;
 }
\ No newline at end of file
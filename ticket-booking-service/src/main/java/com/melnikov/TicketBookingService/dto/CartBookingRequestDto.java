@@ -0,0 +1,17 @@
+package com.melnikov.TicketBookingService.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CartBookingRequestDto {
+
+    // Все билеты корзины бронируются вместе или ни один
+    @NotEmpty(message = "Cart must contain at least one ticket")
+    @Size(max = 10, message = "Cart must not contain more than 10 tickets")
+    private List<@Valid BookingCreateRequestDto> items;
+}
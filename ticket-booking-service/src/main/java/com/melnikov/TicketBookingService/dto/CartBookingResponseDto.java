@@ -0,0 +1,13 @@
+package com.melnikov.TicketBookingService.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class CartBookingResponseDto {
+    private List<BookingResponseDto> bookings; // По брони на каждый рейс корзины, по возрастанию ID билета
+    private Integer totalCost;
+}
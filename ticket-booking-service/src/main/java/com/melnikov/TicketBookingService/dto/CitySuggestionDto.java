@@ -0,0 +1,13 @@
+package com.melnikov.TicketBookingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CitySuggestionDto {
+    private String city; // Название в точности как в routes
+    private int tickets; // Сколько билетов на маршрутах через город
+}
@@ -0,0 +1,18 @@
+package com.melnikov.TicketBookingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FareCalendarDayDto {
+    private LocalDate date;
+    private String transportType;
+    private Integer minPrice; // null, если все рейсы дня распроданы
+    private int availableTickets;
+    private int departures;
+}
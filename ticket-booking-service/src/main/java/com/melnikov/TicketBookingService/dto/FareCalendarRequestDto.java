@@ -0,0 +1,24 @@
+package com.melnikov.TicketBookingService.dto;
+
+import jakarta.validation.constraints.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+public class FareCalendarRequestDto {
+    @Pattern(regexp = "^(bus|avia|train)?$", message = "Invalid transport type")
+    private String type;
+
+    @NotBlank(message = "Departure place is required")
+    private String from;
+
+    @NotBlank(message = "Arrival place is required")
+    private String to;
+
+    @NotNull(message = "Start date is required")
+    private LocalDate startDate;
+
+    @NotNull(message = "End date is required")
+    private LocalDate endDate;
+}
@@ -0,0 +1,10 @@
+package com.melnikov.TicketBookingService.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class FareCalendarResponseDto {
+    private List<FareCalendarDayDto> days; // Только дни, в которые есть отправления
+}
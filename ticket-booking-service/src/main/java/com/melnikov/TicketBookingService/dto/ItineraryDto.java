@@ -0,0 +1,17 @@
+package com.melnikov.TicketBookingService.dto;
+
+import com.melnikov.TicketBookingService.entity.Ticket;
+import lombok.Data;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+@Data
+public class ItineraryDto {
+    private List<Ticket> legs; // Сегменты в порядке следования
+    private int stops; // Количество пересадок
+    private int totalPrice;
+    private ZonedDateTime departureTime;
+    private ZonedDateTime arrivalTime;
+    private long durationMinutes;
+}
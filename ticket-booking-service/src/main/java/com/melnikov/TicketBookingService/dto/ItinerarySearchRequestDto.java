@@ -0,0 +1,32 @@
+package com.melnikov.TicketBookingService.dto;
+
+import jakarta.validation.constraints.*;
+import lombok.Data;
+
+import java.time.ZonedDateTime;
+
+@Data
+public class ItinerarySearchRequestDto {
+    @NotBlank(message = "Departure place is required")
+    private String from;
+
+    @NotBlank(message = "Arrival place is required")
+    private String to;
+
+    @Future(message = "Start time must be in the future")
+    private ZonedDateTime startTime; // Начало окна первого отправления, по умолчанию сейчас
+
+    @Future(message = "End time must be in the future")
+    private ZonedDateTime endTime; // Конец окна первого отправления, по умолчанию сутки от начала
+
+    @Min(value = 0, message = "Stops must be zero or positive")
+    @Max(value = 2, message = "At most 2 stops are supported")
+    private int maxStops = 2;
+
+    @Pattern(regexp = "^(duration|price)$", message = "Sort must be duration or price")
+    private String sortBy = "duration";
+
+    @Min(value = 1, message = "Limit must be at least 1")
+    @Max(value = 50, message = "Limit must not exceed 50")
+    private int limit = 10;
+}
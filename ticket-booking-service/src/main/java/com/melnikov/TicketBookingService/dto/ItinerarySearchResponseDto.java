@@ -0,0 +1,10 @@
+package com.melnikov.TicketBookingService.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ItinerarySearchResponseDto {
+    private List<ItineraryDto> itineraries; // Лучшие маршруты по выбранной сортировке
+}
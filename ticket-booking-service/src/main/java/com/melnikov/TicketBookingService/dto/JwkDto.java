@@ -0,0 +1,21 @@
+package com.melnikov.TicketBookingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Открытый ключ EC в формате JWK (RFC 7517).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JwkDto {
+    private String kty; // EC
+    private String crv; // P-256
+    private String kid;
+    private String use; // sig
+    private String alg; // ES256
+    private String x; // base64url без padding, 32 байта
+    private String y;
+}
@@ -0,0 +1,14 @@
+package com.melnikov.TicketBookingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JwksResponseDto {
+    private List<JwkDto> keys; // Все ключи, которыми проверяются токены, включая предыдущие
+}
@@ -0,0 +1,17 @@
+package com.melnikov.TicketBookingService.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class TicketShardRequestDto {
+    @NotNull(message = "Ticket ID is required")
+    private Integer ticketId;
+
+    @NotNull(message = "Shard count is required")
+    @Min(value = 1, message = "Shard count must be at least 1")
+    @Max(value = 64, message = "Shard count must be at most 64")
+    private Integer shards;
+}
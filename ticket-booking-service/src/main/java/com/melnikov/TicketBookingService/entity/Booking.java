@@ -13,5 +13,6 @@ public class Booking {
     private ZonedDateTime bookingTime;
     private String status;
     private Integer ticketQuantity;
+    private ZonedDateTime holdExpiresAt; // до какого момента держатся места неподтвержденной брони
 
 }
\ No newline at end of file
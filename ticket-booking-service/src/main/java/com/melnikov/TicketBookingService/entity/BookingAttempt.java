@@ -0,0 +1,28 @@
+package com.melnikov.TicketBookingService.entity;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Результат атомарной попытки бронирования: либо созданная бронь,
+ * либо условие, на котором попытка была отклонена.
+ */
+@Data
+@Builder
+public class BookingAttempt {
+    private Status status;
+    private Booking booking;
+    private Integer routeId;
+
+    public boolean isCreated() {
+        return status == Status.CREATED;
+    }
+
+    public enum Status {
+        CREATED,
+        TICKET_NOT_FOUND,
+        NOT_ENOUGH_TICKETS,
+        USER_NOT_FOUND,
+        INSUFFICIENT_BALANCE
+    }
+}
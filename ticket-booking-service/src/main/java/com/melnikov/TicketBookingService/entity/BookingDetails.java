@@ -0,0 +1,26 @@
+package com.melnikov.TicketBookingService.entity;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Строка истории броней: бронь вместе с рейсом, чтобы клиенту не запрашивать билеты по одному.
+ */
+@Data
+@Builder
+public class BookingDetails {
+    private Integer id;
+    private Integer ticketId;
+    private ZonedDateTime bookingTime;
+    private String status;
+    private Integer ticketQuantity;
+    private ZonedDateTime holdExpiresAt;
+
+    private String transportType;
+    private String departureCity;
+    private String arrivalCity;
+    private ZonedDateTime departureTime;
+    private ZonedDateTime arrivalTime;
+}
@@ -0,0 +1,23 @@
+package com.melnikov.TicketBookingService.entity;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Результат бронирования корзины: либо брони по всем рейсам,
+ * либо условие и рейс, из-за которых отклонена вся корзина.
+ */
+@Data
+@Builder
+public class CartBookingAttempt {
+    private BookingAttempt.Status status;
+    private Integer ticketId; // рейс, на котором корзина отклонена
+    private List<Booking> bookings;
+    private Integer totalCost;
+
+    public boolean isCreated() {
+        return status == BookingAttempt.Status.CREATED;
+    }
+}
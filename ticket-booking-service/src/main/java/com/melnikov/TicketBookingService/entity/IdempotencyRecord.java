@@ -0,0 +1,22 @@
+package com.melnikov.TicketBookingService.entity;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Сохраненный ответ на запрос с Idempotency-Key.
+ */
+@Data
+@Builder
+public class IdempotencyRecord {
+    private Long userId;
+    private String idempotencyKey;
+    private String scope;
+    private byte[] requestHash;
+    private Integer statusCode;
+    private String contentType;
+    private String responseBody;
+    private Instant expiresAt;
+}
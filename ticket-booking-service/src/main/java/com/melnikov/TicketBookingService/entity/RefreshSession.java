@@ -0,0 +1,24 @@
+package com.melnikov.TicketBookingService.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Refresh-токен вместе с данными владельца, нужными для нового access-токена.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RefreshSession {
+    private Long userId;
+    private String email;
+    private Integer roleId;
+    private LocalDateTime expiryDate;
+    // Поколение сессий владельца, в нем выдаются access-токены по этому refresh-токену
+    private long sessionGeneration;
+}
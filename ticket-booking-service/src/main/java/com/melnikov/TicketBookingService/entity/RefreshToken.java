@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
 public class RefreshToken {
     private Long id;
     private Long userId;
-    private String token;
+    // SHA-256 от токена, 32 байта
+    private byte[] tokenHash;
     private LocalDateTime expiryDate;
 
-}
\ No newline at end of file
+}
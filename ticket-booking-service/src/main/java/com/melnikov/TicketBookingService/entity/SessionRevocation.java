@@ -0,0 +1,20 @@
+package com.melnikov.TicketBookingService.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Строка revoked_tokens: с каких поколений сессий пользователя токены еще действительны.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SessionRevocation {
+    // access-токены из более ранних поколений отозваны (выход, смена пароля)
+    private long minGeneration;
+    // refresh-токены из более ранних поколений удалены (еще и при каждом входе)
+    private long minRefreshGeneration;
+}
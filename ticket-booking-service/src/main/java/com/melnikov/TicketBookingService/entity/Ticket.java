@@ -1,5 +1,6 @@
 package com.melnikov.TicketBookingService.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -26,4 +27,7 @@ public class Ticket {
     // Служебные поля для связи с БД
     private Integer transportTypeId;
     private Integer routeId;
+    private Long version;          // Версия строки для оптимистичных обновлений остатка
+    @JsonIgnore
+    private boolean sharded;       // Остаток в ticket_seat_shards, availableTickets - их сумма
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.melnikov.TicketBookingService.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -21,6 +22,9 @@ public class User {
     private LocalDate birthDate;
     private Integer balance;
     private Integer roleId;
+    // Поколение сессий, см. TokenRevocationList; наружу не отдается
+    @JsonIgnore
+    private long sessionGeneration;
 
     public int getAge() {
         return Period.between(birthDate, LocalDate.now()).getYears();
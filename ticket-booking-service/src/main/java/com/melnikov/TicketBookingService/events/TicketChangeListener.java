@@ -0,0 +1,20 @@
+package com.melnikov.TicketBookingService.events;
+
+import com.melnikov.TicketBookingService.entity.Route;
+import com.melnikov.TicketBookingService.entity.Ticket;
+
+/**
+ * Получатель изменений таблиц tickets и routes. Вызывается только после фиксации транзакции.
+ */
+public interface TicketChangeListener {
+
+    void onTicketSaved(Ticket ticket);
+
+    /**
+     * @param delta на сколько изменился available_tickets (отрицательное значение — места проданы)
+     */
+    void onAvailabilityChanged(Integer ticketId, Integer routeId, int delta);
+
+    default void onRouteCreated(Route route) {
+    }
+}
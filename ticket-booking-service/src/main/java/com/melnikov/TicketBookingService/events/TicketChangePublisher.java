@@ -0,0 +1,54 @@
+package com.melnikov.TicketBookingService.events;
+
+import com.melnikov.TicketBookingService.entity.Route;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Рассылает изменения tickets и routes всем {@link TicketChangeListener} после фиксации транзакции.
+ * Слушатели берутся лениво, чтобы in-memory структуры могли сами зависеть от DAO.
+ */
+@Slf4j
+@Component
+public class TicketChangePublisher {
+    private final ObjectProvider<TicketChangeListener> listeners;
+
+    public TicketChangePublisher(ObjectProvider<TicketChangeListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    public void ticketSaved(Ticket ticket) {
+        TransactionCallbacks.afterCommit(() -> listeners.orderedStream().forEach(listener -> {
+            try {
+                listener.onTicketSaved(ticket);
+            } catch (RuntimeException e) {
+                log.error("Ticket listener {} failed on save of ticket {}", listener.getClass().getSimpleName(), ticket.getId(), e);
+            }
+        }));
+    }
+
+    public void availabilityChanged(Integer ticketId, Integer routeId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> listeners.orderedStream().forEach(listener -> {
+            try {
+                listener.onAvailabilityChanged(ticketId, routeId, delta);
+            } catch (RuntimeException e) {
+                log.error("Ticket listener {} failed on availability change of ticket {}", listener.getClass().getSimpleName(), ticketId, e);
+            }
+        }));
+    }
+
+    public void routeCreated(Route route) {
+        TransactionCallbacks.afterCommit(() -> listeners.orderedStream().forEach(listener -> {
+            try {
+                listener.onRouteCreated(route);
+            } catch (RuntimeException e) {
+                log.error("Ticket listener {} failed on creation of route {}", listener.getClass().getSimpleName(), route.getId(), e);
+            }
+        }));
+    }
+}
@@ -0,0 +1,7 @@
+package com.melnikov.TicketBookingService.exception;
+
+public class BookingQueueBusyException extends RuntimeException {
+    public BookingQueueBusyException(String message) {
+        super(message);
+    }
+}
@@ -2,7 +2,6 @@ package com.melnikov.TicketBookingService.exception;
 
 import com.fasterxml.jackson.databind.exc.InvalidFormatException;
 import com.melnikov.TicketBookingService.dto.ErrorResponseDto;
-import io.github.resilience4j.ratelimiter.RequestNotPermitted;
 import jakarta.security.auth.message.AuthException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -107,6 +106,33 @@ public class GlobalExceptionHandler {
                 .body(new ErrorResponseDto("INCORRECT_OLD_PASSWORD", ex.getMessage()));
     }
 
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<ErrorResponseDto> handlePasswordHashingBusy(PasswordHashingBusyException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .body(new ErrorResponseDto("SERVICE_BUSY", ex.getMessage()));
+    }
+
+    @ExceptionHandler(BookingQueueBusyException.class)
+    public ResponseEntity<ErrorResponseDto> handleBookingQueueBusy(BookingQueueBusyException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .body(new ErrorResponseDto("SERVICE_BUSY", ex.getMessage()));
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<ErrorResponseDto> handleIdempotencyKeyReused(IdempotencyKeyReusedException ex) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .body(new ErrorResponseDto("IDEMPOTENCY_KEY_REUSED", ex.getMessage()));
+    }
+
+    @ExceptionHandler(TicketUpdateConflictException.class)
+    public ResponseEntity<ErrorResponseDto> handleTicketUpdateConflict(TicketUpdateConflictException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header("Retry-After", "1")
+                .body(new ErrorResponseDto("TICKET_CONTENDED", ex.getMessage()));
+    }
+
     // Добавленный обработчик для IllegalArgumentException с сообщением "Route not found"
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<ErrorResponseDto> handleIllegalArgumentException(IllegalArgumentException ex) {
@@ -118,11 +144,12 @@ public class GlobalExceptionHandler {
                 .body(new ErrorResponseDto("ILLEGAL_ARGUMENT", ex.getMessage()));
     }
 
-    @ExceptionHandler(RequestNotPermitted.class)
-    public ResponseEntity<String> handleRateLimiterException(RequestNotPermitted ex) {
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<String> handleRateLimiterException(RateLimitExceededException ex) {
         return ResponseEntity
                 .status(HttpStatus.TOO_MANY_REQUESTS)
-                .body("Too many requests. Please try again later.");
+                .header("Retry-After", String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ex.getMessage());
     }
 
     @ExceptionHandler(Exception.class)
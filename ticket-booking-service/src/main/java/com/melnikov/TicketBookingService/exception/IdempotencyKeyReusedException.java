@@ -0,0 +1,7 @@
+package com.melnikov.TicketBookingService.exception;
+
+public class IdempotencyKeyReusedException extends RuntimeException {
+    public IdempotencyKeyReusedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.melnikov.TicketBookingService.exception;
+
+import lombok.Getter;
+
+@Getter
+public class RateLimitExceededException extends RuntimeException {
+    private final String policy;
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String policy, long retryAfterSeconds) {
+        super("Too many requests. Please try again later.");
+        this.policy = policy;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,7 @@
+package com.melnikov.TicketBookingService.exception;
+
+public class TicketUpdateConflictException extends RuntimeException {
+    public TicketUpdateConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,165 @@
+package com.melnikov.TicketBookingService.holds;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Иерархическое колесо таймеров для сроков удержания мест.
+ * <p>
+ * Уровень 0 — 64 слота по одному тику, каждый следующий уровень — 64 слота по 64 тика предыдущего.
+ * Тик разбирает один слот нижнего уровня; когда нижний уровень делает оборот, слот следующего уровня
+ * раскладывается вниз. Стоимость тика не зависит от числа удержаний: каждая запись переезжает
+ * не больше чем {@code levels} раз. Срок дальше верхнего уровня кладется в его последний слот
+ * и перекладывается при развороте.
+ * <p>
+ * {@link #schedule} и {@link #cancel} потокобезопасны и только ставят команду в очередь;
+ * {@link #advance} вызывается одним потоком — ему принадлежат слоты.
+ */
+public class HoldTimerWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+
+    private final long tickMillis;
+    private final int levels;
+    private final ArrayDeque<Entry>[][] wheels;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+
+    private long currentTick;
+    private volatile int size;
+
+    @SuppressWarnings("unchecked")
+    public HoldTimerWheel(long tickMillis, int levels, long startMillis) {
+        if (tickMillis <= 0 || levels < 1 || BITS * levels >= Long.SIZE - 1) {
+            throw new IllegalArgumentException("Invalid timer wheel: tick " + tickMillis + " ms, " + levels + " levels");
+        }
+        this.tickMillis = tickMillis;
+        this.levels = levels;
+        this.wheels = new ArrayDeque[levels][SLOTS];
+        for (int level = 0; level < levels; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheels[level][slot] = new ArrayDeque<>();
+            }
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Срок удержания брони; повторный вызов для той же брони заменяет срок.
+     */
+    public void schedule(int bookingId, long deadlineMillis) {
+        // Округление вверх: удержание не снимается раньше срока
+        commands.add(new Command(bookingId, Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis)));
+    }
+
+    /**
+     * Удержание больше не нужно снимать (бронь подтверждена или отменена).
+     */
+    public void cancel(int bookingId) {
+        commands.add(new Command(bookingId, -1));
+    }
+
+    /**
+     * Проходит тики до nowMillis и возвращает брони, чей срок вышел.
+     */
+    public List<Integer> advance(long nowMillis) {
+        List<Integer> due = new ArrayList<>();
+        drainCommands(due);
+
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade(due);
+            ArrayDeque<Entry> slot = wheels[0][(int) (currentTick & MASK)];
+            Entry entry;
+            while ((entry = slot.poll()) != null) {
+                if (!entry.canceled) {
+                    place(entry, due);
+                }
+            }
+        }
+        size = entries.size();
+        return due;
+    }
+
+    /**
+     * Число удержаний в колесе на момент последнего тика.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void drainCommands(List<Integer> due) {
+        Command command;
+        while ((command = commands.poll()) != null) {
+            Entry previous = entries.remove(command.bookingId());
+            if (previous != null) {
+                previous.canceled = true;
+            }
+            if (command.deadlineTick() >= 0) {
+                Entry entry = new Entry(command.bookingId(), command.deadlineTick());
+                entries.put(entry.bookingId, entry);
+                place(entry, due);
+            }
+        }
+    }
+
+    /**
+     * На обороте уровня раскладывает текущий слот следующего уровня на уровни ниже.
+     */
+    private void cascade(List<Integer> due) {
+        for (int level = 1; level < levels; level++) {
+            if ((currentTick & ((1L << (BITS * level)) - 1)) != 0) {
+                return;
+            }
+            ArrayDeque<Entry> slot = wheels[level][(int) ((currentTick >>> (BITS * level)) & MASK)];
+            List<Entry> moved = new ArrayList<>(slot);
+            slot.clear();
+            for (Entry entry : moved) {
+                if (!entry.canceled) {
+                    place(entry, due);
+                }
+            }
+        }
+    }
+
+    private void place(Entry entry, List<Integer> due) {
+        long delta = entry.deadlineTick - currentTick;
+        if (delta <= 0) {
+            entries.remove(entry.bookingId);
+            due.add(entry.bookingId);
+            return;
+        }
+        long slotTick = currentTick + delta;
+        int level = 0;
+        while (level < levels - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        if (delta >= 1L << (BITS * levels)) {
+            slotTick = currentTick + (1L << (BITS * levels)) - 1;
+        }
+        wheels[level][(int) ((slotTick >>> (BITS * level)) & MASK)].add(entry);
+    }
+
+    /**
+     * @param deadlineTick тик срока; -1 — снять удержание с учета
+     */
+    private record Command(int bookingId, long deadlineTick) {
+    }
+
+    private static final class Entry {
+        final int bookingId;
+        final long deadlineTick;
+        boolean canceled;
+
+        Entry(int bookingId, long deadlineTick) {
+            this.bookingId = bookingId;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.melnikov.TicketBookingService.holds;
+
+import com.melnikov.TicketBookingService.dao.BookingDao;
+import com.melnikov.TicketBookingService.entity.Booking;
+import com.melnikov.TicketBookingService.events.TransactionCallbacks;
+import com.melnikov.TicketBookingService.inventory.SeatInventory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Снимает удержания мест неподтвержденных броней (включается bookings.hold.enabled=true).
+ * <p>
+ * Бронь держит места bookings.hold.ttl; сроки лежат в {@link HoldTimerWheel}, тик раз в
+ * bookings.hold.tick-ms. Вышедшие брони отменяются пачками по bookings.hold.batch-size одним
+ * запросом ({@link BookingDao#releaseExpiredHolds}). При старте колесо заполняется из БД, поэтому
+ * удержания переживают рестарт; если узлов несколько, бронь снимет первый, остальные ее пропустят.
+ */
+@Slf4j
+@Component
+public class SeatHoldScheduler {
+    private static final int LEVELS = 4;
+
+    private final BookingDao bookingDao;
+    private final SeatInventory seatInventory;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Duration tick;
+    private final int batchSize;
+    private final HoldTimerWheel wheel;
+
+    private final Counter expired;
+
+    public SeatHoldScheduler(BookingDao bookingDao,
+                             SeatInventory seatInventory,
+                             MeterRegistry meterRegistry,
+                             @Value("${bookings.hold.enabled:false}") boolean enabled,
+                             @Value("${bookings.hold.ttl:15m}") Duration ttl,
+                             @Value("${bookings.hold.tick-ms:1000}") long tickMillis,
+                             @Value("${bookings.hold.batch-size:1000}") int batchSize) {
+        this.bookingDao = bookingDao;
+        this.seatInventory = seatInventory;
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.tick = Duration.ofMillis(tickMillis);
+        this.batchSize = batchSize;
+        this.wheel = new HoldTimerWheel(tickMillis, LEVELS, System.currentTimeMillis());
+
+        this.expired = Counter.builder("bookings.holds.expired")
+                .description("Bookings canceled because their seat hold expired")
+                .register(meterRegistry);
+        Gauge.builder("bookings.holds.scheduled", wheel, HoldTimerWheel::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        Map<Integer, ZonedDateTime> holds = bookingDao.findOutstandingHolds();
+        holds.forEach((bookingId, expiresAt) -> wheel.schedule(bookingId, expiresAt.toInstant().toEpochMilli()));
+        log.info("Seat holds loaded: {} outstanding", holds.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Срок удержания для брони, создаваемой сейчас; null — удержание выключено.
+     */
+    public ZonedDateTime deadline(ZonedDateTime now) {
+        return enabled ? now.plus(ttl) : null;
+    }
+
+    /**
+     * Ставит удержание в колесо после фиксации брони.
+     */
+    public void schedule(Booking booking) {
+        if (!enabled || booking.getHoldExpiresAt() == null) {
+            return;
+        }
+        long deadline = booking.getHoldExpiresAt().toInstant().toEpochMilli();
+        TransactionCallbacks.afterCommit(() -> wheel.schedule(booking.getId(), deadline));
+    }
+
+    /**
+     * Убирает удержание из колеса после фиксации подтверждения или отмены.
+     */
+    public void cancel(Integer bookingId) {
+        if (!enabled) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> wheel.cancel(bookingId));
+    }
+
+    @Scheduled(fixedDelayString = "${bookings.hold.tick-ms:1000}")
+    public void expire() {
+        if (!enabled) {
+            return;
+        }
+        ZonedDateTime now = ZonedDateTime.now();
+        List<Integer> due = wheel.advance(now.toInstant().toEpochMilli());
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<Integer> batch = due.subList(from, Math.min(from + batchSize, due.size()));
+            try {
+                release(batch, now);
+            } catch (DataAccessException e) {
+                log.error("Releasing {} seat holds failed, will retry: {}", batch.size(), e.getMessage());
+                long retryAt = now.plus(tick).toInstant().toEpochMilli();
+                batch.forEach(bookingId -> wheel.schedule(bookingId, retryAt));
+            }
+        }
+    }
+
+    private void release(List<Integer> batch, ZonedDateTime now) {
+        List<Booking> released = bookingDao.releaseExpiredHolds(batch, now);
+        for (Booking booking : released) {
+            // В tickets места уже вернул запрос, счетчику в памяти — только вернуть остаток
+            if (seatInventory.isTracked(booking.getTicketId())) {
+                seatInventory.release(booking.getTicketId(), booking.getTicketQuantity());
+            }
+        }
+        expired.increment(released.size());
+        if (!released.isEmpty()) {
+            log.debug("Released {} expired seat holds", released.size());
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.melnikov.TicketBookingService.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.melnikov.TicketBookingService.dao.IdempotencyKeyDao;
+import com.melnikov.TicketBookingService.entity.IdempotencyRecord;
+import com.melnikov.TicketBookingService.exception.IdempotencyKeyReusedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Повтор запроса с тем же Idempotency-Key получает сохраненный ответ, операция не выполняется снова.
+ * <p>
+ * Ключ занимается строкой idempotency_keys в транзакции самой операции, ответ пишется туда же:
+ * бронь и запись о ней фиксируются вместе. Дубль, пришедший во время выполнения, ждет: на этом узле —
+ * завершения первого запроса в памяти, не занимая соединение; на другом — фиксации строки на вставке.
+ * Выполненные ключи держатся в памяти (idempotency.cache.max-size) и в таблице до idempotency.ttl.
+ * Неудачная операция откатывает и занятый ключ — повтор выполнится заново.
+ */
+@Slf4j
+@Component
+public class IdempotencyStore {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 100;
+    private static final int SEGMENTS = 16;
+
+    private final IdempotencyKeyDao idempotencyKeyDao;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Clock clock;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final ConcurrentHashMap<Key, CompletableFuture<IdempotencyRecord>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter replays;
+
+    public IdempotencyStore(IdempotencyKeyDao idempotencyKeyDao,
+                            PlatformTransactionManager transactionManager,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${idempotency.ttl:24h}") Duration ttl,
+                            @Value("${idempotency.cache.max-size:10000}") int maxSize) {
+        this.idempotencyKeyDao = idempotencyKeyDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.clock = Clock.systemUTC();
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+
+        this.replays = Counter.builder("idempotency.replays")
+                .description("Requests answered with a stored response")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.cache.size", this, IdempotencyStore::size).register(meterRegistry);
+    }
+
+    /**
+     * @param scope   операция (bookings.create, deposits.create): тот же ключ в другой операции отклоняется
+     * @param request тело запроса, по нему проверяется, что ключ повторяют с тем же запросом
+     */
+    public ResponseEntity<?> execute(Long userId, String scope, String idempotencyKey, Object request,
+                                     Supplier<ResponseEntity<?>> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must not exceed " + MAX_KEY_LENGTH + " characters");
+        }
+        Key key = new Key(userId, idempotencyKey);
+        byte[] requestHash = fingerprint(scope, request);
+
+        while (true) {
+            IdempotencyRecord completed = segment(key).get(key);
+            if (completed != null && completed.getExpiresAt().isAfter(clock.instant())) {
+                return replay(completed, requestHash);
+            }
+
+            CompletableFuture<IdempotencyRecord> mine = new CompletableFuture<>();
+            CompletableFuture<IdempotencyRecord> running = inFlight.putIfAbsent(key, mine);
+            if (running == null) {
+                try {
+                    return run(key, scope, requestHash, action, mine);
+                } finally {
+                    inFlight.remove(key, mine);
+                }
+            }
+            // Дубль ждет первое выполнение; если оно упало, пробуем сами
+            IdempotencyRecord record = await(running);
+            if (record != null) {
+                return replay(record, requestHash);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.cleanup-interval-ms:600000}")
+    public void deleteExpired() {
+        Instant now = clock.instant();
+        for (Segment segment : segments) {
+            segment.removeExpired(now);
+        }
+        int deleted = idempotencyKeyDao.deleteExpired(now);
+        log.debug("Expired idempotency keys deleted: {}", deleted);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private ResponseEntity<?> run(Key key, String scope, byte[] requestHash, Supplier<ResponseEntity<?>> action,
+                                  CompletableFuture<IdempotencyRecord> mine) {
+        IdempotencyRecord claim = IdempotencyRecord.builder()
+                .userId(key.userId())
+                .idempotencyKey(key.idempotencyKey())
+                .scope(scope)
+                .requestHash(requestHash)
+                .expiresAt(clock.instant().plus(ttl))
+                .build();
+        Execution execution;
+        try {
+            execution = transactionTemplate.execute(status -> {
+                if (!idempotencyKeyDao.claim(claim)) {
+                    // ключ выполнен раньше, возможно, другим узлом: вставка дождалась его фиксации
+                    IdempotencyRecord stored = idempotencyKeyDao.find(key.userId(), key.idempotencyKey())
+                            .orElseThrow(() -> new IllegalStateException("Idempotency key vanished: " + key));
+                    return new Execution(stored, null);
+                }
+                ResponseEntity<?> response = action.get();
+                IdempotencyRecord record = toRecord(claim, response);
+                idempotencyKeyDao.complete(record);
+                return new Execution(record, response);
+            });
+        } catch (RuntimeException e) {
+            mine.complete(null);
+            throw e;
+        }
+
+        segment(key).put(key, execution.record());
+        mine.complete(execution.record());
+        return execution.response() != null ? execution.response() : replay(execution.record(), requestHash);
+    }
+
+    private ResponseEntity<?> replay(IdempotencyRecord record, byte[] requestHash) {
+        if (!Arrays.equals(record.getRequestHash(), requestHash)) {
+            throw new IdempotencyKeyReusedException(HEADER + " was already used with a different request");
+        }
+        replays.increment();
+        return ResponseEntity.status(record.getStatusCode())
+                .contentType(MediaType.parseMediaType(record.getContentType()))
+                .header(REPLAYED_HEADER, "true")
+                .body(record.getResponseBody());
+    }
+
+    private IdempotencyRecord toRecord(IdempotencyRecord claim, ResponseEntity<?> response) {
+        Object body = response.getBody();
+        String contentType;
+        String responseBody;
+        if (body == null || body instanceof String) {
+            contentType = MediaType.TEXT_PLAIN_VALUE;
+            responseBody = body == null ? "" : (String) body;
+        } else {
+            contentType = MediaType.APPLICATION_JSON_VALUE;
+            responseBody = toJson(body);
+        }
+        return IdempotencyRecord.builder()
+                .userId(claim.getUserId())
+                .idempotencyKey(claim.getIdempotencyKey())
+                .scope(claim.getScope())
+                .requestHash(claim.getRequestHash())
+                .statusCode(response.getStatusCode().value())
+                .contentType(contentType)
+                .responseBody(responseBody)
+                .expiresAt(claim.getExpiresAt())
+                .build();
+    }
+
+    private byte[] fingerprint(String scope, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(scope.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(toJson(request).getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static IdempotencyRecord await(CompletableFuture<IdempotencyRecord> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a duplicate request");
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private Segment segment(Key key) {
+        return segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    private record Key(Long userId, String idempotencyKey) {
+    }
+
+    /**
+     * @param response исходный ответ, если операция выполнена этим запросом; null — ответ из таблицы
+     */
+    private record Execution(IdempotencyRecord record, ResponseEntity<?> response) {
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<Key, IdempotencyRecord> entries;
+
+        Segment(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, IdempotencyRecord> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized IdempotencyRecord get(Key key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(Key key, IdempotencyRecord record) {
+            entries.put(key, record);
+        }
+
+        synchronized void removeExpired(Instant now) {
+            entries.values().removeIf(record -> !record.getExpiresAt().isAfter(now));
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
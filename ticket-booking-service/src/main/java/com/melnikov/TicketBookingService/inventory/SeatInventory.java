@@ -0,0 +1,182 @@
+package com.melnikov.TicketBookingService.inventory;
+
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.events.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Остатки мест по будущим рейсам в памяти (включается inventory.enabled=true).
+ * <p>
+ * Бронь допускается или отклоняется CAS-декрементом счетчика, без блокировки строки tickets.
+ * Принятые изменения копятся как дельты и периодически сбрасываются в tickets одним batch
+ * (write-behind), поэтому available_tickets в БД отстает от счетчиков не более чем
+ * на inventory.flush-interval-ms. При старте счетчики восстанавливаются из БД,
+ * счетчики отправившихся рейсов раз в inventory.prune-interval-ms забываются.
+ * Пока движок включен, места отслеживаемых рейсов должны меняться только через него.
+ */
+@Slf4j
+@Component
+public class SeatInventory {
+    private final TicketDao ticketDao;
+    private final boolean enabled;
+
+    private final ConcurrentHashMap<Integer, AtomicInteger> seats = new ConcurrentHashMap<>();
+    // несброшенные дельты; flush забирает запись целиком, поэтому карта не копит рейсы
+    private final ConcurrentHashMap<Integer, Integer> pendingDeltas = new ConcurrentHashMap<>();
+
+    public SeatInventory(TicketDao ticketDao, @Value("${inventory.enabled:false}") boolean enabled) {
+        this.ticketDao = ticketDao;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        seats.clear();
+        ticketDao.findAvailabilityDepartingAfter(ZonedDateTime.now())
+                .forEach((ticketId, available) -> seats.put(ticketId, new AtomicInteger(available)));
+        log.info("Seat inventory loaded: {} active tickets", seats.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isTracked(Integer ticketId) {
+        return enabled && seats.containsKey(ticketId);
+    }
+
+    public int available(Integer ticketId) {
+        AtomicInteger counter = seats.get(ticketId);
+        return counter == null ? -1 : counter.get();
+    }
+
+    /**
+     * Начинает отслеживать новый рейс. Внутри транзакции — только после ее фиксации.
+     */
+    public void track(Integer ticketId, int available) {
+        if (!enabled) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> seats.putIfAbsent(ticketId, new AtomicInteger(available)));
+    }
+
+    public boolean tryReserve(Integer ticketId, int quantity) {
+        AtomicInteger counter = seats.get(ticketId);
+        if (counter == null) {
+            return false;
+        }
+        int current;
+        do {
+            current = counter.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, current - quantity));
+        return true;
+    }
+
+    public void release(Integer ticketId, int quantity) {
+        AtomicInteger counter = seats.get(ticketId);
+        if (counter != null) {
+            counter.addAndGet(quantity);
+        }
+    }
+
+    /**
+     * Резервирует места на время текущей транзакции: при фиксации списание уходит
+     * в write-behind, при откате места возвращаются в счетчик.
+     */
+    public boolean reserveInTransaction(Integer ticketId, int quantity) {
+        if (!tryReserve(ticketId, quantity)) {
+            return false;
+        }
+        TransactionCallbacks.afterCompletion(committed -> {
+            if (committed) {
+                recordChange(ticketId, -quantity);
+            } else {
+                release(ticketId, quantity);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Возвращает места после фиксации текущей транзакции (отмена брони).
+     */
+    public void releaseInTransaction(Integer ticketId, int quantity) {
+        TransactionCallbacks.afterCommit(() -> {
+            release(ticketId, quantity);
+            recordChange(ticketId, quantity);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.flush-interval-ms:200}")
+    public void flush() {
+        if (!enabled || pendingDeltas.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> batch = new HashMap<>();
+        for (Integer ticketId : pendingDeltas.keySet()) {
+            Integer value = pendingDeltas.remove(ticketId);
+            if (value != null && value != 0) {
+                batch.put(ticketId, value);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            ticketDao.applyAvailabilityDeltas(batch);
+            log.debug("Seat inventory flushed {} tickets", batch.size());
+        } catch (DataAccessException e) {
+            log.error("Seat inventory flush failed, will retry: {}", e.getMessage());
+            batch.forEach(this::recordChange);
+        }
+    }
+
+    /**
+     * Забывает счетчики отправившихся рейсов. Дельты по ним не теряются: они уже лежат
+     * в pendingDeltas и уйдут в БД ближайшим flush, а дальнейшие изменения таких рейсов
+     * идут мимо памяти, прямо в tickets.
+     */
+    @Scheduled(fixedDelayString = "${inventory.prune-interval-ms:600000}")
+    public void pruneDeparted() {
+        if (!enabled || seats.isEmpty()) {
+            return;
+        }
+        try {
+            List<Integer> departed = ticketDao.findDepartedAmong(seats.keySet(), ZonedDateTime.now());
+            departed.forEach(seats::remove);
+            if (!departed.isEmpty()) {
+                log.debug("Seat inventory pruned {} departed tickets", departed.size());
+            }
+        } catch (DataAccessException e) {
+            log.error("Seat inventory prune failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void recordChange(Integer ticketId, int delta) {
+        pendingDeltas.merge(ticketId, delta, Integer::sum);
+    }
+}
@@ -0,0 +1,72 @@
+package com.melnikov.TicketBookingService.inventory;
+
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Шардированные остатки "горячих" рейсов (включаются для рейса через {@link #shard}).
+ * <p>
+ * Остаток такого рейса разбит на K строк ticket_seat_shards, а строка tickets помечена sharded:
+ * DAO по этому флагу списывают и возвращают места в шардах, и параллельные брони не ждут
+ * одну строку tickets. Сервисам о шардах знать не нужно. tickets.available_tickets остается
+ * агрегатом, по которому ищут рейсы: раз в tickets.sharding.refresh-ms в него переносится
+ * сумма шардов, и только тогда изменение расходится слушателям.
+ * Рейсы, места которых считает {@link SeatInventory}, не шардируются.
+ */
+@Slf4j
+@Component
+public class ShardedSeatCounters {
+    private final TicketDao ticketDao;
+    private final SeatInventory seatInventory;
+    private final int maxShards;
+
+    private final AtomicInteger shardedTickets = new AtomicInteger();
+
+    public ShardedSeatCounters(TicketDao ticketDao, SeatInventory seatInventory, MeterRegistry meterRegistry,
+                               @Value("${tickets.sharding.max-shards:64}") int maxShards) {
+        this.ticketDao = ticketDao;
+        this.seatInventory = seatInventory;
+        this.maxShards = maxShards;
+        Gauge.builder("tickets.sharded", shardedTickets, AtomicInteger::get)
+                .description("Tickets whose availability is split across shard rows")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Делит остаток рейса на count шардов (повторный вызов перераспределяет их).
+     * Нужна активная транзакция; брони на всех узлах идут в шарды после ее фиксации.
+     */
+    public void shard(Integer ticketId, int count) {
+        if (count < 1 || count > maxShards) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + maxShards);
+        }
+        if (seatInventory.isTracked(ticketId)) {
+            throw new IllegalStateException("Ticket seats are tracked in memory and cannot be sharded");
+        }
+        if (!ticketDao.splitAvailability(ticketId, count)) {
+            throw new IllegalArgumentException("Ticket not found");
+        }
+        log.info("Ticket {} availability split into {} shards", ticketId, count);
+    }
+
+    @Scheduled(fixedDelayString = "${tickets.sharding.refresh-ms:500}")
+    public void refresh() {
+        try {
+            shardedTickets.set(ticketDao.countSharded());
+            if (shardedTickets.get() > 0) {
+                int updated = ticketDao.refreshShardedAvailability();
+                log.debug("Sharded availability refreshed for {} tickets", updated);
+            }
+        } catch (DataAccessException e) {
+            log.error("Sharded availability refresh failed, will retry: {}", e.getMessage());
+        }
+    }
+}
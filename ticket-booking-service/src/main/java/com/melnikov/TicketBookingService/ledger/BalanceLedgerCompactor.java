@@ -0,0 +1,45 @@
+package com.melnikov.TicketBookingService.ledger;
+
+import com.melnikov.TicketBookingService.dao.BalanceLedgerDao;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Периодически сворачивает журнал баланса в снимки users.balance (balance.compaction.*),
+ * чтобы подсчет баланса читал короткий хвост, а не всю историю пользователя.
+ * Строки users блокируются только здесь, пачкой и в фоне, а не на каждое движение денег.
+ */
+@Slf4j
+@Component
+public class BalanceLedgerCompactor {
+    private final BalanceLedgerDao balanceLedgerDao;
+    private final int batchSize;
+    private final Counter compacted;
+
+    public BalanceLedgerCompactor(BalanceLedgerDao balanceLedgerDao, MeterRegistry meterRegistry,
+                                  @Value("${balance.compaction.batch-size:5000}") int batchSize) {
+        this.balanceLedgerDao = balanceLedgerDao;
+        this.batchSize = batchSize;
+        this.compacted = Counter.builder("balance.ledger.compacted")
+                .description("Ledger entries folded into balance snapshots")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${balance.compaction.interval-ms:10000}")
+    public void compact() {
+        int total = 0;
+        int folded;
+        do {
+            folded = balanceLedgerDao.compact(batchSize);
+            total += folded;
+        } while (folded == batchSize);
+        compacted.increment(total);
+        if (total > 0) {
+            log.debug("Folded {} balance ledger entries into snapshots", total);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.melnikov.TicketBookingService.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket на каждую пару (политика, клиент).
+ * <p>
+ * Бакет хранится как одно число — момент, когда он станет полным (GCRA): запрос сдвигает его на
+ * интервал восстановления одного токена и проходит, если сдвиг не превышает емкость.
+ * Обновление — CAS без блокировок. Бакеты разложены по сегментам, фоновая очистка удаляет
+ * полностью восстановившиеся и простаивающие дольше ratelimit.idle-timeout,
+ * так что память растет с числом активных клиентов, а не всех когда-либо приходивших.
+ */
+@Slf4j
+@Component
+public class KeyedRateLimiter {
+    private static final int SEGMENTS = 16;
+
+    private final Map<String, Limit> limits = new HashMap<>();
+    private final long idleTimeoutNanos;
+    private final LongSupplier clock;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<String, AtomicLong>[] segments = new ConcurrentHashMap[SEGMENTS];
+
+    @Autowired
+    public KeyedRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    public KeyedRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.idleTimeoutNanos = properties.getIdleTimeout().toNanos();
+        this.clock = clock;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new ConcurrentHashMap<>();
+        }
+
+        properties.getPolicies().forEach((name, policy) -> {
+            if (policy.getCapacity() <= 0 || policy.getRefillTokens() <= 0) {
+                throw new IllegalArgumentException("Rate limit policy " + name + " must have positive capacity and refill");
+            }
+            long interval = policy.getRefillPeriod().toNanos() / policy.getRefillTokens();
+            Counter rejected = Counter.builder("ratelimit.rejected").tag("policy", name)
+                    .description("Requests rejected by the rate limiter")
+                    .register(meterRegistry);
+            limits.put(name, new Limit(interval, interval * policy.getCapacity(), rejected));
+        });
+        Gauge.builder("ratelimit.buckets", this, KeyedRateLimiter::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return 0, если запрос пропущен, иначе сколько наносекунд ждать до следующего токена
+     */
+    public long tryAcquire(String policy, String clientKey) {
+        Limit limit = limits.get(policy);
+        if (limit == null) {
+            throw new IllegalStateException("Unknown rate limit policy: " + policy);
+        }
+        String key = policy + '|' + clientKey;
+        long now = clock.getAsLong();
+        AtomicLong fullAt = segment(key).computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + limit.interval;
+            long overflow = next - now - limit.burst;
+            if (overflow > 0) {
+                limit.rejected.increment();
+                return overflow;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ratelimit.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long threshold = clock.getAsLong() - idleTimeoutNanos;
+        int evicted = 0;
+        for (ConcurrentHashMap<String, AtomicLong> segment : segments) {
+            int before = segment.size();
+            segment.values().removeIf(fullAt -> fullAt.get() < threshold);
+            evicted += before - segment.size();
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rate limit buckets", evicted);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, AtomicLong> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private ConcurrentHashMap<String, AtomicLong> segment(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private record Limit(long interval, long burst, Counter rejected) {
+    }
+}
@@ -0,0 +1,28 @@
+package com.melnikov.TicketBookingService.ratelimit;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "ratelimit")
+public class RateLimitProperties {
+    private boolean enabled = true;
+    // бакет, полностью восстановившийся и не использовавшийся столько времени, удаляется
+    private Duration idleTimeout = Duration.ofMinutes(10);
+    private Map<String, Policy> policies = new HashMap<>();
+
+    @Data
+    public static class Policy {
+        // сколько запросов можно сделать подряд
+        private int capacity;
+        // сколько запросов восстанавливается за period
+        private int refillTokens;
+        private Duration refillPeriod = Duration.ofSeconds(1);
+    }
+}
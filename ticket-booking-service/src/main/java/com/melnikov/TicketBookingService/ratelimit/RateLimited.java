@@ -0,0 +1,21 @@
+package com.melnikov.TicketBookingService.ratelimit;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Ограничение частоты вызовов метода контроллера. Бакет свой у каждого клиента:
+ * у аутентифицированного — по id пользователя, у анонимного — по IP.
+ *
+ * @see RateLimitProperties политики и их лимиты
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+    /**
+     * Имя политики из ratelimit.policies.*
+     */
+    String value();
+}
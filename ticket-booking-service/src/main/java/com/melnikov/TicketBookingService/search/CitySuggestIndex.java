@@ -0,0 +1,155 @@
+package com.melnikov.TicketBookingService.search;
+
+import com.melnikov.TicketBookingService.dao.RouteDao;
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Route;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.events.TicketChangeListener;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Префиксный индекс городов для подсказок.
+ * <p>
+ * Ключи — нормализованные (нижний регистр, ё -> е) название города и каждое его слово,
+ * чтобы "петер" находил "Санкт-Петербург". Ключи лежат в отсортированном массиве,
+ * префикс находится бинарным поиском. Вес города — число билетов на маршрутах через него;
+ * веса меняются на месте, массив пересобирается только при появлении нового города.
+ */
+@Slf4j
+@Component
+public class CitySuggestIndex implements TicketChangeListener {
+    private final RouteDao routeDao;
+    private final TicketDao ticketDao;
+
+    private final ConcurrentHashMap<String, AtomicInteger> weights = new ConcurrentHashMap<>();
+    private volatile Key[] keys = new Key[0];
+
+    public CitySuggestIndex(RouteDao routeDao, TicketDao ticketDao) {
+        this.routeDao = routeDao;
+        this.ticketDao = ticketDao;
+    }
+
+    @PostConstruct
+    public void load() {
+        Map<Integer, Integer> ticketsByRoute = ticketDao.countByRoute();
+        Map<String, Integer> loaded = new HashMap<>();
+        for (Route route : routeDao.findAll()) {
+            int tickets = ticketsByRoute.getOrDefault(route.getId(), 0);
+            loaded.merge(route.getDepartureCity(), tickets, Integer::sum);
+            loaded.merge(route.getArrivalCity(), tickets, Integer::sum);
+        }
+        synchronized (this) {
+            weights.clear();
+            loaded.forEach((city, tickets) -> weights.put(city, new AtomicInteger(tickets)));
+            rebuild();
+        }
+        log.info("City suggest index loaded: {} cities", weights.size());
+    }
+
+    /**
+     * Города, название или слово названия которых начинается с prefix, по убыванию числа билетов.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        Key[] current = keys;
+        // один город может совпасть и целиком, и по слову
+        Map<String, Suggestion> byCity = new HashMap<>();
+        for (int i = lowerBound(current, normalized); i < current.length && current[i].key().startsWith(normalized); i++) {
+            Key match = current[i];
+            byCity.putIfAbsent(match.city(), new Suggestion(match.city(), match.weight().get()));
+        }
+        List<Suggestion> result = new ArrayList<>(byCity.values());
+        result.sort(Comparator.comparingInt(Suggestion::tickets).reversed().thenComparing(Suggestion::city));
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    @Override
+    public void onRouteCreated(Route route) {
+        addCity(route.getDepartureCity());
+        addCity(route.getArrivalCity());
+    }
+
+    @Override
+    public void onTicketSaved(Ticket ticket) {
+        routeDao.findById(ticket.getRouteId()).ifPresent(route -> {
+            addCity(route.getDepartureCity()).incrementAndGet();
+            addCity(route.getArrivalCity()).incrementAndGet();
+        });
+    }
+
+    @Override
+    public void onAvailabilityChanged(Integer ticketId, Integer routeId, int delta) {
+        // число билетов маршрута от продаж не меняется
+    }
+
+    static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    private AtomicInteger addCity(String city) {
+        AtomicInteger weight = weights.get(city);
+        if (weight != null) {
+            return weight;
+        }
+        synchronized (this) {
+            weight = weights.get(city);
+            if (weight == null) {
+                weight = new AtomicInteger();
+                weights.put(city, weight);
+                rebuild();
+            }
+            return weight;
+        }
+    }
+
+    private void rebuild() {
+        List<Key> built = new ArrayList<>();
+        weights.forEach((city, weight) -> {
+            String name = normalize(city);
+            built.add(new Key(name, city, weight));
+            for (String word : name.split("[\\s-]+")) {
+                if (!word.isEmpty() && !word.equals(name)) {
+                    built.add(new Key(word, city, weight));
+                }
+            }
+        });
+        Key[] sorted = built.toArray(new Key[0]);
+        Arrays.sort(sorted, Comparator.comparing(Key::key));
+        keys = sorted;
+    }
+
+    private static int lowerBound(Key[] keys, String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].key().compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public record Suggestion(String city, int tickets) {
+    }
+
+    private record Key(String key, String city, AtomicInteger weight) {
+    }
+}
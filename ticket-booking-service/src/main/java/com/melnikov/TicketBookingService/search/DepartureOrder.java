@@ -0,0 +1,35 @@
+package com.melnikov.TicketBookingService.search;
+
+/**
+ * Общий порядок рейсов в in-memory индексах: параллельные массивы отправлений (epoch-second)
+ * и id, отсортированные по (departure, id) — тот же ключ, что у курсора и ORDER BY в SQL.
+ */
+final class DepartureOrder {
+
+    private DepartureOrder() {
+    }
+
+    /**
+     * Позиция (dep, id) среди первых size элементов или -(точка вставки) - 1,
+     * как в {@link java.util.Arrays#binarySearch}.
+     */
+    static int find(long[] departure, int[] ids, int size, long dep, int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compare(departure[mid], dep);
+            if (cmp == 0) {
+                cmp = Integer.compare(ids[mid], id);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,203 @@
+package com.melnikov.TicketBookingService.search;
+
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.events.TicketChangeListener;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Дневные агрегаты по маршрутам для календаря цен: минимальная цена среди рейсов с местами,
+ * сумма свободных мест и число отправлений на каждый день и тип транспорта.
+ * <p>
+ * Агрегаты обновляются на каждом изменении tickets (создание рейса, изменение остатка),
+ * запрос календаря только читает готовые корзины. Минимум держится мультимножеством цен,
+ * поэтому распроданный самый дешевый рейс просто уходит из него.
+ * Прошедшие дни периодически вычищаются, как отправившиеся рейсы в {@link ItineraryGraph}.
+ */
+@Slf4j
+@Component
+public class FareCalendar implements TicketChangeListener {
+    private final TicketDao ticketDao;
+    private final boolean enabled;
+    private final ZoneId zone;
+
+    private final ConcurrentHashMap<Integer, RouteCalendar> routes = new ConcurrentHashMap<>();
+    // ticketId -> положение рейса в агрегатах и его текущий остаток
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    public FareCalendar(TicketDao ticketDao,
+                        @Value("${tickets.calendar.enabled:true}") boolean enabled,
+                        @Value("${tickets.calendar.zone:Europe/Moscow}") ZoneId zone) {
+        this.ticketDao = ticketDao;
+        this.enabled = enabled;
+        this.zone = zone;
+    }
+
+    @PostConstruct
+    public void load() {
+        routes.clear();
+        entries.clear();
+        if (!enabled) {
+            return;
+        }
+        for (Ticket ticket : ticketDao.findDepartingFrom(LocalDate.now(zone).atStartOfDay(zone))) {
+            add(ticket);
+        }
+        log.info("Fare calendar loaded: {} routes, {} tickets", routes.size(), entries.size());
+    }
+
+    /**
+     * Дни маршрута в [from, to] по порядку, внутри дня — по типу транспорта.
+     *
+     * @param transportTypeId тип транспорта или null — все типы
+     */
+    public List<Day> days(Integer routeId, LocalDate from, LocalDate to, Integer transportTypeId) {
+        RouteCalendar calendar = enabled ? routes.get(routeId) : null;
+        if (calendar == null) {
+            return List.of();
+        }
+        return calendar.days(from, to, transportTypeId);
+    }
+
+    @Override
+    public void onTicketSaved(Ticket ticket) {
+        if (enabled && !day(ticket).isBefore(LocalDate.now(zone))) {
+            add(ticket);
+        }
+    }
+
+    @Override
+    public void onAvailabilityChanged(Integer ticketId, Integer routeId, int delta) {
+        Entry entry = enabled ? entries.get(ticketId) : null;
+        if (entry == null) {
+            return;
+        }
+        routes.get(entry.routeId).changeAvailability(entry, delta);
+    }
+
+    /**
+     * Убирает прошедшие дни вместе с их рейсами: календарь спрашивают только о будущих датах.
+     */
+    @Scheduled(fixedDelayString = "${tickets.calendar.evict-interval-ms:3600000}")
+    public void evictPastDays() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate today = LocalDate.now(zone);
+        for (RouteCalendar calendar : routes.values()) {
+            calendar.dropBefore(today);
+        }
+        entries.values().removeIf(entry -> entry.day.isBefore(today));
+    }
+
+    private void add(Ticket ticket) {
+        Entry entry = new Entry(ticket.getRouteId(), day(ticket), ticket.getTransportTypeId(),
+                ticket.getPrice(), ticket.getAvailableTickets());
+        routes.computeIfAbsent(ticket.getRouteId(), id -> new RouteCalendar()).add(ticket.getId(), entry);
+    }
+
+    private LocalDate day(Ticket ticket) {
+        return ticket.getDepartureTime().withZoneSameInstant(zone).toLocalDate();
+    }
+
+    public record Day(LocalDate date, int transportTypeId, Integer minPrice, int availableTickets, int departures) {
+    }
+
+    private static final class Entry {
+        final int routeId;
+        final LocalDate day;
+        final int transportTypeId;
+        final int price;
+        int available; // под монитором RouteCalendar
+
+        Entry(int routeId, LocalDate day, int transportTypeId, int price, int available) {
+            this.routeId = routeId;
+            this.day = day;
+            this.transportTypeId = transportTypeId;
+            this.price = price;
+            this.available = available;
+        }
+    }
+
+    /**
+     * Корзина (день, тип транспорта).
+     */
+    private static final class Bucket {
+        // цена -> число рейсов с местами по этой цене
+        final TreeMap<Integer, Integer> bookablePrices = new TreeMap<>();
+        int available;
+        int departures;
+
+        void addBookable(int price) {
+            bookablePrices.merge(price, 1, Integer::sum);
+        }
+
+        void removeBookable(int price) {
+            bookablePrices.computeIfPresent(price, (p, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    private final class RouteCalendar {
+        private final TreeMap<LocalDate, Map<Integer, Bucket>> days = new TreeMap<>();
+
+        // запись в entries под монитором маршрута: изменение остатка не увидит рейс раньше его корзины
+        synchronized void add(Integer ticketId, Entry entry) {
+            if (entries.putIfAbsent(ticketId, entry) != null) {
+                return;
+            }
+            Bucket bucket = days.computeIfAbsent(entry.day, d -> new HashMap<>())
+                    .computeIfAbsent(entry.transportTypeId, t -> new Bucket());
+            bucket.departures++;
+            bucket.available += entry.available;
+            if (entry.available > 0) {
+                bucket.addBookable(entry.price);
+            }
+        }
+
+        synchronized void changeAvailability(Entry entry, int delta) {
+            Map<Integer, Bucket> day = days.get(entry.day);
+            if (day == null) {
+                return; // день уже вычищен, рейс уйдет из entries следом
+            }
+            Bucket bucket = day.get(entry.transportTypeId);
+            int before = entry.available;
+            entry.available += delta;
+            bucket.available += delta;
+            if (before > 0 && entry.available <= 0) {
+                bucket.removeBookable(entry.price);
+            } else if (before <= 0 && entry.available > 0) {
+                bucket.addBookable(entry.price);
+            }
+        }
+
+        synchronized void dropBefore(LocalDate today) {
+            days.headMap(today).clear();
+        }
+
+        synchronized List<Day> days(LocalDate from, LocalDate to, Integer transportTypeId) {
+            List<Day> result = new ArrayList<>();
+            for (Map.Entry<LocalDate, Map<Integer, Bucket>> day : days.subMap(from, true, to, true).entrySet()) {
+                new TreeMap<>(day.getValue()).forEach((typeId, bucket) -> {
+                    if (transportTypeId == null || transportTypeId.equals(typeId)) {
+                        Integer minPrice = bucket.bookablePrices.isEmpty() ? null : bucket.bookablePrices.firstKey();
+                        result.add(new Day(day.getKey(), typeId, minPrice, bucket.available, bucket.departures));
+                    }
+                });
+            }
+            return result;
+        }
+    }
+}
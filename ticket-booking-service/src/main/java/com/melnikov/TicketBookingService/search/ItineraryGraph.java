@@ -0,0 +1,487 @@
+package com.melnikov.TicketBookingService.search;
+
+import com.melnikov.TicketBookingService.dao.RouteDao;
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Route;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.events.TicketChangeListener;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Граф маршрутов и будущих рейсов в памяти для поиска стыковок (itinerary.enabled).
+ * <p>
+ * Вершины — города, ребра — маршруты; у каждого маршрута рейсы лежат в неизменяемых массивах,
+ * отсортированных по (departure epoch-second, id), и заменяются целиком при добавлении рейса.
+ * Остатки мест меняются на месте, поэтому поиск читает без блокировок.
+ * <p>
+ * Поиск перебирает рейсы с ветвями и границами: следующий сегмент берется только по маршрутам,
+ * откуда еще достижим город назначения, окно пересадки находится бинарным поиском,
+ * а ветка отбрасывается, как только ее длительность (или цена) хуже худшего из найденных top-N.
+ */
+@Slf4j
+@Component
+public class ItineraryGraph implements TicketChangeListener {
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    public enum SortOrder {
+        DURATION, PRICE
+    }
+
+    private final TicketDao ticketDao;
+    private final RouteDao routeDao;
+    private final boolean enabled;
+    private final long minLayover;
+    private final long maxLayover;
+
+    private final ConcurrentHashMap<String, Integer> cityIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextCityId = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, RouteEdge> routes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, RouteEdge> routesByCities = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, List<RouteEdge>> outgoing = new ConcurrentHashMap<>();
+    // город -> города, из которых в него есть маршрут
+    private final ConcurrentHashMap<Integer, Set<Integer>> predecessors = new ConcurrentHashMap<>();
+    // ticketId -> (маршрут, отправление), чтобы найти рейс бинарным поиском при изменении остатка
+    private final ConcurrentHashMap<Integer, Location> locations = new ConcurrentHashMap<>();
+
+    public ItineraryGraph(TicketDao ticketDao, RouteDao routeDao,
+                          @Value("${itinerary.enabled:true}") boolean enabled,
+                          @Value("${itinerary.min-layover:45m}") Duration minLayover,
+                          @Value("${itinerary.max-layover:24h}") Duration maxLayover) {
+        this.ticketDao = ticketDao;
+        this.routeDao = routeDao;
+        this.enabled = enabled;
+        this.minLayover = minLayover.toSeconds();
+        this.maxLayover = maxLayover.toSeconds();
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        for (Route route : routeDao.findAll()) {
+            edge(route);
+        }
+
+        long now = Instant.now().getEpochSecond();
+        Map<Integer, List<Ticket>> byRoute = new HashMap<>();
+        for (Ticket ticket : ticketDao.findAll()) {
+            if (ticket.getDepartureTime().toEpochSecond() >= now) {
+                byRoute.computeIfAbsent(ticket.getRouteId(), id -> new ArrayList<>()).add(ticket);
+            }
+        }
+        int tickets = 0;
+        for (Map.Entry<Integer, List<Ticket>> entry : byRoute.entrySet()) {
+            RouteEdge edge = routes.get(entry.getKey());
+            if (edge == null) {
+                continue;
+            }
+            edge.load(entry.getValue());
+            for (Ticket ticket : entry.getValue()) {
+                locations.put(ticket.getId(), new Location(edge.routeId, ticket.getDepartureTime().toEpochSecond()));
+            }
+            tickets += entry.getValue().size();
+        }
+        log.info("Itinerary graph loaded: {} cities, {} routes, {} tickets", cityIds.size(), routes.size(), tickets);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Лучшие маршруты из from в to с первым отправлением в [start, end] и не более maxStops пересадками.
+     * Каждый элемент результата — сегменты в порядке следования.
+     */
+    public List<List<Ticket>> search(String from, String to, ZonedDateTime start, ZonedDateTime end,
+                                     int maxStops, SortOrder order, int limit) {
+        Integer origin = cityIds.get(from);
+        Integer destination = cityIds.get(to);
+        if (!enabled || origin == null || destination == null || origin.equals(destination)) {
+            return List.of();
+        }
+
+        Search search = new Search(origin, destination, order, limit);
+        search.run(start.toEpochSecond(), end.toEpochSecond(), maxStops);
+        return search.results();
+    }
+
+    @Override
+    public void onTicketSaved(Ticket ticket) {
+        if (!enabled || ticket.getDepartureTime().toEpochSecond() < Instant.now().getEpochSecond()) {
+            return;
+        }
+        RouteEdge edge = routes.get(ticket.getRouteId());
+        if (edge == null) {
+            Route route = routeDao.findById(ticket.getRouteId()).orElse(null);
+            if (route == null) {
+                return;
+            }
+            edge = edge(route);
+        }
+        long departure = ticket.getDepartureTime().toEpochSecond();
+        if (locations.putIfAbsent(ticket.getId(), new Location(edge.routeId, departure)) == null) {
+            edge.insert(ticket);
+        }
+    }
+
+    @Override
+    public void onAvailabilityChanged(Integer ticketId, Integer routeId, int delta) {
+        if (!enabled) {
+            return;
+        }
+        Location location = locations.get(ticketId);
+        if (location == null) {
+            return;
+        }
+        RouteEdge edge = routes.get(location.routeId());
+        if (edge != null) {
+            edge.addAvailability(location.departure(), ticketId, delta);
+        }
+    }
+
+    /**
+     * Убирает уже отправившиеся рейсы, чтобы граф не рос бесконечно.
+     */
+    @Scheduled(fixedDelayString = "${itinerary.evict-interval-ms:3600000}")
+    public void evictDeparted() {
+        if (!enabled) {
+            return;
+        }
+        long now = Instant.now().getEpochSecond();
+        for (RouteEdge edge : routes.values()) {
+            for (int ticketId : edge.dropDepartedBefore(now)) {
+                locations.remove(ticketId);
+            }
+        }
+    }
+
+    private RouteEdge edge(Route route) {
+        return routes.computeIfAbsent(route.getId(), id -> {
+            int from = cityId(route.getDepartureCity());
+            int to = cityId(route.getArrivalCity());
+            RouteEdge edge = new RouteEdge(id, from, to, route.getDepartureCity(), route.getArrivalCity());
+            routesByCities.put(pair(from, to), edge);
+            outgoing.computeIfAbsent(from, city -> new CopyOnWriteArrayList<>()).add(edge);
+            predecessors.computeIfAbsent(to, city -> ConcurrentHashMap.newKeySet()).add(from);
+            return edge;
+        });
+    }
+
+    private int cityId(String city) {
+        return cityIds.computeIfAbsent(city, name -> nextCityId.getAndIncrement());
+    }
+
+    private static long pair(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+
+    private record Location(int routeId, long departure) {
+    }
+
+    private record Hop(RouteEdge edge, Legs legs, int pos) {
+    }
+
+    private record Candidate(Hop[] hops, long departure, long arrival, int price) {
+        long duration() {
+            return arrival - departure;
+        }
+    }
+
+    /**
+     * Состояние одного поиска: top-N кандидатов в куче, худший сверху.
+     */
+    private final class Search {
+        private final int origin;
+        private final int destination;
+        private final SortOrder order;
+        private final int limit;
+        private final Comparator<Candidate> comparator;
+        private final PriorityQueue<Candidate> best;
+        private final Set<Integer> beforeDestination;
+
+        Search(int origin, int destination, SortOrder order, int limit) {
+            this.origin = origin;
+            this.destination = destination;
+            this.order = order;
+            this.limit = limit;
+            Comparator<Candidate> byDuration = Comparator.comparingLong(Candidate::duration);
+            Comparator<Candidate> byPrice = Comparator.comparingInt(Candidate::price);
+            this.comparator = (order == SortOrder.PRICE ? byPrice.thenComparing(byDuration) : byDuration.thenComparing(byPrice))
+                    .thenComparingLong(Candidate::departure);
+            this.best = new PriorityQueue<>(limit + 1, comparator.reversed());
+            this.beforeDestination = predecessors.getOrDefault(destination, Set.of());
+        }
+
+        void run(long start, long end, int maxStops) {
+            for (RouteEdge first : outgoing.getOrDefault(origin, List.of())) {
+                boolean direct = first.to == destination;
+                boolean oneStop = !direct && maxStops >= 1 && beforeDestination.contains(first.to);
+                boolean twoStops = !direct && maxStops >= 2;
+                if (!direct && !oneStop && !twoStops) {
+                    continue;
+                }
+
+                Legs legs = first.legs;
+                for (int i = legs.lowerBound(start); i < legs.size && legs.departure[i] <= end; i++) {
+                    if (legs.available.get(i) <= 0) {
+                        continue;
+                    }
+                    Hop hop = new Hop(first, legs, i);
+                    long departure = legs.departure[i];
+                    if (direct) {
+                        offer(new Hop[]{hop}, departure, legs.arrival[i], legs.price[i]);
+                        continue;
+                    }
+                    if (pruned(departure, legs.arrival[i], legs.price[i])) {
+                        continue;
+                    }
+                    if (oneStop) {
+                        finish(new Hop[]{hop}, first.to, departure, legs.arrival[i], legs.price[i]);
+                    }
+                    if (twoStops) {
+                        viaSecondCity(hop, first.to, departure, legs.arrival[i], legs.price[i]);
+                    }
+                }
+            }
+        }
+
+        private void viaSecondCity(Hop firstHop, int city, long departure, long arrival, int price) {
+            for (RouteEdge second : outgoing.getOrDefault(city, List.of())) {
+                int next = second.to;
+                if (next == origin || next == destination || !beforeDestination.contains(next)) {
+                    continue;
+                }
+                Legs legs = second.legs;
+                for (int j = legs.lowerBound(arrival + minLayover);
+                     j < legs.size && legs.departure[j] <= arrival + maxLayover; j++) {
+                    if (order == SortOrder.DURATION && pruned(departure, legs.departure[j], price)) {
+                        break; // дальше отправления только позже
+                    }
+                    if (legs.available.get(j) <= 0 || pruned(departure, legs.arrival[j], price + legs.price[j])) {
+                        continue;
+                    }
+                    finish(new Hop[]{firstHop, new Hop(second, legs, j)}, next,
+                            departure, legs.arrival[j], price + legs.price[j]);
+                }
+            }
+        }
+
+        private void finish(Hop[] hops, int city, long departure, long arrival, int price) {
+            RouteEdge last = routesByCities.get(pair(city, destination));
+            if (last == null) {
+                return;
+            }
+            Legs legs = last.legs;
+            for (int k = legs.lowerBound(arrival + minLayover);
+                 k < legs.size && legs.departure[k] <= arrival + maxLayover; k++) {
+                if (order == SortOrder.DURATION && pruned(departure, legs.departure[k], price)) {
+                    break;
+                }
+                if (legs.available.get(k) <= 0) {
+                    continue;
+                }
+                Hop[] full = Arrays.copyOf(hops, hops.length + 1);
+                full[hops.length] = new Hop(last, legs, k);
+                offer(full, departure, legs.arrival[k], price + legs.price[k]);
+            }
+        }
+
+        /**
+         * Частичный маршрут уже не лучше худшего из top-N: длительность и цена только растут.
+         */
+        private boolean pruned(long departure, long arrival, int price) {
+            if (best.size() < limit) {
+                return false;
+            }
+            Candidate worst = best.peek();
+            return order == SortOrder.PRICE
+                    ? price > worst.price()
+                    : arrival - departure > worst.duration();
+        }
+
+        private void offer(Hop[] hops, long departure, long arrival, int price) {
+            Candidate candidate = new Candidate(hops, departure, arrival, price);
+            if (best.size() < limit) {
+                best.add(candidate);
+            } else if (comparator.compare(candidate, best.peek()) < 0) {
+                best.poll();
+                best.add(candidate);
+            }
+        }
+
+        List<List<Ticket>> results() {
+            List<Candidate> sorted = new ArrayList<>(best);
+            sorted.sort(comparator);
+            List<List<Ticket>> itineraries = new ArrayList<>(sorted.size());
+            for (Candidate candidate : sorted) {
+                List<Ticket> legs = new ArrayList<>(candidate.hops().length);
+                for (Hop hop : candidate.hops()) {
+                    legs.add(hop.legs().toTicket(hop.edge(), hop.pos()));
+                }
+                itineraries.add(legs);
+            }
+            return itineraries;
+        }
+    }
+
+    /**
+     * Маршрут графа. Запись под монитором маршрута, чтение — через volatile-снимок.
+     */
+    private static final class RouteEdge {
+        private final int routeId;
+        private final int from;
+        private final int to;
+        private final String departureCity;
+        private final String arrivalCity;
+        private volatile Legs legs = Legs.EMPTY;
+
+        RouteEdge(int routeId, int from, int to, String departureCity, String arrivalCity) {
+            this.routeId = routeId;
+            this.from = from;
+            this.to = to;
+            this.departureCity = departureCity;
+            this.arrivalCity = arrivalCity;
+        }
+
+        synchronized void load(List<Ticket> tickets) {
+            tickets.sort(Comparator.comparingLong((Ticket t) -> t.getDepartureTime().toEpochSecond())
+                    .thenComparingInt(Ticket::getId));
+            Legs next = new Legs(tickets.size());
+            for (int i = 0; i < tickets.size(); i++) {
+                next.set(i, tickets.get(i));
+            }
+            legs = next;
+        }
+
+        synchronized void insert(Ticket ticket) {
+            Legs current = legs;
+            int pos = current.find(ticket.getDepartureTime().toEpochSecond(), ticket.getId());
+            if (pos >= 0) {
+                return;
+            }
+            pos = -(pos + 1);
+            Legs next = new Legs(current.size + 1);
+            next.copyFrom(current, 0, 0, pos);
+            next.set(pos, ticket);
+            next.copyFrom(current, pos, pos + 1, current.size - pos);
+            legs = next;
+        }
+
+        synchronized void addAvailability(long departure, int ticketId, int delta) {
+            Legs current = legs;
+            int pos = current.find(departure, ticketId);
+            if (pos >= 0) {
+                current.available.addAndGet(pos, delta);
+            }
+        }
+
+        synchronized int[] dropDepartedBefore(long now) {
+            Legs current = legs;
+            int cut = current.lowerBound(now);
+            if (cut == 0) {
+                return new int[0];
+            }
+            Legs next = new Legs(current.size - cut);
+            next.copyFrom(current, cut, 0, next.size);
+            legs = next;
+            return Arrays.copyOf(current.ids, cut);
+        }
+    }
+
+    /**
+     * Рейсы маршрута в параллельных массивах.
+     */
+    private static final class Legs {
+        static final Legs EMPTY = new Legs(0);
+
+        final long[] departure;
+        final long[] arrival;
+        final int[] ids;
+        final int[] price;
+        final byte[] type;
+        final AtomicIntegerArray available;
+        final int size;
+
+        Legs(int size) {
+            this.size = size;
+            this.departure = new long[size];
+            this.arrival = new long[size];
+            this.ids = new int[size];
+            this.price = new int[size];
+            this.type = new byte[size];
+            this.available = new AtomicIntegerArray(size);
+        }
+
+        void set(int i, Ticket ticket) {
+            departure[i] = ticket.getDepartureTime().toEpochSecond();
+            arrival[i] = ticket.getArrivalTime().toEpochSecond();
+            ids[i] = ticket.getId();
+            price[i] = ticket.getPrice();
+            type[i] = (byte) ticket.getTransportTypeId().intValue();
+            available.set(i, ticket.getAvailableTickets());
+        }
+
+        void copyFrom(Legs source, int from, int to, int length) {
+            System.arraycopy(source.departure, from, departure, to, length);
+            System.arraycopy(source.arrival, from, arrival, to, length);
+            System.arraycopy(source.ids, from, ids, to, length);
+            System.arraycopy(source.price, from, price, to, length);
+            System.arraycopy(source.type, from, type, to, length);
+            for (int i = 0; i < length; i++) {
+                available.set(to + i, source.available.get(from + i));
+            }
+        }
+
+        /**
+         * Первый рейс с отправлением не раньше time.
+         */
+        int lowerBound(long time) {
+            int pos = find(time, Integer.MIN_VALUE);
+            return pos >= 0 ? pos : -(pos + 1);
+        }
+
+        /**
+         * Индекс ребра по (dep, id): точное совпадение для обновления остатка,
+         * точка вставки — для нового рейса и для отсечения отправившихся.
+         */
+        int find(long dep, int id) {
+            return DepartureOrder.find(departure, ids, size, dep, id);
+        }
+
+        Ticket toTicket(RouteEdge edge, int i) {
+            Ticket ticket = new Ticket();
+            ticket.setId(ids[i]);
+            ticket.setRouteId(edge.routeId);
+            ticket.setDepartureCity(edge.departureCity);
+            ticket.setArrivalCity(edge.arrivalCity);
+            ticket.setTransportTypeId((int) type[i]);
+            ticket.setDepartureTime(Instant.ofEpochSecond(departure[i]).atZone(UTC));
+            ticket.setArrivalTime(Instant.ofEpochSecond(arrival[i]).atZone(UTC));
+            ticket.setPrice(price[i]);
+            ticket.setAvailableTickets(available.get(i));
+            return ticket;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.melnikov.TicketBookingService.search;
+
+import com.melnikov.TicketBookingService.dto.TicketSearchRequestDto;
+import com.melnikov.TicketBookingService.dto.TicketSearchResponseDto;
+import com.melnikov.TicketBookingService.services.TicketService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-flight перед {@link TicketService#searchTickets} (tickets.search.coalescing.enabled).
+ * <p>
+ * Одинаковые запросы, пришедшие пока первый еще выполняется, не идут в БД, а ждут его результат
+ * (или его исключение). Ожидающие держат только поток, соединение из пула занимает один запрос.
+ * Стоит снаружи транзакции searchTickets, иначе соединение бралось бы еще до ожидания.
+ */
+@Component
+public class TicketSearchCoalescer {
+    private final TicketService ticketService;
+    private final boolean enabled;
+
+    private final ConcurrentHashMap<TicketSearchRequestDto, CompletableFuture<TicketSearchResponseDto>> inFlight =
+            new ConcurrentHashMap<>();
+
+    private final Counter executed;
+    private final Counter collapsed;
+
+    public TicketSearchCoalescer(TicketService ticketService, MeterRegistry meterRegistry,
+                                 @Value("${tickets.search.coalescing.enabled:true}") boolean enabled) {
+        this.ticketService = ticketService;
+        this.enabled = enabled;
+
+        this.executed = Counter.builder("tickets.search.coalescing.requests").tag("result", "executed")
+                .description("Searches that ran against the database")
+                .register(meterRegistry);
+        this.collapsed = Counter.builder("tickets.search.coalescing.requests").tag("result", "collapsed")
+                .description("Searches that reused a concurrent identical search")
+                .register(meterRegistry);
+        Gauge.builder("tickets.search.coalescing.in-flight", inFlight, ConcurrentHashMap::size)
+                .register(meterRegistry);
+    }
+
+    public TicketSearchResponseDto search(TicketSearchRequestDto request) {
+        if (!enabled) {
+            return ticketService.searchTickets(request);
+        }
+
+        CompletableFuture<TicketSearchResponseDto> own = new CompletableFuture<>();
+        CompletableFuture<TicketSearchResponseDto> running = inFlight.putIfAbsent(request, own);
+        if (running != null) {
+            collapsed.increment();
+            return await(running);
+        }
+
+        executed.increment();
+        try {
+            TicketSearchResponseDto response = ticketService.searchTickets(request);
+            own.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(request, own);
+        }
+    }
+
+    private static TicketSearchResponseDto await(CompletableFuture<TicketSearchResponseDto> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // Ожидающие получают то же исключение, что и выполнивший запрос (например, "Route not found")
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
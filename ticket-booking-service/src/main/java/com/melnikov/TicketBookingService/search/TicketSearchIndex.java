@@ -0,0 +1,281 @@
+package com.melnikov.TicketBookingService.search;
+
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.events.TicketChangeListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory индекс поиска билетов (tickets.search.mode=memory).
+ * <p>
+ * Для каждого маршрута билеты лежат в параллельных примитивных массивах,
+ * отсортированных по (departure epoch-second, id). Курсор (lastDepartureTime, lastId)
+ * находится бинарным поиском, пропущенные строки не создают объектов —
+ * {@link Ticket} создается только для строк, попавших в страницу.
+ * Фильтры повторяют SQL-путь: с типом транспорта проданные рейсы отсекаются, без типа — нет.
+ */
+@Slf4j
+@Component
+public class TicketSearchIndex implements TicketChangeListener {
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final int NO_TYPE = -1;
+
+    private final TicketDao ticketDao;
+    private final boolean enabled;
+
+    private final ConcurrentHashMap<Integer, RouteColumns> routes = new ConcurrentHashMap<>();
+    // ticketId -> (маршрут, отправление), чтобы найти строку бинарным поиском при изменении остатка
+    private final ConcurrentHashMap<Integer, Location> locations = new ConcurrentHashMap<>();
+
+    public TicketSearchIndex(TicketDao ticketDao, MeterRegistry meterRegistry,
+                             @Value("${tickets.search.mode:sql}") String mode) {
+        this.ticketDao = ticketDao;
+        this.enabled = "memory".equalsIgnoreCase(mode);
+
+        Gauge.builder("tickets.search.index.tickets", this, index -> index.footprint().tickets())
+                .description("Tickets held by the in-memory search index")
+                .register(meterRegistry);
+        Gauge.builder("tickets.search.index.bytes", this, index -> index.footprint().bytes())
+                .description("Estimated heap used by the in-memory search index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        routes.clear();
+        locations.clear();
+        for (Ticket ticket : ticketDao.findAll()) {
+            add(ticket);
+        }
+        IndexFootprint footprint = footprint();
+        log.info("Ticket search index loaded: {} routes, {} tickets, ~{} KiB",
+                footprint.routes(), footprint.tickets(), footprint.bytes() / 1024);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Страница билетов маршрута в порядке (departure_time, id) строго после курсора.
+     *
+     * @param transportTypeId тип транспорта или null — без фильтра
+     */
+    public List<Ticket> search(Integer transportTypeId, Integer routeId, ZonedDateTime startTime, ZonedDateTime endTime,
+                               ZonedDateTime lastDepartureTime, int lastId, int pageSize) {
+        RouteColumns columns = routes.get(routeId);
+        if (columns == null) {
+            return List.of();
+        }
+        return columns.search(transportTypeId == null ? NO_TYPE : transportTypeId,
+                startTime.toEpochSecond(), endTime.toEpochSecond(),
+                lastDepartureTime.toEpochSecond(), lastId, pageSize);
+    }
+
+    public IndexFootprint footprint() {
+        long bytes = 0;
+        int tickets = 0;
+        for (RouteColumns columns : routes.values()) {
+            bytes += columns.footprintBytes();
+            tickets += columns.size();
+        }
+        // ConcurrentHashMap.Node + Integer + Location на каждый билет
+        bytes += (long) locations.size() * 80;
+        return new IndexFootprint(routes.size(), tickets, bytes);
+    }
+
+    @Override
+    public void onTicketSaved(Ticket ticket) {
+        if (enabled) {
+            add(ticket);
+        }
+    }
+
+    @Override
+    public void onAvailabilityChanged(Integer ticketId, Integer routeId, int delta) {
+        if (!enabled) {
+            return;
+        }
+        Location location = locations.get(ticketId);
+        if (location == null) {
+            return;
+        }
+        RouteColumns columns = routes.get(location.routeId());
+        if (columns != null) {
+            columns.addAvailability(location.departure(), ticketId, delta);
+        }
+    }
+
+    private void add(Ticket ticket) {
+        Location location = new Location(ticket.getRouteId(), ticket.getDepartureTime().toEpochSecond());
+        if (locations.putIfAbsent(ticket.getId(), location) != null) {
+            return;
+        }
+        routes.computeIfAbsent(ticket.getRouteId(), RouteColumns::new).insert(ticket);
+    }
+
+    public record IndexFootprint(int routes, int tickets, long bytes) {
+    }
+
+    private record Location(int routeId, long departure) {
+    }
+
+    /**
+     * Колонки одного маршрута. Запись копирует хвост массивов, чтение идет под read-lock.
+     */
+    private static final class RouteColumns {
+        private static final int INITIAL_CAPACITY = 16;
+        // departure + arrival (long) + id + price + available (int) + type (short)
+        private static final int BYTES_PER_ROW = 8 + 8 + 4 + 4 + 4 + 2;
+
+        private final int routeId;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private long[] departure = new long[INITIAL_CAPACITY];
+        private long[] arrival = new long[INITIAL_CAPACITY];
+        private int[] ids = new int[INITIAL_CAPACITY];
+        private int[] price = new int[INITIAL_CAPACITY];
+        private int[] available = new int[INITIAL_CAPACITY];
+        private short[] type = new short[INITIAL_CAPACITY];
+        private int size;
+
+        RouteColumns(int routeId) {
+            this.routeId = routeId;
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return size;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long footprintBytes() {
+            lock.readLock().lock();
+            try {
+                return (long) ids.length * BYTES_PER_ROW + 6 * 16 + 64;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void insert(Ticket ticket) {
+            long dep = ticket.getDepartureTime().toEpochSecond();
+            int id = ticket.getId();
+            int typeId = ticket.getTransportTypeId();
+            if (typeId < 0 || typeId > Short.MAX_VALUE) {
+                // иначе id типа молча обрежется и фильтр по типу начнет врать
+                throw new IllegalStateException("Transport type id " + typeId + " does not fit the search index");
+            }
+            lock.writeLock().lock();
+            try {
+                if (size == ids.length) {
+                    grow();
+                }
+                int pos = -(find(dep, id) + 1);
+                if (pos < 0) {
+                    return; // уже есть
+                }
+                int tail = size - pos;
+                System.arraycopy(departure, pos, departure, pos + 1, tail);
+                System.arraycopy(arrival, pos, arrival, pos + 1, tail);
+                System.arraycopy(ids, pos, ids, pos + 1, tail);
+                System.arraycopy(price, pos, price, pos + 1, tail);
+                System.arraycopy(available, pos, available, pos + 1, tail);
+                System.arraycopy(type, pos, type, pos + 1, tail);
+                departure[pos] = dep;
+                arrival[pos] = ticket.getArrivalTime().toEpochSecond();
+                ids[pos] = id;
+                price[pos] = ticket.getPrice();
+                available[pos] = ticket.getAvailableTickets();
+                type[pos] = (short) typeId;
+                size++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void addAvailability(long dep, int ticketId, int delta) {
+            lock.writeLock().lock();
+            try {
+                int pos = find(dep, ticketId);
+                if (pos >= 0) {
+                    available[pos] += delta;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<Ticket> search(int typeId, long start, long end, long cursorDeparture, int cursorId, int limit) {
+            List<Ticket> page = new ArrayList<>(limit);
+            lock.readLock().lock();
+            try {
+                // первая строка строго после курсора и не раньше start
+                int afterCursor = upperBound(cursorDeparture, cursorId);
+                int fromStart = -(find(start, Integer.MIN_VALUE) + 1);
+                int i = Math.max(afterCursor, fromStart);
+                for (; i < size && departure[i] <= end && page.size() < limit; i++) {
+                    if (typeId != NO_TYPE && (type[i] != typeId || available[i] <= 0)) {
+                        continue;
+                    }
+                    page.add(toTicket(i));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return page;
+        }
+
+        private Ticket toTicket(int i) {
+            Ticket ticket = new Ticket();
+            ticket.setId(ids[i]);
+            ticket.setRouteId(routeId);
+            ticket.setTransportTypeId((int) type[i]);
+            ticket.setDepartureTime(Instant.ofEpochSecond(departure[i]).atZone(UTC));
+            ticket.setArrivalTime(Instant.ofEpochSecond(arrival[i]).atZone(UTC));
+            ticket.setPrice(price[i]);
+            ticket.setAvailableTickets(available[i]);
+            return ticket;
+        }
+
+        private int find(long dep, int id) {
+            return DepartureOrder.find(departure, ids, size, dep, id);
+        }
+
+        private int upperBound(long dep, int id) {
+            int pos = find(dep, id);
+            return pos >= 0 ? pos + 1 : -(pos + 1);
+        }
+
+        private void grow() {
+            int capacity = ids.length + (ids.length >> 1);
+            departure = Arrays.copyOf(departure, capacity);
+            arrival = Arrays.copyOf(arrival, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            price = Arrays.copyOf(price, capacity);
+            available = Arrays.copyOf(available, capacity);
+            type = Arrays.copyOf(type, capacity);
+        }
+    }
+}
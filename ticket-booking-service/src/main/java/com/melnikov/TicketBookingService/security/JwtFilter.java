@@ -1,7 +1,6 @@
 package com.melnikov.TicketBookingService.security;
 
 import com.melnikov.TicketBookingService.services.JwtService;
-import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -12,7 +11,6 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -24,9 +22,11 @@ import java.util.List;
 @Component
 public class JwtFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
+    private final TokenRevocationList tokenRevocationList;
 
-    public JwtFilter(JwtService jwtService) {
+    public JwtFilter(JwtService jwtService, TokenRevocationList tokenRevocationList) {
         this.jwtService = jwtService;
+        this.tokenRevocationList = tokenRevocationList;
     }
 
     @Override
@@ -46,7 +46,7 @@ public class JwtFilter extends OncePerRequestFilter {
             String authHeader = request.getHeader("Authorization");
 
             if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-                log.warn("Missing or invalid Authorization header. Header: {}", authHeader);
+                log.debug("Missing or invalid Authorization header");
                 chain.doFilter(request, response);
                 return;
             }
@@ -54,11 +54,16 @@ public class JwtFilter extends OncePerRequestFilter {
             String token = authHeader.substring(7);
             log.debug("JWT token found. Token length: {}", token.length());
 
-            Claims claims = jwtService.extractClaims(token); // Здесь может быть ExpiredJwtException
-
-            String email = claims.getSubject();
-            Integer roleId = claims.get("roleId", Integer.class);
-            log.info("Authenticating user. Email: {}, RoleID: {}", email, roleId);
+            // Токен разбирается один раз, дальше контроллеры берут JwtPrincipal через @AuthenticationPrincipal
+            JwtPrincipal principal = jwtService.parseAccessToken(token); // Здесь может быть ExpiredJwtException
+            if (tokenRevocationList.isRevoked(principal.userId(), principal.sessionGeneration())) {
+                log.debug("Revoked token for user: {}", principal.userId());
+                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                response.setContentType("application/json");
+                response.getWriter().write("{\"code\": \"TOKEN_REVOKED\", \"message\": \"Token has been revoked\"}");
+                return;
+            }
+            Integer roleId = principal.roleId();
 
             List<GrantedAuthority> authorities = switch (roleId) {
                 case 1 -> List.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
@@ -66,13 +71,12 @@ public class JwtFilter extends OncePerRequestFilter {
                 default -> Collections.emptyList();
             };
 
-            User user = new User(email, "", authorities);
             UsernamePasswordAuthenticationToken authentication =
-                    new UsernamePasswordAuthenticationToken(user, null, authorities);
+                    new UsernamePasswordAuthenticationToken(principal, null, authorities);
             authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
             SecurityContextHolder.getContext().setAuthentication(authentication);
-            log.info("Authenticated user: {} with roles: {}", email, authorities);
+            log.debug("Authenticated user: {} with roles: {}", principal.email(), authorities);
 
         } catch (ExpiredJwtException e) {
             log.error("JWT token expired: {}", e.getMessage());
@@ -0,0 +1,184 @@
+package com.melnikov.TicketBookingService.security;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Ключи ES256 (P-256) для подписи и проверки JWT, выбираются по kid из заголовка.
+ * <p>
+ * Ключи лежат в jwt.keys.dir: {@code <kid>.pub} — открытый ключ (X.509 PEM), {@code <kid>.key} — закрытый
+ * (PKCS#8 PEM). Узлу, который только проверяет токены, достаточно .pub. Каталог перечитывается по расписанию,
+ * ключи разбираются только при загрузке, запрос получает готовый {@link ECPublicKey} из неизменяемой карты.
+ * <p>
+ * Ротация без повторных входов: новая пара кладется на все узлы, подписывать ей начинают через
+ * jwt.keys.activation-delay, когда ее .pub уже подхватили остальные. Старый .pub удаляется не раньше,
+ * чем истекут выданные им access-токены (jwt.access.expiration).
+ * Без каталога генерируется временная пара — годится только для одного узла и разработки.
+ */
+@Slf4j
+@Component
+public class JwtKeyRing {
+    private final String dir;
+    private final Duration activationDelay;
+    private final Clock clock;
+
+    private volatile Ring ring;
+
+    public JwtKeyRing(@Value("${jwt.keys.dir:}") String dir,
+                      @Value("${jwt.keys.activation-delay:2m}") Duration activationDelay) {
+        this(dir, activationDelay, Clock.systemUTC());
+    }
+
+    public JwtKeyRing(String dir, Duration activationDelay, Clock clock) {
+        this.dir = dir;
+        this.activationDelay = activationDelay;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (dir == null || dir.isBlank()) {
+            ring = ephemeralRing();
+            log.warn("jwt.keys.dir is not set, using an ephemeral signing key {}: tokens will not survive a restart "
+                    + "and will not be accepted by other nodes", ring.signingKid);
+            return;
+        }
+        ring = readRing(Path.of(dir));
+        log.info("JWT key ring loaded: {} verification keys, signing with {}", ring.publicKeys.size(), ring.signingKid);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.keys.reload-interval-ms:60000}")
+    public void reload() {
+        if (dir == null || dir.isBlank()) {
+            return;
+        }
+        try {
+            Ring loaded = readRing(Path.of(dir));
+            if (!loaded.publicKeys.keySet().equals(ring.publicKeys.keySet())
+                    || !Objects.equals(loaded.signingKid, ring.signingKid)) {
+                log.info("JWT key ring changed: keys {}, signing with {}", loaded.publicKeys.keySet(), loaded.signingKid);
+            }
+            ring = loaded;
+        } catch (RuntimeException e) {
+            // битый файл при ротации не должен ломать проверку токенов текущими ключами
+            log.error("JWT key ring reload failed, keeping previous keys: {}", e.getMessage());
+        }
+    }
+
+    public SigningKey signingKey() {
+        Ring current = ring;
+        if (current.signingKid == null) {
+            throw new IllegalStateException("No JWT signing key on this node");
+        }
+        return new SigningKey(current.signingKid, current.signingKey);
+    }
+
+    /**
+     * @return открытый ключ или null, если kid неизвестен
+     */
+    public ECPublicKey verificationKey(String kid) {
+        return ring.publicKeys.get(kid);
+    }
+
+    public Map<String, ECPublicKey> publicKeys() {
+        return ring.publicKeys;
+    }
+
+    private Ring readRing(Path directory) {
+        Map<String, ECPublicKey> publicKeys = new TreeMap<>();
+        Map<String, PrivateKey> privateKeys = new TreeMap<>();
+        Map<String, Instant> published = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".pub")) {
+                    String kid = name.substring(0, name.length() - ".pub".length());
+                    publicKeys.put(kid, (ECPublicKey) keyFactory().generatePublic(new X509EncodedKeySpec(pem(file))));
+                    published.put(kid, Files.getLastModifiedTime(file).toInstant());
+                } else if (name.endsWith(".key")) {
+                    String kid = name.substring(0, name.length() - ".key".length());
+                    privateKeys.put(kid, keyFactory().generatePrivate(new PKCS8EncodedKeySpec(pem(file))));
+                }
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot read JWT keys from " + directory, e);
+        }
+
+        // подписываем самым новым ключом, который остальные узлы уже успели подхватить;
+        // если таких нет (первый запуск) — самым новым из имеющихся
+        Instant activeBefore = clock.instant().minus(activationDelay);
+        String signingKid = null;
+        String newestKid = null;
+        for (String kid : privateKeys.keySet()) {
+            if (!publicKeys.containsKey(kid)) {
+                throw new IllegalStateException("JWT key " + kid + " has no " + kid + ".pub");
+            }
+            if (newestKid == null || published.get(kid).isAfter(published.get(newestKid))) {
+                newestKid = kid;
+            }
+            if (!published.get(kid).isAfter(activeBefore)
+                    && (signingKid == null || published.get(kid).isAfter(published.get(signingKid)))) {
+                signingKid = kid;
+            }
+        }
+        if (signingKid == null) {
+            signingKid = newestKid;
+        }
+        return new Ring(Map.copyOf(publicKeys), signingKid, signingKid == null ? null : privateKeys.get(signingKid));
+    }
+
+    private static byte[] pem(Path file) throws IOException {
+        String base64 = Files.readString(file, StandardCharsets.US_ASCII)
+                .replaceAll("-----[A-Z ]+-----", "")
+                .replaceAll("\\s", "");
+        return Base64.getDecoder().decode(base64);
+    }
+
+    private static KeyFactory keyFactory() throws GeneralSecurityException {
+        return KeyFactory.getInstance("EC");
+    }
+
+    private static Ring ephemeralRing() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            KeyPair pair = generator.generateKeyPair();
+            String kid = "ephemeral-" + UUID.randomUUID();
+            return new Ring(Map.of(kid, (ECPublicKey) pair.getPublic()), kid, pair.getPrivate());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("EC P-256 is not available", e);
+        }
+    }
+
+    public record SigningKey(String kid, PrivateKey privateKey) {
+    }
+
+    private record Ring(Map<String, ECPublicKey> publicKeys, String signingKid, PrivateKey signingKey) {
+    }
+}
@@ -0,0 +1,11 @@
+package com.melnikov.TicketBookingService.security;
+
+/**
+ * Аутентифицированный пользователь из access-токена. Создается в {@link JwtFilter} один раз на запрос,
+ * контроллеры получают его через {@code @AuthenticationPrincipal}.
+ *
+ * @param roleId   1 - admin, 2 - user
+ * @param sessionGeneration поколение сессий пользователя, в котором выдан токен
+ */
+public record JwtPrincipal(Long userId, String email, Integer roleId, long sessionGeneration) {
+}
@@ -0,0 +1,187 @@
+package com.melnikov.TicketBookingService.security;
+
+import com.melnikov.TicketBookingService.exception.PasswordHashingBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt на отдельном ограниченном пуле (auth.password.*).
+ * <p>
+ * Потоков не больше числа ядер, очередь ограничена: при переполнении запрос сразу получает
+ * {@link PasswordHashingBusyException} (503), а не занимает поток Tomcat на сотни миллисекунд.
+ * Cost подбирается при старте под target-latency; хеши с меньшим cost пересчитываются при входе.
+ */
+@Slf4j
+@Component
+public class PasswordHasher {
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d\\d)\\$");
+
+    private final ThreadPoolExecutor executor;
+    private final BCryptPasswordEncoder encoder;
+    private final int cost;
+
+    private final Timer queueTimer;
+    private final Timer hashTimer;
+    private final Counter rejected;
+
+    public PasswordHasher(MeterRegistry meterRegistry,
+                          @Value("${auth.password.threads:0}") int threads,
+                          @Value("${auth.password.queue-capacity:64}") int queueCapacity,
+                          @Value("${auth.password.target-latency:250ms}") Duration targetLatency,
+                          @Value("${auth.password.min-cost:10}") int minCost,
+                          @Value("${auth.password.max-cost:14}") int maxCost) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "password-hasher-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.cost = calibrate(targetLatency, minCost, maxCost);
+        this.encoder = new BCryptPasswordEncoder(cost);
+        log.info("Password hashing: bcrypt cost {}, {} threads, queue {}", cost, poolSize, queueCapacity);
+
+        this.queueTimer = Timer.builder("auth.password.queue")
+                .description("Time a hashing task waited for a free hasher thread")
+                .register(meterRegistry);
+        this.hashTimer = Timer.builder("auth.password.hash")
+                .description("BCrypt encode/matches duration")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.password.rejected")
+                .description("Hashing requests rejected because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.queue.depth", executor, e -> e.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("auth.password.bcrypt.cost", () -> cost)
+                .register(meterRegistry);
+    }
+
+    public String hash(String rawPassword) {
+        return await(submit(() -> encoder.encode(rawPassword)));
+    }
+
+    public boolean matches(String rawPassword, String passwordHash) {
+        return await(submit(() -> encoder.matches(rawPassword, passwordHash)));
+    }
+
+    /**
+     * Хеш посчитан с cost меньше текущего.
+     */
+    public boolean needsRehash(String passwordHash) {
+        Matcher matcher = BCRYPT_COST.matcher(passwordHash);
+        return !matcher.find() || Integer.parseInt(matcher.group(1)) < cost;
+    }
+
+    /**
+     * Пересчет хеша в фоне: вход не ждет второй BCrypt. Если пул занят — пересчитаем при следующем входе.
+     */
+    public CompletableFuture<String> rehashAsync(String rawPassword) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            long submitted = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    result.complete(timed(submitted, () -> encoder.encode(rawPassword)));
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        long submitted = System.nanoTime();
+        try {
+            return executor.submit(() -> timed(submitted, task));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingBusyException("Authentication service is busy, try again later");
+        }
+    }
+
+    private <T> T timed(long submitted, Callable<T> task) throws Exception {
+        long started = System.nanoTime();
+        queueTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+        try {
+            return task.call();
+        } finally {
+            hashTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new PasswordHashingBusyException("Password hashing interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Каждая единица cost удваивает время, поэтому берем min-cost и добавляем log2(target / замер).
+     */
+    private static int calibrate(Duration targetLatency, int minCost, int maxCost) {
+        if (minCost >= maxCost) {
+            return minCost;
+        }
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(minCost);
+        probe.encode("calibration"); // прогрев
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long started = System.nanoTime();
+            probe.encode("calibration");
+            best = Math.min(best, System.nanoTime() - started);
+        }
+        int cost = minCost;
+        long expected = best;
+        while (cost < maxCost && expected * 2 <= targetLatency.toNanos()) {
+            expected *= 2;
+            cost++;
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,180 @@
+package com.melnikov.TicketBookingService.security;
+
+import com.melnikov.TicketBookingService.dao.RefreshTokenDao;
+import com.melnikov.TicketBookingService.entity.RefreshSession;
+import com.melnikov.TicketBookingService.entity.RefreshToken;
+import com.melnikov.TicketBookingService.events.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Refresh-токены в памяти поверх refresh_tokens (write-through).
+ * <p>
+ * Ключ — SHA-256 токена (32 байта), значение — владелец с ролью и сроком, так что /auth/refresh
+ * обходится одним поиском в памяти. Таблица остается источником истины: промах читается из нее
+ * одним запросом с join на users, удаление идет сразу в обе стороны, новая запись попадает
+ * в память после фиксации транзакции. Вход и выход на другом узле удаляют токены только из его
+ * памяти и таблицы; сюда о них приходит отзыв поколения через {@link TokenRevocationList} — записи
+ * старых поколений сбрасываются, а попавшаяся до этого перепроверяется в таблице.
+ */
+@Slf4j
+@Component
+public class RefreshTokenStore {
+    private static final int SHARDS = 16;
+
+    private final RefreshTokenDao refreshTokenDao;
+    private final TokenRevocationList tokenRevocationList;
+    private final Clock clock;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<TokenKey, RefreshSession>[] shards = new ConcurrentHashMap[SHARDS];
+    // userId -> его токены, чтобы вход и выход не перебирали все шарды
+    private final ConcurrentHashMap<Long, Set<TokenKey>> byUser = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RefreshTokenStore(RefreshTokenDao refreshTokenDao, TokenRevocationList tokenRevocationList) {
+        this(refreshTokenDao, tokenRevocationList, Clock.systemDefaultZone());
+    }
+
+    public RefreshTokenStore(RefreshTokenDao refreshTokenDao, TokenRevocationList tokenRevocationList, Clock clock) {
+        this.refreshTokenDao = refreshTokenDao;
+        this.tokenRevocationList = tokenRevocationList;
+        this.clock = clock;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+        tokenRevocationList.addRefreshRevocationListener(this::evictRevoked);
+    }
+
+    public void save(RefreshToken refreshToken, String email, Integer roleId, long sessionGeneration) {
+        refreshTokenDao.save(refreshToken);
+        RefreshSession session = RefreshSession.builder()
+                .userId(refreshToken.getUserId())
+                .email(email)
+                .roleId(roleId)
+                .expiryDate(refreshToken.getExpiryDate())
+                .sessionGeneration(sessionGeneration)
+                .build();
+        TokenKey key = new TokenKey(refreshToken.getTokenHash());
+        TransactionCallbacks.afterCommit(() -> put(key, session));
+    }
+
+    public Optional<RefreshSession> find(byte[] tokenHash) {
+        TokenKey key = new TokenKey(tokenHash);
+        RefreshSession cached = shard(key).get(key);
+        if (cached != null) {
+            if (!tokenRevocationList.isRefreshRevoked(cached.getUserId(), cached.getSessionGeneration())) {
+                return Optional.of(cached);
+            }
+            remove(key, cached.getUserId());
+        }
+        Optional<RefreshSession> loaded = refreshTokenDao.findSessionByToken(tokenHash);
+        loaded.ifPresent(session -> put(key, session));
+        return loaded;
+    }
+
+    public void deleteByUserId(Long userId) {
+        refreshTokenDao.deleteByUserId(userId);
+        Set<TokenKey> keys = byUser.remove(userId);
+        if (keys != null) {
+            keys.forEach(key -> shard(key).remove(key));
+        }
+    }
+
+    /**
+     * Сбрасывает закешированные токены пользователя из поколений раньше minGeneration.
+     */
+    void evictRevoked(Long userId, long minGeneration) {
+        Set<TokenKey> keys = byUser.get(userId);
+        if (keys == null) {
+            return;
+        }
+        for (TokenKey key : keys) {
+            RefreshSession cached = shard(key).get(key);
+            if (cached != null && cached.getSessionGeneration() < minGeneration) {
+                remove(key, userId);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.refresh.evict-interval-ms:600000}")
+    public void evictExpired() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        int evicted = 0;
+        for (ConcurrentHashMap<TokenKey, RefreshSession> shard : shards) {
+            for (var it = shard.entrySet().iterator(); it.hasNext(); ) {
+                var mapEntry = it.next();
+                if (mapEntry.getValue().getExpiryDate().isBefore(now)) {
+                    it.remove();
+                    forgetUserKey(mapEntry.getValue().getUserId(), mapEntry.getKey());
+                    evicted++;
+                }
+            }
+        }
+        int deleted = refreshTokenDao.deleteExpired(now);
+        log.debug("Expired refresh tokens evicted: {} in memory, {} in database", evicted, deleted);
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<TokenKey, RefreshSession> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    private void put(TokenKey key, RefreshSession session) {
+        byUser.computeIfAbsent(session.getUserId(), id -> ConcurrentHashMap.newKeySet()).add(key);
+        shard(key).put(key, session);
+    }
+
+    private void remove(TokenKey key, Long userId) {
+        shard(key).remove(key);
+        forgetUserKey(userId, key);
+    }
+
+    private void forgetUserKey(Long userId, TokenKey key) {
+        byUser.computeIfPresent(userId, (id, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private ConcurrentHashMap<TokenKey, RefreshSession> shard(TokenKey key) {
+        return shards[key.hash & (SHARDS - 1)];
+    }
+
+    /**
+     * Байты SHA-256 равномерны, первые четыре и есть хеш ключа.
+     */
+    private static final class TokenKey {
+        private final byte[] bytes;
+        private final int hash;
+
+        TokenKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = bytes.length >= 4
+                    ? (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff)
+                    : Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TokenKey other && Arrays.equals(bytes, other.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
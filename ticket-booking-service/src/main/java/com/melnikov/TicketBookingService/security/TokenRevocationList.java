@@ -0,0 +1,136 @@
+package com.melnikov.TicketBookingService.security;
+
+import com.melnikov.TicketBookingService.dao.RevokedTokenDao;
+import com.melnikov.TicketBookingService.entity.SessionRevocation;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Отозванные access-токены. У пользователя есть поколение сессий (users.session_generation), токен несет
+ * поколение, в котором выдан; отзыв начинает новое поколение, и токены из более ранних недействительны.
+ * {@link JwtFilter} проверяет поколение в памяти, без обращения к БД. Порядок задает счетчик в строке
+ * пользователя, а не часы: токен, выданный сразу после отзыва, уже из нового поколения, даже в ту же секунду.
+ * <p>
+ * Отзыв пишется в revoked_tokens, остальные узлы подхватывают его фоновым обновлением
+ * (jwt.revocation.refresh-interval-ms). Через срок жизни access-токена все токены старых поколений
+ * истекли сами, такие записи удаляются и из памяти, и из таблицы.
+ * <p>
+ * Вход тоже начинает новое поколение, но отзывает только refresh-токены (min_refresh_generation):
+ * старые access-токены живут до своего срока. Refresh-токены живут дольше строки отзыва, поэтому
+ * узел, узнав о таком отзыве, сразу сообщает подписчикам ({@link RefreshTokenStore}) — те сбрасывают
+ * закешированные токены старых поколений, а не ждут обращения к ним.
+ */
+@Slf4j
+@Component
+public class TokenRevocationList {
+    private final RevokedTokenDao revokedTokenDao;
+    private final long accessTtlMillis;
+    private final Clock clock;
+
+    private final ConcurrentHashMap<Long, Revocation> revocations = new ConcurrentHashMap<>();
+    // (userId, minRefreshGeneration) при каждом новом отзыве refresh-токенов
+    private final List<BiConsumer<Long, Long>> refreshRevocationListeners = new CopyOnWriteArrayList<>();
+
+    public TokenRevocationList(RevokedTokenDao revokedTokenDao,
+                               @Value("${jwt.access.expiration}") long accessExpiration) {
+        this(revokedTokenDao, accessExpiration, Clock.systemUTC());
+    }
+
+    public TokenRevocationList(RevokedTokenDao revokedTokenDao, long accessExpiration, Clock clock) {
+        this.revokedTokenDao = revokedTokenDao;
+        this.accessTtlMillis = accessExpiration;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void load() {
+        refresh();
+        log.info("Token revocation list loaded: {} users", revocations.size());
+    }
+
+    /**
+     * @param sessionGeneration поколение, в котором выдан токен
+     */
+    public boolean isRevoked(Long userId, long sessionGeneration) {
+        Revocation revocation = revocations.get(userId);
+        return revocation != null && sessionGeneration < revocation.minGeneration;
+    }
+
+    /**
+     * @param sessionGeneration поколение, в котором закеширован refresh-токен
+     */
+    public boolean isRefreshRevoked(Long userId, long sessionGeneration) {
+        Revocation revocation = revocations.get(userId);
+        return revocation != null && sessionGeneration < revocation.minRefreshGeneration;
+    }
+
+    public void addRefreshRevocationListener(BiConsumer<Long, Long> listener) {
+        refreshRevocationListeners.add(listener);
+    }
+
+    /**
+     * Отзывает все access-токены пользователя из поколений раньше newGeneration.
+     *
+     * @param newGeneration только что начатое поколение ({@code UserDao#nextSessionGeneration})
+     */
+    public void revokeAll(Long userId, long newGeneration) {
+        long expiresAt = clock.millis() + accessTtlMillis;
+        revokedTokenDao.revokeBefore(userId, newGeneration, newGeneration, Instant.ofEpochMilli(expiresAt));
+        merge(userId, new SessionRevocation(newGeneration, newGeneration), expiresAt);
+    }
+
+    /**
+     * Отзывает refresh-токены пользователя из поколений раньше newGeneration, access-токены не трогает.
+     * Так вход на одном узле сбрасывает прежние refresh-токены из памяти остальных.
+     */
+    public void revokeRefreshTokens(Long userId, long newGeneration) {
+        long expiresAt = clock.millis() + accessTtlMillis;
+        revokedTokenDao.revokeBefore(userId, 0, newGeneration, Instant.ofEpochMilli(expiresAt));
+        merge(userId, new SessionRevocation(0, newGeneration), expiresAt);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-interval-ms:5000}")
+    public void refresh() {
+        Instant now = clock.instant();
+        // Запись в памяти живет срок токена с момента, как узел о ней узнал, — не меньше строки в таблице
+        long expiresAt = now.toEpochMilli() + accessTtlMillis;
+        revokedTokenDao.findActive(now).forEach((userId, revocation) -> merge(userId, revocation, expiresAt));
+        revocations.values().removeIf(revocation -> revocation.expiresAt <= now.toEpochMilli());
+        revokedTokenDao.deleteExpired(now);
+    }
+
+    public int size() {
+        return revocations.size();
+    }
+
+    private void merge(Long userId, SessionRevocation revocation, long expiresAt) {
+        Revocation next = new Revocation(revocation.getMinGeneration(), revocation.getMinRefreshGeneration(), expiresAt);
+        Revocation previous = revocations.get(userId);
+        Revocation merged = revocations.merge(userId, next, (current, update) -> current.covers(update)
+                ? current
+                : new Revocation(Math.max(current.minGeneration, update.minGeneration),
+                        Math.max(current.minRefreshGeneration, update.minRefreshGeneration), update.expiresAt));
+        if (previous == null || merged.minRefreshGeneration > previous.minRefreshGeneration) {
+            refreshRevocationListeners.forEach(listener -> listener.accept(userId, merged.minRefreshGeneration));
+        }
+    }
+
+    /**
+     * @param expiresAt epoch millis, после которого access-токены до minGeneration истекли сами
+     */
+    private record Revocation(long minGeneration, long minRefreshGeneration, long expiresAt) {
+        boolean covers(Revocation other) {
+            return minGeneration >= other.minGeneration && minRefreshGeneration >= other.minRefreshGeneration;
+        }
+    }
+}
@@ -1,20 +1,21 @@
 package com.melnikov.TicketBookingService.services;
 
-import com.melnikov.TicketBookingService.dao.RefreshTokenDao;
-import com.melnikov.TicketBookingService.dao.RefreshTokenDaoImpl;
 import com.melnikov.TicketBookingService.dao.UserDao;
 import com.melnikov.TicketBookingService.dao.UserDaoImpl;
 import com.melnikov.TicketBookingService.dto.AuthResponseDto;
 import com.melnikov.TicketBookingService.dto.LoginRequestDto;
 import com.melnikov.TicketBookingService.dto.RegisterRequestDto;
+import com.melnikov.TicketBookingService.entity.RefreshSession;
 import com.melnikov.TicketBookingService.entity.RefreshToken;
 import com.melnikov.TicketBookingService.entity.User;
 import com.melnikov.TicketBookingService.exception.UserAlreadyExistsException;
+import com.melnikov.TicketBookingService.security.PasswordHasher;
+import com.melnikov.TicketBookingService.security.RefreshTokenStore;
+import com.melnikov.TicketBookingService.security.TokenRevocationList;
 import jakarta.security.auth.message.AuthException;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -27,20 +28,28 @@ import java.time.ZoneId;
 public class AuthService {
 
     private final UserDao userDao;
-    private final RefreshTokenDao refreshTokenDao;
-    private final PasswordEncoder passwordEncoder;
+    private final RefreshTokenStore refreshTokenStore;
+    private final PasswordHasher passwordHasher;
     private final JwtService jwtService;
+    private final TokenRevocationList tokenRevocationList;
+    private final TransactionTemplate transactionTemplate;
 
-    public AuthService(UserDaoImpl userDao, RefreshTokenDaoImpl refreshTokenDao,
-                       PasswordEncoder passwordEncoder, JwtService jwtService) {
+    public AuthService(UserDaoImpl userDao, RefreshTokenStore refreshTokenStore,
+                       PasswordHasher passwordHasher, JwtService jwtService, TokenRevocationList tokenRevocationList,
+                       TransactionTemplate transactionTemplate) {
         this.userDao = userDao;
-        this.refreshTokenDao = refreshTokenDao;
-        this.passwordEncoder = passwordEncoder;
+        this.refreshTokenStore = refreshTokenStore;
+        this.passwordHasher = passwordHasher;
         this.jwtService = jwtService;
+        this.tokenRevocationList = tokenRevocationList;
+        this.transactionTemplate = transactionTemplate;
     }
 
 
-    @Transactional
+    /**
+     * Хеширование (очередь PasswordHasher и сотни миллисекунд BCrypt) идет вне транзакции,
+     * чтобы запрос не держал соединение из пула; транзакция — только на запись пользователя и токена.
+     */
     public AuthResponseDto registerUser(RegisterRequestDto request){
         if (userDao.findByEmail(request.getEmail()).isPresent()) {
             throw new UserAlreadyExistsException("Email already registered");
@@ -48,7 +57,7 @@ public class AuthService {
 
         User user = User.builder()
                 .email(request.getEmail())
-                .passwordHash(passwordEncoder.encode(request.getPassword()))
+                .passwordHash(passwordHasher.hash(request.getPassword()))
                 .firstname(request.getFirstname())
                 .lastname(request.getLastname())
                 .birthDate(request.getBirthDate())
@@ -56,60 +65,63 @@ public class AuthService {
                 .roleId(2)
                 .build();
 
-        user = userDao.save(user);
-
-        return generateAndSaveTokens(user);
+        return transactionTemplate.execute(status -> generateAndSaveTokens(userDao.save(user)));
     }
 
 
 
-    @Transactional
+    /**
+     * Проверка пароля — вне транзакции, как и в {@link #registerUser}.
+     */
     public AuthResponseDto loginUser(LoginRequestDto request) throws AuthException {
         User user = userDao.findByEmail(request.getEmail())
                 .orElseThrow(() -> new AuthException("Invalid credentials"));
 
-        if (!passwordEncoder.matches(request.getPassword(), user.getPasswordHash())) {
+        if (!passwordHasher.matches(request.getPassword(), user.getPasswordHash())) {
             throw new AuthException("Invalid credentials");
         }
+        if (passwordHasher.needsRehash(user.getPasswordHash())) {
+            Long userId = user.getId();
+            String outdatedHash = user.getPasswordHash();
+            passwordHasher.rehashAsync(request.getPassword())
+                    .thenAccept(hash -> userDao.replacePasswordHash(userId, outdatedHash, hash))
+                    .exceptionally(e -> {
+                        log.debug("Password rehash for user {} postponed: {}", userId, e.toString());
+                        return null;
+                    });
+        }
 
-        refreshTokenDao.deleteByUserId(user.getId());
-        return generateAndSaveTokens(user);
+        // Новое поколение отзывает прежние refresh-токены на всех узлах, access-токены доживают свой срок
+        return transactionTemplate.execute(status -> {
+            user.setSessionGeneration(userDao.nextSessionGeneration(user.getId()));
+            refreshTokenStore.deleteByUserId(user.getId());
+            tokenRevocationList.revokeRefreshTokens(user.getId(), user.getSessionGeneration());
+            return generateAndSaveTokens(user);
+        });
     }
 
 
 
-    @Transactional
     public String refreshToken(String refreshToken) throws AuthException {
-        log.info("Attempting to refresh token. Received token: {}", passwordEncoder.encode(refreshToken));
+        log.info("Attempting to refresh token");
 
-        // 1. Поиск токена в БД
-        log.info("Searching for token in database...");
-        RefreshToken storedToken = refreshTokenDao.findByToken(hashRefreshToken(refreshToken))
+        // 1. Поиск токена вместе с владельцем: в памяти, при промахе одним запросом к БД
+        RefreshSession session = refreshTokenStore.find(hashRefreshToken(refreshToken))
                 .orElseThrow(() -> {
-                    log.error("Token not found in database");
+                    log.error("Token not found");
                     return new AuthException("Invalid refresh token");
                 });
-        log.info("Found token: ID={}, UserID={}, Expiry={}",
-                storedToken.getId(), storedToken.getUserId(), storedToken.getExpiryDate());
 
         // 2. Проверка срока действия
         LocalDateTime now = LocalDateTime.now();
-        log.info("Current time: {}, Token expiry: {}", now, storedToken.getExpiryDate());
-        if (storedToken.getExpiryDate().isBefore(now)) {
-            log.info("Token expired. Deleting all user tokens. UserID: {}", storedToken.getUserId());
-            refreshTokenDao.deleteByUserId(storedToken.getUserId());
+        if (session.getExpiryDate().isBefore(now)) {
+            log.info("Token expired. Deleting all user tokens. UserID: {}", session.getUserId());
+            refreshTokenStore.deleteByUserId(session.getUserId());
             throw new AuthException("Refresh token expired");
         }
 
-        // 3. Поиск пользователя
-        log.info("Searching user with ID: {}", storedToken.getUserId());
-        User user = userDao.findById(storedToken.getUserId())
-                .orElseThrow(() -> {
-                    log.info("User not found. UserID: {}", storedToken.getUserId());
-                    return new AuthException("User not found");
-                });
-
-        return jwtService.generateAccessToken(user);
+        return jwtService.generateAccessToken(session.getUserId(), session.getEmail(), session.getRoleId(),
+                session.getSessionGeneration());
 
     }
 
@@ -119,35 +131,23 @@ public class AuthService {
 
         RefreshToken newRefreshToken = RefreshToken.builder().
                 userId(user.getId())
-                .token(hashRefreshToken(refreshToken))
+                .tokenHash(hashRefreshToken(refreshToken))
                 .expiryDate(jwtService.extractExpiration(refreshToken).toInstant()
                         .atZone(ZoneId.systemDefault())
                         .toLocalDateTime())
                 .build();
 
-        refreshTokenDao.save(newRefreshToken);
+        refreshTokenStore.save(newRefreshToken, user.getEmail(), user.getRoleId(), user.getSessionGeneration());
 
         return new AuthResponseDto(accessToken, refreshToken);
     }
 
-    // Добавьте в ваш AuthServiceImpl
-    private String hashRefreshToken(String refreshToken) {
+    private static byte[] hashRefreshToken(String refreshToken) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(refreshToken.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hash);
+            return digest.digest(refreshToken.getBytes(StandardCharsets.UTF_8));
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-256 algorithm not found", e);
         }
     }
-
-    private static String bytesToHex(byte[] hash) {
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
-        }
-        return hexString.toString();
-    }
 }
@@ -1,22 +1,41 @@
 package com.melnikov.TicketBookingService.services;
 
+import com.melnikov.TicketBookingService.booking.BookingGroupCommitQueue;
+import com.melnikov.TicketBookingService.booking.TicketUpdateRetryPolicy;
+import com.melnikov.TicketBookingService.cache.UserReadModelCache;
+import com.melnikov.TicketBookingService.dao.BalanceLedgerDao;
 import com.melnikov.TicketBookingService.dao.BookingDao;
 import com.melnikov.TicketBookingService.dao.TicketDao;
-import com.melnikov.TicketBookingService.dao.UserDao;
 import com.melnikov.TicketBookingService.dto.BookingCreateRequestDto;
+import com.melnikov.TicketBookingService.dto.BookingListRequestDto;
+import com.melnikov.TicketBookingService.dto.BookingPageResponseDto;
 import com.melnikov.TicketBookingService.dto.BookingResponseDto;
-import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.dto.CartBookingRequestDto;
+import com.melnikov.TicketBookingService.dto.CartBookingResponseDto;
 import com.melnikov.TicketBookingService.entity.Booking;
-import com.melnikov.TicketBookingService.entity.User;
+import com.melnikov.TicketBookingService.entity.BookingAttempt;
+import com.melnikov.TicketBookingService.entity.BookingDetails;
+import com.melnikov.TicketBookingService.entity.CartBookingAttempt;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.holds.SeatHoldScheduler;
+import com.melnikov.TicketBookingService.inventory.SeatInventory;
 import io.jsonwebtoken.Claims;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.RequestHeader;
 
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 @Log4j2
 @Service
@@ -24,82 +43,249 @@ public class BookingService {
 
     private final BookingDao bookingDao;
     private final TicketDao ticketDao;
-    private final UserDao userDao;
+    private final SeatInventory seatInventory;
+    private final UserReadModelCache userReadModelCache;
+    private final BalanceLedgerDao balanceLedgerDao;
+    private final SeatHoldScheduler seatHoldScheduler;
+    private final BookingGroupCommitQueue groupCommitQueue;
+    private final TransactionTemplate transactionTemplate;
+    private final TicketUpdateRetryPolicy retryPolicy;
 
-    public BookingService(BookingDao bookingDao, TicketDao ticketDao, UserDao userDao) {
+    public BookingService(BookingDao bookingDao, TicketDao ticketDao, SeatInventory seatInventory,
+                          UserReadModelCache userReadModelCache, BalanceLedgerDao balanceLedgerDao,
+                          SeatHoldScheduler seatHoldScheduler, BookingGroupCommitQueue groupCommitQueue,
+                          TransactionTemplate transactionTemplate, TicketUpdateRetryPolicy retryPolicy) {
         this.bookingDao = bookingDao;
         this.ticketDao = ticketDao;
-        this.userDao = userDao;
+        this.seatInventory = seatInventory;
+        this.userReadModelCache = userReadModelCache;
+        this.balanceLedgerDao = balanceLedgerDao;
+        this.seatHoldScheduler = seatHoldScheduler;
+        this.groupCommitQueue = groupCommitQueue;
+        this.transactionTemplate = transactionTemplate;
+        this.retryPolicy = retryPolicy;
     }
 
-    @Transactional
+    /**
+     * Без собственной транзакции: в групповой фиксации бронь применяется в транзакции пачки,
+     * иначе — в отдельной транзакции (или в транзакции вызывающего, если она есть).
+     */
     public BookingResponseDto createBooking(Long userId, BookingCreateRequestDto request) {
         log.debug("Creating booking for user ID: {}, request: {}", userId, request);
 
-        Ticket ticket = ticketDao.findByIdWithDetails(request.getTicketId())
-                .orElseThrow(() -> {
-                    log.error("Ticket not found with ID: {}", request.getTicketId());
-                    return new IllegalArgumentException("Ticket not found");
-                });
+        ZonedDateTime now = ZonedDateTime.now();
+        // С удержанием бронь держит места до срока и отменяется, если ее не подтвердили
+        ZonedDateTime holdExpiresAt = seatHoldScheduler.deadline(now);
+        if (groupCommitQueue.isEnabled() && !retryPolicy.isOptimistic() && !seatInventory.isTracked(request.getTicketId())
+                && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            // Строка рейса блокируется не на каждую заявку, а на пачку; отклоненные заявки в ней ничего не меняют
+            return toResponse(userId, request, groupCommitQueue.book(userId, request.getTicketId(),
+                    request.getTicketQuantity(), now, holdExpiresAt));
+        }
+        // Исключение откатывает транзакцию, в том числе уже списанные в этом запросе места
+        return transactionTemplate.execute(status ->
+                toResponse(userId, request, book(userId, request, now, holdExpiresAt)));
+    }
 
-        log.debug("Found ticket: {}", ticket);
+    private BookingAttempt book(Long userId, BookingCreateRequestDto request, ZonedDateTime now,
+                                ZonedDateTime holdExpiresAt) {
+        BookingAttempt attempt;
+        if (seatInventory.isTracked(request.getTicketId())) {
+            // Места резервируются в памяти, в БД списываются только баланс и вставляется бронь
+            attempt = seatInventory.reserveInTransaction(request.getTicketId(), request.getTicketQuantity())
+                    ? bookingDao.bookReserved(userId, request.getTicketId(), request.getTicketQuantity(), now, holdExpiresAt)
+                    : BookingAttempt.builder().status(BookingAttempt.Status.NOT_ENOUGH_TICKETS).build();
+        } else if (retryPolicy.isOptimistic()) {
+            attempt = bookOptimistic(userId, request, now, holdExpiresAt);
+        } else {
+            attempt = bookingDao.book(userId, request.getTicketId(),
+                    request.getTicketQuantity(), now, holdExpiresAt);
+        }
+        if (attempt.isCreated()) {
+            seatHoldScheduler.schedule(attempt.getBooking());
+        }
+        return attempt;
+    }
 
-        if (ticket.getAvailableTickets() < request.getTicketQuantity()) {
-            log.warn("Not enough tickets available. Requested: {}, Available: {}",
-                    request.getTicketQuantity(), ticket.getAvailableTickets());
-            throw new IllegalArgumentException("Not enough tickets available");
+    /**
+     * Места списываются compare-and-set по версии строки рейса без блокировки на время проверки;
+     * проигравшая гонку попытка перечитывает остаток и повторяется. Баланс и бронь — как у
+     * зарезервированных мест, отказ по балансу откатывает и списание мест.
+     * <p>
+     * Успешный compare-and-set держит строку рейса до конца транзакции, поэтому пользователь
+     * блокируется до первой попытки: порядок тот же, что у корзины и пачек, — сначала баланс, затем рейсы.
+     */
+    private BookingAttempt bookOptimistic(Long userId, BookingCreateRequestDto request, ZonedDateTime now,
+                                          ZonedDateTime holdExpiresAt) {
+        Integer ticketId = request.getTicketId();
+        int quantity = request.getTicketQuantity();
+        balanceLedgerDao.lockBalance(userId);
+        BookingAttempt.Status seats = retryPolicy.execute(ticketId, () -> {
+            Optional<Ticket> current = ticketDao.findAvailability(ticketId);
+            if (current.isEmpty()) {
+                return Optional.of(BookingAttempt.Status.TICKET_NOT_FOUND);
+            }
+            if (current.get().getAvailableTickets() < quantity) {
+                return Optional.of(BookingAttempt.Status.NOT_ENOUGH_TICKETS);
+            }
+            return ticketDao.compareAndSetAvailableTickets(current.get(), current.get().getAvailableTickets() - quantity)
+                    ? Optional.of(BookingAttempt.Status.CREATED)
+                    : Optional.empty();
+        });
+        if (seats != BookingAttempt.Status.CREATED) {
+            return BookingAttempt.builder().status(seats).build();
         }
+        return bookingDao.bookReserved(userId, ticketId, quantity, now, holdExpiresAt);
+    }
 
-        User user = userDao.findById(userId)
-                .orElseThrow(() -> {
-                    log.error("User not found with ID: {}", userId);
-                    return new IllegalArgumentException("User not found");
-                });
+    private BookingResponseDto toResponse(Long userId, BookingCreateRequestDto request, BookingAttempt attempt) {
+        switch (attempt.getStatus()) {
+            case TICKET_NOT_FOUND -> {
+                log.error("Ticket not found with ID: {}", request.getTicketId());
+                throw new IllegalArgumentException("Ticket not found");
+            }
+            case NOT_ENOUGH_TICKETS -> {
+                log.warn("Not enough tickets available. Ticket ID: {}, requested: {}",
+                        request.getTicketId(), request.getTicketQuantity());
+                throw new IllegalArgumentException("Not enough tickets available");
+            }
+            case USER_NOT_FOUND -> {
+                log.error("User not found with ID: {}", userId);
+                throw new IllegalArgumentException("User not found");
+            }
+            case INSUFFICIENT_BALANCE -> {
+                log.warn("Insufficient balance. User ID: {}, ticket ID: {}, quantity: {}",
+                        userId, request.getTicketId(), request.getTicketQuantity());
+                throw new IllegalArgumentException("Insufficient balance");
+            }
+            default -> {
+            }
+        }
 
-        log.debug("Found user: {}", user);
+        Booking booking = attempt.getBooking();
+        log.info("Booking created successfully. ID: {}", booking.getId());
 
-        Integer totalCost = ticket.getPrice() * request.getTicketQuantity();
-        log.debug("Calculated total cost: {}", totalCost);
+        return mapToResponseDto(booking);
+    }
 
-        if (user.getBalance() < totalCost) {
-            log.warn("Insufficient balance. User balance: {}, Required: {}",
-                    user.getBalance(), totalCost);
-            throw new IllegalArgumentException("Insufficient balance");
-        }
+    /**
+     * Бронирование нескольких рейсов одной транзакцией: либо все брони, либо ни одной
+     */
+    @Transactional
+    public CartBookingResponseDto createCart(Long userId, CartBookingRequestDto request) {
+        log.debug("Creating cart booking for user ID: {}, request: {}", userId, request);
 
-        boolean balanceUpdated = userDao.updateBalanceById(user.getId(), user.getBalance() - totalCost);
-        log.debug("Balance updated: {}", balanceUpdated ? "success" : "failed");
+        // Один рейс дважды - одна бронь на сумму мест; порядок по id задает порядок блокировок
+        SortedMap<Integer, Integer> items = new TreeMap<>();
+        request.getItems().forEach(item -> items.merge(item.getTicketId(), item.getTicketQuantity(), Integer::sum));
 
-        if (!balanceUpdated) {
-            log.error("Balance update failed for user ID: {}", user.getId());
-            throw new IllegalStateException("Failed to update user balance");
+        Set<Integer> reserved = new HashSet<>();
+        for (Map.Entry<Integer, Integer> item : items.entrySet()) {
+            if (!seatInventory.isTracked(item.getKey())) {
+                continue;
+            }
+            // При отказе откат вернет места, уже зарезервированные для других рейсов корзины
+            if (!seatInventory.reserveInTransaction(item.getKey(), item.getValue())) {
+                log.warn("Not enough tickets available. Ticket ID: {}, requested: {}", item.getKey(), item.getValue());
+                throw new IllegalArgumentException("Not enough tickets available for ticket " + item.getKey());
+            }
+            reserved.add(item.getKey());
         }
 
-        ticketDao.updateAvailableTickets(ticket.getId(), ticket.getAvailableTickets() - request.getTicketQuantity());
-        log.debug("Updated available tickets for ticket ID: {}. New quantity: {}",
-                ticket.getId(), ticket.getAvailableTickets() - request.getTicketQuantity());
-
-        Booking booking = Booking.builder()
-                .userId(userId)
-                .ticketId(ticket.getId())
-                .bookingTime(ZonedDateTime.now())
-                .status("pending")
-                .ticketQuantity(request.getTicketQuantity())
-                .build();
+        ZonedDateTime now = ZonedDateTime.now();
+        CartBookingAttempt attempt = bookingDao.bookCart(userId, items, reserved, now, seatHoldScheduler.deadline(now));
+        switch (attempt.getStatus()) {
+            case TICKET_NOT_FOUND -> {
+                log.error("Ticket not found with ID: {}", attempt.getTicketId());
+                throw new IllegalArgumentException("Ticket not found: " + attempt.getTicketId());
+            }
+            case NOT_ENOUGH_TICKETS -> {
+                log.warn("Not enough tickets available. Ticket ID: {}, requested: {}",
+                        attempt.getTicketId(), items.get(attempt.getTicketId()));
+                throw new IllegalArgumentException("Not enough tickets available for ticket " + attempt.getTicketId());
+            }
+            case USER_NOT_FOUND -> {
+                log.error("User not found with ID: {}", userId);
+                throw new IllegalArgumentException("User not found");
+            }
+            case INSUFFICIENT_BALANCE -> {
+                log.warn("Insufficient balance for cart. User ID: {}, tickets: {}", userId, items);
+                throw new IllegalArgumentException("Insufficient balance");
+            }
+            default -> {
+            }
+        }
 
-        log.debug("Creating booking: {}", booking);
-        booking = bookingDao.save(booking);
-        log.info("Booking created successfully. ID: {}", booking.getId());
+        attempt.getBookings().forEach(seatHoldScheduler::schedule);
+        log.info("Cart booked successfully. User ID: {}, bookings: {}", userId, attempt.getBookings().size());
 
-        return mapToResponseDto(booking);
+        return CartBookingResponseDto.builder()
+                .bookings(attempt.getBookings().stream().map(this::mapToResponseDto).toList())
+                .totalCost(attempt.getTotalCost())
+                .build();
     }
 
     @Transactional(readOnly = true)
-    public List<Booking> getUserBookings(Long userId) {
-        log.debug("Fetching bookings for user ID: {}", userId);
-        List<Booking> bookings = bookingDao.findAllByUserId(userId);
+    public BookingPageResponseDto getUserBookings(Long userId, BookingListRequestDto request) {
+        log.debug("Fetching bookings for user ID: {}, request: {}", userId, request);
+        // Кешируется только то, что открывает личный кабинет: первая страница без фильтра
+        boolean firstPage = request.getLastBookingTime() == null && request.getStatus() == null
+                && request.getPageSize() == BookingListRequestDto.DEFAULT_PAGE_SIZE;
+        if (firstPage) {
+            return userReadModelCache.get(userId, UserReadModelCache.View.BOOKINGS,
+                    () -> findBookingsPage(userId, request));
+        }
+        return findBookingsPage(userId, request);
+    }
+
+    private BookingPageResponseDto findBookingsPage(Long userId, BookingListRequestDto request) {
+        // Без курсора - с самых новых броней
+        ZonedDateTime lastBookingTime = request.getLastBookingTime() != null
+                ? request.getLastBookingTime() : ZonedDateTime.now().plusYears(10);
+        int lastId = request.getLastBookingTime() != null && request.getLastId() != null
+                ? request.getLastId() : Integer.MAX_VALUE;
+        int pageSize = request.getPageSize();
+
+        List<BookingDetails> bookings = bookingDao.findPageByUserId(
+                userId, request.getStatus(), lastBookingTime, lastId, pageSize);
         log.debug("Found {} bookings for user ID: {}", bookings.size(), userId);
-        return bookings;
+
+        BookingPageResponseDto response = new BookingPageResponseDto();
+        response.setBookings(bookings);
+        // Неполная страница - последняя, курсор не нужен
+        if (bookings.size() == pageSize) {
+            BookingDetails last = bookings.get(bookings.size() - 1);
+            response.setNextCursor(last.getBookingTime());
+            response.setNextId(last.getId());
+        }
+        return response;
+    }
+
+    /**
+     * Подтверждение брони: снимает срок удержания, места остаются за пользователем
+     */
+    @Transactional
+    public BookingResponseDto confirmBooking(Long userId, Integer bookingId) {
+        log.debug("Confirming booking ID: {} for user ID: {}", bookingId, userId);
+
+        if (!bookingDao.confirmHold(bookingId, userId, ZonedDateTime.now())) {
+            Booking booking = bookingDao.findById(bookingId)
+                    .filter(found -> found.getUserId().equals(userId))
+                    .orElseThrow(() -> {
+                        log.error("Booking not found with ID: {}", bookingId);
+                        return new IllegalArgumentException("Booking not found");
+                    });
+            log.warn("Booking cannot be confirmed. ID: {}, status: {}", bookingId, booking.getStatus());
+            throw new IllegalStateException("confirmed".equals(booking.getStatus())
+                    ? "Booking is already confirmed"
+                    : "Booking hold has expired or booking is canceled");
+        }
+        seatHoldScheduler.cancel(bookingId);
+        log.info("Booking confirmed. ID: {}", bookingId);
+
+        return bookingDao.findById(bookingId)
+                .map(this::mapToResponseDto)
+                .orElseThrow(() -> new IllegalArgumentException("Booking not found"));
     }
 
     @Transactional
@@ -125,19 +311,45 @@ public class BookingService {
             throw new IllegalStateException("Booking is already canceled");
         }
 
-        bookingDao.updateStatus(bookingId, "canceled");
+        // Условное обновление: параллельная отмена или истечение удержания уже могли вернуть места
+        if (!bookingDao.updateStatus(bookingId, "canceled")) {
+            log.warn("Booking already canceled. ID: {}", bookingId);
+            throw new IllegalStateException("Booking is already canceled");
+        }
+        seatHoldScheduler.cancel(bookingId);
         log.debug("Booking status updated to 'canceled'. ID: {}", bookingId);
 
-        Ticket ticket = ticketDao.findByIdWithDetails(booking.getTicketId())
-                .orElseThrow(() -> {
-                    log.error("Ticket not found with ID: {}", booking.getTicketId());
-                    return new IllegalArgumentException("Ticket not found");
-                });
+        // Возврат - сторно списания; у броней, оплаченных до журнала, списания в нем нет
+        if (balanceLedgerDao.reverse("booking:" + bookingId, "refund:" + bookingId, "refund")) {
+            log.debug("Booking charge refunded. ID: {}", bookingId);
+        }
 
-        int newQuantity = ticket.getAvailableTickets() + booking.getTicketQuantity();
-        ticketDao.updateAvailableTickets(ticket.getId(), newQuantity);
-        log.info("Returned {} tickets for ticket ID: {}. New available quantity: {}",
-                booking.getTicketQuantity(), ticket.getId(), newQuantity);
+        if (seatInventory.isTracked(booking.getTicketId())) {
+            seatInventory.releaseInTransaction(booking.getTicketId(), booking.getTicketQuantity());
+        } else if (retryPolicy.isOptimistic()) {
+            returnSeatsOptimistic(booking.getTicketId(), booking.getTicketQuantity());
+        } else if (!ticketDao.increaseAvailableTickets(booking.getTicketId(), booking.getTicketQuantity())) {
+            log.error("Ticket not found with ID: {}", booking.getTicketId());
+            throw new IllegalArgumentException("Ticket not found");
+        }
+        log.info("Returned {} tickets for ticket ID: {}",
+                booking.getTicketQuantity(), booking.getTicketId());
+    }
+
+    private void returnSeatsOptimistic(Integer ticketId, int quantity) {
+        boolean found = retryPolicy.execute(ticketId, () -> {
+            Optional<Ticket> current = ticketDao.findAvailability(ticketId);
+            if (current.isEmpty()) {
+                return Optional.of(false);
+            }
+            return ticketDao.compareAndSetAvailableTickets(current.get(), current.get().getAvailableTickets() + quantity)
+                    ? Optional.of(true)
+                    : Optional.empty();
+        });
+        if (!found) {
+            log.error("Ticket not found with ID: {}", ticketId);
+            throw new IllegalArgumentException("Ticket not found");
+        }
     }
 
     private BookingResponseDto mapToResponseDto(Booking booking) {
@@ -148,6 +360,7 @@ public class BookingService {
                 .bookingTime(booking.getBookingTime())
                 .status(booking.getStatus())
                 .ticketQuantity(booking.getTicketQuantity())
+                .holdExpiresAt(booking.getHoldExpiresAt())
                 .build();
     }
 }
@@ -2,12 +2,11 @@ package com.melnikov.TicketBookingService.services;
 
 
 
+import com.melnikov.TicketBookingService.cache.UserReadModelCache;
+import com.melnikov.TicketBookingService.dao.BalanceLedgerDao;
 import com.melnikov.TicketBookingService.dao.DepositDao;
 import com.melnikov.TicketBookingService.dao.DepositDaoImpl;
-import com.melnikov.TicketBookingService.dao.UserDao;
-import com.melnikov.TicketBookingService.dao.UserDaoImpl;
 import com.melnikov.TicketBookingService.entity.Deposit;
-import com.melnikov.TicketBookingService.entity.User;
 
 import com.melnikov.TicketBookingService.exception.DepositAlreadyProcessedException;
 import org.springframework.stereotype.Service;
@@ -22,11 +21,14 @@ import java.util.UUID;
 @Service
 public class DepositService {
     private final DepositDao depositDao;
-    private final UserDao userDao;
+    private final BalanceLedgerDao balanceLedgerDao;
+    private final UserReadModelCache userReadModelCache;
 
-    public DepositService(DepositDaoImpl depositDao, UserDaoImpl userDao) {
+    public DepositService(DepositDaoImpl depositDao, BalanceLedgerDao balanceLedgerDao,
+                          UserReadModelCache userReadModelCache) {
         this.depositDao = depositDao;
-        this.userDao = userDao;
+        this.balanceLedgerDao = balanceLedgerDao;
+        this.userReadModelCache = userReadModelCache;
 
     }
 
@@ -58,16 +60,9 @@ public class DepositService {
         }
 
         if ("completed".equals(status)) {
-            // Обновляем баланс пользователя
-            User user = userDao.findById(deposit.getUserId())
-                    .orElseThrow(() -> new RuntimeException("User not found"));
-
-            double newBalance = user.getBalance() + deposit.getAmount();
-            boolean updated = userDao.updateBalanceById(user.getId(), newBalance);
-
-            if (!updated) {
-                throw new RuntimeException("Failed to update user balance");
-            }
+            // Зачисление - запись в журнал, без чтения и перезаписи users.balance;
+            // ключ по id пополнения не даст зачислить его дважды
+            balanceLedgerDao.append(deposit.getUserId(), "deposit:" + depositId, "deposit", deposit.getAmount());
         } else if (!"failed".equals(status)) {
             throw new RuntimeException("Invalid status");
         }
@@ -78,7 +73,8 @@ public class DepositService {
 
     @Transactional(readOnly = true)
     public List<Deposit> getLastDeposits(Long userId) {
-        return depositDao.findLast10ByUserId(userId);
+        return userReadModelCache.get(userId, UserReadModelCache.View.DEPOSITS,
+                () -> List.copyOf(depositDao.findLast10ByUserId(userId)));
     }
 
 }
@@ -0,0 +1,54 @@
+package com.melnikov.TicketBookingService.services;
+
+import com.melnikov.TicketBookingService.cache.TransportTypeDictionary;
+import com.melnikov.TicketBookingService.dao.RouteDao;
+import com.melnikov.TicketBookingService.dto.FareCalendarDayDto;
+import com.melnikov.TicketBookingService.dto.FareCalendarRequestDto;
+import com.melnikov.TicketBookingService.dto.FareCalendarResponseDto;
+import com.melnikov.TicketBookingService.search.FareCalendar;
+import org.springframework.stereotype.Service;
+
+import java.time.temporal.ChronoUnit;
+
+@Service
+public class FareCalendarService {
+    private static final int MAX_DAYS = 92;
+
+    private final FareCalendar fareCalendar;
+    private final RouteDao routeDao;
+    private final TransportTypeDictionary transportTypes;
+
+    public FareCalendarService(FareCalendar fareCalendar, RouteDao routeDao, TransportTypeDictionary transportTypes) {
+        this.fareCalendar = fareCalendar;
+        this.routeDao = routeDao;
+        this.transportTypes = transportTypes;
+    }
+
+    public FareCalendarResponseDto getCalendar(FareCalendarRequestDto request) {
+        if (request.getEndDate().isBefore(request.getStartDate())) {
+            throw new IllegalArgumentException("End date must not be before start date");
+        }
+        if (ChronoUnit.DAYS.between(request.getStartDate(), request.getEndDate()) >= MAX_DAYS) {
+            throw new IllegalArgumentException("Date range must not exceed " + MAX_DAYS + " days");
+        }
+
+        Integer routeId = routeDao.findIdByCities(request.getFrom(), request.getTo())
+                .orElseThrow(() -> new IllegalArgumentException("Route not found"));
+        Integer transportTypeId = request.getType() != null && !request.getType().isEmpty()
+                ? transportTypes.findIdByName(request.getType())
+                        .orElseThrow(() -> new IllegalArgumentException("Invalid transport type: " + request.getType()))
+                : null;
+
+        FareCalendarResponseDto response = new FareCalendarResponseDto();
+        response.setDays(fareCalendar.days(routeId, request.getStartDate(), request.getEndDate(), transportTypeId)
+                .stream()
+                .map(day -> new FareCalendarDayDto(
+                        day.date(),
+                        transportTypes.findNameById(day.transportTypeId()).orElse("null"),
+                        day.minPrice(),
+                        day.availableTickets(),
+                        day.departures()))
+                .toList());
+        return response;
+    }
+}
@@ -0,0 +1,59 @@
+package com.melnikov.TicketBookingService.services;
+
+import com.melnikov.TicketBookingService.cache.TransportTypeDictionary;
+import com.melnikov.TicketBookingService.dto.ItineraryDto;
+import com.melnikov.TicketBookingService.dto.ItinerarySearchRequestDto;
+import com.melnikov.TicketBookingService.dto.ItinerarySearchResponseDto;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.search.ItineraryGraph;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class ItineraryService {
+    private final ItineraryGraph itineraryGraph;
+    private final TransportTypeDictionary transportTypes;
+
+    public ItineraryService(ItineraryGraph itineraryGraph, TransportTypeDictionary transportTypes) {
+        this.itineraryGraph = itineraryGraph;
+        this.transportTypes = transportTypes;
+    }
+
+    public ItinerarySearchResponseDto searchItineraries(ItinerarySearchRequestDto request) {
+        ZonedDateTime startTime = request.getStartTime() != null ? request.getStartTime() : ZonedDateTime.now();
+        ZonedDateTime endTime = request.getEndTime() != null ? request.getEndTime() : startTime.plusDays(1);
+        ItineraryGraph.SortOrder order = "price".equals(request.getSortBy())
+                ? ItineraryGraph.SortOrder.PRICE
+                : ItineraryGraph.SortOrder.DURATION;
+
+        List<List<Ticket>> found = itineraryGraph.search(request.getFrom(), request.getTo(),
+                startTime, endTime, request.getMaxStops(), order, request.getLimit());
+
+        List<ItineraryDto> itineraries = new ArrayList<>(found.size());
+        for (List<Ticket> legs : found) {
+            ItineraryDto itinerary = new ItineraryDto();
+            itinerary.setStops(legs.size() - 1);
+            itinerary.setTotalPrice(legs.stream().mapToInt(Ticket::getPrice).sum());
+            itinerary.setDurationMinutes(Duration.between(
+                    legs.get(0).getDepartureTime(), legs.get(legs.size() - 1).getArrivalTime()).toMinutes());
+            for (Ticket ticket : legs) {
+                // Время отдаем так же, как /tickets/search
+                ticket.setDepartureTime(ticket.getDepartureTime().minusHours(3));
+                ticket.setArrivalTime(ticket.getArrivalTime().minusHours(3));
+                ticket.setTransportType(transportTypes.findNameById(ticket.getTransportTypeId()).orElse("null"));
+            }
+            itinerary.setDepartureTime(legs.get(0).getDepartureTime());
+            itinerary.setArrivalTime(legs.get(legs.size() - 1).getArrivalTime());
+            itinerary.setLegs(legs);
+            itineraries.add(itinerary);
+        }
+
+        ItinerarySearchResponseDto response = new ItinerarySearchResponseDto();
+        response.setItineraries(itineraries);
+        return response;
+    }
+}
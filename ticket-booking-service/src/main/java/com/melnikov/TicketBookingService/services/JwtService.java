@@ -1,20 +1,34 @@
 package com.melnikov.TicketBookingService.services;
 
 import com.melnikov.TicketBookingService.entity.User;
+import com.melnikov.TicketBookingService.security.JwtKeyRing;
+import com.melnikov.TicketBookingService.security.JwtPrincipal;
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.Key;
 import java.util.Base64;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Slf4j
 @Service
 public class JwtService {
-    @Value("${jwt.secret}")
-    private String secret;
+    private static final int VERIFIED_CACHE_SEGMENTS = 16;
+
+    // HS256 до перехода на ES256: только проверка еще не истекших старых access-токенов, можно убрать
+    // через jwt.access.expiration после выката
+    @Value("${jwt.secret:}")
+    private String legacySecret;
 
     @Value("${jwt.access.expiration}")
     private long accessExpiration;
@@ -22,16 +36,57 @@ public class JwtService {
     @Value("${jwt.refresh.expiration}")
     private long refreshExpiration;
 
+    // Сколько проверенных access-токенов помнить; при переполнении вытесняются давно не использованные (LRU по сегментам)
+    @Value("${jwt.verified-cache.max-size:100000}")
+    private int verifiedCacheMaxSize;
+
+    private final JwtKeyRing keyRing;
+    private final VerifiedSegment[] verifiedTokens = new VerifiedSegment[VERIFIED_CACHE_SEGMENTS];
+
+    // Парсер неизменяем и потокобезопасен, строим один раз; ключ проверки берется из кольца по kid
+    private SecretKey legacyKey;
+    private JwtParser parser;
+
+    public JwtService(JwtKeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    @PostConstruct
+    public void init() {
+        int segmentSize = Math.max(1, verifiedCacheMaxSize / VERIFIED_CACHE_SEGMENTS);
+        for (int i = 0; i < VERIFIED_CACHE_SEGMENTS; i++) {
+            verifiedTokens[i] = new VerifiedSegment(segmentSize);
+        }
+        legacyKey = legacySecret == null || legacySecret.isBlank()
+                ? null
+                : Keys.hmacShaKeyFor(legacySecret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        return verificationKey(header);
+                    }
+                })
+                .build();
+    }
+
     public String generateAccessToken(User user) {
-        log.debug("Generating access token for user: {}, roleId: {}", user.getEmail(), user.getRoleId());
+        return generateAccessToken(user.getId(), user.getEmail(), user.getRoleId(), user.getSessionGeneration());
+    }
 
-        String token = Jwts.builder()
-                .setSubject(user.getEmail())
-                .claim("id", user.getId())
-                .claim("roleId", user.getRoleId()) // roleId 1 - admin, roleId 2 - user
+    /**
+     * @param sessionGeneration поколение сессий пользователя на момент выдачи, по нему токен отзывается
+     */
+    public String generateAccessToken(Long userId, String email, Integer roleId, long sessionGeneration) {
+        log.debug("Generating access token for user: {}, roleId: {}", email, roleId);
+
+        String token = signed(Jwts.builder())
+                .setSubject(email)
+                .claim("id", userId)
+                .claim("roleId", roleId) // roleId 1 - admin, roleId 2 - user
+                .claim("gen", sessionGeneration)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + accessExpiration))
-                .signWith(SignatureAlgorithm.HS256, secret.getBytes(StandardCharsets.UTF_8)) // FIX
                 .compact();
 
         log.debug("Generated token: {}", token);
@@ -41,18 +96,14 @@ public class JwtService {
     public String generateRefreshToken(User user) {
         log.debug("Generating refresh token for user: {}", user.getEmail());
 
-        return Jwts.builder()
+        return signed(Jwts.builder())
                 .setSubject(user.getEmail())
                 .setExpiration(new Date(System.currentTimeMillis() + refreshExpiration))
-                .signWith(SignatureAlgorithm.HS256, secret.getBytes(StandardCharsets.UTF_8)) // FIX
                 .compact();
     }
 
     public Date extractExpiration(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(secret.getBytes(StandardCharsets.UTF_8)) // FIX
-                .build()
-                .parseClaimsJws(token)
+        return parser.parseClaimsJws(token)
                 .getBody()
                 .getExpiration();
     }
@@ -71,10 +122,7 @@ public class JwtService {
             log.debug("Decoded JWT Header: {}", header);
             log.debug("Decoded JWT Payload: {}", payload);
 
-            Jwts.parserBuilder()
-                    .setSigningKey(secret.getBytes(StandardCharsets.UTF_8)) // FIX
-                    .build()
-                    .parseClaimsJws(token);
+            parser.parseClaimsJws(token);
 
             return true;
         } catch (JwtException | IllegalArgumentException e) {
@@ -84,10 +132,108 @@ public class JwtService {
     }
 
     public Claims extractClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(secret.getBytes(StandardCharsets.UTF_8)) // FIX
-                .build()
-                .parseClaimsJws(token)
+        return parser.parseClaimsJws(token)
                 .getBody();
     }
+
+    /**
+     * Проверяет подпись и срок access-токена и возвращает его владельца.
+     * <p>
+     * Проверка ECDSA заметно дороже HMAC, а клиент шлет один и тот же токен до его истечения,
+     * поэтому уже проверенные токены запоминаются до их exp (ключ — токен целиком).
+     * Попадание в кеш действительно, пока ключ, которым проверена подпись, остается в кольце:
+     * токены выведенного из кольца ключа проверяются заново и отклоняются.
+     */
+    public JwtPrincipal parseAccessToken(String token) {
+        VerifiedSegment segment = verifiedSegment(token);
+        VerifiedToken verified = segment.get(token);
+        if (verified != null) {
+            if (verified.expiresAtMillis > System.currentTimeMillis()
+                    && verified.key.equals(currentKey(verified.kid))) {
+                return verified.principal;
+            }
+            segment.remove(token);
+        }
+        Jws<Claims> jws = parser.parseClaimsJws(token); // истекший токен здесь даст ExpiredJwtException
+        Claims claims = jws.getBody();
+        // Токены, выданные до появления поколений, считаются поколением 0
+        Long generation = claims.get("gen", Long.class);
+        JwtPrincipal principal = new JwtPrincipal(claims.get("id", Long.class), claims.getSubject(),
+                claims.get("roleId", Integer.class), generation != null ? generation : 0);
+        // Срок истекших записей проверяется при чтении, вычищает их плановый проход ниже
+        String kid = jws.getHeader().getKeyId();
+        segment.put(token, new VerifiedToken(principal, claims.getExpiration().getTime(), kid, verificationKey(jws.getHeader())));
+        return principal;
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.verified-cache.evict-interval-ms:60000}")
+    public void evictExpiredVerifiedTokens() {
+        long now = System.currentTimeMillis();
+        for (VerifiedSegment segment : verifiedTokens) {
+            segment.removeExpired(now);
+        }
+    }
+
+    private JwtBuilder signed(JwtBuilder builder) {
+        JwtKeyRing.SigningKey key = keyRing.signingKey();
+        return builder
+                .setHeaderParam(JwsHeader.KEY_ID, key.kid())
+                .signWith(key.privateKey(), SignatureAlgorithm.ES256);
+    }
+
+    private VerifiedSegment verifiedSegment(String token) {
+        return verifiedTokens[(token.hashCode() & 0x7fffffff) % VERIFIED_CACHE_SEGMENTS];
+    }
+
+    // Ключ, которым сейчас проверялся бы токен с этим kid (null kid — старый HS256)
+    private Key currentKey(String kid) {
+        return kid == null ? legacyKey : keyRing.verificationKey(kid);
+    }
+
+    private Key verificationKey(JwsHeader<?> header) {
+        String kid = header.getKeyId();
+        if (kid == null) {
+            if (legacyKey != null && SignatureAlgorithm.HS256.getValue().equals(header.getAlgorithm())) {
+                return legacyKey;
+            }
+            throw new UnsupportedJwtException("Token has no key id");
+        }
+        Key key = keyRing.verificationKey(kid);
+        if (key == null) {
+            throw new SignatureException("Unknown signing key: " + kid);
+        }
+        return key;
+    }
+
+    private record VerifiedToken(JwtPrincipal principal, long expiresAtMillis, String kid, Key key) {
+    }
+
+    private static final class VerifiedSegment {
+        private final LinkedHashMap<String, VerifiedToken> entries;
+
+        VerifiedSegment(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized VerifiedToken get(String token) {
+            return entries.get(token);
+        }
+
+        synchronized void put(String token, VerifiedToken verified) {
+            entries.put(token, verified);
+        }
+
+        synchronized void remove(String token) {
+            entries.remove(token);
+        }
+
+        synchronized void removeExpired(long now) {
+            entries.values().removeIf(verified -> verified.expiresAtMillis <= now);
+        }
+    }
 }
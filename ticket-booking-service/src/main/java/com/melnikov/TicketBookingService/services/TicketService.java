@@ -1,52 +1,71 @@
 package com.melnikov.TicketBookingService.services;
 
+import com.melnikov.TicketBookingService.cache.TicketSearchCache;
+import com.melnikov.TicketBookingService.cache.TransportTypeDictionary;
 import com.melnikov.TicketBookingService.dao.RouteDao;
 import com.melnikov.TicketBookingService.dao.TicketDao;
 import com.melnikov.TicketBookingService.dto.*;
 import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.inventory.SeatInventory;
+import com.melnikov.TicketBookingService.inventory.ShardedSeatCounters;
+import com.melnikov.TicketBookingService.search.TicketSearchIndex;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Optional;
 @Slf4j
 @Service
 public class TicketService {
     private final TicketDao ticketDao;
     private final RouteDao routeDao;
-
-    public TicketService(TicketDao ticketDao, RouteDao routeDao) {
+    private final SeatInventory seatInventory;
+    private final TicketSearchIndex ticketSearchIndex;
+    private final TransportTypeDictionary transportTypes;
+    private final TicketSearchCache ticketSearchCache;
+    private final ShardedSeatCounters shardedSeats;
+
+    public TicketService(TicketDao ticketDao, RouteDao routeDao, SeatInventory seatInventory,
+                         TicketSearchIndex ticketSearchIndex, TransportTypeDictionary transportTypes,
+                         TicketSearchCache ticketSearchCache, ShardedSeatCounters shardedSeats) {
         this.ticketDao = ticketDao;
         this.routeDao = routeDao;
+        this.seatInventory = seatInventory;
+        this.ticketSearchIndex = ticketSearchIndex;
+        this.transportTypes = transportTypes;
+        this.ticketSearchCache = ticketSearchCache;
+        this.shardedSeats = shardedSeats;
     }
 
     @Transactional
     public Ticket createTicket(TicketCreateRequestDto request) {
         // Получаем или создаем маршрут
         Integer routeId = routeDao.findIdByCities(request.getFrom(), request.getTo())
-                .orElseGet(() -> {
-                    routeDao.createRoute(request.getFrom(), request.getTo());
-                    return routeDao.findIdByCities(request.getFrom(), request.getTo())
-                            .orElseThrow(() -> new RuntimeException("Route creation failed"));
-                });
+                .orElseGet(() -> routeDao.createRoute(request.getFrom(), request.getTo()));
 
         // Создаем объект билета
         Ticket ticket = new Ticket();
-        int idType = switch (request.getType()) {
-            case "bus" -> 1;
-            case "avia" -> 2;
-            case "train" -> 3;
-            default -> 0;
-        };
-        ticket.setTransportTypeId(idType); // ID типа транспорта передается в запросе
+        ticket.setTransportTypeId(mapTransportType(request.getType()));
         ticket.setRouteId(routeId);
         ticket.setDepartureTime(request.getDepartureTime());
         ticket.setArrivalTime(request.getArrivalTime());
         ticket.setPrice(request.getPrice());
         ticket.setAvailableTickets(request.getAvailableTickets());
 
-        return ticketDao.save(ticket);
+        Ticket saved = ticketDao.save(ticket);
+        seatInventory.track(saved.getId(), request.getAvailableTickets());
+        return saved;
+    }
+
+    /**
+     * Делит остаток "горячего" рейса на шарды: брони перестают ждать одну строку tickets
+     */
+    @Transactional
+    public Ticket shardTicket(TicketShardRequestDto request) {
+        shardedSeats.shard(request.getTicketId(), request.getShards());
+        return getTicketDetails(request.getTicketId());
     }
 
     public Ticket getTicketDetails(Integer id) {
@@ -72,14 +91,34 @@ public class TicketService {
         ZonedDateTime startTime = request.getStartTime() != null ? request.getStartTime() : defaultStartTime;
         ZonedDateTime endTime = request.getEndTime() != null ? request.getEndTime() : defaultEndTime;
 
+        Integer transportTypeId = request.getType() != null ? mapTransportType(request.getType()) : null;
+
+        // Версию маршрута читаем до запроса: если бронь пройдет во время поиска, результат не закешируется
+        TicketSearchCache.SearchKey cacheKey = ticketSearchCache.key(routeId, transportTypeId, request);
+        long routeVersion = ticketSearchCache.version(routeId);
+        Optional<TicketSearchResponseDto> cached = ticketSearchCache.get(cacheKey);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
         // Создаем объект ответа
         TicketSearchResponseDto response = new TicketSearchResponseDto();
         List<Ticket> ticketList;
 
         // Ищем билеты с или без фильтра по транспорту
-        if (request.getType() != null) {
+        if (ticketSearchIndex.isEnabled()) {
+            ticketList = ticketSearchIndex.search(
+                    transportTypeId,
+                    routeId,
+                    startTime,
+                    endTime,
+                    lastDepartureTime,
+                    lastId,
+                    pageSize
+            );
+        } else if (transportTypeId != null) {
             ticketList = ticketDao.findTickets(
-                    mapTransportType(request.getType()),
+                    transportTypeId,
                     routeId,
                     startTime,
                     endTime,
@@ -110,17 +149,11 @@ public class TicketService {
             ticket.setDepartureCity(request.getFrom());
             ticket.setDepartureTime(ticket.getDepartureTime().minusHours(3));
             ticket.setArrivalTime(ticket.getArrivalTime().minusHours(3));
-            String transportType = switch (ticket.getTransportTypeId()) {
-                case 1 -> "bus";
-                case 2 -> "avia";
-                case 3 -> "train";
-                default -> "null";
-            };
-            ticket.setTransportType(transportType);
+            ticket.setTransportType(transportTypes.findNameById(ticket.getTransportTypeId()).orElse("null"));
         }
         // Устанавливаем новый курсор, если есть данные
 
-
+        ticketSearchCache.put(cacheKey, routeVersion, response);
         return response;
     }
 
@@ -128,11 +161,7 @@ public class TicketService {
 
 
     private int mapTransportType(String type) {
-        return switch (type) {
-            case "bus" -> 1;
-            case "avia" -> 2;
-            case "train" -> 3;
-            default -> throw new IllegalArgumentException("Invalid transport type: " + type);
-        };
+        return transportTypes.findIdByName(type)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid transport type: " + type));
     }
 }
\ No newline at end of file
@@ -1,13 +1,17 @@
 package com.melnikov.TicketBookingService.services;
 
+import com.melnikov.TicketBookingService.cache.UserReadModelCache;
 import com.melnikov.TicketBookingService.dao.UserDao;
 import com.melnikov.TicketBookingService.dto.NewPasswordRequestDto;
 import com.melnikov.TicketBookingService.entity.User;
 import com.melnikov.TicketBookingService.exception.IncorrectOldPasswordException;
+import com.melnikov.TicketBookingService.security.PasswordHasher;
+import com.melnikov.TicketBookingService.security.RefreshTokenStore;
+import com.melnikov.TicketBookingService.security.TokenRevocationList;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -15,25 +19,45 @@ import java.util.Optional;
 @Service
 public class UserService {
     private final UserDao userDao;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
+    private final RefreshTokenStore refreshTokenStore;
+    private final TokenRevocationList tokenRevocationList;
+    private final UserReadModelCache userReadModelCache;
+    private final TransactionTemplate transactionTemplate;
 
-    public UserService(UserDao userDao, PasswordEncoder passwordEncoder) {
+    public UserService(UserDao userDao, PasswordHasher passwordHasher, RefreshTokenStore refreshTokenStore,
+                       TokenRevocationList tokenRevocationList, UserReadModelCache userReadModelCache,
+                       TransactionTemplate transactionTemplate) {
         this.userDao = userDao;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
+        this.refreshTokenStore = refreshTokenStore;
+        this.tokenRevocationList = tokenRevocationList;
+        this.userReadModelCache = userReadModelCache;
+        this.transactionTemplate = transactionTemplate;
     }
 
+    /**
+     * Проверка и хеширование пароля — вне транзакции, чтобы BCrypt не держал соединение из пула;
+     * смена хеша и отзыв сессий — одной короткой транзакцией.
+     */
     public ResponseEntity<?> changePassword(Long userId, NewPasswordRequestDto newPasswordRequestDto) {
         String newPassword = newPasswordRequestDto.getNewPassword();
         String oldPassword = newPasswordRequestDto.getOldPassword();
-        String hashedOldPassword = passwordEncoder.encode(newPassword);
-        String hashedNewPassword = passwordEncoder.encode(oldPassword);
         User user = userDao.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        String hashedCurPassword = user.getPasswordHash();
-        if (!hashedCurPassword.equals(hashedOldPassword)){
+        // BCrypt солит каждый хеш, сравнивать можно только через matches
+        if (!passwordHasher.matches(oldPassword, user.getPasswordHash())){
             throw new IncorrectOldPasswordException("Old password does not match");
         }
-        boolean isChanged = userDao.updatePasswordById(userId, hashedNewPassword);
+        String hashedNewPassword = passwordHasher.hash(newPassword);
+        boolean isChanged = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (!userDao.updatePasswordById(userId, hashedNewPassword)) {
+                return false;
+            }
+            // Сессии со старым паролем завершаются, в том числе текущая
+            revokeSessions(userId);
+            return true;
+        }));
 
         if (isChanged) {
             return ResponseEntity.ok("Password updated successfully");
@@ -41,8 +65,23 @@ public class UserService {
         throw new RuntimeException("User not found");
     }
 
+    public void logout(Long userId) {
+        revokeSessions(userId);
+    }
+
     public User getUserInfo(Long userId) {
-        return userDao.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        return userReadModelCache.get(userId, UserReadModelCache.View.INFO, () -> {
+            User user = userDao.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            // хеш пароля не попадает ни в кеш, ни в ответ
+            user.setPasswordHash("");
+            return user;
+        });
+    }
+
+    private void revokeSessions(Long userId) {
+        long generation = userDao.nextSessionGeneration(userId);
+        refreshTokenStore.deleteByUserId(userId);
+        tokenRevocationList.revokeAll(userId, generation);
     }
-}
\ No newline at end of file
+}
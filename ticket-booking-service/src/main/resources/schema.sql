@@ -16,14 +16,49 @@ CREATE TABLE IF NOT EXISTS users (
     role_id INT NOT NULL REFERENCES roles(id)
 );
 
--- Таблица токенов обновления
+-- Поколение сессий: растет при отзыве, access-токен несет поколение, в котором выдан
+ALTER TABLE users ADD COLUMN IF NOT EXISTS session_generation BIGINT NOT NULL DEFAULT 0;
+
+-- Таблица токенов обновления: хранится SHA-256 токена, 32 байта
 CREATE TABLE IF NOT EXISTS refresh_tokens (
     id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
     user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
-    token VARCHAR(255) UNIQUE NOT NULL,
+    token_hash BYTEA NOT NULL,
     expiry_date TIMESTAMP WITH TIME ZONE NOT NULL
 );
 
+-- Переход с hex-колонки token: старые токены сбрасываются, пользователи входят заново
+ALTER TABLE refresh_tokens ADD COLUMN IF NOT EXISTS token_hash BYTEA;
+DELETE FROM refresh_tokens WHERE token_hash IS NULL;
+ALTER TABLE refresh_tokens DROP COLUMN IF EXISTS token;
+ALTER TABLE refresh_tokens ALTER COLUMN token_hash SET NOT NULL;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_refresh_tokens_hash ON refresh_tokens(token_hash);
+-- Вход и выход удаляют токены пользователя
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_user ON refresh_tokens(user_id);
+
+-- Отзыв access-токенов: токены пользователя из поколений раньше min_generation недействительны.
+-- Refresh-токены поколений раньше min_refresh_generation удалены, узлы сбрасывают их из памяти.
+-- После expires_at все такие access-токены истекли сами и строка не нужна
+CREATE TABLE IF NOT EXISTS revoked_tokens (
+    user_id BIGINT PRIMARY KEY REFERENCES users(id) ON DELETE CASCADE,
+    min_generation BIGINT NOT NULL,
+    min_refresh_generation BIGINT NOT NULL DEFAULT 0,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- Переход с порога по времени: у токенов без поколения оно нулевое, действующий отзыв
+-- переводится в поколение 1, пользователь с ним входит заново
+ALTER TABLE revoked_tokens ADD COLUMN IF NOT EXISTS min_generation BIGINT;
+UPDATE users SET session_generation = 1
+WHERE session_generation = 0 AND id IN (SELECT user_id FROM revoked_tokens WHERE min_generation IS NULL);
+UPDATE revoked_tokens SET min_generation = 1 WHERE min_generation IS NULL;
+ALTER TABLE revoked_tokens DROP COLUMN IF EXISTS revoked_before;
+ALTER TABLE revoked_tokens ALTER COLUMN min_generation SET NOT NULL;
+ALTER TABLE revoked_tokens ADD COLUMN IF NOT EXISTS min_refresh_generation BIGINT NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS idx_revoked_tokens_expires ON revoked_tokens(expires_at);
+
 -- Таблица типов транспорта
 CREATE TABLE IF NOT EXISTS transport_types (
     id INT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
@@ -54,11 +89,20 @@ CREATE TABLE IF NOT EXISTS tickets (
 );
 
 
-CREATE INDEX IF NOT EXISTS idx_transport_route_departure
-ON tickets(transport_type_id, route_id, departure_time);
+-- Индексы поиска: ключ (..., departure_time, id) совпадает с курсором и ORDER BY,
+-- остальные колонки выдачи в INCLUDE, чтобы страница читалась index-only scan
+DROP INDEX IF EXISTS idx_transport_route_departure;
+DROP INDEX IF EXISTS idx_route_departure;
 
-CREATE INDEX IF NOT EXISTS idx_route_departure
-ON tickets(route_id, departure_time);
+-- Поиск с типом транспорта показывает только рейсы с местами
+CREATE INDEX IF NOT EXISTS idx_tickets_type_route_departure_available
+ON tickets(transport_type_id, route_id, departure_time, id)
+INCLUDE (arrival_time, price, available_tickets)
+WHERE available_tickets > 0;
+
+CREATE INDEX IF NOT EXISTS idx_tickets_route_departure
+ON tickets(route_id, departure_time, id)
+INCLUDE (transport_type_id, arrival_time, price, available_tickets);
 
 
 -- Таблица бронирований
@@ -71,9 +115,41 @@ CREATE TABLE IF NOT EXISTS bookings (
     ticket_quantity INT NOT NULL CHECK (ticket_quantity > 0)  -- Количество забронированных билетов
 );
 
--- Индексы для bookings
-CREATE INDEX IF NOT EXISTS idx_user_id ON bookings(user_id);
-CREATE INDEX IF NOT EXISTS idx_status ON bookings(status);
+-- Индексы для bookings: история пользователя читается страницами по курсору (booking_time, id)
+-- от новых к старым — обратный проход по индексу, без сортировки
+DROP INDEX IF EXISTS idx_user_id;
+DROP INDEX IF EXISTS idx_status; -- три значения на всю таблицу, планировщик его не выбирал
+CREATE INDEX IF NOT EXISTS idx_bookings_user_time ON bookings(user_id, booking_time, id);
+-- Действующие брони (фильтр active/pending/confirmed): отмененные в индекс не попадают
+CREATE INDEX IF NOT EXISTS idx_bookings_user_active
+ON bookings(user_id, booking_time, id)
+WHERE status IN ('pending', 'confirmed');
+
+-- Версия строки рейса: любое изменение available_tickets увеличивает ее,
+-- оптимистичные обновления (bookings.concurrency=optimistic) сравнивают ее вместо блокировки
+ALTER TABLE tickets ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+-- Шардированный остаток "горячего" рейса: available_tickets разбит на несколько строк,
+-- параллельные брони списывают места из разных строк и не ждут друг друга.
+-- tickets.available_tickets у такого рейса - агрегат шардов, обновляемый периодически
+CREATE TABLE IF NOT EXISTS ticket_seat_shards (
+    ticket_id INT NOT NULL REFERENCES tickets(id) ON DELETE CASCADE,
+    shard INT NOT NULL,
+    available INT NOT NULL CHECK (available >= 0),
+    PRIMARY KEY (ticket_id, shard)
+);
+-- Признак шардированного рейса: прямые изменения available_tickets такой рейс пропускают,
+-- брони и возвраты идут в шарды, а агрегат пишет только перенос сумм шардов
+ALTER TABLE tickets ADD COLUMN IF NOT EXISTS sharded BOOLEAN NOT NULL DEFAULT false;
+UPDATE tickets t SET sharded = true
+WHERE NOT t.sharded AND EXISTS (SELECT 1 FROM ticket_seat_shards s WHERE s.ticket_id = t.id);
+
+-- Удержание мест: неподтвержденная бронь держит места до hold_expires_at, затем отменяется.
+-- Индекс нужен только для загрузки незавершенных удержаний при старте
+ALTER TABLE bookings ADD COLUMN IF NOT EXISTS hold_expires_at TIMESTAMP WITH TIME ZONE;
+CREATE INDEX IF NOT EXISTS idx_bookings_hold_expires
+ON bookings(hold_expires_at)
+WHERE status = 'pending' AND hold_expires_at IS NOT NULL;
 
 
 
@@ -92,3 +168,37 @@ CREATE TABLE IF NOT EXISTS deposits (
 CREATE INDEX IF NOT EXISTS idx_user_deposit ON deposits(user_id);
 CREATE INDEX IF NOT EXISTS idx_status_deposit ON deposits(status);
 
+-- Журнал движений баланса, только вставки: пополнения (+), оплата броней (-), возвраты (+).
+-- Баланс = users.balance (снимок) + сумма несвернутых записей. Фоновая свертка переносит записи
+-- в снимок и помечает compacted, поэтому хвост пользователя короткий.
+-- entry_key ('deposit:<id>', 'booking:<id>', 'refund:<id>') не дает провести одно движение дважды
+CREATE TABLE IF NOT EXISTS balance_ledger (
+    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    entry_key VARCHAR(64) NOT NULL,
+    kind VARCHAR(20) NOT NULL CHECK (kind IN ('deposit', 'booking', 'refund')),
+    amount INT NOT NULL,
+    compacted BOOLEAN NOT NULL DEFAULT FALSE,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_balance_ledger_entry ON balance_ledger(entry_key);
+-- Хвост для подсчета баланса: только несвернутые записи
+CREATE INDEX IF NOT EXISTS idx_balance_ledger_tail ON balance_ledger(user_id) INCLUDE (amount) WHERE NOT compacted;
+
+-- Ключи идемпотентности создания броней и пополнений: ответ первого выполнения по (user_id, ключ).
+-- Строка вставляется в транзакции самой операции, поэтому параллельный дубль ждет ее фиксации на вставке
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    idempotency_key VARCHAR(100) NOT NULL,
+    scope VARCHAR(50) NOT NULL,
+    request_hash BYTEA NOT NULL, -- SHA-256 тела запроса: тот же ключ с другим телом отклоняется
+    status_code INT,
+    content_type VARCHAR(100),
+    response_body TEXT,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (user_id, idempotency_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_expires ON idempotency_keys(expires_at);
+
@@ -0,0 +1,136 @@
+package com.melnikov.TicketBookingService.benchmarks;
+
+import com.melnikov.TicketBookingService.dto.BookingCreateRequestDto;
+import com.melnikov.TicketBookingService.inventory.SeatInventory;
+import com.melnikov.TicketBookingService.services.BookingService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Пропускная способность бронирования одного "горячего" рейса:
+ * атомарный JDBC-путь против SeatInventory. Запуск: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {"inventory.enabled=true", "logging.level.root=INFO"})
+@Testcontainers
+public class HotTicketBookingBenchmark {
+
+    private static final int SEATS = 1_000_000;
+    private static final int BOOKINGS = 20_000;
+    private static final int THREADS = 32;
+    private static final int USERS = 64;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> "32");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private SeatInventory seatInventory;
+
+    @Test
+    void hotTicketThroughput() throws Exception {
+        List<Long> users = createUsers();
+
+        int jdbcTicket = createTicket();
+        double jdbcRate = run(jdbcTicket, users);
+
+        int inventoryTicket = createTicket();
+        seatInventory.track(inventoryTicket, SEATS);
+        double inventoryRate = run(inventoryTicket, users);
+        seatInventory.flush();
+
+        System.out.printf("Hot ticket, %d bookings, %d threads%n", BOOKINGS, THREADS);
+        System.out.printf("  JDBC atomic path : %10.0f bookings/s%n", jdbcRate);
+        System.out.printf("  SeatInventory    : %10.0f bookings/s (x%.2f)%n", inventoryRate, inventoryRate / jdbcRate);
+
+        assertEquals(SEATS - BOOKINGS, available(jdbcTicket));
+        assertEquals(SEATS - BOOKINGS, available(inventoryTicket));
+    }
+
+    private double run(int ticketId, List<Long> users) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < BOOKINGS; i++) {
+            Long userId = users.get(i % users.size());
+            futures.add(executor.submit(() -> {
+                start.await();
+                BookingCreateRequestDto request = new BookingCreateRequestDto();
+                request.setTicketId(ticketId);
+                request.setTicketQuantity(1);
+                bookingService.createBooking(userId, request);
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        return BOOKINGS / (elapsed / 1e9);
+    }
+
+    private int createTicket() {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                VALUES ((SELECT MIN(id) FROM transport_types), (SELECT MIN(id) FROM routes),
+                        now() + interval '1 day', now() + interval '1 day 2 hours', 1, ?)
+                RETURNING id
+                """, Integer.class, SEATS);
+    }
+
+    private List<Long> createUsers() {
+        List<Long> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(jdbcTemplate.queryForObject("""
+                    INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                    VALUES (?, 'x', 'Bench', 'User', ?, 1000000000, (SELECT id FROM roles WHERE name = 'user'))
+                    RETURNING id
+                    """, Long.class, "bench" + i + "@test.com", LocalDate.of(2000, 1, 1)));
+        }
+        return users;
+    }
+
+    private int available(int ticketId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketId);
+    }
+}
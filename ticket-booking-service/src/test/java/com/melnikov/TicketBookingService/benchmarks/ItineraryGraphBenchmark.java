@@ -0,0 +1,97 @@
+package com.melnikov.TicketBookingService.benchmarks;
+
+import com.melnikov.TicketBookingService.dao.RouteDao;
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Route;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.search.ItineraryGraph;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Задержка поиска стыковок на синтетическом графе: 300 городов, 3000 маршрутов, 300k рейсов.
+ * Запуск: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class ItineraryGraphBenchmark {
+
+    private static final int CITIES = 300;
+    private static final int ROUTES = 3000;
+    private static final int TICKETS = 300_000;
+    private static final int DAYS = 30;
+    private static final int QUERIES = 2000;
+
+    @Test
+    void searchLatency() {
+        Random random = new Random(42);
+        ZonedDateTime base = ZonedDateTime.now().plusDays(1).withNano(0);
+
+        List<Route> routes = new ArrayList<>();
+        for (int id = 1; routes.size() < ROUTES; id++) {
+            int from = random.nextInt(CITIES);
+            int to = random.nextInt(CITIES);
+            if (from != to) {
+                routes.add(new Route(id, "City" + from, "City" + to));
+            }
+        }
+        List<Ticket> tickets = new ArrayList<>(TICKETS);
+        for (int id = 1; id <= TICKETS; id++) {
+            Route route = routes.get(random.nextInt(routes.size()));
+            ZonedDateTime departure = base.plusMinutes(random.nextInt(DAYS * 24 * 60));
+            tickets.add(Ticket.builder()
+                    .id(id)
+                    .routeId(route.getId())
+                    .transportTypeId(1 + random.nextInt(3))
+                    .departureTime(departure)
+                    .arrivalTime(departure.plusMinutes(30 + random.nextInt(600)))
+                    .price(500 + random.nextInt(20000))
+                    .availableTickets(random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(100))
+                    .build());
+        }
+
+        TicketDao ticketDao = mock(TicketDao.class);
+        RouteDao routeDao = mock(RouteDao.class);
+        when(routeDao.findAll()).thenReturn(routes);
+        when(ticketDao.findAll()).thenReturn(tickets);
+        ItineraryGraph graph = new ItineraryGraph(ticketDao, routeDao, true, Duration.ofMinutes(45), Duration.ofHours(24));
+        long loadStart = System.nanoTime();
+        graph.load();
+        long loadMs = (System.nanoTime() - loadStart) / 1_000_000;
+
+        long[] latencies = new long[QUERIES];
+        int found = 0;
+        for (int i = -QUERIES; i < QUERIES; i++) { // первая половина — прогрев
+            String from = "City" + random.nextInt(CITIES);
+            String to = "City" + random.nextInt(CITIES);
+            ZonedDateTime start = base.plusDays(random.nextInt(DAYS - 2));
+            ItineraryGraph.SortOrder order = i % 2 == 0 ? ItineraryGraph.SortOrder.DURATION : ItineraryGraph.SortOrder.PRICE;
+
+            long begin = System.nanoTime();
+            int results = graph.search(from, to, start, start.plusDays(1), 2, order, 10).size();
+            if (i >= 0) {
+                latencies[i] = System.nanoTime() - begin;
+                found += results > 0 ? 1 : 0;
+            }
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("Itinerary graph: %d cities, %d routes, %d tickets, loaded in %d ms%n",
+                CITIES, ROUTES, TICKETS, loadMs);
+        System.out.printf("  %d queries (%d with results): p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                QUERIES, found, latencies[QUERIES / 2] / 1e6, latencies[QUERIES * 99 / 100] / 1e6,
+                latencies[QUERIES - 1] / 1e6);
+
+        assertTrue(found > 0);
+    }
+}
@@ -0,0 +1,106 @@
+package com.melnikov.TicketBookingService.benchmarks;
+
+import com.melnikov.TicketBookingService.entity.User;
+import com.melnikov.TicketBookingService.security.JwtKeyRing;
+import com.melnikov.TicketBookingService.security.JwtPrincipal;
+import com.melnikov.TicketBookingService.services.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость аутентификации одного запроса с JWT:
+ * раньше токен проверялся в фильтре и еще раз в контроллере, каждый раз с новым парсером и ключом,
+ * теперь — один разбор общим парсером. После перехода на ES256 подпись проверяется один раз на токен
+ * (verifySignature), повторные запросы с тем же токеном — parseOnce. Запуск: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthBenchmark {
+
+    private static final String SECRET = "tRv7Q4wLbXyN2pE9uJkYq1sW3zZcF6hM8dA0gK5oIiUjPxVlBn";
+
+    private JwtService jwtService;
+    private String token;
+    private String legacyToken;
+
+    @Setup
+    public void setUp() {
+        JwtKeyRing keyRing = new JwtKeyRing("", Duration.ZERO);
+        keyRing.load();
+        jwtService = new JwtService(keyRing);
+        ReflectionTestUtils.setField(jwtService, "accessExpiration", 900_000L);
+        ReflectionTestUtils.setField(jwtService, "refreshExpiration", 604_800_000L);
+        ReflectionTestUtils.setField(jwtService, "verifiedCacheMaxSize", 100_000);
+        jwtService.init();
+
+        User user = new User();
+        user.setId(42L);
+        user.setEmail("bench@test.com");
+        user.setRoleId(2);
+        token = jwtService.generateAccessToken(user);
+        // прежняя схема: HS256 с общим секретом
+        legacyToken = Jwts.builder()
+                .setSubject(user.getEmail())
+                .claim("id", user.getId())
+                .claim("roleId", user.getRoleId())
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 900_000L))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    @Benchmark
+    public Long legacyFilterPlusController() {
+        // JwtFilter
+        Claims filterClaims = legacyParse(legacyToken);
+        filterClaims.get("roleId", Integer.class);
+        // BookingController.extractUserIdFromToken
+        return legacyParse(legacyToken).get("id", Long.class);
+    }
+
+    @Benchmark
+    public JwtPrincipal parseOnce() {
+        return jwtService.parseAccessToken(token);
+    }
+
+    // первый запрос с новым токеном: проверка подписи ES256
+    @Benchmark
+    public Claims verifySignature() {
+        return jwtService.extractClaims(token);
+    }
+
+    private static Claims legacyParse(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(SECRET.getBytes(StandardCharsets.UTF_8))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    @Test
+    void run() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(JwtAuthBenchmark.class.getName())
+                .build();
+        new Runner(options).run();
+    }
+}
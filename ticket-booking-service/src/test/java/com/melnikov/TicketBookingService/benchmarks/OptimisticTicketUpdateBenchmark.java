@@ -0,0 +1,191 @@
+package com.melnikov.TicketBookingService.benchmarks;
+
+import com.melnikov.TicketBookingService.booking.TicketUpdateRetryPolicy;
+import com.melnikov.TicketBookingService.dto.BookingCreateRequestDto;
+import com.melnikov.TicketBookingService.exception.TicketUpdateConflictException;
+import com.melnikov.TicketBookingService.services.BookingService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Пессимистичное обновление остатка (UPDATE под блокировкой строки) против оптимистичного
+ * (версия + compare-and-set с повторами) при перекошенной нагрузке: заявки распределены
+ * по рейсам по Ципфу, первый рейс получает большую их часть. Запуск: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {"bookings.group-commit.enabled=false", "logging.level.root=INFO"})
+@Testcontainers
+public class OptimisticTicketUpdateBenchmark {
+
+    private static final int TICKETS = 20;
+    private static final double ZIPF_EXPONENT = 1.2;
+    private static final int SEATS = 1_000_000;
+    private static final int BOOKINGS = 20_000;
+    private static final int THREADS = 32;
+    private static final int USERS = 64;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> "32");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private TicketUpdateRetryPolicy retryPolicy;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void skewedLoadThroughput() throws Exception {
+        List<Long> users = createUsers();
+
+        Result pessimistic = run(createTickets(), users, false);
+        double conflictsBefore = conflicts();
+        Result optimistic = run(createTickets(), users, true);
+        double conflicts = conflicts() - conflictsBefore;
+
+        System.out.printf("Zipf(%.1f) over %d tickets, %d bookings, %d threads%n",
+                ZIPF_EXPONENT, TICKETS, BOOKINGS, THREADS);
+        System.out.printf("  Pessimistic : %10.0f bookings/s%n", pessimistic.rate);
+        System.out.printf("  Optimistic  : %10.0f bookings/s (x%.2f), %.0f conflicts, %d gave up%n",
+                optimistic.rate, optimistic.rate / pessimistic.rate, conflicts, optimistic.gaveUp);
+
+        assertEquals(0, pessimistic.gaveUp);
+        assertEquals(BOOKINGS, pessimistic.booked);
+        assertEquals(BOOKINGS, optimistic.booked + optimistic.gaveUp);
+    }
+
+    private Result run(List<Integer> tickets, List<Long> users, boolean optimistic) throws Exception {
+        ReflectionTestUtils.setField(retryPolicy, "optimistic", optimistic);
+        int[] targets = zipf(tickets.size(), new Random(42));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger gaveUp = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < BOOKINGS; i++) {
+            Long userId = users.get(i % users.size());
+            Integer ticketId = tickets.get(targets[i]);
+            futures.add(executor.submit(() -> {
+                start.await();
+                BookingCreateRequestDto request = new BookingCreateRequestDto();
+                request.setTicketId(ticketId);
+                request.setTicketQuantity(1);
+                try {
+                    bookingService.createBooking(userId, request);
+                } catch (TicketUpdateConflictException e) {
+                    gaveUp.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        int booked = tickets.stream().mapToInt(ticketId -> SEATS - available(ticketId)).sum();
+        return new Result(BOOKINGS / (elapsed / 1e9), booked, gaveUp.get());
+    }
+
+    // Индекс рейса для каждой заявки: вероятность k-го рейса пропорциональна 1 / k^s
+    private static int[] zipf(int n, Random random) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, ZIPF_EXPONENT);
+            cumulative[k] = sum;
+        }
+        int[] targets = new int[BOOKINGS];
+        for (int i = 0; i < BOOKINGS; i++) {
+            double point = random.nextDouble() * sum;
+            int k = 0;
+            while (cumulative[k] < point) {
+                k++;
+            }
+            targets[i] = k;
+        }
+        return targets;
+    }
+
+    private double conflicts() {
+        return meterRegistry.find("tickets.optimistic.conflicts").counters().stream()
+                .mapToDouble(Counter::count).sum();
+    }
+
+    private List<Integer> createTickets() {
+        List<Integer> tickets = new ArrayList<>();
+        for (int i = 0; i < TICKETS; i++) {
+            tickets.add(jdbcTemplate.queryForObject("""
+                    INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                    VALUES ((SELECT MIN(id) FROM transport_types), (SELECT MIN(id) FROM routes),
+                            now() + interval '1 day', now() + interval '1 day 2 hours', 1, ?)
+                    RETURNING id
+                    """, Integer.class, SEATS));
+        }
+        return tickets;
+    }
+
+    private List<Long> createUsers() {
+        List<Long> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(jdbcTemplate.queryForObject("""
+                    INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                    VALUES (?, 'x', 'Bench', 'User', ?, 1000000000, (SELECT id FROM roles WHERE name = 'user'))
+                    RETURNING id
+                    """, Long.class, "occ" + i + "@test.com", LocalDate.of(2000, 1, 1)));
+        }
+        return users;
+    }
+
+    private int available(int ticketId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketId);
+    }
+
+    private record Result(double rate, int booked, int gaveUp) {
+    }
+}
@@ -0,0 +1,158 @@
+package com.melnikov.TicketBookingService.benchmarks;
+
+import com.melnikov.TicketBookingService.dto.TicketSearchRequestDto;
+import com.melnikov.TicketBookingService.search.TicketSearchCoalescer;
+import com.melnikov.TicketBookingService.services.TicketService;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузка на пул соединений при одинаковых одновременных поисках:
+ * прямой вызов TicketService против TicketSearchCoalescer. Запуск: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {"tickets.search.cache.enabled=false", "logging.level.root=INFO"})
+@Testcontainers
+public class SearchCoalescingBenchmark {
+
+    private static final int CLIENTS = 128;
+    private static final int SEARCHES_PER_CLIENT = 200;
+    private static final int POOL_SIZE = 16;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> String.valueOf(POOL_SIZE));
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TicketService ticketService;
+
+    @Autowired
+    private TicketSearchCoalescer coalescer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void identicalSearchesUnderLoad() throws Exception {
+        jdbcTemplate.update("""
+                INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                SELECT (SELECT id FROM transport_types WHERE name = 'train'),
+                       (SELECT id FROM routes WHERE departure_city = 'Москва' AND arrival_city = 'Санкт-Петербург'),
+                       now() + interval '1 day' + g * interval '10 minutes',
+                       now() + interval '1 day' + g * interval '10 minutes' + interval '4 hours',
+                       1500, 50
+                FROM generate_series(1, 5000) g
+                """);
+        HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+
+        PoolLoad direct = run(pool, ticketService::searchTickets);
+        double executedBefore = executed();
+        PoolLoad coalesced = run(pool, coalescer::search);
+        double executed = executed() - executedBefore;
+
+        int searches = CLIENTS * SEARCHES_PER_CLIENT;
+        System.out.printf("%d identical searches, %d clients, pool of %d%n", searches, CLIENTS, POOL_SIZE);
+        System.out.printf("  direct    : %8.0f searches/s, %d DB calls, peak active %d, peak waiting %d%n",
+                direct.rate(), searches, direct.peakActive(), direct.peakWaiting());
+        System.out.printf("  coalesced : %8.0f searches/s, %.0f DB calls, peak active %d, peak waiting %d%n",
+                coalesced.rate(), executed, coalesced.peakActive(), coalesced.peakWaiting());
+
+        assertTrue(executed < searches);
+    }
+
+    private PoolLoad run(HikariPoolMXBean pool, Function<TicketSearchRequestDto, ?> search) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int n = 0; n < SEARCHES_PER_CLIENT; n++) {
+                    search.apply(request());
+                }
+                return null;
+            }));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger peakActive = new AtomicInteger();
+        AtomicInteger peakWaiting = new AtomicInteger();
+        Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                peakActive.accumulateAndGet(pool.getActiveConnections(), Math::max);
+                peakWaiting.accumulateAndGet(pool.getThreadsAwaitingConnection(), Math::max);
+                Thread.onSpinWait();
+            }
+        });
+        sampler.start();
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - begin;
+        running.set(false);
+        sampler.join();
+        executor.shutdown();
+
+        return new PoolLoad(CLIENTS * SEARCHES_PER_CLIENT / (elapsed / 1e9), peakActive.get(), peakWaiting.get());
+    }
+
+    private double executed() {
+        return meterRegistry.get("tickets.search.coalescing.requests").tag("result", "executed").counter().count();
+    }
+
+    private static TicketSearchRequestDto request() {
+        TicketSearchRequestDto request = new TicketSearchRequestDto();
+        request.setFrom("Москва");
+        request.setTo("Санкт-Петербург");
+        request.setType("train");
+        request.setPageSize(15);
+        return request;
+    }
+
+    private record PoolLoad(double rate, int peakActive, int peakWaiting) {
+    }
+}
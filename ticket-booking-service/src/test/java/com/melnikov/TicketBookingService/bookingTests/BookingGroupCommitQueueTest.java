@@ -0,0 +1,160 @@
+package com.melnikov.TicketBookingService.bookingTests;
+
+import com.melnikov.TicketBookingService.booking.BookingGroupCommitQueue;
+import com.melnikov.TicketBookingService.dao.BookingDao;
+import com.melnikov.TicketBookingService.entity.Booking;
+import com.melnikov.TicketBookingService.entity.BookingAttempt;
+import com.melnikov.TicketBookingService.exception.BookingQueueBusyException;
+import com.melnikov.TicketBookingService.holds.SeatHoldScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BookingGroupCommitQueueTest {
+
+    private static final int TICKET_ID = 7;
+    private static final int MAX_BATCH = 10;
+
+    private BookingDao bookingDao;
+    private SimpleMeterRegistry meterRegistry;
+    private BookingGroupCommitQueue queue;
+    private ExecutorService callers;
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        bookingDao = mock(BookingDao.class);
+        meterRegistry = new SimpleMeterRegistry();
+        queue = new BookingGroupCommitQueue(bookingDao, mock(SeatHoldScheduler.class),
+                mock(PlatformTransactionManager.class), meterRegistry, true, MAX_BATCH, 20, 5000, 2);
+        callers = Executors.newFixedThreadPool(32);
+
+        // Каждая заявка на нечетное число мест отклоняется — проверяем, что результат доходит до своего вызывающего
+        when(bookingDao.bookBatch(eq(TICKET_ID), anyList())).thenAnswer(invocation -> {
+            List<Booking> requests = invocation.getArgument(1);
+            batchSizes.add(requests.size());
+            List<BookingAttempt> attempts = new ArrayList<>();
+            for (Booking request : requests) {
+                attempts.add(request.getTicketQuantity() % 2 == 0
+                        ? BookingAttempt.builder().status(BookingAttempt.Status.CREATED)
+                                .booking(Booking.builder().id(nextId.incrementAndGet())
+                                        .userId(request.getUserId())
+                                        .ticketQuantity(request.getTicketQuantity()).build())
+                                .build()
+                        : BookingAttempt.builder().status(BookingAttempt.Status.NOT_ENOUGH_TICKETS).build());
+            }
+            return attempts;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        queue.shutdown();
+    }
+
+    @Test
+    void concurrentRequestsShareTransactionsAndGetOwnResults() throws Exception {
+        int requests = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<BookingAttempt>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            long userId = i;
+            int quantity = i % 4 + 1;
+            futures.add(callers.submit(() -> {
+                start.await();
+                return queue.book(userId, TICKET_ID, quantity, ZonedDateTime.now(), null);
+            }));
+        }
+        start.countDown();
+
+        for (int i = 0; i < requests; i++) {
+            BookingAttempt attempt = futures.get(i).get(5, TimeUnit.SECONDS);
+            int quantity = i % 4 + 1;
+            assertEquals(quantity % 2 == 0, attempt.isCreated());
+            if (attempt.isCreated()) {
+                assertEquals(i, attempt.getBooking().getUserId());
+                assertEquals(quantity, attempt.getBooking().getTicketQuantity());
+            }
+        }
+
+        assertEquals(requests, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.stream().allMatch(size -> size <= MAX_BATCH), batchSizes.toString());
+        assertTrue(batchSizes.size() < requests, "requests were not batched: " + batchSizes);
+        assertEquals(batchSizes.size(), meterRegistry.get("bookings.group-commit.batch.size").summary().count());
+    }
+
+    @Test
+    void lonelyRequestIsCommittedAfterLinger() {
+        BookingAttempt attempt = queue.book(1L, TICKET_ID, 2, ZonedDateTime.now(), null);
+
+        assertTrue(attempt.isCreated());
+        assertEquals(List.of(1), batchSizes);
+    }
+
+    @Test
+    void databaseErrorFailsWholeBatch() {
+        reset(bookingDao);
+        when(bookingDao.bookBatch(any(), anyList())).thenThrow(new QueryTimeoutException("timeout"));
+
+        assertThrows(QueryTimeoutException.class, () -> queue.book(1L, TICKET_ID, 2, ZonedDateTime.now(), null));
+        assertEquals(1.0, meterRegistry.get("bookings.group-commit.batch.failed").counter().count());
+    }
+
+    @Test
+    void requestStuckBehindSlowBatchTimesOutWithoutBooking() throws Exception {
+        queue.shutdown();
+        meterRegistry = new SimpleMeterRegistry();
+        queue = new BookingGroupCommitQueue(bookingDao, mock(SeatHoldScheduler.class),
+                mock(PlatformTransactionManager.class), meterRegistry, true, MAX_BATCH, 0, 300, 1);
+        CountDownLatch inBatch = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        reset(bookingDao);
+        when(bookingDao.bookBatch(eq(TICKET_ID), anyList())).thenAnswer(invocation -> {
+            inBatch.countDown();
+            release.await();
+            List<Booking> requests = invocation.getArgument(1);
+            batchSizes.add(requests.size());
+            return requests.stream()
+                    .map(request -> BookingAttempt.builder().status(BookingAttempt.Status.CREATED)
+                            .booking(Booking.builder().id(nextId.incrementAndGet()).build()).build())
+                    .toList();
+        });
+
+        // Первая заявка фиксируется, пока БД "висит"; вторая ждет ее в очереди
+        Future<BookingAttempt> first = callers.submit(() -> queue.book(1L, TICKET_ID, 2, ZonedDateTime.now(), null));
+        assertTrue(inBatch.await(5, TimeUnit.SECONDS));
+
+        assertThrows(BookingQueueBusyException.class, () -> queue.book(2L, TICKET_ID, 2, ZonedDateTime.now(), null));
+        release.countDown();
+
+        // Забранная пачкой заявка дожидается своего результата, снятая из очереди в БД не попадает
+        assertTrue(first.get(5, TimeUnit.SECONDS).isCreated());
+        verify(bookingDao, timeout(1000).times(1)).bookBatch(eq(TICKET_ID), anyList());
+        assertEquals(List.of(1), batchSizes);
+        assertEquals(1.0, meterRegistry.get("bookings.group-commit.timeouts").counter().count());
+        assertEquals(0.0, meterRegistry.get("bookings.group-commit.queue.depth").gauge().value());
+    }
+}
@@ -0,0 +1,90 @@
+package com.melnikov.TicketBookingService.bookingTests;
+
+import com.melnikov.TicketBookingService.booking.TicketUpdateRetryPolicy;
+import com.melnikov.TicketBookingService.exception.TicketUpdateConflictException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TicketUpdateRetryPolicyTest {
+
+    private static final int TICKET_ID = 7;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void conflictIsRetriedUntilUpdateWins() {
+        TicketUpdateRetryPolicy policy = policy(5, 0.2, 100);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = policy.execute(TICKET_ID, () -> calls.incrementAndGet() < 3 ? Optional.empty() : Optional.of("ok"));
+
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+        assertEquals(2.0, count("tickets.optimistic.conflicts"));
+        assertEquals(2.0, count("tickets.optimistic.retries"));
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        TicketUpdateRetryPolicy policy = policy(3, 0.2, 100);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(TicketUpdateConflictException.class,
+                () -> policy.execute(TICKET_ID, () -> {
+                    calls.incrementAndGet();
+                    return Optional.empty();
+                }));
+
+        assertEquals(3, calls.get());
+        assertEquals(1.0, count("tickets.optimistic.exhausted"));
+    }
+
+    @Test
+    void exhaustedBudgetStopsRetries() {
+        // Запас на два повтора, пополнение 0.5 повтора на вызов
+        TicketUpdateRetryPolicy policy = policy(10, 0.5, 2);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(TicketUpdateConflictException.class,
+                () -> policy.execute(TICKET_ID, () -> {
+                    calls.incrementAndGet();
+                    return Optional.empty();
+                }));
+        // две попытки из запаса и ни одной сверх него, хотя max-attempts больше
+        assertEquals(3, calls.get());
+
+        // Успешные вызовы пополняют бюджет: двух хватает на один повтор
+        policy.execute(TICKET_ID, () -> Optional.of(1));
+        policy.execute(TICKET_ID, () -> Optional.of(1));
+        AtomicInteger next = new AtomicInteger();
+        assertEquals("ok", policy.execute(TICKET_ID,
+                () -> next.incrementAndGet() == 1 ? Optional.empty() : Optional.of("ok")));
+    }
+
+    @Test
+    void rejectsUnknownMode() {
+        assertThrows(IllegalArgumentException.class, () -> new TicketUpdateRetryPolicy(meterRegistry, "lock-free",
+                5, Duration.ofMillis(1), Duration.ofMillis(5), 0.2, 100));
+    }
+
+    private TicketUpdateRetryPolicy policy(int maxAttempts, double budgetRatio, int budgetCap) {
+        return new TicketUpdateRetryPolicy(meterRegistry, "optimistic", maxAttempts,
+                Duration.ofNanos(1000), Duration.ofNanos(10_000), budgetRatio, budgetCap);
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("ticket", String.valueOf(TICKET_ID)).counter().count();
+    }
+}
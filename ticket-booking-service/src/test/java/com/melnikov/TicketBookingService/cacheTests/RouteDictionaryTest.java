@@ -0,0 +1,80 @@
+package com.melnikov.TicketBookingService.cacheTests;
+
+import com.melnikov.TicketBookingService.cache.RouteDictionary;
+import com.melnikov.TicketBookingService.dao.RouteDaoImpl;
+import com.melnikov.TicketBookingService.entity.Route;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RouteDictionaryTest {
+
+    @Mock
+    private RouteDaoImpl routeDao;
+
+    private RouteDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        when(routeDao.findAll()).thenReturn(List.of(new Route(1, "Москва", "Казань")));
+        dictionary = new RouteDictionary(routeDao, Duration.ofMinutes(1), 2);
+        dictionary.load();
+    }
+
+    @Test
+    void answersLoadedRoutesWithoutQueries() {
+        assertEquals(Optional.of(1), dictionary.findIdByCities("Москва", "Казань"));
+        assertEquals("Казань", dictionary.findById(1).orElseThrow().getArrivalCity());
+        verify(routeDao, never()).findIdByCities(any(), any());
+        verify(routeDao, never()).findById(any());
+    }
+
+    @Test
+    void cachesMisses() {
+        when(routeDao.findIdByCities("A", "B")).thenReturn(Optional.empty());
+
+        assertTrue(dictionary.findIdByCities("A", "B").isEmpty());
+        assertTrue(dictionary.findIdByCities("A", "B").isEmpty());
+
+        verify(routeDao, times(1)).findIdByCities("A", "B");
+    }
+
+    @Test
+    void negativeCacheIsBounded() {
+        when(routeDao.findIdByCities(any(), any())).thenReturn(Optional.empty());
+
+        for (int i = 0; i < 2; i++) {
+            for (String to : List.of("B", "C", "D")) {
+                assertTrue(dictionary.findIdByCities("A", to).isEmpty());
+            }
+        }
+
+        // помнятся только два первых промаха, третий каждый раз идет в БД
+        verify(routeDao, times(1)).findIdByCities("A", "B");
+        verify(routeDao, times(1)).findIdByCities("A", "C");
+        verify(routeDao, times(2)).findIdByCities("A", "D");
+    }
+
+    @Test
+    void createdRouteIsVisibleImmediately() {
+        when(routeDao.findIdByCities("A", "B")).thenReturn(Optional.empty());
+        when(routeDao.createRoute("A", "B")).thenReturn(7);
+
+        assertTrue(dictionary.findIdByCities("A", "B").isEmpty());
+        dictionary.createRoute("A", "B");
+
+        assertEquals(Optional.of(7), dictionary.findIdByCities("A", "B"));
+        assertEquals(Optional.of(7), dictionary.findById(7).map(Route::getId));
+        verify(routeDao, times(1)).findIdByCities("A", "B");
+    }
+}
@@ -0,0 +1,80 @@
+package com.melnikov.TicketBookingService.cacheTests;
+
+import com.melnikov.TicketBookingService.cache.TicketSearchCache;
+import com.melnikov.TicketBookingService.dto.TicketSearchRequestDto;
+import com.melnikov.TicketBookingService.dto.TicketSearchResponseDto;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TicketSearchCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private TicketSearchCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new TicketSearchCache(meterRegistry, true, 10000);
+    }
+
+    @Test
+    void returnsCachedResponseUntilRouteChanges() {
+        TicketSearchCache.SearchKey key = cache.key(1, null, new TicketSearchRequestDto());
+        TicketSearchResponseDto response = response();
+
+        cache.put(key, cache.version(1), response);
+        assertSame(response, cache.get(key).orElseThrow());
+
+        cache.onAvailabilityChanged(10, 1, -1);
+        assertTrue(cache.get(key).isEmpty());
+
+        assertEquals(1.0, meterRegistry.get("tickets.search.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("tickets.search.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void changeOnOtherRouteKeepsEntry() {
+        TicketSearchCache.SearchKey key = cache.key(1, 2, new TicketSearchRequestDto());
+        cache.put(key, cache.version(1), response());
+
+        Ticket other = new Ticket();
+        other.setRouteId(2);
+        cache.onTicketSaved(other);
+
+        assertTrue(cache.get(key).isPresent());
+    }
+
+    @Test
+    void doesNotStoreResultComputedBeforeChange() {
+        TicketSearchCache.SearchKey key = cache.key(1, null, new TicketSearchRequestDto());
+        long version = cache.version(1);
+
+        cache.onAvailabilityChanged(10, 1, -1); // бронь прошла, пока шел запрос
+        cache.put(key, version, response());
+
+        assertTrue(cache.get(key).isEmpty());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWhenFull() {
+        cache = new TicketSearchCache(meterRegistry, true, 16);
+        for (int routeId = 0; routeId < 100; routeId++) {
+            cache.put(cache.key(routeId, null, new TicketSearchRequestDto()), 0, response());
+        }
+
+        assertTrue(cache.size() <= 16);
+        assertTrue(meterRegistry.get("tickets.search.cache.evictions").counter().count() > 0);
+    }
+
+    private static TicketSearchResponseDto response() {
+        TicketSearchResponseDto response = new TicketSearchResponseDto();
+        response.setTickets(List.of());
+        return response;
+    }
+}
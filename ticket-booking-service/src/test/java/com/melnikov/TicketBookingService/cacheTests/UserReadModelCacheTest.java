@@ -0,0 +1,76 @@
+package com.melnikov.TicketBookingService.cacheTests;
+
+import com.melnikov.TicketBookingService.cache.UserReadModelCache;
+import com.melnikov.TicketBookingService.cache.UserReadModelCache.View;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserReadModelCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicLong now;
+    private UserReadModelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        now = new AtomicLong();
+        cache = new UserReadModelCache(meterRegistry, true, Duration.ofSeconds(60), 10000, now::get);
+    }
+
+    @Test
+    void loadsOnceUntilInvalidated() {
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, cache.get(1L, View.INFO, loads::incrementAndGet));
+        assertEquals(1, cache.get(1L, View.INFO, loads::incrementAndGet));
+
+        cache.invalidate(1L, View.INFO);
+        assertEquals(2, cache.get(1L, View.INFO, loads::incrementAndGet));
+
+        assertEquals(1.0, meterRegistry.get("users.cache.requests")
+                .tag("view", "info").tag("result", "hit").counter().count());
+        assertEquals(2.0, meterRegistry.get("users.cache.requests")
+                .tag("view", "info").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void invalidationTouchesOnlyGivenUserAndViews() {
+        cache.get(1L, View.INFO, () -> "info-1");
+        cache.get(1L, View.DEPOSITS, () -> "deposits-1");
+        cache.get(2L, View.DEPOSITS, () -> "deposits-2");
+
+        cache.invalidate(1L, View.DEPOSITS);
+
+        assertEquals("info-1", cache.get(1L, View.INFO, () -> "reloaded"));
+        assertEquals("reloaded", cache.get(1L, View.DEPOSITS, () -> "reloaded"));
+        assertEquals("deposits-2", cache.get(2L, View.DEPOSITS, () -> "reloaded"));
+    }
+
+    @Test
+    void expiresAfterTtl() {
+        cache.get(1L, View.BOOKINGS, () -> "old");
+
+        now.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        assertEquals("new", cache.get(1L, View.BOOKINGS, () -> "new"));
+    }
+
+    @Test
+    void doesNotStoreValueLoadedBeforeInvalidation() {
+        String loaded = cache.get(1L, View.BOOKINGS, () -> {
+            cache.invalidate(1L, View.BOOKINGS); // бронь зафиксирована, пока шел запрос
+            return "stale";
+        });
+
+        assertEquals("stale", loaded);
+        assertEquals("fresh", cache.get(1L, View.BOOKINGS, () -> "fresh"));
+    }
+}
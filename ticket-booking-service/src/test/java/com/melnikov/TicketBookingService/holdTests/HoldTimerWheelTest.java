@@ -0,0 +1,74 @@
+package com.melnikov.TicketBookingService.holdTests;
+
+import com.melnikov.TicketBookingService.holds.HoldTimerWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldTimerWheelTest {
+
+    private static final long TICK = 1000;
+
+    @Test
+    void firesAtDeadlineNotBefore() {
+        HoldTimerWheel wheel = new HoldTimerWheel(TICK, 4, 0);
+        wheel.schedule(1, 5_500);
+
+        assertEquals(List.of(), wheel.advance(5_000));
+        assertEquals(List.of(), wheel.advance(5_999));
+        assertEquals(List.of(1), wheel.advance(6_000));
+        assertEquals(List.of(), wheel.advance(7_000));
+    }
+
+    @Test
+    void canceledAndRescheduledHoldsFireOnce() {
+        HoldTimerWheel wheel = new HoldTimerWheel(TICK, 4, 0);
+        wheel.schedule(1, 10_000);
+        wheel.schedule(2, 10_000);
+        wheel.cancel(1);
+        wheel.schedule(2, 20_000);
+
+        assertEquals(List.of(), wheel.advance(15_000));
+        assertEquals(List.of(2), wheel.advance(20_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextAdvance() {
+        HoldTimerWheel wheel = new HoldTimerWheel(TICK, 4, 100_000);
+        wheel.schedule(7, 50_000); // удержание истекло, пока узел был остановлен
+
+        assertEquals(List.of(7), wheel.advance(100_000));
+    }
+
+    @Test
+    void cascadesThroughLevelsWithoutLateOrEarlyFiring() {
+        long start = 12_345 * TICK;
+        HoldTimerWheel wheel = new HoldTimerWheel(TICK, 3, start);
+        Random random = new Random(42);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        // Сроки на всех уровнях и за пределами верхнего (64^3 тиков)
+        for (int id = 0; id < 5_000; id++) {
+            long deadline = start + 1 + (long) (random.nextDouble() * 300_000) * TICK;
+            deadlines.put(id, deadline);
+            wheel.schedule(id, deadline);
+        }
+
+        List<Integer> fired = new ArrayList<>();
+        for (long now = start; fired.size() < deadlines.size(); now += TICK) {
+            for (Integer id : wheel.advance(now)) {
+                long deadline = deadlines.get(id);
+                assertTrue(deadline <= now && now - deadline < TICK, "hold " + id + " fired at " + now);
+                fired.add(id);
+            }
+            assertTrue(now - start < 400_000 * TICK, "holds never fired");
+        }
+        assertEquals(deadlines.size(), fired.stream().distinct().count());
+    }
+}
@@ -0,0 +1,131 @@
+package com.melnikov.TicketBookingService.idempotencyTests;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.melnikov.TicketBookingService.dao.IdempotencyKeyDao;
+import com.melnikov.TicketBookingService.dto.DepositRequestDto;
+import com.melnikov.TicketBookingService.exception.IdempotencyKeyReusedException;
+import com.melnikov.TicketBookingService.idempotency.IdempotencyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IdempotencyStoreTest {
+
+    private IdempotencyKeyDao idempotencyKeyDao;
+    private IdempotencyStore store;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyKeyDao = mock(IdempotencyKeyDao.class);
+        when(idempotencyKeyDao.claim(any())).thenReturn(true);
+        store = new IdempotencyStore(idempotencyKeyDao, mock(PlatformTransactionManager.class), new ObjectMapper(),
+                new SimpleMeterRegistry(), Duration.ofHours(1), 1000);
+    }
+
+    @Test
+    void repeatedKeyReturnsStoredResponseWithoutExecuting() {
+        AtomicInteger executions = new AtomicInteger();
+
+        ResponseEntity<?> first = store.execute(1L, "deposits.create", "key-1", deposit(100),
+                () -> ResponseEntity.ok("created " + executions.incrementAndGet()));
+        ResponseEntity<?> second = store.execute(1L, "deposits.create", "key-1", deposit(100),
+                () -> ResponseEntity.ok("created " + executions.incrementAndGet()));
+
+        assertEquals(1, executions.get());
+        assertEquals("created 1", first.getBody());
+        assertEquals("created 1", second.getBody());
+        assertEquals("true", second.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        verify(idempotencyKeyDao, times(1)).claim(any());
+    }
+
+    @Test
+    void sameKeyWithDifferentRequestIsRejected() {
+        store.execute(1L, "deposits.create", "key-2", deposit(100), () -> ResponseEntity.ok("created"));
+
+        assertThrows(IdempotencyKeyReusedException.class, () ->
+                store.execute(1L, "deposits.create", "key-2", deposit(500), () -> ResponseEntity.ok("created")));
+    }
+
+    @Test
+    void keysOfDifferentUsersDoNotCollide() {
+        AtomicInteger executions = new AtomicInteger();
+
+        store.execute(1L, "deposits.create", "key-3", deposit(100), () -> ResponseEntity.ok(executions.incrementAndGet()));
+        store.execute(2L, "deposits.create", "key-3", deposit(100), () -> ResponseEntity.ok(executions.incrementAndGet()));
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void failedExecutionIsNotRemembered() {
+        assertThrows(IllegalArgumentException.class, () -> store.execute(1L, "deposits.create", "key-4", deposit(100),
+                () -> {
+                    throw new IllegalArgumentException("Insufficient balance");
+                }));
+
+        ResponseEntity<?> retry = store.execute(1L, "deposits.create", "key-4", deposit(100),
+                () -> ResponseEntity.ok("created"));
+        assertEquals("created", retry.getBody());
+    }
+
+    @Test
+    void concurrentDuplicatesWaitForFirstExecution() throws Exception {
+        int duplicates = 8;
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(duplicates);
+
+        List<Future<ResponseEntity<?>>> futures = new ArrayList<>();
+        futures.add(executor.submit(() -> store.execute(1L, "deposits.create", "key-5", deposit(100), () -> {
+            executions.incrementAndGet();
+            started.countDown();
+            await(release);
+            return ResponseEntity.ok("created");
+        })));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < duplicates; i++) {
+            futures.add(executor.submit(() -> store.execute(1L, "deposits.create", "key-5", deposit(100), () -> {
+                executions.incrementAndGet();
+                return ResponseEntity.ok("duplicate");
+            })));
+        }
+
+        release.countDown();
+        for (Future<ResponseEntity<?>> future : futures) {
+            assertEquals("created", future.get(5, TimeUnit.SECONDS).getBody());
+        }
+        executor.shutdown();
+        assertEquals(1, executions.get());
+    }
+
+    private static DepositRequestDto deposit(int amount) {
+        DepositRequestDto request = new DepositRequestDto();
+        request.setAmount(amount);
+        return request;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.melnikov.TicketBookingService.integrationDaoTests;
+
+import com.melnikov.TicketBookingService.dao.BalanceLedgerDaoImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Testcontainers
+public class BalanceLedgerDaoImplTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BalanceLedgerDaoImpl balanceLedgerDao;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = jdbcTemplate.queryForObject("""
+                INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                VALUES (?, 'x', 'Ledger', 'Test', ?, 100, (SELECT id FROM roles WHERE name = 'user'))
+                RETURNING id
+                """, Long.class, "ledger" + UUID.randomUUID() + "@test.com", LocalDate.of(2000, 1, 1));
+    }
+
+    @Test
+    void balanceIsSnapshotPlusTail() {
+        assertTrue(balanceLedgerDao.append(userId, "deposit:" + userId + ":1", "deposit", 50));
+        assertTrue(balanceLedgerDao.append(userId, "booking:" + userId + ":1", "booking", -30));
+
+        assertEquals(120, balanceLedgerDao.getBalance(userId));
+        assertEquals(100, jdbcTemplate.queryForObject("SELECT balance FROM users WHERE id = ?", Integer.class, userId));
+    }
+
+    @Test
+    void sameEntryKeyIsAppliedOnce() {
+        String key = "deposit:" + userId + ":retry";
+
+        assertTrue(balanceLedgerDao.append(userId, key, "deposit", 50));
+        assertFalse(balanceLedgerDao.append(userId, key, "deposit", 50));
+
+        assertEquals(150, balanceLedgerDao.getBalance(userId));
+    }
+
+    @Test
+    void reverseRefundsChargeOnce() {
+        String charge = "booking:" + userId + ":2";
+        balanceLedgerDao.append(userId, charge, "booking", -40);
+
+        assertTrue(balanceLedgerDao.reverse(charge, "refund:" + userId + ":2", "refund"));
+        assertFalse(balanceLedgerDao.reverse(charge, "refund:" + userId + ":2", "refund"));
+        assertFalse(balanceLedgerDao.reverse("booking:missing", "refund:missing", "refund"));
+
+        assertEquals(100, balanceLedgerDao.getBalance(userId));
+    }
+
+    @Test
+    void compactionMovesTailIntoSnapshotWithoutChangingBalance() {
+        balanceLedgerDao.append(userId, "deposit:" + userId + ":3", "deposit", 25);
+        balanceLedgerDao.append(userId, "booking:" + userId + ":3", "booking", -5);
+
+        while (balanceLedgerDao.compact(1) > 0) {
+            // по одной записи, чтобы пройти несколько пачек
+        }
+
+        assertEquals(120, balanceLedgerDao.getBalance(userId));
+        assertEquals(120, jdbcTemplate.queryForObject("SELECT balance FROM users WHERE id = ?", Integer.class, userId));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM balance_ledger WHERE user_id = ? AND NOT compacted", Integer.class, userId));
+    }
+
+    @Test
+    void balanceLockRequiresTransaction() {
+        assertThrows(IllegalStateException.class, () -> balanceLedgerDao.lockBalance(userId));
+        transactionTemplate.executeWithoutResult(status -> balanceLedgerDao.lockBalance(userId));
+    }
+}
@@ -0,0 +1,161 @@
+package com.melnikov.TicketBookingService.integrationDaoTests;
+
+import com.melnikov.TicketBookingService.dao.BalanceLedgerDao;
+import com.melnikov.TicketBookingService.dto.BookingCreateRequestDto;
+import com.melnikov.TicketBookingService.services.BookingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Testcontainers
+public class BookingConcurrencyTest {
+
+    private static final int SEATS = 500;
+    private static final int PRICE = 10;
+    private static final int USERS = 20;
+    private static final int USER_BALANCE = 300; // каждый может оплатить 30 мест, всего 600 > SEATS
+    private static final int ATTEMPTS = 4000;
+    private static final int THREADS = 32;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> "20");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private BalanceLedgerDao balanceLedgerDao;
+
+    private int ticketId;
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("TRUNCATE bookings");
+        ticketId = jdbcTemplate.queryForObject("""
+                INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                VALUES ((SELECT MIN(id) FROM transport_types), (SELECT MIN(id) FROM routes),
+                        now() + interval '1 day', now() + interval '1 day 2 hours', ?, ?)
+                RETURNING id
+                """, Integer.class, PRICE, SEATS);
+
+        userIds.clear();
+        for (int i = 0; i < USERS; i++) {
+            userIds.add(jdbcTemplate.queryForObject("""
+                    INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                    VALUES (?, 'x', 'Load', 'Test', ?, ?, (SELECT id FROM roles WHERE name = 'user'))
+                    RETURNING id
+                    """, Long.class, "load" + ticketId + "_" + i + "@test.com", LocalDate.of(2000, 1, 1), USER_BALANCE));
+        }
+    }
+
+    @Test
+    void parallelBookingsNeverOversellAndNeverLoseUpdates() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+        Map<String, AtomicInteger> rejections = new ConcurrentHashMap<>();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < ATTEMPTS; i++) {
+            Long userId = userIds.get(i % USERS);
+            futures.add(executor.submit(() -> {
+                start.await();
+                BookingCreateRequestDto request = new BookingCreateRequestDto();
+                request.setTicketId(ticketId);
+                request.setTicketQuantity(1);
+                try {
+                    bookingService.createBooking(userId, request);
+                    created.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    rejections.computeIfAbsent(e.getMessage(), k -> new AtomicInteger()).incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        Integer available = jdbcTemplate.queryForObject(
+                "SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketId);
+        Integer booked = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(ticket_quantity), 0) FROM bookings WHERE ticket_id = ?", Integer.class, ticketId);
+
+        assertEquals(SEATS, created.get());
+        assertEquals(0, available);
+        assertEquals(SEATS, booked);
+        assertEquals(ATTEMPTS, created.get() + rejections.values().stream().mapToInt(AtomicInteger::get).sum());
+        assertTrue(Set.of("Not enough tickets available", "Insufficient balance").containsAll(rejections.keySet()));
+
+        // Списание каждого пользователя должно в точности совпадать с его бронями
+        for (Long userId : userIds) {
+            int balance = balanceLedgerDao.getBalance(userId);
+            Integer userSeats = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(ticket_quantity), 0) FROM bookings WHERE user_id = ?", Integer.class, userId);
+            assertTrue(balance >= 0);
+            assertEquals(USER_BALANCE - userSeats * PRICE, balance);
+        }
+    }
+
+    @Test
+    void rejectedBookingLeavesSeatsUntouched() {
+        Long poorUser = jdbcTemplate.queryForObject("""
+                INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                VALUES (?, 'x', 'Poor', 'User', ?, 5, (SELECT id FROM roles WHERE name = 'user'))
+                RETURNING id
+                """, Long.class, "poor" + ticketId + "@test.com", LocalDate.of(2000, 1, 1));
+
+        BookingCreateRequestDto request = new BookingCreateRequestDto();
+        request.setTicketId(ticketId);
+        request.setTicketQuantity(1);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> bookingService.createBooking(poorUser, request));
+        assertEquals("Insufficient balance", e.getMessage());
+
+        Integer available = jdbcTemplate.queryForObject(
+                "SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketId);
+        assertEquals(SEATS, available);
+    }
+}
@@ -64,7 +64,9 @@ public class BookingDaoImplTest {
 
         jdbcTemplate.execute("CREATE TABLE tickets (" +
                 "id SERIAL PRIMARY KEY, " +
-                "available_tickets INTEGER NOT NULL)");
+                "available_tickets INTEGER NOT NULL, " +
+                "version BIGINT NOT NULL DEFAULT 0, " +
+                "sharded BOOLEAN NOT NULL DEFAULT false)");
 
         jdbcTemplate.execute("CREATE TABLE bookings (" +
                 "id SERIAL PRIMARY KEY, " +
@@ -72,7 +74,8 @@ public class BookingDaoImplTest {
                 "ticket_id INTEGER NOT NULL REFERENCES tickets(id), " +
                 "booking_time TIMESTAMP NOT NULL, " +
                 "status VARCHAR(50) NOT NULL, " +
-                "ticket_quantity INTEGER NOT NULL)");
+                "ticket_quantity INTEGER NOT NULL, " +
+                "hold_expires_at TIMESTAMP WITH TIME ZONE)");
     }
 
     private void insertTestData() {
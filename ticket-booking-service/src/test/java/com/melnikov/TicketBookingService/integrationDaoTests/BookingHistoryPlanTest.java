@@ -0,0 +1,184 @@
+package com.melnikov.TicketBookingService.integrationDaoTests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.melnikov.TicketBookingService.dao.BookingDaoImpl;
+import com.melnikov.TicketBookingService.entity.BookingDetails;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * История броней на большом наборе: страница читается обратным проходом по индексу без сортировки,
+ * курсор обходит всю историю без пропусков и повторов.
+ */
+@SpringBootTest
+@Testcontainers
+public class BookingHistoryPlanTest {
+
+    private static final int USERS = 200;
+    private static final int BOOKINGS_PER_USER = 500; // 100k строк
+    private static final int PAGE_SIZE = 20;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Instant BASE = Instant.now().minus(365, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingDaoImpl bookingDao;
+
+    private static Long userId;
+
+    @BeforeAll
+    static void fillBookings(@Autowired JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("""
+                INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                SELECT 'history' || g || '@test.com', 'hash', 'First', 'Last', DATE '1990-01-01', 0,
+                       (SELECT MIN(id) FROM roles)
+                FROM generate_series(1, ?) g
+                """, USERS);
+        jdbcTemplate.update("""
+                INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                SELECT (SELECT MIN(id) FROM transport_types), (SELECT MIN(id) FROM routes),
+                       ?::timestamptz + g * interval '1 day', ?::timestamptz + g * interval '1 day' + interval '3 hours',
+                       100, 40
+                FROM generate_series(1, 10) g
+                """, Timestamp.from(BASE), Timestamp.from(BASE));
+        // Несколько броней на одно время, чтобы курсор опирался на id; каждая пятая отменена
+        jdbcTemplate.update("""
+                INSERT INTO bookings (user_id, ticket_id, booking_time, status, ticket_quantity)
+                SELECT u.id,
+                       (SELECT MIN(id) FROM tickets) + g % 10,
+                       ?::timestamptz + (g / 2) * interval '10 minutes',
+                       CASE WHEN g % 5 = 0 THEN 'canceled' WHEN g % 2 = 0 THEN 'confirmed' ELSE 'pending' END,
+                       1
+                FROM users u
+                CROSS JOIN generate_series(1, ?) g
+                WHERE u.email LIKE 'history%'
+                """, Timestamp.from(BASE), BOOKINGS_PER_USER);
+        jdbcTemplate.execute("VACUUM ANALYZE bookings");
+
+        userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE email = 'history1@test.com'", Long.class);
+    }
+
+    @Test
+    void firstPageIsBackwardIndexRange() throws Exception {
+        JsonNode plan = explain(BookingDaoImpl.FIND_PAGE_SQL.formatted(""),
+                userId, ts(Instant.now().plus(1, ChronoUnit.DAYS)), Integer.MAX_VALUE, PAGE_SIZE);
+
+        assertIndexRange(plan, "idx_bookings_user_time");
+    }
+
+    @Test
+    void statusFilterUsesPartialIndex() throws Exception {
+        JsonNode plan = explain(BookingDaoImpl.FIND_PAGE_SQL.formatted("AND b.status = 'pending'"),
+                userId, ts(BASE.plus(1000, ChronoUnit.MINUTES)), Integer.MAX_VALUE, PAGE_SIZE);
+
+        assertIndexRange(plan, "idx_bookings_user_active");
+    }
+
+    @Test
+    void cursorWalksWholeHistoryInOrder() {
+        Set<Integer> seen = new HashSet<>();
+        ZonedDateTime cursor = ZonedDateTime.now().plusYears(10);
+        int lastId = Integer.MAX_VALUE;
+        BookingDetails previous = null;
+        while (true) {
+            List<BookingDetails> page = bookingDao.findPageByUserId(userId, null, cursor, lastId, PAGE_SIZE);
+            for (BookingDetails booking : page) {
+                assertTrue(seen.add(booking.getId()));
+                assertNotNull(booking.getDepartureCity());
+                assertNotNull(booking.getTransportType());
+                if (previous != null) {
+                    int byTime = booking.getBookingTime().compareTo(previous.getBookingTime());
+                    assertTrue(byTime < 0 || byTime == 0 && booking.getId() < previous.getId());
+                }
+                previous = booking;
+            }
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+            cursor = previous.getBookingTime();
+            lastId = previous.getId();
+        }
+        assertEquals(BOOKINGS_PER_USER, seen.size());
+    }
+
+    private JsonNode explain(String sql, Object... args) throws Exception {
+        String json = jdbcTemplate.queryForObject(
+                "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + sql, String.class, args);
+        return objectMapper.readTree(json).get(0).get("Plan");
+    }
+
+    /**
+     * bookings читается одним Index Scan (Backward) по ожидаемому индексу, курсор в Index Cond,
+     * без Sort и без полного прохода по таблице.
+     */
+    private static void assertIndexRange(JsonNode plan, String indexName) {
+        List<JsonNode> nodes = new ArrayList<>();
+        collect(plan, nodes);
+
+        String planText = plan.toPrettyString();
+        for (JsonNode node : nodes) {
+            String type = node.get("Node Type").asText();
+            assertNotEquals("Sort", type, planText);
+            if ("Seq Scan".equals(type)) {
+                assertNotEquals("bookings", node.get("Relation Name").asText(), planText);
+            }
+        }
+
+        JsonNode scan = nodes.stream()
+                .filter(node -> node.has("Relation Name") && "bookings".equals(node.get("Relation Name").asText()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError(planText));
+        assertEquals(indexName, scan.get("Index Name").asText(), planText);
+        assertEquals("Backward", scan.get("Scan Direction").asText(), planText);
+        assertTrue(scan.get("Index Cond").asText().contains("booking_time, id"), planText);
+        assertTrue(scan.get("Actual Rows").asLong() <= PAGE_SIZE, planText);
+    }
+
+    private static void collect(JsonNode node, List<JsonNode> nodes) {
+        nodes.add(node);
+        JsonNode children = node.get("Plans");
+        if (children != null) {
+            children.forEach(child -> collect(child, nodes));
+        }
+    }
+
+    private static Timestamp ts(Instant instant) {
+        return Timestamp.from(instant);
+    }
+}
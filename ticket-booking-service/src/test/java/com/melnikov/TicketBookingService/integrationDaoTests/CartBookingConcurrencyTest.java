@@ -0,0 +1,274 @@
+package com.melnikov.TicketBookingService.integrationDaoTests;
+
+import com.melnikov.TicketBookingService.dao.BalanceLedgerDao;
+import com.melnikov.TicketBookingService.dao.BookingDao;
+import com.melnikov.TicketBookingService.entity.BookingAttempt;
+import com.melnikov.TicketBookingService.dto.BookingCreateRequestDto;
+import com.melnikov.TicketBookingService.dto.CartBookingRequestDto;
+import com.melnikov.TicketBookingService.services.BookingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Пересекающиеся корзины параллельно: строки рейсов блокируются по возрастанию id,
+ * поэтому взаимоблокировок нет, а места и деньги сходятся до единицы.
+ */
+@SpringBootTest
+@Testcontainers
+public class CartBookingConcurrencyTest {
+
+    private static final int TICKETS = 6;
+    private static final int SEATS = 60;
+    private static final int PRICE = 10;
+    private static final int USERS = 20;
+    private static final int USER_BALANCE = 400;
+    private static final int CARTS = 1500;
+    private static final int THREADS = 32;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> "20");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private BalanceLedgerDao balanceLedgerDao;
+
+    @Autowired
+    private BookingDao bookingDao;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final List<Integer> ticketIds = new ArrayList<>();
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ticketIds.clear();
+        for (int i = 0; i < TICKETS; i++) {
+            ticketIds.add(jdbcTemplate.queryForObject("""
+                    INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                    VALUES ((SELECT MIN(id) FROM transport_types), (SELECT MIN(id) FROM routes),
+                            now() + interval '1 day', now() + interval '1 day 2 hours', ?, ?)
+                    RETURNING id
+                    """, Integer.class, PRICE, SEATS));
+        }
+
+        userIds.clear();
+        for (int i = 0; i < USERS; i++) {
+            userIds.add(jdbcTemplate.queryForObject("""
+                    INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                    VALUES (?, 'x', 'Cart', 'Test', ?, ?, (SELECT id FROM roles WHERE name = 'user'))
+                    RETURNING id
+                    """, Long.class, "cart" + ticketIds.get(0) + "_" + i + "@test.com",
+                    LocalDate.of(2000, 1, 1), USER_BALANCE));
+        }
+    }
+
+    @Test
+    void overlappingCartsNeverDeadlockOrOversell() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+        Map<String, AtomicInteger> rejections = new ConcurrentHashMap<>();
+        List<Throwable> unexpected = Collections.synchronizedList(new ArrayList<>());
+        Random random = new Random(7);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < CARTS; i++) {
+            Long userId = userIds.get(i % USERS);
+            // 2-4 рейса в случайном порядке: корзины пересекаются и перечисляют рейсы по-разному
+            List<Integer> cartTickets = new ArrayList<>(ticketIds);
+            Collections.shuffle(cartTickets, random);
+            CartBookingRequestDto request = new CartBookingRequestDto();
+            request.setItems(cartTickets.subList(0, 2 + random.nextInt(3)).stream().map(ticketId -> {
+                BookingCreateRequestDto item = new BookingCreateRequestDto();
+                item.setTicketId(ticketId);
+                item.setTicketQuantity(1 + random.nextInt(2));
+                return item;
+            }).toList());
+
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    bookingService.createCart(userId, request);
+                    created.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    String reason = e.getMessage().startsWith("Not enough tickets") ? "Not enough tickets" : e.getMessage();
+                    rejections.computeIfAbsent(reason, k -> new AtomicInteger()).incrementAndGet();
+                } catch (RuntimeException e) {
+                    unexpected.add(e); // в том числе взаимоблокировки (CannotAcquireLockException)
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(3, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertEquals(List.of(), unexpected);
+        assertTrue(created.get() > 0);
+        assertEquals(CARTS, created.get() + rejections.values().stream().mapToInt(AtomicInteger::get).sum());
+        assertTrue(Set.of("Not enough tickets", "Insufficient balance").containsAll(rejections.keySet()));
+
+        for (Integer ticketId : ticketIds) {
+            Integer available = jdbcTemplate.queryForObject(
+                    "SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketId);
+            Integer booked = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(ticket_quantity), 0) FROM bookings WHERE ticket_id = ?", Integer.class, ticketId);
+            assertTrue(available >= 0);
+            assertEquals(SEATS, available + booked);
+        }
+        for (Long userId : userIds) {
+            int balance = balanceLedgerDao.getBalance(userId);
+            Integer userSeats = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(ticket_quantity), 0) FROM bookings WHERE user_id = ?", Integer.class, userId);
+            assertTrue(balance >= 0);
+            assertEquals(USER_BALANCE - userSeats * PRICE, balance);
+        }
+    }
+
+    @Test
+    void holdExpiryAlongsideCartsNeverDeadlocks() throws Exception {
+        // Истекшие удержания на все рейсы; пачки снятия пересекаются с корзинами по строкам рейсов
+        Random random = new Random(11);
+        ZonedDateTime expired = ZonedDateTime.now().minusMinutes(1);
+        List<Integer> holds = new ArrayList<>();
+        for (int i = 0; i < 240; i++) {
+            Long userId = userIds.get(i % USERS);
+            Integer ticketId = ticketIds.get(random.nextInt(TICKETS));
+            BookingAttempt attempt = transactionTemplate.execute(status ->
+                    bookingDao.book(userId, ticketId, 1, ZonedDateTime.now(), expired));
+            assertTrue(attempt.isCreated());
+            holds.add(attempt.getBooking().getId());
+        }
+        Collections.shuffle(holds, random);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> unexpected = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < holds.size(); i += 12) {
+            List<Integer> batch = holds.subList(i, i + 12);
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    bookingDao.releaseExpiredHolds(batch, ZonedDateTime.now());
+                } catch (RuntimeException e) {
+                    unexpected.add(e);
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < 400; i++) {
+            Long userId = userIds.get(i % USERS);
+            List<Integer> cartTickets = new ArrayList<>(ticketIds);
+            Collections.shuffle(cartTickets, random);
+            CartBookingRequestDto request = new CartBookingRequestDto();
+            request.setItems(cartTickets.subList(0, 2 + random.nextInt(3)).stream()
+                    .map(ticketId -> item(ticketId, 1))
+                    .toList());
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    bookingService.createCart(userId, request);
+                } catch (IllegalArgumentException e) {
+                    // нет мест или денег - допустимый отказ
+                } catch (RuntimeException e) {
+                    unexpected.add(e);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(3, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertEquals(List.of(), unexpected);
+        assertTrue(holds.stream().allMatch(id -> "canceled".equals(bookingDao.findById(id).orElseThrow().getStatus())));
+        for (Integer ticketId : ticketIds) {
+            Integer available = jdbcTemplate.queryForObject(
+                    "SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketId);
+            Integer booked = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(ticket_quantity), 0) FROM bookings WHERE ticket_id = ? AND status <> 'canceled'",
+                    Integer.class, ticketId);
+            assertEquals(SEATS, available + booked);
+        }
+        for (Long userId : userIds) {
+            Integer userSeats = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(ticket_quantity), 0) FROM bookings WHERE user_id = ? AND status <> 'canceled'",
+                    Integer.class, userId);
+            assertEquals(USER_BALANCE - userSeats * PRICE, balanceLedgerDao.getBalance(userId));
+        }
+    }
+
+    @Test
+    void failedLegRollsBackWholeCart() {
+        jdbcTemplate.update("UPDATE tickets SET available_tickets = 1 WHERE id = ?", ticketIds.get(1));
+        CartBookingRequestDto request = new CartBookingRequestDto();
+        request.setItems(List.of(item(ticketIds.get(0), 2), item(ticketIds.get(1), 2)));
+
+        assertThrows(IllegalArgumentException.class, () -> bookingService.createCart(userIds.get(0), request));
+
+        assertEquals(SEATS, jdbcTemplate.queryForObject(
+                "SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketIds.get(0)));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM bookings WHERE user_id = ?", Integer.class, userIds.get(0)));
+        assertEquals(USER_BALANCE, balanceLedgerDao.getBalance(userIds.get(0)));
+    }
+
+    private static BookingCreateRequestDto item(Integer ticketId, int quantity) {
+        BookingCreateRequestDto item = new BookingCreateRequestDto();
+        item.setTicketId(ticketId);
+        item.setTicketQuantity(quantity);
+        return item;
+    }
+}
@@ -0,0 +1,181 @@
+package com.melnikov.TicketBookingService.integrationDaoTests;
+
+import com.melnikov.TicketBookingService.dao.BalanceLedgerDao;
+import com.melnikov.TicketBookingService.dto.BookingCreateRequestDto;
+import com.melnikov.TicketBookingService.dto.CartBookingRequestDto;
+import com.melnikov.TicketBookingService.exception.TicketUpdateConflictException;
+import com.melnikov.TicketBookingService.services.BookingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Оптимистичные одиночные брони вперемешку с корзинами тех же пользователей на те же рейсы:
+ * оба пути блокируют сначала пользователя, затем рейсы, поэтому взаимоблокировок нет,
+ * а места и деньги сходятся до единицы.
+ */
+@SpringBootTest(properties = "bookings.concurrency=optimistic")
+@Testcontainers
+public class OptimisticCartConcurrencyTest {
+
+    private static final int TICKETS = 4;
+    private static final int SEATS = 80;
+    private static final int PRICE = 10;
+    private static final int USERS = 12;
+    private static final int USER_BALANCE = 300;
+    private static final int REQUESTS = 1200;
+    private static final int THREADS = 32;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> "20");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private BalanceLedgerDao balanceLedgerDao;
+
+    private final List<Integer> ticketIds = new ArrayList<>();
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ticketIds.clear();
+        for (int i = 0; i < TICKETS; i++) {
+            ticketIds.add(jdbcTemplate.queryForObject("""
+                    INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                    VALUES ((SELECT MIN(id) FROM transport_types), (SELECT MIN(id) FROM routes),
+                            now() + interval '1 day', now() + interval '1 day 2 hours', ?, ?)
+                    RETURNING id
+                    """, Integer.class, PRICE, SEATS));
+        }
+
+        userIds.clear();
+        for (int i = 0; i < USERS; i++) {
+            userIds.add(jdbcTemplate.queryForObject("""
+                    INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                    VALUES (?, 'x', 'Optimistic', 'Test', ?, ?, (SELECT id FROM roles WHERE name = 'user'))
+                    RETURNING id
+                    """, Long.class, "optimistic" + ticketIds.get(0) + "_" + i + "@test.com",
+                    LocalDate.of(2000, 1, 1), USER_BALANCE));
+        }
+    }
+
+    @Test
+    void singleBookingsAndCartsNeverDeadlockOrOversell() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+        Map<String, AtomicInteger> rejections = new ConcurrentHashMap<>();
+        List<Throwable> unexpected = Collections.synchronizedList(new ArrayList<>());
+        Random random = new Random(11);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < REQUESTS; i++) {
+            Long userId = userIds.get(i % USERS);
+            Runnable booking;
+            if (i % 2 == 0) {
+                BookingCreateRequestDto request = item(ticketIds.get(random.nextInt(TICKETS)), 1 + random.nextInt(2));
+                booking = () -> bookingService.createBooking(userId, request);
+            } else {
+                // корзина на 2-3 рейса в случайном порядке, пересекается с одиночными бронями тех же пользователей
+                List<Integer> cartTickets = new ArrayList<>(ticketIds);
+                Collections.shuffle(cartTickets, random);
+                CartBookingRequestDto request = new CartBookingRequestDto();
+                request.setItems(cartTickets.subList(0, 2 + random.nextInt(2)).stream()
+                        .map(ticketId -> item(ticketId, 1))
+                        .toList());
+                booking = () -> bookingService.createCart(userId, request);
+            }
+
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    booking.run();
+                    created.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    String reason = e.getMessage().startsWith("Not enough tickets") ? "Not enough tickets" : e.getMessage();
+                    rejections.computeIfAbsent(reason, k -> new AtomicInteger()).incrementAndGet();
+                } catch (TicketUpdateConflictException e) {
+                    rejections.computeIfAbsent("Contended", k -> new AtomicInteger()).incrementAndGet();
+                } catch (RuntimeException e) {
+                    unexpected.add(e); // в том числе взаимоблокировки (CannotAcquireLockException)
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(3, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertEquals(List.of(), unexpected);
+        assertTrue(created.get() > 0);
+        assertEquals(REQUESTS, created.get() + rejections.values().stream().mapToInt(AtomicInteger::get).sum());
+        assertTrue(Set.of("Not enough tickets", "Insufficient balance", "Contended").containsAll(rejections.keySet()),
+                rejections.keySet().toString());
+
+        for (Integer ticketId : ticketIds) {
+            Integer available = jdbcTemplate.queryForObject(
+                    "SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketId);
+            Integer booked = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(ticket_quantity), 0) FROM bookings WHERE ticket_id = ?", Integer.class, ticketId);
+            assertTrue(available >= 0);
+            assertEquals(SEATS, available + booked);
+        }
+        for (Long userId : userIds) {
+            int balance = balanceLedgerDao.getBalance(userId);
+            Integer userSeats = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(ticket_quantity), 0) FROM bookings WHERE user_id = ?", Integer.class, userId);
+            assertTrue(balance >= 0);
+            assertEquals(USER_BALANCE - userSeats * PRICE, balance);
+        }
+    }
+
+    private static BookingCreateRequestDto item(Integer ticketId, int quantity) {
+        BookingCreateRequestDto item = new BookingCreateRequestDto();
+        item.setTicketId(ticketId);
+        item.setTicketQuantity(quantity);
+        return item;
+    }
+}
@@ -3,6 +3,7 @@ package com.melnikov.TicketBookingService.integrationDaoTests;
 
 
 import com.melnikov.TicketBookingService.dao.RefreshTokenDaoImpl;
+import com.melnikov.TicketBookingService.entity.RefreshSession;
 import com.melnikov.TicketBookingService.entity.RefreshToken;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,6 +17,9 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.Optional;
 
@@ -53,12 +57,13 @@ public class RefreshTokenDaoImplTest {
         // Create users table for foreign key constraint
         jdbcTemplate.execute("CREATE TABLE users (" +
                 "id SERIAL PRIMARY KEY, " +
-                "email VARCHAR(255) NOT NULL UNIQUE)");
+                "email VARCHAR(255) NOT NULL UNIQUE, " +
+                "role_id INT NOT NULL DEFAULT 2)");
 
         jdbcTemplate.execute("CREATE TABLE refresh_tokens (" +
                 "id SERIAL PRIMARY KEY, " +
                 "user_id BIGINT NOT NULL REFERENCES users(id), " +
-                "token VARCHAR(255) NOT NULL UNIQUE, " +
+                "token_hash BYTEA NOT NULL UNIQUE, " +
                 "expiry_date TIMESTAMP NOT NULL)");
 
         // Insert test user
@@ -68,7 +73,7 @@ public class RefreshTokenDaoImplTest {
     private RefreshToken createTestToken() {
         return RefreshToken.builder()
                 .userId(1L)
-                .token("test_token")
+                .tokenHash(sha256("test_token"))
                 .expiryDate(LocalDateTime.now().plusHours(1))
                 .build();
     }
@@ -80,21 +85,21 @@ public class RefreshTokenDaoImplTest {
 
         // When
         refreshTokenDao.save(token);
-        Optional<RefreshToken> found = refreshTokenDao.findByToken("test_token");
+        Optional<RefreshToken> found = refreshTokenDao.findByToken(sha256("test_token"));
 
         // Then
         assertTrue(found.isPresent());
         RefreshToken dbToken = found.get();
         assertAll(
                 () -> assertEquals(1L, dbToken.getUserId()),
-                () -> assertEquals("test_token", dbToken.getToken()),
+                () -> assertArrayEquals(sha256("test_token"), dbToken.getTokenHash()),
                 () -> assertNotNull(dbToken.getExpiryDate())
         );
     }
 
     @Test
     void shouldNotFindNonExistingToken() {
-        Optional<RefreshToken> found = refreshTokenDao.findByToken("non_existing");
+        Optional<RefreshToken> found = refreshTokenDao.findByToken(sha256("non_existing"));
         assertTrue(found.isEmpty());
     }
 
@@ -105,10 +110,10 @@ public class RefreshTokenDaoImplTest {
         refreshTokenDao.save(token);
 
         // When
-        refreshTokenDao.deleteByToken("test_token");
+        refreshTokenDao.deleteByToken(sha256("test_token"));
 
         // Then
-        Optional<RefreshToken> found = refreshTokenDao.findByToken("test_token");
+        Optional<RefreshToken> found = refreshTokenDao.findByToken(sha256("test_token"));
         assertTrue(found.isEmpty());
     }
 
@@ -118,7 +123,7 @@ public class RefreshTokenDaoImplTest {
         refreshTokenDao.save(createTestToken());
         refreshTokenDao.save(RefreshToken.builder()
                 .userId(1L)
-                .token("another_token")
+                .tokenHash(sha256("another_token"))
                 .expiryDate(LocalDateTime.now().plusHours(2))
                 .build());
 
@@ -149,7 +154,7 @@ public class RefreshTokenDaoImplTest {
     void shouldHandleForeignConstraint() {
         RefreshToken token = RefreshToken.builder()
                 .userId(999L) // Non-existing user
-                .token("invalid_token")
+                .tokenHash(sha256("invalid_token"))
                 .expiryDate(LocalDateTime.now())
                 .build();
 
@@ -163,7 +168,7 @@ public class RefreshTokenDaoImplTest {
         refreshTokenDao.save(createTestToken());
         refreshTokenDao.save(RefreshToken.builder()
                 .userId(1L)
-                .token("second_token")
+                .tokenHash(sha256("second_token"))
                 .expiryDate(LocalDateTime.now().plusHours(2))
                 .build());
 
@@ -176,4 +181,41 @@ public class RefreshTokenDaoImplTest {
         // Then
         assertEquals(2L, count);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldFindSessionWithOwnerInOneQuery() {
+        refreshTokenDao.save(createTestToken());
+
+        Optional<RefreshSession> session = refreshTokenDao.findSessionByToken(sha256("test_token"));
+
+        assertTrue(session.isPresent());
+        assertAll(
+                () -> assertEquals(1L, session.get().getUserId()),
+                () -> assertEquals("test@example.com", session.get().getEmail()),
+                () -> assertEquals(2, session.get().getRoleId()),
+                () -> assertNotNull(session.get().getExpiryDate())
+        );
+        assertTrue(refreshTokenDao.findSessionByToken(sha256("non_existing")).isEmpty());
+    }
+
+    @Test
+    void shouldDeleteExpiredTokens() {
+        refreshTokenDao.save(createTestToken());
+        refreshTokenDao.save(RefreshToken.builder()
+                .userId(1L)
+                .tokenHash(sha256("expired_token"))
+                .expiryDate(LocalDateTime.now().minusHours(1))
+                .build());
+
+        assertEquals(1, refreshTokenDao.deleteExpired(LocalDateTime.now()));
+        assertTrue(refreshTokenDao.findByToken(sha256("test_token")).isPresent());
+    }
+
+    private static byte[] sha256(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
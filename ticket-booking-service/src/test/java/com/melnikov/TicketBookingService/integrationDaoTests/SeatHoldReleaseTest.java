@@ -0,0 +1,133 @@
+package com.melnikov.TicketBookingService.integrationDaoTests;
+
+import com.melnikov.TicketBookingService.dao.BalanceLedgerDao;
+import com.melnikov.TicketBookingService.dao.BookingDao;
+import com.melnikov.TicketBookingService.entity.Booking;
+import com.melnikov.TicketBookingService.entity.BookingAttempt;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Снятие истекших удержаний: одна пачка возвращает места и деньги, подтвержденные брони не трогает.
+ */
+@SpringBootTest
+@Testcontainers
+public class SeatHoldReleaseTest {
+
+    private static final int SEATS = 10;
+    private static final int PRICE = 10;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingDao bookingDao;
+
+    @Autowired
+    private BalanceLedgerDao balanceLedgerDao;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private int ticketId;
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        ticketId = jdbcTemplate.queryForObject("""
+                INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                VALUES ((SELECT MIN(id) FROM transport_types), (SELECT MIN(id) FROM routes),
+                        now() + interval '1 day', now() + interval '1 day 2 hours', ?, ?)
+                RETURNING id
+                """, Integer.class, PRICE, SEATS);
+        userId = jdbcTemplate.queryForObject("""
+                INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                VALUES (?, 'x', 'Hold', 'Test', ?, 100, (SELECT id FROM roles WHERE name = 'user'))
+                RETURNING id
+                """, Long.class, "hold" + UUID.randomUUID() + "@test.com", LocalDate.of(2000, 1, 1));
+    }
+
+    @Test
+    void expiredHoldsReturnSeatsAndMoneyInOneBatch() {
+        ZonedDateTime now = ZonedDateTime.now();
+        Booking expired = hold(2, now.minusMinutes(1));
+        Booking alsoExpired = hold(3, now.minusSeconds(1));
+        Booking confirmed = hold(1, now.minusMinutes(1));
+        Booking notYet = hold(1, now.plusMinutes(10));
+        assertTrue(jdbcTemplate.update("UPDATE bookings SET status = 'confirmed' WHERE id = ?", confirmed.getId()) > 0);
+
+        List<Booking> released = bookingDao.releaseExpiredHolds(
+                List.of(expired.getId(), alsoExpired.getId(), confirmed.getId(), notYet.getId()), now);
+
+        assertEquals(2, released.size());
+        assertEquals(SEATS - 2, available());
+        assertEquals(100 - 2 * PRICE, balanceLedgerDao.getBalance(userId));
+        assertEquals("canceled", bookingDao.findById(expired.getId()).orElseThrow().getStatus());
+        assertEquals("pending", bookingDao.findById(notYet.getId()).orElseThrow().getStatus());
+
+        // Повтор той же пачки (другой узел) ничего не меняет
+        assertTrue(bookingDao.releaseExpiredHolds(List.of(expired.getId(), alsoExpired.getId()), now).isEmpty());
+        assertEquals(SEATS - 2, available());
+    }
+
+    @Test
+    void confirmedHoldIsNotReleased() {
+        ZonedDateTime now = ZonedDateTime.now();
+        Booking booking = hold(2, now.plusMinutes(10));
+
+        assertTrue(bookingDao.confirmHold(booking.getId(), userId, now));
+        assertFalse(bookingDao.confirmHold(booking.getId(), userId, now));
+
+        assertTrue(bookingDao.releaseExpiredHolds(List.of(booking.getId()), now.plusHours(1)).isEmpty());
+        assertEquals(SEATS - 2, available());
+    }
+
+    @Test
+    void expiredHoldCannotBeConfirmed() {
+        ZonedDateTime now = ZonedDateTime.now();
+        Booking booking = hold(1, now.minusSeconds(1));
+
+        assertFalse(bookingDao.confirmHold(booking.getId(), userId, now));
+        assertTrue(bookingDao.findOutstandingHolds().containsKey(booking.getId()));
+    }
+
+    private Booking hold(int quantity, ZonedDateTime expiresAt) {
+        BookingAttempt attempt = transactionTemplate.execute(status ->
+                bookingDao.book(userId, ticketId, quantity, ZonedDateTime.now(), expiresAt));
+        assertTrue(attempt.isCreated());
+        return attempt.getBooking();
+    }
+
+    private int available() {
+        return jdbcTemplate.queryForObject("SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketId);
+    }
+}
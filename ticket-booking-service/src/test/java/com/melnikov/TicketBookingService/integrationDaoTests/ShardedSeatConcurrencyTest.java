@@ -0,0 +1,213 @@
+package com.melnikov.TicketBookingService.integrationDaoTests;
+
+import com.melnikov.TicketBookingService.dto.BookingCreateRequestDto;
+import com.melnikov.TicketBookingService.dto.BookingResponseDto;
+import com.melnikov.TicketBookingService.dto.CartBookingRequestDto;
+import com.melnikov.TicketBookingService.dto.CartBookingResponseDto;
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.inventory.ShardedSeatCounters;
+import com.melnikov.TicketBookingService.search.TicketSearchIndex;
+import com.melnikov.TicketBookingService.services.BookingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Шардированный остаток: параллельные брони не продают лишнего, бронь больше любого шарда
+ * собирается из нескольких, а агрегат в tickets догоняет сумму шардов.
+ */
+// Перенос сумм шардов в агрегат тест вызывает сам
+@SpringBootTest(properties = {"tickets.sharding.refresh-ms=3600000", "tickets.search.mode=memory"})
+@Testcontainers
+public class ShardedSeatConcurrencyTest {
+
+    private static final int SEATS = 100;
+    private static final int SHARDS = 4;
+    private static final int BOOKINGS = 400;
+    private static final int THREADS = 32;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> "32");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private ShardedSeatCounters shardedSeats;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TicketDao ticketDao;
+
+    @Autowired
+    private TicketSearchIndex searchIndex;
+
+    private int ticketId;
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        ticketId = jdbcTemplate.queryForObject("""
+                INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                VALUES ((SELECT MIN(id) FROM transport_types), (SELECT MIN(id) FROM routes),
+                        now() + interval '1 day', now() + interval '1 day 2 hours', 1, ?)
+                RETURNING id
+                """, Integer.class, SEATS);
+        userId = jdbcTemplate.queryForObject("""
+                INSERT INTO users (email, password_hash, firstname, lastname, birth_date, balance, role_id)
+                VALUES (?, 'x', 'Shard', 'Test', ?, 1000000, (SELECT id FROM roles WHERE name = 'user'))
+                RETURNING id
+                """, Long.class, "shard" + ticketId + "@test.com", LocalDate.of(2000, 1, 1));
+        // рейс вставлен в обход DAO, индекс поиска узнает о нем явно
+        searchIndex.onTicketSaved(ticketDao.findByIdWithDetails(ticketId).orElseThrow());
+        transactionTemplate.executeWithoutResult(status -> shardedSeats.shard(ticketId, SHARDS));
+    }
+
+    @Test
+    void concurrentBookingsNeverOversell() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger booked = new AtomicInteger();
+        List<Throwable> unexpected = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < BOOKINGS; i++) {
+            int quantity = 1 + i % 3;
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    bookingService.createBooking(userId, request(quantity));
+                    booked.addAndGet(quantity);
+                } catch (IllegalArgumentException e) {
+                    assertEquals("Not enough tickets available", e.getMessage());
+                } catch (RuntimeException e) {
+                    unexpected.add(e);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertEquals(List.of(), unexpected);
+        assertEquals(SEATS - booked.get(), shardTotal());
+        assertTrue(shardTotal() < 3, "seats left unsold: " + shardTotal());
+        assertEquals(booked.get(), jdbcTemplate.queryForObject(
+                "SELECT SUM(ticket_quantity) FROM bookings WHERE ticket_id = ?", Integer.class, ticketId));
+
+        shardedSeats.refresh();
+        assertEquals(shardTotal(), available());
+    }
+
+    @Test
+    void bookingLargerThanAnyShardTakesSeveral() {
+        // 100 мест на 4 шарда - по 25, бронь на 60 собирается из трех
+        BookingResponseDto booking = bookingService.createBooking(userId, request(60));
+        assertEquals(SEATS - 60, shardTotal());
+
+        assertThrows(IllegalArgumentException.class, () -> bookingService.createBooking(userId, request(41)));
+        assertEquals(SEATS - 60, shardTotal());
+
+        bookingService.cancelBooking(userId, booking.getId());
+        assertEquals(SEATS, shardTotal());
+    }
+
+    @Test
+    void cartAndCancelChangeOnlyShards() {
+        CartBookingRequestDto cart = new CartBookingRequestDto();
+        cart.setItems(List.of(request(30)));
+        CartBookingResponseDto booked = bookingService.createCart(userId, cart);
+        assertEquals(SEATS - 30, shardTotal());
+        // агрегат пишет только перенос сумм шардов
+        assertEquals(SEATS, available());
+
+        bookingService.cancelBooking(userId, booked.getBookings().get(0).getId());
+        assertEquals(SEATS, shardTotal());
+        assertEquals(SEATS, available());
+
+        bookingService.createBooking(userId, request(10));
+        shardedSeats.refresh();
+        assertEquals(SEATS - 10, available());
+    }
+
+    @Test
+    void refreshPublishesAggregateChange() {
+        bookingService.createBooking(userId, request(10));
+        // шарды изменились, агрегат и индекс поиска - еще нет
+        assertEquals(SEATS, indexed());
+
+        shardedSeats.refresh();
+        assertEquals(SEATS - 10, indexed());
+
+        // повторный перенос без изменений ничего не публикует
+        shardedSeats.refresh();
+        assertEquals(SEATS - 10, indexed());
+    }
+
+    private BookingCreateRequestDto request(int quantity) {
+        BookingCreateRequestDto request = new BookingCreateRequestDto();
+        request.setTicketId(ticketId);
+        request.setTicketQuantity(quantity);
+        return request;
+    }
+
+    private int shardTotal() {
+        return jdbcTemplate.queryForObject(
+                "SELECT SUM(available) FROM ticket_seat_shards WHERE ticket_id = ?", Integer.class, ticketId);
+    }
+
+    private int indexed() {
+        Ticket ticket = ticketDao.findByIdWithDetails(ticketId).orElseThrow();
+        return searchIndex.search(null, ticket.getRouteId(), ticket.getDepartureTime(), ticket.getDepartureTime(),
+                        ZonedDateTime.now().minusYears(1), 0, 1000).stream()
+                .filter(found -> found.getId() == ticketId)
+                .findFirst().orElseThrow()
+                .getAvailableTickets();
+    }
+
+    private int available() {
+        return jdbcTemplate.queryForObject("SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticketId);
+    }
+}
@@ -13,6 +13,7 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import com.melnikov.TicketBookingService.dao.TicketDaoImpl;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -53,6 +54,7 @@ public class TicketDaoImplTest {
     }
 
     private void cleanDatabase() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS ticket_seat_shards CASCADE");
         jdbcTemplate.execute("DROP TABLE IF EXISTS tickets CASCADE");
         jdbcTemplate.execute("DROP TABLE IF EXISTS transport_types CASCADE");
         jdbcTemplate.execute("DROP TABLE IF EXISTS routes CASCADE");
@@ -75,7 +77,15 @@ public class TicketDaoImplTest {
                 "departure_time TIMESTAMP NOT NULL, " +
                 "arrival_time TIMESTAMP NOT NULL, " +
                 "price INTEGER NOT NULL, " +
-                "available_tickets INTEGER NOT NULL)");
+                "available_tickets INTEGER NOT NULL, " +
+                "version BIGINT NOT NULL DEFAULT 0, " +
+                "sharded BOOLEAN NOT NULL DEFAULT false)");
+
+        jdbcTemplate.execute("CREATE TABLE ticket_seat_shards (" +
+                "ticket_id INTEGER NOT NULL REFERENCES tickets(id) ON DELETE CASCADE, " +
+                "shard INTEGER NOT NULL, " +
+                "available INTEGER NOT NULL CHECK (available >= 0), " +
+                "PRIMARY KEY (ticket_id, shard))");
     }
 
     private void insertTestData() {
@@ -194,12 +204,71 @@ public class TicketDaoImplTest {
         assertEquals(5, updated.get().getAvailableTickets());
     }
 
+    @Test
+    void shouldRejectUpdateWithStaleVersion() {
+        Ticket ticket = ticketDao.save(createTestTicket(
+                ZonedDateTime.now(utc),
+                ZonedDateTime.now(utc).plusHours(2),
+                10
+        ));
+        Ticket stale = ticketDao.findAvailability(ticket.getId()).orElseThrow();
+        assertTrue(ticketDao.increaseAvailableTickets(ticket.getId(), 1));
+
+        assertFalse(ticketDao.compareAndSetAvailableTickets(stale, 5));
+        assertEquals(11, ticketDao.findAvailability(ticket.getId()).orElseThrow().getAvailableTickets());
+    }
+
+    @Test
+    void shardedTicketChangesOnlyInShards() {
+        Ticket ticket = ticketDao.save(createTestTicket(
+                ZonedDateTime.now(utc),
+                ZonedDateTime.now(utc).plusHours(2),
+                10
+        ));
+        assertTrue(ticketDao.splitAvailability(ticket.getId(), 2));
+        assertTrue(ticketDao.isSharded(ticket.getId()));
+
+        // Возврат и compare-and-set уходят в шарды, агрегат в tickets не меняется
+        assertTrue(ticketDao.increaseAvailableTickets(ticket.getId(), 2));
+        Ticket current = ticketDao.findAvailability(ticket.getId()).orElseThrow();
+        assertTrue(current.isSharded());
+        assertEquals(12, current.getAvailableTickets());
+        assertTrue(ticketDao.compareAndSetAvailableTickets(current, 9));
+        assertFalse(ticketDao.compareAndSetAvailableTickets(current, 0));
+        ticketDao.applyAvailabilityDeltas(Map.of(ticket.getId(), -5));
+
+        assertEquals(9, shardTotal(ticket.getId()));
+        assertEquals(10, jdbcTemplate.queryForObject(
+                "SELECT available_tickets FROM tickets WHERE id = ?", Integer.class, ticket.getId()));
+
+        assertEquals(1, ticketDao.refreshShardedAvailability());
+        assertEquals(9, ticketDao.findAvailability(ticket.getId()).orElseThrow().getAvailableTickets());
+    }
+
+    @Test
+    void findsOnlyDepartedTicketsAmongGiven() {
+        ZonedDateTime now = ZonedDateTime.now(utc);
+        Ticket departed = ticketDao.save(createTestTicket(now.minusHours(1), now.plusHours(1), 10));
+        Ticket upcoming = ticketDao.save(createTestTicket(now.plusHours(1), now.plusHours(3), 10));
+        ticketDao.save(createTestTicket(now.minusHours(2), now, 10)); // отправился, но не спрошен
+
+        assertEquals(List.of(departed.getId()),
+                ticketDao.findDepartedAmong(List.of(departed.getId(), upcoming.getId()), now));
+        assertTrue(ticketDao.findDepartedAmong(List.of(), now).isEmpty());
+        assertTrue(ticketDao.findDepartedAmong(List.of(upcoming.getId()), now).isEmpty());
+    }
+
     @Test
     void shouldReturnEmptyForNonExistingTicket() {
         Optional<Ticket> found = ticketDao.findByIdWithDetails(9999);
         assertFalse(found.isPresent());
     }
 
+    private int shardTotal(Integer ticketId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT SUM(available) FROM ticket_seat_shards WHERE ticket_id = ?", Integer.class, ticketId);
+    }
+
 
 
 
@@ -0,0 +1,163 @@
+package com.melnikov.TicketBookingService.integrationDaoTests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.melnikov.TicketBookingService.dao.TicketDaoImpl;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Проверяет планы запросов поиска на большом синтетическом наборе:
+ * страница должна читаться одним диапазоном index-only scan, без сортировки и без чтения heap.
+ */
+@SpringBootTest
+@Testcontainers
+public class TicketSearchPlanTest {
+
+    private static final int ROUTES = 50;
+    private static final int TICKETS_PER_ROUTE = 4000; // 200k строк
+    private static final int PAGE_SIZE = 15;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Instant BASE = Instant.now().plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.HOURS);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static Integer routeId;
+    private static Integer busTypeId;
+
+    @BeforeAll
+    static void fillTickets(@Autowired JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("TRUNCATE tickets CASCADE");
+        jdbcTemplate.update("""
+                INSERT INTO routes (departure_city, arrival_city)
+                SELECT 'PlanFrom' || g, 'PlanTo' || g FROM generate_series(1, ?) g
+                ON CONFLICT (departure_city, arrival_city) DO NOTHING
+                """, ROUTES);
+        // Каждый третий рейс распродан, несколько рейсов на одно время, чтобы курсор опирался на id
+        jdbcTemplate.update("""
+                INSERT INTO tickets (transport_type_id, route_id, departure_time, arrival_time, price, available_tickets)
+                SELECT (SELECT MIN(id) FROM transport_types) + g % 3,
+                       r.id,
+                       ?::timestamptz + (g / 2) * interval '1 hour',
+                       ?::timestamptz + (g / 2) * interval '1 hour' + interval '3 hours',
+                       100 + g % 50,
+                       CASE WHEN g % 3 = 0 THEN 0 ELSE 40 END
+                FROM routes r
+                CROSS JOIN generate_series(1, ?) g
+                WHERE r.departure_city LIKE 'PlanFrom%'
+                """, Timestamp.from(BASE), Timestamp.from(BASE), TICKETS_PER_ROUTE);
+        jdbcTemplate.execute("VACUUM ANALYZE tickets");
+
+        routeId = jdbcTemplate.queryForObject(
+                "SELECT id FROM routes WHERE departure_city = 'PlanFrom1'", Integer.class);
+        busTypeId = jdbcTemplate.queryForObject(
+                "SELECT id FROM transport_types WHERE name = 'bus'", Integer.class);
+    }
+
+    @Test
+    void firstPageWithTransportTypeIsIndexOnlyRange() throws Exception {
+        JsonNode plan = explain(TicketDaoImpl.FIND_TICKETS_SQL,
+                busTypeId, routeId, ts(BASE), ts(BASE.plus(365, ChronoUnit.DAYS)),
+                ts(BASE.minus(1, ChronoUnit.DAYS)), 0, PAGE_SIZE);
+
+        assertIndexOnlyRange(plan, "idx_tickets_type_route_departure_available");
+    }
+
+    @Test
+    void deepPageWithTransportTypeIsIndexOnlyRange() throws Exception {
+        Instant cursor = BASE.plus(1500, ChronoUnit.HOURS);
+        JsonNode plan = explain(TicketDaoImpl.FIND_TICKETS_SQL,
+                busTypeId, routeId, ts(BASE), ts(BASE.plus(365, ChronoUnit.DAYS)),
+                ts(cursor), Integer.MAX_VALUE / 2, PAGE_SIZE);
+
+        assertIndexOnlyRange(plan, "idx_tickets_type_route_departure_available");
+    }
+
+    @Test
+    void pageWithoutTransportTypeIsIndexOnlyRange() throws Exception {
+        Instant cursor = BASE.plus(1000, ChronoUnit.HOURS);
+        JsonNode plan = explain(TicketDaoImpl.FIND_TICKETS_WITHOUT_TRANSPORT_TYPE_SQL,
+                routeId, ts(BASE), ts(BASE.plus(365, ChronoUnit.DAYS)),
+                ts(cursor), 0, PAGE_SIZE);
+
+        assertIndexOnlyRange(plan, "idx_tickets_route_departure");
+    }
+
+    private JsonNode explain(String sql, Object... args) throws Exception {
+        String json = jdbcTemplate.queryForObject(
+                "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + sql, String.class, args);
+        return objectMapper.readTree(json).get(0).get("Plan");
+    }
+
+    /**
+     * Под Limit должен быть ровно один узел сканирования tickets: Index Only Scan по ожидаемому индексу,
+     * курсор в Index Cond (а не в Filter), без Sort и без обращений к heap.
+     */
+    private static void assertIndexOnlyRange(JsonNode plan, String indexName) {
+        List<JsonNode> nodes = new ArrayList<>();
+        collect(plan, nodes);
+
+        String planText = plan.toPrettyString();
+        for (JsonNode node : nodes) {
+            String type = node.get("Node Type").asText();
+            assertNotEquals("Sort", type, planText);
+            assertNotEquals("Seq Scan", type, planText);
+            assertNotEquals("Bitmap Heap Scan", type, planText);
+        }
+
+        List<JsonNode> scans = nodes.stream()
+                .filter(node -> node.get("Node Type").asText().endsWith("Scan"))
+                .toList();
+        assertEquals(1, scans.size(), planText);
+
+        JsonNode scan = scans.get(0);
+        assertEquals("Index Only Scan", scan.get("Node Type").asText(), planText);
+        assertEquals(indexName, scan.get("Index Name").asText(), planText);
+        assertTrue(scan.get("Index Cond").asText().contains("departure_time, id"), planText);
+        assertEquals(0, scan.get("Heap Fetches").asLong(), planText);
+        assertTrue(scan.get("Actual Rows").asLong() <= PAGE_SIZE, planText);
+    }
+
+    private static void collect(JsonNode node, List<JsonNode> nodes) {
+        nodes.add(node);
+        JsonNode children = node.get("Plans");
+        if (children != null) {
+            children.forEach(child -> collect(child, nodes));
+        }
+    }
+
+    private static Timestamp ts(Instant instant) {
+        return Timestamp.from(instant);
+    }
+}
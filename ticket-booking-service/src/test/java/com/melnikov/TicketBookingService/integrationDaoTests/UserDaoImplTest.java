@@ -112,23 +112,38 @@ public class UserDaoImplTest {
     }
 
     @Test
-    public void testUpdateBalanceById() {
+    public void testReplacePasswordHash() {
         User user = new User();
-        user.setEmail("balance@test.com");
-        user.setPasswordHash("hash");
-        user.setFirstname("Balance");
+        user.setEmail("rehash@test.com");
+        user.setPasswordHash("oldHash");
+        user.setFirstname("Rehash");
         user.setLastname("User");
-        user.setBirthDate(LocalDate.of(2001, 5, 20));
-        user.setBalance(75);
-        user.setRoleId(3);
+        user.setBirthDate(LocalDate.of(1990, 1, 1));
+        user.setBalance(0);
+        user.setRoleId(2);
         User savedUser = userDaoImpl.save(user);
 
-        // Обновляем баланс
-        boolean updated = userDaoImpl.updateBalanceById(savedUser.getId(), 150.0);
-        assertTrue(updated, "Баланс должен быть обновлён");
+        // Хеш уже сменился - пересчет не применяется
+        assertFalse(userDaoImpl.replacePasswordHash(savedUser.getId(), "staleHash", "rehashed"));
+        assertTrue(userDaoImpl.replacePasswordHash(savedUser.getId(), "oldHash", "rehashed"));
+        assertEquals("rehashed", userDaoImpl.findById(savedUser.getId()).orElseThrow().getPasswordHash());
+    }
 
-        Optional<User> updatedUserOpt = userDaoImpl.findById(savedUser.getId());
-        assertTrue(updatedUserOpt.isPresent());
-        assertEquals(150, updatedUserOpt.get().getBalance());
+    @Test
+    public void testNextSessionGeneration() {
+        User user = new User();
+        user.setEmail("generation@test.com");
+        user.setPasswordHash("hash");
+        user.setFirstname("Gen");
+        user.setLastname("User");
+        user.setBirthDate(LocalDate.of(1995, 5, 5));
+        user.setBalance(0);
+        user.setRoleId(2);
+        User savedUser = userDaoImpl.save(user);
+
+        assertEquals(0, userDaoImpl.findById(savedUser.getId()).orElseThrow().getSessionGeneration());
+        assertEquals(1, userDaoImpl.nextSessionGeneration(savedUser.getId()));
+        assertEquals(2, userDaoImpl.nextSessionGeneration(savedUser.getId()));
+        assertEquals(2, userDaoImpl.findById(savedUser.getId()).orElseThrow().getSessionGeneration());
     }
 }
@@ -0,0 +1,87 @@
+package com.melnikov.TicketBookingService.ratelimitTests;
+
+import com.melnikov.TicketBookingService.ratelimit.KeyedRateLimiter;
+import com.melnikov.TicketBookingService.ratelimit.RateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyedRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private SimpleMeterRegistry meterRegistry;
+    private KeyedRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setIdleTimeout(Duration.ofMinutes(1));
+        properties.getPolicies().put("auth", policy(3, 1, Duration.ofSeconds(10)));
+        properties.getPolicies().put("search", policy(100, 100, Duration.ofSeconds(1)));
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new KeyedRateLimiter(properties, meterRegistry, now::get);
+    }
+
+    @Test
+    void allowsBurstThenRefillsOverTime() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("auth", "ip:1.1.1.1"));
+        }
+        long wait = limiter.tryAcquire("auth", "ip:1.1.1.1");
+        assertEquals(TimeUnit.SECONDS.toNanos(10), wait);
+
+        now.addAndGet(wait);
+        assertEquals(0, limiter.tryAcquire("auth", "ip:1.1.1.1"));
+        assertTrue(limiter.tryAcquire("auth", "ip:1.1.1.1") > 0);
+
+        assertEquals(2.0, meterRegistry.get("ratelimit.rejected").tag("policy", "auth").counter().count());
+        assertEquals(0.0, meterRegistry.get("ratelimit.rejected").tag("policy", "search").counter().count());
+    }
+
+    @Test
+    void bucketsAreSeparatePerClientAndPolicy() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("auth", "user:1");
+        }
+        assertTrue(limiter.tryAcquire("auth", "user:1") > 0);
+
+        assertEquals(0, limiter.tryAcquire("auth", "user:2"));
+        assertEquals(0, limiter.tryAcquire("search", "user:1"));
+    }
+
+    @Test
+    void evictsOnlyIdleRefilledBuckets() {
+        limiter.tryAcquire("auth", "ip:1.1.1.1");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(50));
+        limiter.tryAcquire("search", "ip:2.2.2.2");
+        assertEquals(2, limiter.size());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        limiter.evictIdle();
+        assertEquals(1, limiter.size());
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        limiter.evictIdle();
+        assertEquals(0, limiter.size());
+        assertEquals(0.0, meterRegistry.get("ratelimit.buckets").gauge().value());
+    }
+
+    @Test
+    void rejectsUnknownPolicy() {
+        assertThrows(IllegalStateException.class, () -> limiter.tryAcquire("missing", "ip:1.1.1.1"));
+    }
+
+    private static RateLimitProperties.Policy policy(int capacity, int refillTokens, Duration refillPeriod) {
+        RateLimitProperties.Policy policy = new RateLimitProperties.Policy();
+        policy.setCapacity(capacity);
+        policy.setRefillTokens(refillTokens);
+        policy.setRefillPeriod(refillPeriod);
+        return policy;
+    }
+}
@@ -0,0 +1,77 @@
+package com.melnikov.TicketBookingService.searchTests;
+
+import com.melnikov.TicketBookingService.dao.RouteDao;
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Route;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.search.CitySuggestIndex;
+import com.melnikov.TicketBookingService.search.CitySuggestIndex.Suggestion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CitySuggestIndexTest {
+
+    @Mock
+    private RouteDao routeDao;
+
+    @Mock
+    private TicketDao ticketDao;
+
+    private CitySuggestIndex index;
+
+    @BeforeEach
+    void setUp() {
+        when(routeDao.findAll()).thenReturn(List.of(
+                new Route(1, "Москва", "Санкт-Петербург"),
+                new Route(2, "Москва", "Мурманск"),
+                new Route(3, "Орёл", "Омск")
+        ));
+        when(ticketDao.countByRoute()).thenReturn(Map.of(1, 50, 2, 5, 3, 7));
+        index = new CitySuggestIndex(routeDao, ticketDao);
+        index.load();
+    }
+
+    @Test
+    void ranksByTicketCount() {
+        assertEquals(List.of(new Suggestion("Москва", 55), new Suggestion("Мурманск", 5)), index.suggest("м", 10));
+        assertEquals(List.of(new Suggestion("Москва", 55)), index.suggest("м", 1));
+    }
+
+    @Test
+    void ignoresCaseAndYo() {
+        assertEquals(List.of(new Suggestion("Орёл", 7)), index.suggest("  ОРЕ", 10));
+        assertEquals(List.of(new Suggestion("Орёл", 7)), index.suggest("орё", 10));
+    }
+
+    @Test
+    void matchesWordsInsideName() {
+        assertEquals(List.of(new Suggestion("Санкт-Петербург", 50)), index.suggest("петер", 10));
+        assertTrue(index.suggest("", 10).isEmpty());
+        assertTrue(index.suggest("казань", 10).isEmpty());
+    }
+
+    @Test
+    void picksUpNewRoutesAndTickets() {
+        index.onRouteCreated(new Route(4, "Казань", "Омск"));
+        assertEquals(List.of(new Suggestion("Казань", 0)), index.suggest("каз", 10));
+
+        when(routeDao.findById(4)).thenReturn(Optional.of(new Route(4, "Казань", "Омск")));
+        Ticket ticket = new Ticket();
+        ticket.setRouteId(4);
+        index.onTicketSaved(ticket);
+
+        assertEquals(List.of(new Suggestion("Казань", 1)), index.suggest("каз", 10));
+        assertEquals(List.of(new Suggestion("Омск", 8)), index.suggest("омс", 10));
+    }
+}
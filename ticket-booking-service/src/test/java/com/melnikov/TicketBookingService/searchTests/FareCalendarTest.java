@@ -0,0 +1,109 @@
+package com.melnikov.TicketBookingService.searchTests;
+
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.search.FareCalendar;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FareCalendarTest {
+
+    private static final ZoneId MOSCOW = ZoneId.of("Europe/Moscow");
+    private static final LocalDate DAY = LocalDate.of(2030, 3, 10);
+    private static final LocalDate YESTERDAY = LocalDate.now(MOSCOW).minusDays(1);
+
+    @Mock
+    private TicketDao ticketDao;
+
+    private FareCalendar calendar;
+
+    @BeforeEach
+    void setUp() {
+        when(ticketDao.findDepartingFrom(LocalDate.now(MOSCOW).atStartOfDay(MOSCOW))).thenReturn(List.of(
+                ticket(1, DAY, 9, 1, 1500, 2),
+                ticket(2, DAY, 15, 1, 1200, 1),
+                ticket(3, DAY, 12, 2, 7000, 30),
+                ticket(4, DAY.plusDays(1), 1, 1, 1000, 0), // 01:00 по Москве — еще следующий день
+                ticket(5, DAY, 10, 1, 900, 5, 2),          // другой маршрут
+            ticket(7, YESTERDAY, 23, 1, 500, 3, 3)     // день прошел, пока календарь работал
+        ));
+        calendar = new FareCalendar(ticketDao, true, MOSCOW);
+        calendar.load();
+    }
+
+    @Test
+    void aggregatesPerDayAndType() {
+        List<FareCalendar.Day> days = calendar.days(1, DAY, DAY.plusDays(1), null);
+
+        assertEquals(List.of(
+                new FareCalendar.Day(DAY, 1, 1200, 3, 2),
+                new FareCalendar.Day(DAY, 2, 7000, 30, 1),
+                new FareCalendar.Day(DAY.plusDays(1), 1, null, 0, 1)
+        ), days);
+    }
+
+    @Test
+    void filtersByTypeAndRange() {
+        assertEquals(List.of(new FareCalendar.Day(DAY, 2, 7000, 30, 1)), calendar.days(1, DAY, DAY, 2));
+        assertTrue(calendar.days(1, DAY.plusDays(2), DAY.plusDays(5), null).isEmpty());
+        assertTrue(calendar.days(42, DAY, DAY, null).isEmpty());
+    }
+
+    @Test
+    void soldOutCheapestTicketLeavesMinimum() {
+        calendar.onAvailabilityChanged(2, 1, -1);
+        assertEquals(new FareCalendar.Day(DAY, 1, 1500, 2, 2), calendar.days(1, DAY, DAY, 1).get(0));
+
+        calendar.onAvailabilityChanged(2, 1, 1); // отмена брони
+        assertEquals(new FareCalendar.Day(DAY, 1, 1200, 3, 2), calendar.days(1, DAY, DAY, 1).get(0));
+    }
+
+    @Test
+    void newTicketUpdatesItsDay() {
+        calendar.onTicketSaved(ticket(6, DAY, 20, 1, 800, 4));
+
+        assertEquals(new FareCalendar.Day(DAY, 1, 800, 7, 3), calendar.days(1, DAY, DAY, 1).get(0));
+    }
+
+    @Test
+    void evictsPastDays() {
+        assertEquals(1, calendar.days(3, YESTERDAY, YESTERDAY, null).size());
+
+        calendar.evictPastDays();
+
+        assertTrue(calendar.days(3, YESTERDAY, YESTERDAY, null).isEmpty());
+        calendar.onAvailabilityChanged(7, 3, -1); // рейс уже забыт
+        calendar.onTicketSaved(ticket(8, YESTERDAY, 22, 1, 400, 2, 3));
+        assertTrue(calendar.days(3, YESTERDAY, YESTERDAY, null).isEmpty());
+        assertEquals(2, calendar.days(1, DAY, DAY, 1).get(0).departures());
+    }
+
+    private static Ticket ticket(int id, LocalDate day, int hour, int typeId, int price, int available) {
+        return ticket(id, day, hour, typeId, price, available, 1);
+    }
+
+    private static Ticket ticket(int id, LocalDate day, int hour, int typeId, int price, int available, int routeId) {
+        ZonedDateTime departure = day.atTime(hour, 0).atZone(MOSCOW).withZoneSameInstant(ZoneId.of("UTC"));
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setRouteId(routeId);
+        ticket.setTransportTypeId(typeId);
+        ticket.setDepartureTime(departure);
+        ticket.setArrivalTime(departure.plusHours(2));
+        ticket.setPrice(price);
+        ticket.setAvailableTickets(available);
+        return ticket;
+    }
+}
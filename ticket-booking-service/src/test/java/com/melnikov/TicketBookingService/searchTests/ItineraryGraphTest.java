@@ -0,0 +1,133 @@
+package com.melnikov.TicketBookingService.searchTests;
+
+import com.melnikov.TicketBookingService.dao.RouteDao;
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Route;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.search.ItineraryGraph;
+import com.melnikov.TicketBookingService.search.ItineraryGraph.SortOrder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ItineraryGraphTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final ZonedDateTime BASE = ZonedDateTime.of(2030, 1, 1, 10, 0, 0, 0, UTC);
+
+    @Mock
+    private TicketDao ticketDao;
+
+    @Mock
+    private RouteDao routeDao;
+
+    private ItineraryGraph graph;
+
+    @BeforeEach
+    void setUp() {
+        when(routeDao.findAll()).thenReturn(List.of(
+                new Route(1, "A", "D"),
+                new Route(2, "A", "B"),
+                new Route(3, "B", "D"),
+                new Route(4, "B", "C"),
+                new Route(5, "C", "D")
+        ));
+        when(ticketDao.findAll()).thenReturn(List.of(
+                ticket(10, 1, 0, 600, 500),   // прямой, 10 ч
+                ticket(20, 2, 0, 60, 100),
+                ticket(30, 3, 120, 180, 100), // через B: 3 ч, 200
+                ticket(31, 3, 80, 100, 10),   // пересадка 20 мин — меньше минимальной
+                ticket(40, 4, 120, 150, 20),
+                ticket(50, 5, 210, 240, 20)   // через B и C: 4 ч, 140
+        ));
+        graph = new ItineraryGraph(ticketDao, routeDao, true, Duration.ofMinutes(45), Duration.ofHours(24));
+        graph.load();
+    }
+
+    @Test
+    void ranksByDuration() {
+        List<List<Ticket>> found = graph.search("A", "D", BASE, BASE.plusDays(1), 2, SortOrder.DURATION, 10);
+        assertEquals(List.of(List.of(20, 30), List.of(20, 40, 50), List.of(10)), ids(found));
+    }
+
+    @Test
+    void ranksByPrice() {
+        List<List<Ticket>> found = graph.search("A", "D", BASE, BASE.plusDays(1), 2, SortOrder.PRICE, 10);
+        assertEquals(List.of(List.of(20, 40, 50), List.of(20, 30), List.of(10)), ids(found));
+    }
+
+    @Test
+    void respectsStopLimitAndResultLimit() {
+        assertEquals(List.of(List.of(10)),
+                ids(graph.search("A", "D", BASE, BASE.plusDays(1), 0, SortOrder.DURATION, 10)));
+        assertEquals(List.of(List.of(20, 30), List.of(10)),
+                ids(graph.search("A", "D", BASE, BASE.plusDays(1), 1, SortOrder.DURATION, 10)));
+        assertEquals(List.of(List.of(20, 40, 50)),
+                ids(graph.search("A", "D", BASE, BASE.plusDays(1), 2, SortOrder.PRICE, 1)));
+    }
+
+    @Test
+    void fillsLegDetails() {
+        Ticket second = graph.search("A", "D", BASE, BASE.plusDays(1), 1, SortOrder.DURATION, 1).get(0).get(1);
+        assertEquals("B", second.getDepartureCity());
+        assertEquals("D", second.getArrivalCity());
+        assertEquals(BASE.plusMinutes(120).toInstant(), second.getDepartureTime().toInstant());
+    }
+
+    @Test
+    void skipsSoldOutAndPicksUpNewTickets() {
+        graph.onAvailabilityChanged(30, 3, -10);
+        assertEquals(List.of(List.of(20, 40, 50), List.of(10)),
+                ids(graph.search("A", "D", BASE, BASE.plusDays(1), 2, SortOrder.DURATION, 10)));
+
+        graph.onTicketSaved(ticket(60, 1, 30, 90, 900)); // прямой, 1 ч
+        assertEquals(List.of(60), ids(graph.search("A", "D", BASE, BASE.plusDays(1), 2, SortOrder.DURATION, 10)).get(0));
+    }
+
+    @Test
+    void addsRoutesCreatedAfterLoad() {
+        when(routeDao.findById(6)).thenReturn(Optional.of(new Route(6, "D", "E")));
+        graph.onTicketSaved(ticket(70, 6, 300, 360, 50));
+
+        assertEquals(List.of(List.of(20, 30, 70)),
+                ids(graph.search("A", "E", BASE, BASE.plusDays(1), 2, SortOrder.DURATION, 1)));
+    }
+
+    @Test
+    void unknownCityGivesNothing() {
+        assertTrue(graph.search("A", "Z", BASE, BASE.plusDays(1), 2, SortOrder.DURATION, 10).isEmpty());
+    }
+
+    private static Ticket ticket(int id, int routeId, int departureMinutes, int arrivalMinutes, int price) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setRouteId(routeId);
+        ticket.setTransportTypeId(1);
+        ticket.setDepartureTime(BASE.plusMinutes(departureMinutes));
+        ticket.setArrivalTime(BASE.plusMinutes(arrivalMinutes));
+        ticket.setPrice(price);
+        ticket.setAvailableTickets(10);
+        return ticket;
+    }
+
+    private static List<List<Integer>> ids(List<List<Ticket>> itineraries) {
+        List<List<Integer>> ids = new ArrayList<>();
+        for (List<Ticket> legs : itineraries) {
+            ids.add(legs.stream().map(Ticket::getId).toList());
+        }
+        return ids;
+    }
+}
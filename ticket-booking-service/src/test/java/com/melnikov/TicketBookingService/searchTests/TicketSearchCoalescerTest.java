@@ -0,0 +1,130 @@
+package com.melnikov.TicketBookingService.searchTests;
+
+import com.melnikov.TicketBookingService.dto.TicketSearchRequestDto;
+import com.melnikov.TicketBookingService.dto.TicketSearchResponseDto;
+import com.melnikov.TicketBookingService.search.TicketSearchCoalescer;
+import com.melnikov.TicketBookingService.services.TicketService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TicketSearchCoalescerTest {
+
+    private static final int CLIENTS = 16;
+
+    @Mock
+    private TicketService ticketService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private TicketSearchCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new TicketSearchCoalescer(ticketService, meterRegistry, true);
+        executor = Executors.newFixedThreadPool(CLIENTS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void identicalConcurrentSearchesShareOneCall() throws Exception {
+        TicketSearchResponseDto response = new TicketSearchResponseDto();
+        CountDownLatch release = new CountDownLatch(1);
+        when(ticketService.searchTickets(any())).thenAnswer(invocation -> {
+            release.await();
+            return response;
+        });
+
+        List<Future<TicketSearchResponseDto>> results = submitIdentical(request("Москва", "Казань"));
+        awaitCollapsed(CLIENTS - 1);
+        release.countDown();
+
+        for (Future<TicketSearchResponseDto> result : results) {
+            assertSame(response, result.get(5, TimeUnit.SECONDS));
+        }
+        verify(ticketService, times(1)).searchTickets(any());
+    }
+
+    @Test
+    void waitersGetTheSameException() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(ticketService.searchTickets(any())).thenAnswer(invocation -> {
+            release.await();
+            throw new IllegalArgumentException("Route not found");
+        });
+
+        List<Future<TicketSearchResponseDto>> results = submitIdentical(request("A", "B"));
+        awaitCollapsed(CLIENTS - 1);
+        release.countDown();
+
+        for (Future<TicketSearchResponseDto> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, e.getCause());
+            assertEquals("Route not found", e.getCause().getMessage());
+        }
+        verify(ticketService, times(1)).searchTickets(any());
+    }
+
+    @Test
+    void sequentialSearchesAreNotCollapsed() {
+        when(ticketService.searchTickets(any())).thenReturn(new TicketSearchResponseDto());
+
+        coalescer.search(request("Москва", "Казань"));
+        coalescer.search(request("Москва", "Казань"));
+
+        verify(ticketService, times(2)).searchTickets(any());
+        assertEquals(0.0, collapsedCount());
+    }
+
+    private List<Future<TicketSearchResponseDto>> submitIdentical(TicketSearchRequestDto template) {
+        List<Future<TicketSearchResponseDto>> results = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            // каждый клиент присылает свой экземпляр с тем же содержимым
+            TicketSearchRequestDto copy = request(template.getFrom(), template.getTo());
+            results.add(executor.submit(() -> coalescer.search(copy)));
+        }
+        return results;
+    }
+
+    private void awaitCollapsed(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (collapsedCount() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, collapsedCount());
+    }
+
+    private double collapsedCount() {
+        return meterRegistry.get("tickets.search.coalescing.requests").tag("result", "collapsed").counter().count();
+    }
+
+    private static TicketSearchRequestDto request(String from, String to) {
+        TicketSearchRequestDto request = new TicketSearchRequestDto();
+        request.setFrom(from);
+        request.setTo(to);
+        return request;
+    }
+}
@@ -0,0 +1,112 @@
+package com.melnikov.TicketBookingService.searchTests;
+
+import com.melnikov.TicketBookingService.dao.TicketDao;
+import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.search.TicketSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TicketSearchIndexTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final ZonedDateTime BASE = ZonedDateTime.of(2030, 1, 1, 10, 0, 0, 0, UTC);
+    private static final ZonedDateTime FROM = BASE.minusYears(1);
+    private static final ZonedDateTime TO = BASE.plusYears(1);
+
+    @Mock
+    private TicketDao ticketDao;
+
+    private TicketSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        when(ticketDao.findAll()).thenReturn(List.of(
+                ticket(3, 1, BASE, 1, 10),
+                ticket(1, 1, BASE, 2, 10),
+                ticket(2, 1, BASE.plusHours(1), 1, 0),
+                ticket(4, 1, BASE.plusHours(2), 1, 5),
+                ticket(5, 2, BASE, 1, 5)
+        ));
+        index = new TicketSearchIndex(ticketDao, new SimpleMeterRegistry(), "memory");
+        index.load();
+    }
+
+    @Test
+    void pagesByDepartureThenIdAfterCursor() {
+        List<Ticket> first = index.search(null, 1, FROM, TO, FROM, 0, 2);
+        assertEquals(List.of(1, 3), ids(first));
+
+        Ticket last = first.get(1);
+        List<Ticket> second = index.search(null, 1, FROM, TO, last.getDepartureTime(), last.getId(), 2);
+        assertEquals(List.of(2, 4), ids(second));
+    }
+
+    @Test
+    void typeFilterSkipsOtherTypesAndSoldOut() {
+        List<Ticket> page = index.search(1, 1, FROM, TO, FROM, 0, 10);
+        assertEquals(List.of(3, 4), ids(page));
+    }
+
+    @Test
+    void respectsTimeWindow() {
+        List<Ticket> page = index.search(null, 1, BASE.plusMinutes(30), BASE.plusHours(1), FROM, 0, 10);
+        assertEquals(List.of(2), ids(page));
+    }
+
+    @Test
+    void appliesIncrementalChanges() {
+        index.onTicketSaved(ticket(6, 1, BASE.plusMinutes(30), 1, 7));
+        index.onAvailabilityChanged(2, 1, 3);
+        index.onAvailabilityChanged(3, 1, -10);
+
+        List<Ticket> page = index.search(1, 1, FROM, TO, FROM, 0, 10);
+        assertEquals(List.of(6, 2, 4), ids(page));
+        assertEquals(3, page.get(1).getAvailableTickets());
+    }
+
+    @Test
+    void keepsTransportTypeIdsAboveByteRange() {
+        index.onTicketSaved(ticket(7, 1, BASE.plusMinutes(45), 300, 4));
+
+        List<Ticket> page = index.search(300, 1, FROM, TO, FROM, 0, 10);
+        assertEquals(List.of(7), ids(page));
+        assertEquals(300, page.get(0).getTransportTypeId());
+        assertTrue(index.search(300 - 256, 1, FROM, TO, FROM, 0, 10).isEmpty());
+    }
+
+    @Test
+    void reportsFootprint() {
+        TicketSearchIndex.IndexFootprint footprint = index.footprint();
+        assertEquals(2, footprint.routes());
+        assertEquals(5, footprint.tickets());
+        assertTrue(footprint.bytes() > 0);
+    }
+
+    private static Ticket ticket(int id, int routeId, ZonedDateTime departure, int typeId, int available) {
+        return Ticket.builder()
+                .id(id)
+                .routeId(routeId)
+                .transportTypeId(typeId)
+                .departureTime(departure)
+                .arrivalTime(departure.plusHours(3))
+                .price(100)
+                .availableTickets(available)
+                .build();
+    }
+
+    private static List<Integer> ids(List<Ticket> tickets) {
+        return tickets.stream().map(Ticket::getId).toList();
+    }
+}
@@ -0,0 +1,154 @@
+package com.melnikov.TicketBookingService.securityTests;
+
+import com.melnikov.TicketBookingService.entity.User;
+import com.melnikov.TicketBookingService.security.JwtKeyRing;
+import com.melnikov.TicketBookingService.services.JwtService;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtKeyRingTest {
+
+    private static final String LEGACY_SECRET = "tRv7Q4wLbXyN2pE9uJkYq1sW3zZcF6hM8dA0gK5oIiUjPxVlBn";
+    private static final Instant NOW = Instant.parse("2025-03-01T12:00:00Z");
+
+    @TempDir
+    Path keys;
+
+    @Test
+    void rotationKeepsTokensSignedWithPreviousKeyValid() throws Exception {
+        writeKeyPair("2025-01", NOW.minus(Duration.ofDays(30)));
+        JwtKeyRing keyRing = new JwtKeyRing(keys.toString(), Duration.ofMinutes(2), Clock.fixed(NOW, ZoneOffset.UTC));
+        keyRing.load();
+        JwtService jwtService = jwtService(keyRing);
+        String oldToken = jwtService.generateAccessToken(user());
+        assertEquals("2025-01", Jwts.parserBuilder().build().parse(unsigned(oldToken)).getHeader().get("kid"));
+
+        // новый ключ только что появился: пока остальные узлы его не подхватили, подписываем старым
+        writeKeyPair("2025-03", NOW.minusSeconds(10));
+        keyRing.reload();
+        assertEquals("2025-01", keyRing.signingKey().kid());
+        assertNotNull(keyRing.verificationKey("2025-03"));
+
+        JwtKeyRing later = new JwtKeyRing(keys.toString(), Duration.ofMinutes(2),
+                Clock.fixed(NOW.plus(Duration.ofMinutes(5)), ZoneOffset.UTC));
+        later.load();
+        assertEquals("2025-03", later.signingKey().kid());
+
+        JwtService rotated = jwtService(later);
+        assertEquals(42L, rotated.parseAccessToken(oldToken).userId());
+        assertEquals(42L, rotated.parseAccessToken(rotated.generateAccessToken(user())).userId());
+    }
+
+    @Test
+    void verifyOnlyNodeNeedsPublicKeyOnly() throws Exception {
+        writeKeyPair("k1", NOW.minus(Duration.ofDays(1)));
+        JwtKeyRing signer = new JwtKeyRing(keys.toString(), Duration.ZERO, Clock.fixed(NOW, ZoneOffset.UTC));
+        signer.load();
+        String token = jwtService(signer).generateAccessToken(user());
+
+        Files.delete(keys.resolve("k1.key"));
+        JwtKeyRing verifier = new JwtKeyRing(keys.toString(), Duration.ZERO, Clock.fixed(NOW, ZoneOffset.UTC));
+        verifier.load();
+
+        assertEquals("user@test.com", jwtService(verifier).parseAccessToken(token).email());
+        assertThrows(IllegalStateException.class, verifier::signingKey);
+    }
+
+    @Test
+    void cachedTokenIsRejectedOnceItsKeyLeavesTheRing() throws Exception {
+        writeKeyPair("k1", NOW.minus(Duration.ofDays(30)));
+        JwtKeyRing keyRing = new JwtKeyRing(keys.toString(), Duration.ZERO, Clock.fixed(NOW, ZoneOffset.UTC));
+        keyRing.load();
+        JwtService jwtService = jwtService(keyRing);
+        String token = jwtService.generateAccessToken(user());
+        assertEquals(42L, jwtService.parseAccessToken(token).userId()); // теперь токен в кеше проверенных
+
+        // ключ выведен из кольца: закешированная проверка больше не действует
+        writeKeyPair("k2", NOW.minus(Duration.ofDays(1)));
+        Files.delete(keys.resolve("k1.pub"));
+        Files.delete(keys.resolve("k1.key"));
+        keyRing.reload();
+
+        assertThrows(SignatureException.class, () -> jwtService.parseAccessToken(token));
+    }
+
+    @Test
+    void rejectsUnknownKidAndAcceptsLegacyHs256() {
+        JwtKeyRing keyRing = new JwtKeyRing("", Duration.ZERO);
+        keyRing.load();
+        JwtService jwtService = jwtService(keyRing);
+
+        JwtKeyRing otherRing = new JwtKeyRing("", Duration.ZERO);
+        otherRing.load();
+        String foreign = jwtService(otherRing).generateAccessToken(user());
+        assertThrows(SignatureException.class, () -> jwtService.parseAccessToken(foreign));
+
+        String legacy = Jwts.builder()
+                .setSubject("user@test.com")
+                .claim("id", 42L)
+                .claim("roleId", 2)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(LEGACY_SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+        assertEquals(42L, jwtService.parseAccessToken(legacy).userId());
+    }
+
+    private static JwtService jwtService(JwtKeyRing keyRing) {
+        JwtService jwtService = new JwtService(keyRing);
+        ReflectionTestUtils.setField(jwtService, "legacySecret", LEGACY_SECRET);
+        ReflectionTestUtils.setField(jwtService, "accessExpiration", 900_000L);
+        ReflectionTestUtils.setField(jwtService, "refreshExpiration", 604_800_000L);
+        jwtService.init();
+        return jwtService;
+    }
+
+    private void writeKeyPair(String kid, Instant published) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair pair = generator.generateKeyPair();
+        Path publicKey = keys.resolve(kid + ".pub");
+        Files.writeString(publicKey, pem("PUBLIC KEY", pair.getPublic().getEncoded()));
+        Files.writeString(keys.resolve(kid + ".key"), pem("PRIVATE KEY", pair.getPrivate().getEncoded()));
+        Files.setLastModifiedTime(publicKey, FileTime.from(published));
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der)
+                + "\n-----END " + type + "-----\n";
+    }
+
+    private static String unsigned(String token) {
+        return token.substring(0, token.lastIndexOf('.') + 1);
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(42L);
+        user.setEmail("user@test.com");
+        user.setRoleId(2);
+        return user;
+    }
+}
@@ -0,0 +1,71 @@
+package com.melnikov.TicketBookingService.securityTests;
+
+import com.melnikov.TicketBookingService.exception.PasswordHashingBusyException;
+import com.melnikov.TicketBookingService.security.PasswordHasher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    @Test
+    void hashesAndMatchesWithCalibratedCost() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PasswordHasher hasher = new PasswordHasher(meterRegistry, 2, 16, Duration.ofMillis(1), 4, 8);
+
+        // бюджет меньше любого замера - остаемся на min-cost
+        assertEquals(4, hasher.getCost());
+        String hash = hasher.hash("secret");
+        assertTrue(hash.startsWith("$2a$04$"));
+        assertTrue(hasher.matches("secret", hash));
+        assertFalse(hasher.matches("other", hash));
+        assertEquals(3, meterRegistry.get("auth.password.hash").timer().count());
+        assertEquals(3, meterRegistry.get("auth.password.queue").timer().count());
+        hasher.shutdown();
+    }
+
+    @Test
+    void detectsHashesWithOutdatedCost() {
+        PasswordHasher hasher = new PasswordHasher(new SimpleMeterRegistry(), 1, 4, Duration.ofMillis(1), 6, 6);
+
+        assertTrue(hasher.needsRehash(new BCryptPasswordEncoder(4).encode("secret")));
+        assertFalse(hasher.needsRehash(new BCryptPasswordEncoder(6).encode("secret")));
+        assertFalse(hasher.needsRehash(new BCryptPasswordEncoder(8).encode("secret")));
+        assertTrue(hasher.needsRehash("not-a-bcrypt-hash"));
+        assertFalse(hasher.needsRehash(hasher.rehashAsync("secret").join()));
+        hasher.shutdown();
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // один поток и одно место в очереди, cost 14 держит поток заметное время
+        PasswordHasher hasher = new PasswordHasher(meterRegistry, 1, 1, Duration.ofMillis(1), 14, 14);
+
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            calls.add(CompletableFuture.supplyAsync(() -> hasher.hash("secret")));
+        }
+
+        int rejected = 0;
+        for (CompletableFuture<String> call : calls) {
+            try {
+                call.join();
+            } catch (CompletionException e) {
+                assertInstanceOf(PasswordHashingBusyException.class, e.getCause());
+                rejected++;
+            }
+        }
+        assertTrue(rejected >= 2);
+        assertEquals(rejected, meterRegistry.get("auth.password.rejected").counter().count());
+        hasher.shutdown();
+    }
+}
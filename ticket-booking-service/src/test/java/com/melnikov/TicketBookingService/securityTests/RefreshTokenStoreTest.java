@@ -0,0 +1,138 @@
+package com.melnikov.TicketBookingService.securityTests;
+
+import com.melnikov.TicketBookingService.dao.RefreshTokenDao;
+import com.melnikov.TicketBookingService.dao.RevokedTokenDao;
+import com.melnikov.TicketBookingService.entity.RefreshSession;
+import com.melnikov.TicketBookingService.entity.RefreshToken;
+import com.melnikov.TicketBookingService.entity.SessionRevocation;
+import com.melnikov.TicketBookingService.security.RefreshTokenStore;
+import com.melnikov.TicketBookingService.security.TokenRevocationList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenStoreTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2025-03-01T12:00:00Z"), ZoneOffset.UTC);
+
+    @Mock
+    private RefreshTokenDao refreshTokenDao;
+    @Mock
+    private TokenRevocationList tokenRevocationList;
+
+    private RefreshTokenStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new RefreshTokenStore(refreshTokenDao, tokenRevocationList, CLOCK);
+    }
+
+    @Test
+    void savedTokenIsServedFromMemory() {
+        store.save(token(1L, hash(1), 1), "user@test.com", 2, 0);
+
+        // копия ключа: сравнение по содержимому, а не по ссылке
+        RefreshSession session = store.find(hash(1)).orElseThrow();
+
+        assertEquals(1L, session.getUserId());
+        assertEquals("user@test.com", session.getEmail());
+        assertEquals(2, session.getRoleId());
+        verify(refreshTokenDao).save(any());
+        verify(refreshTokenDao, never()).findSessionByToken(any());
+    }
+
+    @Test
+    void missFallsBackToDatabaseOnceAndCaches() {
+        RefreshSession fromDb = RefreshSession.builder().userId(5L).email("db@test.com").roleId(1)
+                .expiryDate(LocalDateTime.now(CLOCK).plusDays(1)).build();
+        when(refreshTokenDao.findSessionByToken(any())).thenReturn(Optional.of(fromDb));
+
+        assertEquals(fromDb, store.find(hash(2)).orElseThrow());
+        assertEquals(fromDb, store.find(hash(2)).orElseThrow());
+
+        verify(refreshTokenDao, times(1)).findSessionByToken(any());
+    }
+
+    @Test
+    void deleteByUserIdRemovesOnlyThatUsersTokens() {
+        store.save(token(1L, hash(1), 1), "a@test.com", 2, 0);
+        store.save(token(1L, hash(2), 1), "a@test.com", 2, 0);
+        store.save(token(2L, hash(3), 1), "b@test.com", 2, 0);
+
+        store.deleteByUserId(1L);
+
+        assertEquals(1, store.size());
+        assertTrue(store.find(hash(1)).isEmpty());
+        verify(refreshTokenDao).deleteByUserId(1L);
+    }
+
+    @Test
+    void revokedCachedEntryIsRecheckedInDatabase() {
+        store.save(token(1L, hash(1), 1), "a@test.com", 2, 0);
+        when(tokenRevocationList.isRefreshRevoked(eq(1L), anyLong())).thenReturn(true);
+
+        assertTrue(store.find(hash(1)).isEmpty());
+        verify(refreshTokenDao).findSessionByToken(any());
+    }
+
+    @Test
+    void loginOnAnotherNodeEvictsCachedTokens() {
+        RevokedTokenDao revokedTokenDao = mock(RevokedTokenDao.class);
+        TokenRevocationList revocations = new TokenRevocationList(revokedTokenDao, 900_000, CLOCK);
+        RefreshTokenStore node = new RefreshTokenStore(refreshTokenDao, revocations, CLOCK);
+        node.save(token(1L, hash(1), 1), "a@test.com", 2, 3);
+        node.save(token(2L, hash(2), 1), "b@test.com", 2, 3);
+        assertTrue(node.find(hash(1)).isPresent());
+
+        // Пользователь 1 вошел на другом узле: там его прежний токен удален, сюда приходит только отзыв поколения
+        when(revokedTokenDao.findActive(any())).thenReturn(Map.of(1L, new SessionRevocation(0, 4)));
+        revocations.refresh();
+
+        assertEquals(1, node.size());
+        assertTrue(node.find(hash(1)).isEmpty());
+        assertTrue(node.find(hash(2)).isPresent());
+        verify(refreshTokenDao, times(1)).findSessionByToken(any());
+    }
+
+    @Test
+    void evictsExpiredTokens() {
+        store.save(token(1L, hash(1), -1), "a@test.com", 2, 0);
+        store.save(token(1L, hash(2), 1), "a@test.com", 2, 0);
+
+        store.evictExpired();
+
+        assertEquals(1, store.size());
+        verify(refreshTokenDao).deleteExpired(LocalDateTime.now(CLOCK));
+    }
+
+    private static RefreshToken token(Long userId, byte[] hash, int daysToExpiry) {
+        return RefreshToken.builder()
+                .userId(userId)
+                .tokenHash(hash)
+                .expiryDate(LocalDateTime.now(CLOCK).plusDays(daysToExpiry))
+                .build();
+    }
+
+    private static byte[] hash(int seed) {
+        byte[] bytes = new byte[32];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (seed * 31 + i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,114 @@
+package com.melnikov.TicketBookingService.securityTests;
+
+import com.melnikov.TicketBookingService.dao.RevokedTokenDao;
+import com.melnikov.TicketBookingService.entity.SessionRevocation;
+import com.melnikov.TicketBookingService.security.JwtKeyRing;
+import com.melnikov.TicketBookingService.security.JwtPrincipal;
+import com.melnikov.TicketBookingService.security.TokenRevocationList;
+import com.melnikov.TicketBookingService.services.JwtService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenRevocationListTest {
+
+    private static final long ACCESS_TTL_MS = 900_000;
+    private static final Instant NOW = Instant.parse("2025-03-01T12:00:00.400Z");
+
+    @Mock
+    private RevokedTokenDao revokedTokenDao;
+
+    @Test
+    void revokesEarlierGenerationsOnly() {
+        TokenRevocationList list = new TokenRevocationList(revokedTokenDao, ACCESS_TTL_MS, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        list.revokeAll(7L, 3);
+
+        assertTrue(list.isRevoked(7L, 0));
+        assertTrue(list.isRevoked(7L, 2));
+        assertFalse(list.isRevoked(7L, 3));
+        assertFalse(list.isRevoked(8L, 0));
+        assertTrue(list.isRefreshRevoked(7L, 2));
+        verify(revokedTokenDao).revokeBefore(7L, 3, 3, NOW.plusMillis(ACCESS_TTL_MS));
+
+        // Запоздавший отзыв более раннего поколения не возвращает отозванное
+        list.revokeAll(7L, 2);
+        assertTrue(list.isRevoked(7L, 2));
+    }
+
+    @Test
+    void loginRevokesOnlyRefreshTokensAndNotifiesListeners() {
+        TokenRevocationList list = new TokenRevocationList(revokedTokenDao, ACCESS_TTL_MS, Clock.fixed(NOW, ZoneOffset.UTC));
+        List<Long> notified = new ArrayList<>();
+        list.addRefreshRevocationListener((userId, minGeneration) -> notified.add(minGeneration));
+
+        list.revokeRefreshTokens(7L, 4);
+        list.revokeRefreshTokens(7L, 4); // повтор того же отзыва не будит подписчиков
+
+        assertTrue(list.isRefreshRevoked(7L, 3));
+        assertFalse(list.isRefreshRevoked(7L, 4));
+        assertFalse(list.isRevoked(7L, 3)); // access-токены с прошлого входа живут свой срок
+        assertEquals(List.of(4L), notified);
+        verify(revokedTokenDao, times(2)).revokeBefore(7L, 0, 4, NOW.plusMillis(ACCESS_TTL_MS));
+    }
+
+    @Test
+    void loginRightAfterRevokeGetsValidToken() {
+        TokenRevocationList list = new TokenRevocationList(revokedTokenDao, ACCESS_TTL_MS, Clock.fixed(NOW, ZoneOffset.UTC));
+        JwtKeyRing keyRing = new JwtKeyRing("", Duration.ZERO);
+        keyRing.load();
+        JwtService jwtService = new JwtService(keyRing);
+        ReflectionTestUtils.setField(jwtService, "accessExpiration", ACCESS_TTL_MS);
+        jwtService.init();
+
+        String before = jwtService.generateAccessToken(7L, "user@test.com", 2, 4);
+        // выход и сразу вход: оба токена выданы в одну секунду, различает их только поколение
+        list.revokeAll(7L, 5);
+        String after = jwtService.generateAccessToken(7L, "user@test.com", 2, 5);
+
+        JwtPrincipal revoked = jwtService.parseAccessToken(before);
+        JwtPrincipal fresh = jwtService.parseAccessToken(after);
+        assertTrue(list.isRevoked(revoked.userId(), revoked.sessionGeneration()));
+        assertFalse(list.isRevoked(fresh.userId(), fresh.sessionGeneration()));
+    }
+
+    @Test
+    void refreshPicksUpOtherNodesAndDropsExpiredRevocations() {
+        when(revokedTokenDao.findActive(any())).thenReturn(Map.of(1L, new SessionRevocation(4, 5)));
+        Clock clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(NOW);
+        TokenRevocationList list = new TokenRevocationList(revokedTokenDao, ACCESS_TTL_MS, clock);
+
+        list.refresh();
+
+        assertTrue(list.isRevoked(1L, 3));
+        assertFalse(list.isRevoked(1L, 4));
+        assertTrue(list.isRefreshRevoked(1L, 4));
+        assertEquals(1, list.size());
+        verify(revokedTokenDao).deleteExpired(NOW);
+
+        // через срок access-токена строка уже удалена из таблицы, все токены старых поколений истекли
+        Instant later = NOW.plusMillis(ACCESS_TTL_MS);
+        when(clock.instant()).thenReturn(later);
+        when(revokedTokenDao.findActive(later)).thenReturn(Map.of());
+        list.refresh();
+
+        assertFalse(list.isRevoked(1L, 3));
+        assertEquals(0, list.size());
+    }
+}
@@ -2,12 +2,17 @@ package com.melnikov.TicketBookingService.servicesTests;
 
 
 
+import com.melnikov.TicketBookingService.cache.TicketSearchCache;
+import com.melnikov.TicketBookingService.cache.TransportTypeDictionary;
 import com.melnikov.TicketBookingService.dao.RouteDao;
 import com.melnikov.TicketBookingService.dao.TicketDao;
 import com.melnikov.TicketBookingService.dto.TicketCreateRequestDto;
 import com.melnikov.TicketBookingService.dto.TicketSearchRequestDto;
 import com.melnikov.TicketBookingService.dto.TicketSearchResponseDto;
 import com.melnikov.TicketBookingService.entity.Ticket;
+import com.melnikov.TicketBookingService.inventory.SeatInventory;
+import com.melnikov.TicketBookingService.inventory.ShardedSeatCounters;
+import com.melnikov.TicketBookingService.search.TicketSearchIndex;
 import com.melnikov.TicketBookingService.services.TicketService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -36,6 +41,21 @@ class TicketServiceTest {
     @Mock
     private TicketDao ticketDao;
 
+    @Mock
+    private SeatInventory seatInventory;
+
+    @Mock
+    private TicketSearchIndex ticketSearchIndex;
+
+    @Mock
+    private TransportTypeDictionary transportTypes;
+
+    @Mock
+    private TicketSearchCache ticketSearchCache;
+
+    @Mock
+    private ShardedSeatCounters shardedSeats;
+
     @InjectMocks
     private TicketService ticketService;
 
@@ -57,6 +77,7 @@ class TicketServiceTest {
         request.setAvailableTickets(10);
 
         when(routeDao.findIdByCities("CityA", "CityB")).thenReturn(Optional.of(42));
+        when(transportTypes.findIdByName("bus")).thenReturn(Optional.of(1));
         Ticket saved = new Ticket(); saved.setId(1);
         when(ticketDao.save(any(Ticket.class))).thenReturn(saved);
 
@@ -84,8 +105,9 @@ class TicketServiceTest {
         request.setPrice(200);
         request.setAvailableTickets(5);
 
-        when(routeDao.findIdByCities("A", "B")).thenReturn(Optional.empty())
-                .thenReturn(Optional.of(99));
+        when(routeDao.findIdByCities("A", "B")).thenReturn(Optional.empty());
+        when(routeDao.createRoute("A", "B")).thenReturn(99);
+        when(transportTypes.findIdByName("train")).thenReturn(Optional.of(3));
 
         Ticket saved = new Ticket(); saved.setId(2);
         when(ticketDao.save(any(Ticket.class))).thenReturn(saved);
@@ -94,6 +116,7 @@ class TicketServiceTest {
 
         assertEquals(2, result.getId());
         verify(routeDao).createRoute("A", "B");
+        verify(routeDao, times(1)).findIdByCities("A", "B");
         ArgumentCaptor<Ticket> captor = ArgumentCaptor.forClass(Ticket.class);
         verify(ticketDao).save(captor.capture());
         Ticket toSave = captor.getValue();
@@ -128,6 +151,8 @@ class TicketServiceTest {
         request.setPageSize(5);
 
         when(routeDao.findIdByCities("X", "Y")).thenReturn(Optional.of(7));
+        when(transportTypes.findIdByName("avia")).thenReturn(Optional.of(2));
+        when(transportTypes.findNameById(2)).thenReturn(Optional.of("avia"));
         Ticket t1 = Ticket.builder()
                 .id(10)
                 .transportTypeId(2)